@@ -0,0 +1,126 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package detection;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import peer.peerid.PeerID;
+
+/**
+ * An immutable view of the neighbors of a node at some moment. Membership is
+ * checked using an open addressing table of peer identifiers. Each time the
+ * neighborhood changes the detector publishes a new snapshot.
+ * 
+ * @author Unai Aguilera (unai.aguilera@gmail.com)
+ * 
+ */
+public final class NeighborSnapshot extends AbstractSet<PeerID> {
+
+	public static final NeighborSnapshot EMPTY = new NeighborSnapshot(Collections.<PeerID> emptySet());
+
+	private final PeerID[] neighbors;
+
+	// open addressing table of neighbor identifiers
+	private final int[] ids;
+	private final boolean[] used;
+	private final int mask;
+
+	/**
+	 * Creates a snapshot containing the passed neighbors
+	 * 
+	 * @param neighbors
+	 *            the current neighbors
+	 */
+	public NeighborSnapshot(final Collection<PeerID> neighbors) {
+		this.neighbors = neighbors.toArray(new PeerID[neighbors.size()]);
+
+		// keep the load factor under 0.5
+		int capacity = 4;
+		while (capacity < this.neighbors.length * 2)
+			capacity <<= 1;
+		ids = new int[capacity];
+		used = new boolean[capacity];
+		mask = capacity - 1;
+
+		for (final PeerID neighbor : this.neighbors) {
+			int index = hash(neighbor.getID()) & mask;
+			while (used[index])
+				index = (index + 1) & mask;
+			ids[index] = neighbor.getID();
+			used[index] = true;
+		}
+	}
+
+	@Override
+	public boolean contains(final Object o) {
+		if (!(o instanceof PeerID))
+			return false;
+		return contains(((PeerID) o).getID());
+	}
+
+	public boolean contains(final int id) {
+		int index = hash(id) & mask;
+		while (used[index]) {
+			if (ids[index] == id)
+				return true;
+			index = (index + 1) & mask;
+		}
+		return false;
+	}
+
+	@Override
+	public int size() {
+		return neighbors.length;
+	}
+
+	@Override
+	public Iterator<PeerID> iterator() {
+		return new Iterator<PeerID>() {
+
+			private int index = 0;
+
+			@Override
+			public boolean hasNext() {
+				return index < neighbors.length;
+			}
+
+			@Override
+			public PeerID next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return neighbors[index++];
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("Neighbor snapshots cannot be modified");
+			}
+		};
+	}
+
+	private static int hash(final int id) {
+		final int h = id * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -21,14 +21,12 @@ package detection.beaconDetector;
 
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Random;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import peer.RegisterCommunicationLayerException;
 import peer.ReliableBroadcastPeer;
@@ -42,12 +40,20 @@ import util.timer.TimerTask;
 import config.Configuration;
 import detection.NeighborDetector;
 import detection.NeighborEventsListener;
+import detection.NeighborSnapshot;
 import detection.message.BeaconMessage;
 
 /**
  * This class implements a neighbor detector using beacon sending. Beacons are
- * sent using a fixed period of time unless another message was recently
- * broadcasted from this peer.
+ * sent unless another message was recently broadcasted from this peer. The
+ * beacon period is shortened when the neighborhood changes and returns to the
+ * configured beacon time when it becomes stable. Any message heard from a
+ * neighbor refreshes its liveness, so traffic bundles act as beacons too.
+ * 
+ * Neighbor expiration is driven by a queue of deadlines and changes are
+ * notified to listeners in coalesced batches once the neighborhood settles.
+ * A neighbor lost and found again within a batch is notified as lost and
+ * then as new.
  * 
  * @author Unai Aguilera (unai.aguilera@gmail.com)
  * 
@@ -66,35 +72,38 @@ public final class BeaconDetector implements NeighborDetector, MessageSentListen
 		}
 
 		@Override
-		public void run() {			
+		public void run() {
+			int beaconTime = nextBeaconTime();
 			while (!Thread.interrupted()) {
 				logger.trace("Peer " + peer.getPeerID() + " beacon thread running");
 				
 				// Get the time elapsed since the last packet (beacon or not)
 				// was sent by this node
-				final long elapsedTime = System.currentTimeMillis() - lastSentTime.get();
+				final long now = System.currentTimeMillis();
+				final long elapsedTime = now - lastSentTime.get();
 	
 				// Clean old neighbors
-				beaconDetector.cleanOldNeighbors();
+				beaconDetector.cleanOldNeighbors(now);
 	
 				// Check if a beacon must be sent. Beacons are only sent if a
 				// packet was not previously broadcasted by this node in a
 				// period of time
 	
-				final long sleepTime;
-				final int jitter = r.nextInt(MAX_JITTER);
-				final int beaconTime = BEACON_TIME - jitter;
-				
+				long sleepTime;
 				if (elapsedTime >= beaconTime) {
 					// Send the beacon
 					beaconDetector.sendBeacon();
 					// Schedule next beacon sleeping the thread
+					beaconTime = nextBeaconTime();
 					sleepTime = beaconTime;
 				} else
 					// Schedule timer for the difference of time (time for the
 					// next beacon)
 					sleepTime = beaconTime - elapsedTime; 
 				
+				// wake up earlier if some neighbor could expire before
+				sleepTime = Math.max(1, Math.min(sleepTime, beaconDetector.nextExpiration() - now));
+				
 				try {
 					Thread.sleep(sleepTime);
 				} catch (final InterruptedException e) {
@@ -105,6 +114,13 @@ public final class BeaconDetector implements NeighborDetector, MessageSentListen
 			finishThread();
 		}
 		
+		// gets the adaptive beacon period with a random jitter
+		private int nextBeaconTime() {
+			final int beaconTime = beaconRate.nextBeaconTime();
+			final int jitter = r.nextInt(Math.max(1, Math.min(MAX_JITTER, beaconTime / 2)));
+			return beaconTime - jitter;
+		}
+		
 		private void finishThread() {
 			logger.trace("Peer " + peer.getPeerID() + " beacon thread finalized");
 			this.threadFinished();
@@ -128,11 +144,18 @@ public final class BeaconDetector implements NeighborDetector, MessageSentListen
 	// List of neighbor notification listeners
 	private final List<NeighborEventsListener> neighborNotificationListeners = new CopyOnWriteArrayList<NeighborEventsListener>();
 
-	// Map which contains current neighbors
-	private final Map<PeerID, Long> neighborsTable = new ConcurrentHashMap<PeerID, Long>();
+	// Contains current neighbors and their expiration deadlines
+	private final NeighborDeadlines neighborsTable = new NeighborDeadlines();
+
+	// the last published snapshot of the neighbors table
+	private final AtomicReference<NeighborSnapshot> neighborSnapshot = new AtomicReference<NeighborSnapshot>(NeighborSnapshot.EMPTY);
 	
-	private final Set<PeerID> newNeighbors = new HashSet<PeerID>();
-	private final Set<PeerID> lostNeighbors = new HashSet<PeerID>();
+	// neighbor changes not yet notified. Guarded by the table lock
+	private final NeighborEvents neighborEvents = new NeighborEvents();
+	
+	// time of the first and last neighbor changes not yet notified
+	private final AtomicLong firstChangeTime = new AtomicLong();
+	private final AtomicLong lastChangeTime = new AtomicLong();
 
 	// Reference to the peer
 	private final ReliableBroadcastPeer peer;
@@ -145,11 +168,19 @@ public final class BeaconDetector implements NeighborDetector, MessageSentListen
 	private static final int MAX_JITTER = 500;
 
 	private long LOST_TIME;
+	
+	private int MIN_BEACON_TIME = -1;
+	
+	private BeaconRate beaconRate;
 
 	private boolean init = false;
 	
 	private static final long DELAY_NOTIFICATION = 50;
 	
+	// notifications are delayed while the neighborhood keeps changing, but
+	// never longer than this time
+	private static final long MAX_NOTIFICATION_DELAY = 250;
+	
 	private Timer notificationTimer = new Timer(DELAY_NOTIFICATION, this);
 
 	/**
@@ -165,7 +196,7 @@ public final class BeaconDetector implements NeighborDetector, MessageSentListen
 		peer.addSentListener(this);
 
 		// Register the message heard listener
-		peer.setHearListener(this);
+		peer.addHearListener(this);
 
 		try {
 			peer.addCommunicationLayer(this, new HashSet<Class<? extends BroadcastMessage>>());
@@ -181,17 +212,17 @@ public final class BeaconDetector implements NeighborDetector, MessageSentListen
 
 	@Override
 	public Set<PeerID> getCurrentNeighbors() {
-		final Set<PeerID> currentNeighbors = new HashSet<PeerID>();
-		synchronized (neighborsTable) {
-			currentNeighbors.addAll(neighborsTable.keySet());
-		}
-		
-		synchronized (newNeighbors) {
-			currentNeighbors.addAll(newNeighbors);
-			currentNeighbors.remove(lostNeighbors);
-		}
+		return neighborSnapshot.get();
+	}
+
+	// Publishes a new snapshot of the neighbors table. It must be called
+	// holding the table lock after any neighbor is added or removed and the
+	// change is recorded in the neighbor events.
+	private void publishNeighbors(final long now) {
+		neighborSnapshot.set(new NeighborSnapshot(neighborsTable.getNeighbors()));
 		
-		return Collections.unmodifiableSet(currentNeighbors);
+		lastChangeTime.set(now);
+		firstChangeTime.compareAndSet(0, now);
 	}
 
 	@Override
@@ -204,9 +235,22 @@ public final class BeaconDetector implements NeighborDetector, MessageSentListen
 			logger.error("Peer " + peer.getPeerID() + " had problem loading configuration: " + e.getMessage());
 		}
 
+		try {
+			final String minBeaconTimeStr = Configuration.getInstance().getProperty("beaconDetector.minBeaconTime");
+			MIN_BEACON_TIME = Integer.parseInt(minBeaconTimeStr);
+			logger.info("Peer " + peer.getPeerID() + " set MIN_BEACON_TIME to " + MIN_BEACON_TIME);
+		} catch (final Exception e) {
+			logger.error("Peer " + peer.getPeerID() + " had problem loading configuration: " + e.getMessage());
+		}
+		
+		if (MIN_BEACON_TIME < 0)
+			MIN_BEACON_TIME = BEACON_TIME / 4;
+
 		LOST_TIME = BEACON_TIME * 2;
 
 		logger.trace("Peer " + peer.getPeerID() + " beacon time (" + BEACON_TIME + ")");
+		
+		beaconRate = new BeaconRate(BEACON_TIME, MIN_BEACON_TIME);
 
 		beaconMessage = new BeaconMessage(peer.getPeerID());
 		
@@ -225,15 +269,19 @@ public final class BeaconDetector implements NeighborDetector, MessageSentListen
 	@Override
 	public void messageReceived(final BroadcastMessage message, final long receptionTime) {
 		if (init) {
-			// Check that the message was received from an unknown neighbor
-			final boolean newNeighbor = !neighborsTable.containsKey(message.getSender());
-
-			// Update sender of the received message
-			neighborsTable.put(message.getSender(), Long.valueOf(System.currentTimeMillis()));
+			final long now = System.currentTimeMillis();
+			// Update sender of the received message. Any message refreshes
+			// the neighbor, not only beacons. The table lock is only taken
+			// for neighbors which are not contained
+			if (!neighborsTable.update(message.getSender(), now + LOST_TIME)) {
+				synchronized (neighborsTable) {
+					if (neighborsTable.refresh(message.getSender(), now + LOST_TIME)) {
+						neighborEvents.found(message.getSender());
+						publishNeighbors(now);
+					}
+				}
+			}
 			logger.trace("Peer " + peer.getPeerID() + " has updated neighbor " + message.getSender());
-			
-			if (newNeighbor)
-				addNewNeighbor(message.getSender());
 		}
 	}
 
@@ -252,27 +300,24 @@ public final class BeaconDetector implements NeighborDetector, MessageSentListen
 
 	// Cleans those neighbor not heard in a period of time specified by
 	// LOST_TIME
-	private void cleanOldNeighbors() {
-		final Set<PeerID> removedPeers = new HashSet<PeerID>();
-
+	private void cleanOldNeighbors(final long now) {
 		synchronized (neighborsTable) {
-			// Remove those neighbors old enough
-			for (final Iterator<PeerID> it = neighborsTable.keySet().iterator(); it.hasNext();) {
-				final PeerID neighbor = it.next();
-				final long timestamp = neighborsTable.get(neighbor).longValue();
-				final long elapsedTime = System.currentTimeMillis() - timestamp;
-				if (elapsedTime >= LOST_TIME) {
-
-					logger.trace("Peer " + peer.getPeerID() + " removing neighbor " + neighbor + " elapsed time " + elapsedTime + " [" + System.currentTimeMillis() + " - " + timestamp + "]");
-					removedPeers.add(neighbor);
-					it.remove();
-				}
+			// Remove those neighbors whose deadline has passed
+			final Set<PeerID> removedPeers = neighborsTable.expire(now);
+			if (!removedPeers.isEmpty()) {
+				logger.trace("Peer " + peer.getPeerID() + " removing neighbors " + removedPeers + " [" + now + "]");
+				for (final PeerID removedPeer : removedPeers)
+					neighborEvents.lost(removedPeer);
+				publishNeighbors(now);
 			}
 		}
-
-		// Notify neighbor removal to registered listeners
-		if (!removedPeers.isEmpty())
-			removeLostNeighbors(removedPeers);
+	}
+	
+	// Gets the earliest time when some neighbor could expire
+	private long nextExpiration() {
+		synchronized (neighborsTable) {
+			return neighborsTable.nextDeadline();
+		}
 	}
 
 	// Send a beacon using broadcast provided by communication peer
@@ -285,41 +330,47 @@ public final class BeaconDetector implements NeighborDetector, MessageSentListen
 		return false;
 	}
 	
-	private void addNewNeighbor(final PeerID newNeighbor) {
-		synchronized (newNeighbors) {
-			lostNeighbors.remove(newNeighbor);
-			newNeighbors.add(newNeighbor);
-		}
-	}
-	
-	private void removeLostNeighbors(final Set<PeerID> expiredNeighbors) {
-		synchronized (newNeighbors) {
-			newNeighbors.removeAll(expiredNeighbors);
-			lostNeighbors.addAll(expiredNeighbors);
-		}
-	}
-
 	@Override
 	public void perform() throws InterruptedException {
-		final Set<PeerID> addedNeighbors = new HashSet<PeerID>();
-		final Set<PeerID> removedNeighbors = new HashSet<PeerID>();
-		synchronized (newNeighbors) {
-			addedNeighbors.addAll(newNeighbors);
-			removedNeighbors.addAll(lostNeighbors);
+		// wait until the neighborhood settles, unless changes have been
+		// pending for too long
+		final long now = System.currentTimeMillis();
+		if (now - lastChangeTime.get() < DELAY_NOTIFICATION && now - firstChangeTime.get() < MAX_NOTIFICATION_DELAY)
+			return;
+		
+		final Set<PeerID> addedNeighbors;
+		final Set<PeerID> removedNeighbors;
+		final boolean refoundNeighbors;
+		synchronized (neighborsTable) {
+			if (neighborEvents.isEmpty())
+				return;
 			
-			newNeighbors.clear();
-			lostNeighbors.clear();
+			firstChangeTime.set(0);
+			addedNeighbors = new HashSet<PeerID>(neighborEvents.getFoundNeighbors());
+			removedNeighbors = new HashSet<PeerID>(neighborEvents.getLostNeighbors());
+			refoundNeighbors = neighborEvents.hasRefoundNeighbors();
+			neighborEvents.clear();
 		}
 		
+		beaconRate.neighborsChanged(addedNeighbors.size() + removedNeighbors.size());
+		
 		if (!addedNeighbors.isEmpty())
 			logger.debug("Peer " + peer.getPeerID() + " has new neighbors: " + addedNeighbors);
 		
 		if (!removedNeighbors.isEmpty())
 			logger.debug("Peer " + peer.getPeerID() + " has lost neighbors: " + removedNeighbors);
 
-		if (!addedNeighbors.isEmpty() || !removedNeighbors.isEmpty())
-			logger.trace("Peer " + peer.getPeerID() + " current neighbors " + getCurrentNeighbors());
+		logger.trace("Peer " + peer.getPeerID() + " current neighbors " + getCurrentNeighbors());
 		
+		// neighbors found again must be removed before being added
+		if (refoundNeighbors) {
+			notifyNeighborsChanged(Collections.<PeerID> emptySet(), removedNeighbors);
+			notifyNeighborsChanged(addedNeighbors, Collections.<PeerID> emptySet());
+		} else
+			notifyNeighborsChanged(addedNeighbors, removedNeighbors);
+	}
+	
+	private void notifyNeighborsChanged(final Set<PeerID> addedNeighbors, final Set<PeerID> removedNeighbors) {
 		for (final NeighborEventsListener listener : neighborNotificationListeners)
 			listener.neighborsChanged(Collections.unmodifiableSet(addedNeighbors), Collections.unmodifiableSet(removedNeighbors));
 	}
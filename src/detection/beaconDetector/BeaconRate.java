@@ -0,0 +1,79 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package detection.beaconDetector;
+
+/**
+ * Computes the beacon period using the observed neighbor churn. Neighbor
+ * changes are accumulated between beacons and averaged using an
+ * exponentially weighted moving average. A stable neighborhood uses the
+ * configured beacon time while a changing one shortens the period down to
+ * the configured minimum so changes are detected faster by the neighbors.
+ * The period never exceeds the configured beacon time because neighbors
+ * expire this node using that value.
+ * 
+ * @author Unai Aguilera (unai.aguilera@gmail.com)
+ * 
+ */
+final class BeaconRate {
+
+	// weight of the last period in the churn average
+	private static final double ALPHA = 0.5;
+
+	private final int beaconTime;
+	private final int minBeaconTime;
+
+	private int pendingChanges = 0;
+	private double churn = 0.0;
+
+	/**
+	 * Constructor of the class
+	 * 
+	 * @param beaconTime
+	 *            the beacon period used when the neighborhood is stable
+	 * @param minBeaconTime
+	 *            the lower bound of the beacon period
+	 */
+	public BeaconRate(final int beaconTime, final int minBeaconTime) {
+		this.beaconTime = beaconTime;
+		this.minBeaconTime = Math.min(minBeaconTime, beaconTime);
+	}
+
+	/**
+	 * Records neighbor changes (appeared or lost neighbors)
+	 * 
+	 * @param changes
+	 *            the number of changed neighbors
+	 */
+	public synchronized void neighborsChanged(final int changes) {
+		pendingChanges += changes;
+	}
+
+	/**
+	 * Gets the period until the next beacon, taking into account the changes
+	 * recorded since the last call
+	 * 
+	 * @return the beacon period in milliseconds
+	 */
+	public synchronized int nextBeaconTime() {
+		churn = (1 - ALPHA) * churn + ALPHA * pendingChanges;
+		pendingChanges = 0;
+		return Math.max(minBeaconTime, (int) (beaconTime / (1.0 + churn)));
+	}
+}
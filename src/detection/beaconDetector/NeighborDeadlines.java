@@ -0,0 +1,150 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package detection.beaconDetector;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import peer.peerid.PeerID;
+
+/**
+ * Keeps the expiration deadline of each neighbor. Deadlines are ordered in a
+ * priority queue so expired neighbors are found without scanning the whole
+ * table. Refreshing a neighbor only updates its deadline in the map; the
+ * queue entry is moved when it reaches the head of the queue, so the queue
+ * always contains one entry per neighbor.
+ * 
+ * The deadline of a contained neighbor can be updated concurrently with any
+ * other method. The rest of the methods must be called holding an external
+ * lock.
+ * 
+ * @author Unai Aguilera (unai.aguilera@gmail.com)
+ * 
+ */
+final class NeighborDeadlines {
+
+	private static class Deadline implements Comparable<Deadline> {
+
+		private final PeerID neighbor;
+		private final long time;
+
+		public Deadline(final PeerID neighbor, final long time) {
+			this.neighbor = neighbor;
+			this.time = time;
+		}
+
+		@Override
+		public int compareTo(final Deadline deadline) {
+			if (time < deadline.time)
+				return -1;
+			if (time > deadline.time)
+				return 1;
+			return 0;
+		}
+	}
+
+	// the current deadline of each neighbor
+	private final ConcurrentMap<PeerID, Long> deadlines = new ConcurrentHashMap<PeerID, Long>();
+
+	private final PriorityQueue<Deadline> queue = new PriorityQueue<Deadline>();
+
+	/**
+	 * Updates the deadline of the passed neighbor if it is contained. It does
+	 * not require the external lock.
+	 * 
+	 * @param neighbor
+	 *            the refreshed neighbor
+	 * @param deadline
+	 *            the time when the neighbor expires
+	 * @return true if the neighbor was contained, false otherwise
+	 */
+	public boolean update(final PeerID neighbor, final long deadline) {
+		return deadlines.replace(neighbor, Long.valueOf(deadline)) != null;
+	}
+
+	/**
+	 * Sets the deadline of the passed neighbor
+	 * 
+	 * @param neighbor
+	 *            the refreshed neighbor
+	 * @param deadline
+	 *            the time when the neighbor expires
+	 * @return true if the neighbor was not previously contained, false
+	 *         otherwise
+	 */
+	public boolean refresh(final PeerID neighbor, final long deadline) {
+		final boolean newNeighbor = deadlines.put(neighbor, Long.valueOf(deadline)) == null;
+		if (newNeighbor)
+			queue.add(new Deadline(neighbor, deadline));
+		return newNeighbor;
+	}
+
+	/**
+	 * Removes those neighbors whose deadline is before or equal to the passed
+	 * time
+	 * 
+	 * @param now
+	 *            the current time
+	 * @return the expired neighbors
+	 */
+	public Set<PeerID> expire(final long now) {
+		final Set<PeerID> expired = new HashSet<PeerID>();
+		while (!queue.isEmpty() && queue.peek().time <= now) {
+			final Deadline head = queue.poll();
+			final Long deadline = deadlines.get(head.neighbor);
+			// the removal fails if the deadline was concurrently updated
+			if (deadline.longValue() <= now && deadlines.remove(head.neighbor, deadline))
+				expired.add(head.neighbor);
+			else
+				// the neighbor was refreshed, reinsert it with its current deadline
+				queue.add(new Deadline(head.neighbor, deadlines.get(head.neighbor).longValue()));
+		}
+		return expired;
+	}
+
+	/**
+	 * Gets the earliest time when some neighbor could expire. The actual
+	 * expiration could happen later if the neighbor was refreshed.
+	 * 
+	 * @return the earliest deadline or Long.MAX_VALUE if there are no
+	 *         neighbors
+	 */
+	public long nextDeadline() {
+		if (queue.isEmpty())
+			return Long.MAX_VALUE;
+		return queue.peek().time;
+	}
+
+	public boolean contains(final PeerID neighbor) {
+		return deadlines.containsKey(neighbor);
+	}
+
+	public Set<PeerID> getNeighbors() {
+		return Collections.unmodifiableSet(deadlines.keySet());
+	}
+
+	public int size() {
+		return deadlines.size();
+	}
+}
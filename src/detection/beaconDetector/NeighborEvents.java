@@ -0,0 +1,104 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package detection.beaconDetector;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import peer.peerid.PeerID;
+
+/**
+ * Records the neighbors found and lost since the last notification. Events
+ * are recorded as they happen instead of comparing two versions of the
+ * neighbors table, so a neighbor which is lost and found again before the
+ * notification is reported both as lost and as new. A neighbor found and
+ * lost again is not reported at all. This class is not thread-safe.
+ * 
+ * @author Unai Aguilera (unai.aguilera@gmail.com)
+ * 
+ */
+final class NeighborEvents {
+
+	private final Set<PeerID> foundNeighbors = new HashSet<PeerID>();
+	private final Set<PeerID> lostNeighbors = new HashSet<PeerID>();
+
+	/**
+	 * Records the appearance of the passed neighbor
+	 * 
+	 * @param neighbor
+	 *            the found neighbor
+	 */
+	public void found(final PeerID neighbor) {
+		foundNeighbors.add(neighbor);
+	}
+
+	/**
+	 * Records the disappearance of the passed neighbor
+	 * 
+	 * @param neighbor
+	 *            the lost neighbor
+	 */
+	public void lost(final PeerID neighbor) {
+		// a neighbor found since the last notification is simply forgotten
+		if (!foundNeighbors.remove(neighbor))
+			lostNeighbors.add(neighbor);
+	}
+
+	public boolean isEmpty() {
+		return foundNeighbors.isEmpty() && lostNeighbors.isEmpty();
+	}
+
+	/**
+	 * Gets the neighbors found since the last call to {@link #clear()}
+	 * 
+	 * @return the found neighbors
+	 */
+	public Set<PeerID> getFoundNeighbors() {
+		return Collections.unmodifiableSet(foundNeighbors);
+	}
+
+	/**
+	 * Gets the neighbors lost since the last call to {@link #clear()}. Some
+	 * of them could have been found again.
+	 * 
+	 * @return the lost neighbors
+	 */
+	public Set<PeerID> getLostNeighbors() {
+		return Collections.unmodifiableSet(lostNeighbors);
+	}
+
+	/**
+	 * Tells if some neighbor was lost and found again
+	 * 
+	 * @return true if some neighbor was found again, false otherwise
+	 */
+	public boolean hasRefoundNeighbors() {
+		for (final PeerID neighbor : foundNeighbors)
+			if (lostNeighbors.contains(neighbor))
+				return true;
+		return false;
+	}
+
+	public void clear() {
+		foundNeighbors.clear();
+		lostNeighbors.clear();
+	}
+}
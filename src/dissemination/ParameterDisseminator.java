@@ -106,14 +106,14 @@ public interface ParameterDisseminator extends XMLSerializable, DisseminationDis
 	/**
 	 * Gets a set of the known parameters by the dissemination layer.
 	 * 
-	 * @return a set containing the known parameters
+	 * @return a copy of the known parameters
 	 */
 	public Set<Parameter> getParameters();
 
 	/**
 	 * Gets a set of the local parameters.
 	 * 
-	 * @return a set containing the local parameters
+	 * @return a copy of the local parameters
 	 */
 	public Set<Parameter> getLocalParameters();
 
@@ -50,8 +50,9 @@ public interface TableChangedListener extends NeighborEventsListener {
 	 *            the set of removed parameters which where local
 	 * @param addedParameters TODO
 	 * @param changedParamaters
-	 *            those parameters whose distance has changed (but not
-	 *            completely removed).
+	 *            those parameters whose distance has changed, including the
+	 *            added and removed ones. Parameters which were not modified
+	 *            are not contained.
 	 * @return the payload will be included in the table message by the
 	 *         dissemination layer
 	 */
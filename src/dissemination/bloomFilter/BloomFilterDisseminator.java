@@ -0,0 +1,721 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package dissemination.bloomFilter;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import peer.RegisterCommunicationLayerException;
+import peer.ReliableBroadcastPeer;
+import peer.ScheduledLayer;
+import peer.SendPriority;
+import peer.message.BroadcastMessage;
+import peer.peerid.PeerID;
+import taxonomy.BasicTaxonomy;
+import taxonomy.ConceptAncestors;
+import taxonomy.Taxonomy;
+import taxonomy.UnmodifiableTaxonomy;
+import taxonomy.parameter.InputParameter;
+import taxonomy.parameter.InvalidParameterIDException;
+import taxonomy.parameter.OutputParameter;
+import taxonomy.parameter.Parameter;
+import taxonomy.parameter.ParameterFactory;
+import util.logger.Logger;
+import config.Configuration;
+import detection.NeighborEventsListener;
+import dissemination.DistanceChange;
+import dissemination.ParameterDisseminator;
+import dissemination.TableChangedListener;
+import dissemination.bloomFilter.filter.AttenuatedBloomFilter;
+import dissemination.bloomFilter.filter.BloomFilter;
+import dissemination.bloomFilter.filter.FilterDelta;
+import dissemination.bloomFilter.message.FilterMessage;
+
+/**
+ * This class implements the dissemination functionality using attenuated
+ * Bloom filters. Each node advertises a filter whose level i contains the
+ * parameters reachable at i hops. Level 0 contains the local parameters and
+ * all their ancestors in the taxonomy, so a parameter is found if it subsumes
+ * some disseminated one. The rest of the levels are obtained from the filters
+ * advertised by the neighbors. Only the changes of the filter are sent and
+ * the full filter is requested from those neighbors whose changes are
+ * received before their whole filter.
+ * 
+ * Filters cannot be enumerated, so each node also announces the parameters
+ * which appear in its advertised filter. Announced parameters are kept while
+ * some neighbor filter contains them and their distances are estimated from
+ * the filters. Therefore, remote parameters are notified to the table changed
+ * listener and returned by getParameters() as the parameter table updater
+ * does. Membership queries can return false positives which are resolved by
+ * the search layer.
+ * 
+ * @author Unai Aguilera (unai.aguilera@gmail.com)
+ * 
+ */
+public class BloomFilterDisseminator implements ScheduledLayer, NeighborEventsListener, ParameterDisseminator {
+
+	// the value of the dissemination.mode property which selects this layer
+	public static final String MODE = "bloomFilter";
+
+	private final static String FILTER_TABLE = "filterTable";
+	private final static String PARAMETER = "parameter";
+	private final static String PARAMETER_ID_ATTRIB = "id";
+	private final static String REMOTE_PARAMETER = "remoteParameter";
+	private final static String FILTER = "filter";
+	private final static String FILTER_NEIGHBOR_ATTRIB = "neighbor";
+	private final static String FILTER_DEPTH_ATTRIB = "depth";
+	private final static String FILTER_SIZE_ATTRIB = "size";
+	private final static String FILTER_HASHES_ATTRIB = "hashes";
+	private final static String LEVEL = "level";
+	private final static String LEVEL_POSITIONS_ATTRIB = "positions";
+
+	// the maximum distance parameters are disseminated
+	private int MAX_DISTANCE = 5; // default value
+
+	private int filterSize = BloomFilter.DEFAULT_SIZE;
+	private int filterHashes = BloomFilter.DEFAULT_HASHES;
+
+	// listeners for upper layers notifications
+	private final TableChangedListener tableChangedListener;
+
+	// the reference to the communication peer
+	private final ReliableBroadcastPeer peer;
+
+	// Used during local parameters addition and removal
+	private final Object mutex = new Object();
+	private final Set<Parameter> addLocalParameters = new HashSet<Parameter>();
+	private final Set<Parameter> removeLocalParameters = new HashSet<Parameter>();
+
+	// the taxonomy used by the dissemination layer
+	private final BasicTaxonomy taxonomy = new BasicTaxonomy();
+	private final Taxonomy unmodifiableTaxonomy = new UnmodifiableTaxonomy(taxonomy);
+
+	private final Set<Parameter> localParameters = new HashSet<Parameter>();
+
+	// used to expand the local parameters with their ancestors
+	private final ConceptAncestors conceptAncestors = new ConceptAncestors(unmodifiableTaxonomy);
+
+	// the filters advertised by each neighbor
+	private final NeighborFilters neighborFilters = new NeighborFilters();
+
+	// the last filter advertised to neighbors
+	private AttenuatedBloomFilter advertisedFilter;
+
+	// the estimated distance of the announced parameters which are reachable
+	private final Map<Parameter, Integer> remoteDistances = new HashMap<Parameter, Integer>();
+
+	// the parameters contained in the advertised filter which were announced
+	private final Set<Parameter> announcedParameters = new HashSet<Parameter>();
+
+	private final Logger logger = Logger.getLogger(BloomFilterDisseminator.class);
+
+	/**
+	 * Constructor of the Bloom filter disseminator.
+	 * 
+	 * @param peer
+	 *            the peer which holds the filters
+	 * @param tableChangedListener
+	 *            listener for local parameter changes
+	 */
+	public BloomFilterDisseminator(final ReliableBroadcastPeer peer, final TableChangedListener tableChangedListener) {
+		this.peer = peer;
+		this.tableChangedListener = tableChangedListener;
+
+		// Register messages
+		final Set<Class<? extends BroadcastMessage>> messageClasses = new HashSet<Class<? extends BroadcastMessage>>();
+		messageClasses.add(FilterMessage.class);
+		try {
+			peer.addCommunicationLayer(this, messageClasses);
+		} catch (final RegisterCommunicationLayerException e) {
+			logger.error("Peer " + peer.getPeerID() + " had problem registering communication layer: " + e.getMessage());
+		}
+	}
+
+	@Override
+	public boolean addLocalParameter(final Parameter parameter) {
+		synchronized (mutex) {
+			// Check if the message was scheduled for removal and is not committed
+			if (removeLocalParameters.contains(parameter)) {
+				removeLocalParameters.remove(parameter);
+				return true;
+			}
+
+			if (!localParameters.contains(parameter)) {
+				addLocalParameters.add(parameter);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean removeLocalParameter(final Parameter parameter) {
+		synchronized (mutex) {
+			// Check if parameter was scheduled for addition and is not committed
+			if (addLocalParameters.contains(parameter)) {
+				addLocalParameters.remove(parameter);
+				return true;
+			}
+
+			if (localParameters.contains(parameter)) {
+				removeLocalParameters.add(parameter);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void commit() {
+		final Set<Parameter> addedParameters = new HashSet<Parameter>();
+		final Set<Parameter> newParameters = new HashSet<Parameter>();
+		final Set<Parameter> removedParameters = new HashSet<Parameter>();
+		final Set<Parameter> removedLocalParameters = new HashSet<Parameter>();
+		final Map<Parameter, DistanceChange> changedParameters = new HashMap<Parameter, DistanceChange>();
+
+		synchronized (mutex) {
+			// local parameters which are also reachable through neighbors
+			// keep their remote distance
+			for (final Parameter p : removeLocalParameters)
+				if (localParameters.remove(p)) {
+					removedLocalParameters.add(p);
+					final int remoteDistance = getRemoteDistance(p);
+					if (remoteDistance == 0)
+						removedParameters.add(p);
+					changedParameters.put(p, new DistanceChange(MAX_DISTANCE, remoteDistance));
+				}
+
+			for (final Parameter p : addLocalParameters)
+				if (localParameters.add(p)) {
+					addedParameters.add(p);
+					final int remoteDistance = getRemoteDistance(p);
+					if (remoteDistance == 0)
+						newParameters.add(p);
+					changedParameters.put(p, new DistanceChange(remoteDistance, MAX_DISTANCE));
+				}
+
+			addLocalParameters.clear();
+			removeLocalParameters.clear();
+		}
+
+		logger.trace("Peer " + peer.getPeerID() + " added new parameters " + addedParameters + " to local filter");
+		logger.trace("Peer " + peer.getPeerID() + " removed parameters " + removedParameters + " from local filter");
+
+		final BroadcastMessage payload = notifyTableChangedListener(peer.getPeerID(), newParameters, removedParameters, removedLocalParameters, changedParameters, addedParameters, Collections.<BroadcastMessage> emptyList());
+
+		sendFilterChanges(payload);
+	}
+
+	@Override
+	public Taxonomy getTaxonomy() {
+		return unmodifiableTaxonomy;
+	}
+
+	@Override
+	public boolean isLocalParameter(final Parameter parameter) {
+		synchronized (mutex) {
+			return localParameters.contains(parameter);
+		}
+	}
+
+	@Override
+	public Set<Parameter> subsumesLocalParameter(final Parameter parameter) {
+		final Set<Parameter> subsumedParameters = new HashSet<Parameter>();
+		synchronized (mutex) {
+			for (final Parameter localParameter : localParameters)
+				if (taxonomy.subsumes(parameter.getID(), localParameter.getID()))
+					subsumedParameters.add(localParameter);
+		}
+		return subsumedParameters;
+	}
+
+	@Override
+	public int getEstimatedDistance(final Parameter parameter) {
+		if (!subsumesLocalParameter(parameter).isEmpty())
+			return MAX_DISTANCE;
+
+		synchronized (mutex) {
+			int estimatedDistance = 0;
+			for (final AttenuatedBloomFilter filter : neighborFilters.getFilters())
+				estimatedDistance = Math.max(estimatedDistance, getDistance(parameter, filter));
+			return estimatedDistance;
+		}
+	}
+
+	@Override
+	public int getDistance(final Parameter p, final PeerID neighbor) {
+		synchronized (mutex) {
+			final AttenuatedBloomFilter filter = neighborFilters.get(neighbor);
+			if (filter == null)
+				return 0;
+			return getDistance(p, filter);
+		}
+	}
+
+	@Override
+	public int getDistanceTo(final Parameter p) {
+		return MAX_DISTANCE - getEstimatedDistance(p);
+	}
+
+	/**
+	 * Returns the local parameters and the announced remote parameters which
+	 * are reachable through the neighbor filters.
+	 */
+	@Override
+	public Set<Parameter> getParameters() {
+		synchronized (mutex) {
+			final Set<Parameter> parameters = new HashSet<Parameter>(localParameters);
+			parameters.addAll(remoteDistances.keySet());
+			return parameters;
+		}
+	}
+
+	@Override
+	public Set<Parameter> getLocalParameters() {
+		synchronized (mutex) {
+			return new HashSet<Parameter>(localParameters);
+		}
+	}
+
+	@Override
+	public int getMaxDistance() {
+		return MAX_DISTANCE;
+	}
+
+	@Override
+	public void setDisseminationTTL(final int disseminationTTL) {
+		MAX_DISTANCE = disseminationTTL;
+		logger.info("Peer " + peer.getPeerID() + " set MAX_DISTANCE to " + MAX_DISTANCE);
+	}
+
+	@Override
+	public void neighborsChanged(final Set<PeerID> newNeighbors, final Set<PeerID> lostNeighbors) {
+		if (!newNeighbors.isEmpty()) {
+			logger.trace("Peer " + peer.getPeerID() + " detected appearance of neighbors: " + newNeighbors);
+
+			synchronized (mutex) {
+				// new neighbors receive the whole filter
+				if (advertisedFilter != null)
+					sendFilterMessage(FilterDelta.full(advertisedFilter), announcedParameters, newNeighbors, null, false);
+			}
+		}
+
+		if (!lostNeighbors.isEmpty()) {
+			logger.trace("Peer " + peer.getPeerID() + " detected dissapearance of neighbors: " + lostNeighbors);
+
+			// as in the parameter table updater, removals caused by lost
+			// neighbors are not notified as table changes
+			synchronized (mutex) {
+				for (final PeerID neighbor : lostNeighbors)
+					neighborFilters.remove(neighbor);
+				updateRemoteDistances(new HashSet<Parameter>(), new HashSet<Parameter>(), new HashMap<Parameter, DistanceChange>());
+			}
+
+			sendFilterChanges(null);
+		}
+
+		tableChangedListener.neighborsChanged(newNeighbors, lostNeighbors);
+	}
+
+	@Override
+	public void init() {
+		try {
+			final String maxDistanceStr = Configuration.getInstance().getProperty("dissemination.maxDistance");
+			final int maxDistance = Integer.parseInt(maxDistanceStr);
+			setDisseminationTTL(maxDistance);
+		} catch (final Exception e) {
+			logger.error("Peer " + peer.getPeerID() + " had problem loading configuration: " + e.getMessage());
+		}
+
+		try {
+			final String filterSizeStr = Configuration.getInstance().getProperty("dissemination.bloomFilterSize");
+			if (filterSizeStr != null)
+				filterSize = Integer.parseInt(filterSizeStr);
+
+			final String filterHashesStr = Configuration.getInstance().getProperty("dissemination.bloomFilterHashes");
+			if (filterHashesStr != null)
+				filterHashes = Integer.parseInt(filterHashesStr);
+		} catch (final Exception e) {
+			logger.error("Peer " + peer.getPeerID() + " had problem loading configuration: " + e.getMessage());
+		}
+
+		try {
+			final String taxonomyFile = Configuration.getInstance().getProperty("dissemination.taxonomyFile");
+
+			if (taxonomyFile != null) {
+				// Load the taxonomy from the configuration file
+				final FileInputStream fis = new FileInputStream(taxonomyFile);
+				taxonomy.readFromXML(fis);
+				fis.close();
+				logger.info("Peer " + peer.getPeerID() + " taxonomy file " + taxonomyFile + " loaded");
+			}
+		} catch (final Exception e) {
+			logger.error("Peer " + peer.getPeerID() + " had problem loading configuration: " + e.getMessage());
+		}
+
+		synchronized (mutex) {
+			advertisedFilter = createFilter();
+		}
+
+		// Sets neighbor listener for this layer using detector layer
+		peer.getDetector().addNeighborListener(this);
+	}
+
+	@Override
+	public void messageReceived(final BroadcastMessage message, final long receptionTime) {
+		if (message instanceof FilterMessage) {
+			final FilterMessage filterMessage = (FilterMessage) message;
+
+			logger.trace("Peer " + peer.getPeerID() + " received filter message " + message);
+			processFilterMessage(filterMessage);
+		}
+	}
+
+	@Override
+	public boolean merge(final List<BroadcastMessage> waitingMessages, final BroadcastMessage sendingMessage) {
+		// only the newest waiting message can be merged without reordering
+		if (waitingMessages.isEmpty())
+			return false;
+		final BroadcastMessage waitingMessage = waitingMessages.get(waitingMessages.size() - 1);
+		return waitingMessage instanceof FilterMessage && merge(waitingMessage, sendingMessage);
+	}
+	
+	@Override
+	public boolean merge(final BroadcastMessage waitingMessage, final BroadcastMessage sendingMessage) {
+		final FilterMessage waitingFilterMessage = (FilterMessage) waitingMessage;
+		final FilterMessage sendingFilterMessage = (FilterMessage) sendingMessage;
+		// deltas are only merged if they are addressed to the same neighbors
+		if (waitingFilterMessage.hasSameDestinations(sendingFilterMessage)) {
+			waitingFilterMessage.merge(sendingFilterMessage);
+			return true;
+		}
+		return false;
+	}
+	
+	@Override
+	public Object getMergeKey(final BroadcastMessage message) {
+		if (message instanceof FilterMessage)
+			return new HashSet<PeerID>(message.getExpectedDestinations());
+		return null;
+	}
+	
+	@Override
+	public SendPriority getSendPriority(final BroadcastMessage message) {
+		return SendPriority.HIGH;
+	}
+	
+	// Known limitation: the queue of this layer is not bounded and its
+	// producers are not throttled. Filter updates cannot be dropped or delayed
+	// without leaving the filters of the neighbors inconsistent, so congestion
+	// is only logged. Updates with the same destinations are merged into the
+	// newest waiting message, which limits the growth of the queue.
+	@Override
+	public void queueCongested(final SendPriority priority, final boolean congested) {
+		logger.debug("Peer " + peer.getPeerID() + " filter queue congested " + congested);
+	}
+
+	@Override
+	public void saveToXML(final OutputStream os) throws IOException {
+		Document doc = null;
+		try {
+			doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		} catch (final ParserConfigurationException pce) {
+			throw new IOException(pce);
+		}
+
+		final Element root = doc.createElement(FILTER_TABLE);
+		doc.appendChild(root);
+
+		synchronized (mutex) {
+			for (final Parameter p : localParameters) {
+				final Element parameter = doc.createElement(PARAMETER);
+				parameter.setAttribute(PARAMETER_ID_ATTRIB, p.pretty(taxonomy));
+				root.appendChild(parameter);
+			}
+
+			for (final Parameter p : neighborFilters.getAnnouncedParameters()) {
+				final Element parameter = doc.createElement(REMOTE_PARAMETER);
+				parameter.setAttribute(PARAMETER_ID_ATTRIB, p.pretty(taxonomy));
+				root.appendChild(parameter);
+			}
+
+			for (final PeerID neighbor : neighborFilters.getNeighbors()) {
+				final AttenuatedBloomFilter neighborFilter = neighborFilters.get(neighbor);
+				final Element filter = doc.createElement(FILTER);
+				filter.setAttribute(FILTER_NEIGHBOR_ATTRIB, neighbor.toString());
+				filter.setAttribute(FILTER_DEPTH_ATTRIB, String.valueOf(neighborFilter.getDepth()));
+				filter.setAttribute(FILTER_SIZE_ATTRIB, String.valueOf(neighborFilter.getSize()));
+				filter.setAttribute(FILTER_HASHES_ATTRIB, String.valueOf(neighborFilter.getHashes()));
+				for (int i = 0; i < neighborFilter.getDepth(); i++) {
+					final Element level = doc.createElement(LEVEL);
+					level.setAttribute(LEVEL_POSITIONS_ATTRIB, getPositions(neighborFilter.getLevel(i)));
+					filter.appendChild(level);
+				}
+				root.appendChild(filter);
+			}
+		}
+
+		Transformer transformer = null;
+		try {
+			transformer = TransformerFactory.newInstance().newTransformer();
+		} catch (final TransformerConfigurationException tce) {
+			throw new IOException(tce);
+		}
+
+		final DOMSource source = new DOMSource(doc);
+		final StreamResult result = new StreamResult(os);
+		try {
+			transformer.transform(source, result);
+		} catch (final TransformerException te) {
+			throw new IOException(te);
+		}
+	}
+
+	@Override
+	public void readFromXML(final InputStream is) throws IOException {
+		DocumentBuilder docBuilder = null;
+		try {
+			docBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+		} catch (final ParserConfigurationException pce) {
+			throw new IOException(pce);
+		}
+
+		Document document = null;
+		try {
+			document = docBuilder.parse(is);
+		} catch (final SAXException e) {
+			throw new IOException(e);
+		}
+
+		synchronized (mutex) {
+			readParameters(document.getElementsByTagName(PARAMETER), localParameters);
+			final Set<Parameter> remoteParameters = new HashSet<Parameter>();
+			readParameters(document.getElementsByTagName(REMOTE_PARAMETER), remoteParameters);
+			neighborFilters.addAnnouncedParameters(remoteParameters);
+
+			final NodeList filters = document.getElementsByTagName(FILTER);
+			for (int i = 0; i < filters.getLength(); i++) {
+				final Element filter = (Element) filters.item(i);
+				final int depth = Integer.parseInt(filter.getAttribute(FILTER_DEPTH_ATTRIB));
+				final int size = Integer.parseInt(filter.getAttribute(FILTER_SIZE_ATTRIB));
+				final int hashes = Integer.parseInt(filter.getAttribute(FILTER_HASHES_ATTRIB));
+				final AttenuatedBloomFilter neighborFilter = new AttenuatedBloomFilter(depth, size, hashes);
+				final NodeList levels = filter.getElementsByTagName(LEVEL);
+				for (int j = 0; j < levels.getLength() && j < depth; j++)
+					setPositions(neighborFilter.getLevel(j), ((Element) levels.item(j)).getAttribute(LEVEL_POSITIONS_ATTRIB));
+				neighborFilters.put(new PeerID(filter.getAttribute(FILTER_NEIGHBOR_ATTRIB)), neighborFilter);
+			}
+
+			updateRemoteDistances(new HashSet<Parameter>(), new HashSet<Parameter>(), new HashMap<Parameter, DistanceChange>());
+		}
+	}
+
+	private void readParameters(final NodeList parameters, final Set<Parameter> readParameters) throws IOException {
+		for (int i = 0; i < parameters.getLength(); i++) {
+			final Element parameter = (Element) parameters.item(i);
+			try {
+				readParameters.add(ParameterFactory.createParameter(parameter.getAttribute(PARAMETER_ID_ATTRIB), taxonomy));
+			} catch (final InvalidParameterIDException ie) {
+				throw new IOException(ie);
+			}
+		}
+	}
+
+	// the set positions of a filter level separated by spaces
+	private static String getPositions(final BloomFilter level) {
+		final StringBuilder strBuilder = new StringBuilder();
+		for (int position = 0; position < level.getSize(); position++)
+			if (level.get(position)) {
+				if (strBuilder.length() > 0)
+					strBuilder.append(' ');
+				strBuilder.append(position);
+			}
+		return strBuilder.toString();
+	}
+
+	private static void setPositions(final BloomFilter level, final String positions) {
+		for (final String position : positions.trim().split("\\s+"))
+			if (!position.isEmpty())
+				level.set(Integer.parseInt(position));
+	}
+
+	@Override
+	public void stop() {
+	}
+
+	private void processFilterMessage(final FilterMessage filterMessage) {
+		final PeerID sender = filterMessage.getSender();
+		final Set<Parameter> newParameters = new HashSet<Parameter>();
+		final Set<Parameter> removedParameters = new HashSet<Parameter>();
+		final Map<Parameter, DistanceChange> changedParameters = new HashMap<Parameter, DistanceChange>();
+		synchronized (mutex) {
+			// full filters are accepted even if the sender was not detected
+			// yet because they are only sent once. Deltas without a previous
+			// filter are discarded and the full filter is requested
+			if (neighborFilters.apply(sender, filterMessage.getFilterDelta())) {
+				logger.trace("Peer " + peer.getPeerID() + " requesting full filter from " + sender);
+				sendFilterMessage(FilterDelta.diff(advertisedFilter, advertisedFilter), Collections.<Parameter> emptySet(), Collections.singleton(sender), null, true);
+			}
+
+			if (filterMessage.isFullFilterRequested())
+				sendFilterMessage(FilterDelta.full(advertisedFilter), announcedParameters, Collections.singleton(sender), null, false);
+
+			neighborFilters.addAnnouncedParameters(filterMessage.getAnnouncedParameters());
+			updateRemoteDistances(newParameters, removedParameters, changedParameters);
+		}
+
+		// the parameters whose distance increased are the table additions
+		final Set<Parameter> tableAdditions = new HashSet<Parameter>();
+		for (final Entry<Parameter, DistanceChange> entry : changedParameters.entrySet())
+			if (entry.getValue().getNewValue() > entry.getValue().getPreviousValue())
+				tableAdditions.add(entry.getKey());
+
+		final BroadcastMessage payload = notifyTableChangedListener(sender, newParameters, removedParameters, new HashSet<Parameter>(), changedParameters, tableAdditions, filterMessage.getPayloadMessages());
+
+		sendFilterChanges(payload);
+	}
+
+	// Sends the changes of the advertised filter to the current neighbors.
+	// Deltas are enqueued holding the mutex so they are sent in the same order
+	// they were computed
+	private void sendFilterChanges(final BroadcastMessage payload) {
+		synchronized (mutex) {
+			final AttenuatedBloomFilter currentFilter = createFilter();
+			final FilterDelta filterDelta = FilterDelta.diff(advertisedFilter, currentFilter);
+			advertisedFilter = currentFilter;
+
+			// the filter contains the local parameters and those remote ones
+			// which are reachable. Only the appeared ones are announced
+			final Set<Parameter> filterParameters = new HashSet<Parameter>(localParameters);
+			filterParameters.addAll(remoteDistances.keySet());
+			final Set<Parameter> appearedParameters = new HashSet<Parameter>(filterParameters);
+			appearedParameters.removeAll(announcedParameters);
+			announcedParameters.retainAll(filterParameters);
+			announcedParameters.addAll(appearedParameters);
+
+			final Set<PeerID> currentNeighbors = peer.getDetector().getCurrentNeighbors();
+			if (!currentNeighbors.isEmpty() && (!filterDelta.isEmpty() || !appearedParameters.isEmpty() || payload != null))
+				sendFilterMessage(filterDelta, appearedParameters, currentNeighbors, payload, false);
+		}
+	}
+
+	private void sendFilterMessage(final FilterDelta filterDelta, final Set<Parameter> parameters, final Set<PeerID> destNeighbors, final BroadcastMessage payload, final boolean fullFilterRequested) {
+		final FilterMessage filterMessage = new FilterMessage(peer.getPeerID(), destNeighbors, filterDelta, parameters, payload, fullFilterRequested);
+		logger.trace("Peer " + peer.getPeerID() + " sending filter message " + filterMessage);
+		peer.enqueueBroadcast(filterMessage, this);
+	}
+
+	// Creates the filter advertised by this node from the local parameters and
+	// the neighbor filters
+	private AttenuatedBloomFilter createFilter() {
+		final AttenuatedBloomFilter filter = new AttenuatedBloomFilter(Math.max(1, MAX_DISTANCE), filterSize, filterHashes);
+
+		for (final Parameter p : localParameters)
+			for (final Short id : conceptAncestors.getConcepts(p.getID()))
+				filter.getLevel(0).add((p instanceof InputParameter) ? new InputParameter(id.shortValue()) : new OutputParameter(id.shortValue()));
+
+		for (final AttenuatedBloomFilter neighborFilter : neighborFilters.getFilters())
+			for (int i = 1; i < filter.getDepth() && i <= neighborFilter.getDepth(); i++)
+				if (neighborFilter.getLevel(i - 1).getSize() == filterSize && neighborFilter.getLevel(i - 1).getHashes() == filterHashes)
+					filter.getLevel(i).or(neighborFilter.getLevel(i - 1));
+
+		return filter;
+	}
+
+	// Recalculates the distance of the announced parameters from the neighbor
+	// filters. The changes of those parameters which are not local are
+	// returned in the passed collections. Must be called holding the mutex
+	private void updateRemoteDistances(final Set<Parameter> newParameters, final Set<Parameter> removedParameters, final Map<Parameter, DistanceChange> changedParameters) {
+		// reachable parameters discarded by the neighbor filters are also
+		// checked to remove them
+		final Set<Parameter> parameters = neighborFilters.getAnnouncedParameters();
+		parameters.addAll(remoteDistances.keySet());
+		for (final Parameter p : parameters) {
+			int distance = 0;
+			for (final AttenuatedBloomFilter filter : neighborFilters.getFilters())
+				distance = Math.max(distance, getDistance(p, filter));
+
+			final int previousDistance = getRemoteDistance(p);
+			if (distance != previousDistance) {
+				if (distance == 0)
+					remoteDistances.remove(p);
+				else
+					remoteDistances.put(p, Integer.valueOf(distance));
+
+				if (!localParameters.contains(p)) {
+					if (previousDistance == 0)
+						newParameters.add(p);
+					else if (distance == 0)
+						removedParameters.add(p);
+					changedParameters.put(p, new DistanceChange(previousDistance, distance));
+				}
+			}
+		}
+	}
+
+	// the distance of a parameter through the neighbors, 0 if it is not
+	// reachable
+	private int getRemoteDistance(final Parameter p) {
+		final Integer distance = remoteDistances.get(p);
+		return (distance == null) ? 0 : distance.intValue();
+	}
+
+	// the dissemination value of a parameter found at level i of a neighbor
+	// filter
+	private int getDistance(final Parameter p, final AttenuatedBloomFilter filter) {
+		final int level = filter.getFirstLevel(p);
+		if (level < 0)
+			return 0;
+		return Math.max(0, MAX_DISTANCE - (level + 1));
+	}
+
+	// Notifies the table changed listener
+	private BroadcastMessage notifyTableChangedListener(final PeerID neighbor, final Set<Parameter> newParameters, final Set<Parameter> removedParameters, final Set<Parameter> removedLocalParameters,
+			final Map<Parameter, DistanceChange> changedParameters, final Set<Parameter> tableAdditions, final List<BroadcastMessage> payloadMessages) {
+		if (tableChangedListener != null)
+			return tableChangedListener.parametersChanged(neighbor, newParameters, removedParameters, removedLocalParameters, changedParameters, tableAdditions, payloadMessages);
+
+		return null;
+	}
+}
@@ -0,0 +1,126 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package dissemination.bloomFilter;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import peer.peerid.PeerID;
+import taxonomy.parameter.Parameter;
+import dissemination.bloomFilter.filter.AttenuatedBloomFilter;
+import dissemination.bloomFilter.filter.FilterDelta;
+
+/**
+ * The filters advertised by the neighbors of a node, rebuilt from the
+ * received deltas. A full delta is accepted from any sender because a node
+ * can be detected by its neighbor before it detects it. The rest of the
+ * deltas are only applied over a previously received filter, otherwise a
+ * full filter must be requested from the sender.
+ * 
+ * It also keeps the parameters announced by the neighbors while some of their
+ * filters contains them.
+ * 
+ * @author Unai Aguilera (unai.aguilera@gmail.com)
+ * 
+ */
+class NeighborFilters {
+
+	private final Map<PeerID, AttenuatedBloomFilter> filters = new HashMap<PeerID, AttenuatedBloomFilter>();
+
+	// the neighbors whose full filter was requested and not received yet
+	private final Set<PeerID> requestedFilters = new HashSet<PeerID>();
+
+	// the parameters announced by the neighbors
+	private final Set<Parameter> announcedParameters = new HashSet<Parameter>();
+
+	/**
+	 * Applies the delta received from the passed neighbor
+	 * 
+	 * @param sender
+	 *            the neighbor which sent the delta
+	 * @param filterDelta
+	 *            the received delta
+	 * @return true if the delta was discarded because there is no base filter
+	 *         for the sender and its full filter must be requested, false
+	 *         otherwise
+	 */
+	public boolean apply(final PeerID sender, final FilterDelta filterDelta) {
+		final AttenuatedBloomFilter base = filters.get(sender);
+		if (filterDelta.appliesTo(base)) {
+			filters.put(sender, filterDelta.apply(base));
+			if (filterDelta.isFull())
+				requestedFilters.remove(sender);
+			return false;
+		}
+
+		// only one request is sent until the full filter is received
+		return requestedFilters.add(sender);
+	}
+
+	public AttenuatedBloomFilter get(final PeerID neighbor) {
+		return filters.get(neighbor);
+	}
+
+	public Set<PeerID> getNeighbors() {
+		return filters.keySet();
+	}
+
+	public Collection<AttenuatedBloomFilter> getFilters() {
+		return filters.values();
+	}
+
+	public void put(final PeerID neighbor, final AttenuatedBloomFilter filter) {
+		filters.put(neighbor, filter);
+	}
+
+	public void remove(final PeerID neighbor) {
+		filters.remove(neighbor);
+		requestedFilters.remove(neighbor);
+	}
+
+	public void addAnnouncedParameters(final Set<Parameter> parameters) {
+		announcedParameters.addAll(parameters);
+	}
+
+	/**
+	 * Gets the announced parameters which are contained in some filter. The
+	 * rest of them are discarded because their neighbors announce them again
+	 * when they reappear.
+	 * 
+	 * @return the announced parameters which are still contained
+	 */
+	public Set<Parameter> getAnnouncedParameters() {
+		for (final Iterator<Parameter> it = announcedParameters.iterator(); it.hasNext(); )
+			if (!isContained(it.next()))
+				it.remove();
+		return new HashSet<Parameter>(announcedParameters);
+	}
+
+	private boolean isContained(final Parameter p) {
+		for (final AttenuatedBloomFilter filter : filters.values())
+			if (filter.getFirstLevel(p) >= 0)
+				return true;
+		return false;
+	}
+}
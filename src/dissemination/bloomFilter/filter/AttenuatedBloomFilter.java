@@ -0,0 +1,109 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package dissemination.bloomFilter.filter;
+
+import java.util.Arrays;
+
+import taxonomy.parameter.Parameter;
+
+/**
+ * An attenuated Bloom filter. Level i contains the parameters which are
+ * reachable at i hops from the node which advertises the filter.
+ * 
+ * @author Unai Aguilera (unai.aguilera@gmail.com)
+ * 
+ */
+public class AttenuatedBloomFilter {
+
+	private final BloomFilter[] levels;
+
+	public AttenuatedBloomFilter(final int depth, final int size, final int hashes) {
+		levels = new BloomFilter[depth];
+		for (int i = 0; i < depth; i++)
+			levels[i] = new BloomFilter(size, hashes);
+	}
+
+	public AttenuatedBloomFilter(final AttenuatedBloomFilter filter) {
+		levels = new BloomFilter[filter.levels.length];
+		for (int i = 0; i < levels.length; i++)
+			levels[i] = new BloomFilter(filter.levels[i]);
+	}
+
+	public int getDepth() {
+		return levels.length;
+	}
+
+	public int getSize() {
+		return levels[0].getSize();
+	}
+
+	public int getHashes() {
+		return levels[0].getHashes();
+	}
+
+	public BloomFilter getLevel(final int level) {
+		return levels[level];
+	}
+
+	/**
+	 * Gets the first level which contains the passed parameter
+	 * 
+	 * @param p
+	 *            the parameter to search for
+	 * @return the first level containing the parameter or -1 if no level
+	 *         contains it
+	 */
+	public int getFirstLevel(final Parameter p) {
+		for (int i = 0; i < levels.length; i++)
+			if (levels[i].contains(p))
+				return i;
+		return -1;
+	}
+
+	public boolean isEmpty() {
+		for (final BloomFilter level : levels)
+			if (!level.isEmpty())
+				return false;
+		return true;
+	}
+
+	boolean hasSameShape(final AttenuatedBloomFilter filter) {
+		return levels.length == filter.levels.length && levels[0].hasSameShape(filter.levels[0]);
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (!(o instanceof AttenuatedBloomFilter))
+			return false;
+
+		final AttenuatedBloomFilter filter = (AttenuatedBloomFilter) o;
+		return Arrays.equals(levels, filter.levels);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(levels);
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(levels);
+	}
+}
@@ -0,0 +1,184 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package dissemination.bloomFilter.filter;
+
+import java.util.Arrays;
+
+import taxonomy.parameter.InputParameter;
+import taxonomy.parameter.Parameter;
+
+/**
+ * A fixed size Bloom filter of parameters. Input and output parameters with
+ * the same identifier are hashed to different keys.
+ * 
+ * @author Unai Aguilera (unai.aguilera@gmail.com)
+ * 
+ */
+public class BloomFilter {
+
+	public static final int DEFAULT_SIZE = 1024;
+	public static final int DEFAULT_HASHES = 3;
+
+	// positions are encoded as unsigned shorts in filter messages
+	public static final int MAX_SIZE = 65536;
+
+	private final int size;
+	private final int hashes;
+	private final long[] words;
+
+	/**
+	 * Creates an empty filter
+	 * 
+	 * @param size
+	 *            the number of bits of the filter, a multiple of 64
+	 * @param hashes
+	 *            the number of hash functions used for each parameter
+	 */
+	public BloomFilter(final int size, final int hashes) {
+		if (size <= 0 || size > MAX_SIZE || size % 64 != 0)
+			throw new IllegalArgumentException("Bloom filter size must be a multiple of 64 between 64 and " + MAX_SIZE + ". " + size + " received");
+		if (hashes <= 0)
+			throw new IllegalArgumentException("Bloom filter must use at least one hash function");
+		this.size = size;
+		this.hashes = hashes;
+		this.words = new long[size / 64];
+	}
+
+	public BloomFilter(final BloomFilter bloomFilter) {
+		this.size = bloomFilter.size;
+		this.hashes = bloomFilter.hashes;
+		this.words = Arrays.copyOf(bloomFilter.words, bloomFilter.words.length);
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public int getHashes() {
+		return hashes;
+	}
+
+	public void add(final Parameter p) {
+		final int key = getKey(p);
+		for (int i = 0; i < hashes; i++)
+			set(getPosition(key, i));
+	}
+
+	public boolean contains(final Parameter p) {
+		final int key = getKey(p);
+		for (int i = 0; i < hashes; i++)
+			if (!get(getPosition(key, i)))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Adds all the elements of the passed filter to this one
+	 * 
+	 * @param bloomFilter
+	 *            a filter with the same size and hash functions
+	 */
+	public void or(final BloomFilter bloomFilter) {
+		for (int i = 0; i < words.length; i++)
+			words[i] |= bloomFilter.words[i];
+	}
+
+	public boolean isEmpty() {
+		for (final long word : words)
+			if (word != 0)
+				return false;
+		return true;
+	}
+
+	public int cardinality() {
+		int cardinality = 0;
+		for (final long word : words)
+			cardinality += Long.bitCount(word);
+		return cardinality;
+	}
+
+	public boolean get(final int position) {
+		return (words[position >>> 6] & (1L << position)) != 0;
+	}
+
+	public void set(final int position) {
+		words[position >>> 6] |= 1L << position;
+	}
+
+	public void clear(final int position) {
+		words[position >>> 6] &= ~(1L << position);
+	}
+
+	long getWord(final int index) {
+		return words[index];
+	}
+
+	void setWord(final int index, final long word) {
+		words[index] = word;
+	}
+
+	int getWords() {
+		return words.length;
+	}
+
+	boolean hasSameShape(final BloomFilter bloomFilter) {
+		return size == bloomFilter.size && hashes == bloomFilter.hashes;
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (!(o instanceof BloomFilter))
+			return false;
+
+		final BloomFilter bloomFilter = (BloomFilter) o;
+		return hasSameShape(bloomFilter) && Arrays.equals(words, bloomFilter.words);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(words);
+	}
+
+	@Override
+	public String toString() {
+		return "[" + cardinality() + "/" + size + "]";
+	}
+
+	private static int getKey(final Parameter p) {
+		final int type = (p instanceof InputParameter) ? Parameter.INPUT_PARAMETER : Parameter.OUTPUT_PARAMETER;
+		return (type << 16) | (p.getID() & 0xFFFF);
+	}
+
+	// double hashing over a mixed key
+	private int getPosition(final int key, final int i) {
+		final int h1 = mix(key);
+		final int h2 = mix(h1 ^ 0x9E3779B9) | 1;
+		return ((h1 + i * h2) & Integer.MAX_VALUE) % size;
+	}
+
+	private static int mix(int h) {
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		h *= 0xC2B2AE35;
+		h ^= h >>> 16;
+		return h;
+	}
+}
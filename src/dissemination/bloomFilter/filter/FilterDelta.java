@@ -0,0 +1,357 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package dissemination.bloomFilter.filter;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+import serialization.binary.BSerializable;
+
+/**
+ * The changes between two versions of an attenuated Bloom filter. Each level
+ * is encoded either as the list of set and cleared positions or as the whole
+ * level bitmap, depending on which one is smaller. Applying the same delta
+ * twice has no further effect.
+ * 
+ * A full delta contains the complete filter and replaces any previous state
+ * of the receiver.
+ * 
+ * @author Unai Aguilera (unai.aguilera@gmail.com)
+ * 
+ */
+public class FilterDelta implements BSerializable {
+
+	private static final byte UNCHANGED = 0x00;
+	private static final byte POSITIONS = 0x01;
+	private static final byte BITMAP = 0x02;
+
+	private static final int[] NO_POSITIONS = new int[0];
+
+	private static class LevelDelta {
+
+		private int[] set = NO_POSITIONS;
+		private int[] cleared = NO_POSITIONS;
+
+		// if not null the level is replaced by this bitmap
+		private long[] bitmap;
+
+		public boolean isUnchanged() {
+			return bitmap == null && set.length == 0 && cleared.length == 0;
+		}
+	}
+
+	private boolean full;
+	private int size;
+	private int hashes;
+	private LevelDelta[] levels;
+
+	public FilterDelta() {
+	}
+
+	private FilterDelta(final boolean full, final AttenuatedBloomFilter filter) {
+		this.full = full;
+		this.size = filter.getSize();
+		this.hashes = filter.getHashes();
+		this.levels = new LevelDelta[filter.getDepth()];
+	}
+
+	/**
+	 * Creates a delta containing the whole passed filter
+	 * 
+	 * @param filter
+	 *            the filter to encode
+	 * @return a full delta
+	 */
+	public static FilterDelta full(final AttenuatedBloomFilter filter) {
+		return diff(new AttenuatedBloomFilter(filter.getDepth(), filter.getSize(), filter.getHashes()), filter, true);
+	}
+
+	/**
+	 * Creates the delta which transforms the previous filter into the current
+	 * one. If both filters have a different shape a full delta is returned.
+	 * 
+	 * @param previous
+	 *            the previous version of the filter, it can be null
+	 * @param current
+	 *            the current version of the filter
+	 * @return the delta between both filters
+	 */
+	public static FilterDelta diff(final AttenuatedBloomFilter previous, final AttenuatedBloomFilter current) {
+		if (previous == null || !previous.hasSameShape(current))
+			return full(current);
+		return diff(previous, current, false);
+	}
+
+	private static FilterDelta diff(final AttenuatedBloomFilter previous, final AttenuatedBloomFilter current, final boolean full) {
+		final FilterDelta delta = new FilterDelta(full, current);
+		for (int i = 0; i < delta.levels.length; i++)
+			delta.levels[i] = diff(previous.getLevel(i), current.getLevel(i));
+		return delta;
+	}
+
+	private static LevelDelta diff(final BloomFilter previous, final BloomFilter current) {
+		int setCount = 0;
+		int clearedCount = 0;
+		for (int w = 0; w < current.getWords(); w++) {
+			final long changed = previous.getWord(w) ^ current.getWord(w);
+			setCount += Long.bitCount(changed & current.getWord(w));
+			clearedCount += Long.bitCount(changed & previous.getWord(w));
+		}
+
+		final LevelDelta levelDelta = new LevelDelta();
+		if (setCount + clearedCount == 0)
+			return levelDelta;
+
+		// each position takes two bytes while the bitmap takes one bit per
+		// position
+		if (2 * (setCount + clearedCount) >= current.getSize() / 8) {
+			levelDelta.bitmap = new long[current.getWords()];
+			for (int w = 0; w < current.getWords(); w++)
+				levelDelta.bitmap[w] = current.getWord(w);
+			return levelDelta;
+		}
+
+		levelDelta.set = new int[setCount];
+		levelDelta.cleared = new int[clearedCount];
+		int s = 0;
+		int c = 0;
+		for (int w = 0; w < current.getWords(); w++) {
+			long changed = previous.getWord(w) ^ current.getWord(w);
+			while (changed != 0) {
+				final int bit = Long.numberOfTrailingZeros(changed);
+				final int position = (w << 6) + bit;
+				if ((current.getWord(w) & (1L << bit)) != 0)
+					levelDelta.set[s++] = position;
+				else
+					levelDelta.cleared[c++] = position;
+				changed &= changed - 1;
+			}
+		}
+		return levelDelta;
+	}
+
+	public boolean isFull() {
+		return full;
+	}
+
+	/**
+	 * Tells if this delta does not change the filter it is applied to
+	 * 
+	 * @return true if the delta is empty, false otherwise
+	 */
+	public boolean isEmpty() {
+		if (full)
+			return false;
+		for (final LevelDelta levelDelta : levels)
+			if (!levelDelta.isUnchanged())
+				return false;
+		return true;
+	}
+
+	/**
+	 * Tells if this delta can be applied to the passed filter. Full deltas
+	 * can be applied to any filter while the rest of them require a base
+	 * filter with the same shape.
+	 * 
+	 * @param base
+	 *            the filter the delta would be applied to. It can be null.
+	 * @return true if the delta can be applied, false otherwise
+	 */
+	public boolean appliesTo(final AttenuatedBloomFilter base) {
+		return full || (base != null && base.getDepth() == levels.length && base.getSize() == size && base.getHashes() == hashes);
+	}
+
+	/**
+	 * Applies this delta to the passed filter
+	 * 
+	 * @param base
+	 *            the filter the delta is applied to. It is not modified. It
+	 *            can be null.
+	 * @return a new filter containing the result
+	 */
+	public AttenuatedBloomFilter apply(final AttenuatedBloomFilter base) {
+		final AttenuatedBloomFilter result;
+		if (full || !appliesTo(base))
+			result = new AttenuatedBloomFilter(levels.length, size, hashes);
+		else
+			result = new AttenuatedBloomFilter(base);
+
+		for (int i = 0; i < levels.length; i++) {
+			final LevelDelta levelDelta = levels[i];
+			final BloomFilter level = result.getLevel(i);
+			if (levelDelta.bitmap != null)
+				for (int w = 0; w < levelDelta.bitmap.length; w++)
+					level.setWord(w, levelDelta.bitmap[w]);
+			else {
+				for (final int position : levelDelta.set)
+					level.set(position);
+				for (final int position : levelDelta.cleared)
+					level.clear(position);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Merges a later delta into this one. The result is equivalent to applying
+	 * this delta and then the passed one.
+	 * 
+	 * @param later
+	 *            the delta which is applied after this one
+	 */
+	public void merge(final FilterDelta later) {
+		if (later.full || later.levels.length != levels.length || later.size != size || later.hashes != hashes) {
+			full = full || later.full;
+			size = later.size;
+			hashes = later.hashes;
+			levels = later.levels;
+			return;
+		}
+
+		for (int i = 0; i < levels.length; i++)
+			levels[i] = merge(levels[i], later.levels[i]);
+	}
+
+	private LevelDelta merge(final LevelDelta previous, final LevelDelta later) {
+		if (later.isUnchanged())
+			return previous;
+		if (later.bitmap != null || previous.isUnchanged())
+			return later;
+
+		final LevelDelta merged = new LevelDelta();
+		if (previous.bitmap != null) {
+			merged.bitmap = Arrays.copyOf(previous.bitmap, previous.bitmap.length);
+			for (final int position : later.set)
+				merged.bitmap[position >>> 6] |= 1L << position;
+			for (final int position : later.cleared)
+				merged.bitmap[position >>> 6] &= ~(1L << position);
+			return merged;
+		}
+
+		merged.set = union(remove(previous.set, later.cleared), later.set);
+		merged.cleared = union(remove(previous.cleared, later.set), later.cleared);
+		return merged;
+	}
+
+	// positions are kept sorted
+	private static int[] remove(final int[] positions, final int[] removed) {
+		final int[] result = new int[positions.length];
+		int size = 0;
+		for (final int position : positions)
+			if (Arrays.binarySearch(removed, position) < 0)
+				result[size++] = position;
+		return Arrays.copyOf(result, size);
+	}
+
+	private static int[] union(final int[] a, final int[] b) {
+		final int[] result = new int[a.length + b.length];
+		int i = 0, j = 0, size = 0;
+		while (i < a.length || j < b.length) {
+			if (j == b.length || (i < a.length && a[i] < b[j]))
+				result[size++] = a[i++];
+			else if (i == a.length || b[j] < a[i])
+				result[size++] = b[j++];
+			else {
+				result[size++] = a[i++];
+				j++;
+			}
+		}
+		return Arrays.copyOf(result, size);
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder strBuilder = new StringBuilder();
+		strBuilder.append(full ? "full" : "delta");
+		for (final LevelDelta levelDelta : levels) {
+			if (levelDelta.bitmap != null)
+				strBuilder.append(" B");
+			else
+				strBuilder.append(" +" + levelDelta.set.length + "/-" + levelDelta.cleared.length);
+		}
+		return strBuilder.toString();
+	}
+
+	@Override
+	public void read(final ObjectInputStream in) throws IOException {
+		full = in.readBoolean();
+		size = in.readInt();
+		checkSize(size);
+		hashes = in.readByte();
+		levels = new LevelDelta[in.readByte()];
+		for (int i = 0; i < levels.length; i++) {
+			final LevelDelta levelDelta = new LevelDelta();
+			final byte mode = in.readByte();
+			if (mode == BITMAP) {
+				levelDelta.bitmap = new long[(size + 63) / 64];
+				for (int w = 0; w < levelDelta.bitmap.length; w++)
+					levelDelta.bitmap[w] = in.readLong();
+			} else if (mode == POSITIONS) {
+				levelDelta.set = readPositions(in);
+				levelDelta.cleared = readPositions(in);
+			}
+			levels[i] = levelDelta;
+		}
+	}
+
+	@Override
+	public void write(final ObjectOutputStream out) throws IOException {
+		checkSize(size);
+		out.writeBoolean(full);
+		out.writeInt(size);
+		out.writeByte(hashes);
+		out.writeByte(levels.length);
+		for (final LevelDelta levelDelta : levels) {
+			if (levelDelta.bitmap != null) {
+				out.writeByte(BITMAP);
+				for (final long word : levelDelta.bitmap)
+					out.writeLong(word);
+			} else if (levelDelta.isUnchanged())
+				out.writeByte(UNCHANGED);
+			else {
+				out.writeByte(POSITIONS);
+				writePositions(levelDelta.set, out);
+				writePositions(levelDelta.cleared, out);
+			}
+		}
+	}
+
+	// positions are written as unsigned shorts, which is only valid while
+	// filters do not exceed BloomFilter.MAX_SIZE bits
+	private static void checkSize(final int size) throws IOException {
+		if (size <= 0 || size > BloomFilter.MAX_SIZE)
+			throw new IOException("Invalid filter size " + size + ", it must be between 1 and " + BloomFilter.MAX_SIZE);
+	}
+
+	private static int[] readPositions(final ObjectInputStream in) throws IOException {
+		final int[] positions = new int[in.readUnsignedShort()];
+		for (int i = 0; i < positions.length; i++)
+			positions[i] = in.readUnsignedShort();
+		return positions;
+	}
+
+	private static void writePositions(final int[] positions, final ObjectOutputStream out) throws IOException {
+		out.writeShort(positions.length);
+		for (final int position : positions)
+			out.writeShort(position);
+	}
+}
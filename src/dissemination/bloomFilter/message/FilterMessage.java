@@ -0,0 +1,208 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package dissemination.bloomFilter.message;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import peer.message.BigEnvelopeMessage;
+import peer.message.BroadcastMessage;
+import peer.message.MessageTypes;
+import peer.message.UnsupportedTypeException;
+import peer.peerid.PeerID;
+import serialization.binary.SerializationUtils;
+import taxonomy.parameter.Parameter;
+import dissemination.bloomFilter.filter.FilterDelta;
+
+/**
+ * A broadcast message which contains the changes of the attenuated Bloom
+ * filter advertised by its sender. Filters cannot be enumerated, so the
+ * parameters which appeared in the filter are also announced. It can also
+ * contain other broadcast messages as payload.
+ * 
+ * @author Unai Aguilera (unai.aguilera@gmail.com)
+ * 
+ */
+public class FilterMessage extends BroadcastMessage implements BigEnvelopeMessage {
+
+	private final FilterDelta filterDelta;
+
+	// tells if the receivers must answer with their full filter
+	private boolean fullFilterRequested;
+
+	// the parameters which appeared in the sender filter
+	private final Set<Parameter> announcedParameters = new HashSet<Parameter>();
+
+	// the message contained as payload
+	private final List<BroadcastMessage> payloadMessages = new ArrayList<BroadcastMessage>();
+
+	public FilterMessage() {
+		super(MessageTypes.FILTER_MESSAGE);
+		filterDelta = new FilterDelta();
+	}
+
+	/**
+	 * Constructor of the filter message
+	 * 
+	 * @param sender
+	 *            the sender of the message
+	 * @param expectedDestinations
+	 *            the neighbors which must receive the message
+	 * @param filterDelta
+	 *            the changes of the sender filter
+	 * @param payload
+	 *            the message payload
+	 */
+	public FilterMessage(final PeerID sender, final Set<PeerID> expectedDestinations, final FilterDelta filterDelta, final BroadcastMessage payload) {
+		this(sender, expectedDestinations, filterDelta, payload, false);
+	}
+
+	/**
+	 * Constructor of the filter message
+	 * 
+	 * @param sender
+	 *            the sender of the message
+	 * @param expectedDestinations
+	 *            the neighbors which must receive the message
+	 * @param filterDelta
+	 *            the changes of the sender filter
+	 * @param payload
+	 *            the message payload
+	 * @param fullFilterRequested
+	 *            true if the receivers must answer with their full filter
+	 */
+	public FilterMessage(final PeerID sender, final Set<PeerID> expectedDestinations, final FilterDelta filterDelta, final BroadcastMessage payload, final boolean fullFilterRequested) {
+		this(sender, expectedDestinations, filterDelta, Collections.<Parameter> emptySet(), payload, fullFilterRequested);
+	}
+
+	/**
+	 * Constructor of the filter message
+	 * 
+	 * @param sender
+	 *            the sender of the message
+	 * @param expectedDestinations
+	 *            the neighbors which must receive the message
+	 * @param filterDelta
+	 *            the changes of the sender filter
+	 * @param announcedParameters
+	 *            the parameters which appeared in the sender filter
+	 * @param payload
+	 *            the message payload
+	 * @param fullFilterRequested
+	 *            true if the receivers must answer with their full filter
+	 */
+	public FilterMessage(final PeerID sender, final Set<PeerID> expectedDestinations, final FilterDelta filterDelta, final Set<Parameter> announcedParameters, final BroadcastMessage payload, final boolean fullFilterRequested) {
+		super(MessageTypes.FILTER_MESSAGE, sender, expectedDestinations);
+		this.filterDelta = filterDelta;
+		this.announcedParameters.addAll(announcedParameters);
+		this.fullFilterRequested = fullFilterRequested;
+		if (payload != null)
+			this.payloadMessages.add(payload);
+	}
+
+	public FilterDelta getFilterDelta() {
+		return filterDelta;
+	}
+
+	public Set<Parameter> getAnnouncedParameters() {
+		return announcedParameters;
+	}
+
+	public boolean isFullFilterRequested() {
+		return fullFilterRequested;
+	}
+
+	@Override
+	public List<BroadcastMessage> getPayloadMessages() {
+		return payloadMessages;
+	}
+
+	@Override
+	public boolean hasPayload() {
+		return !payloadMessages.isEmpty();
+	}
+
+	/**
+	 * Checks if the passed message is addressed to the same set of neighbors
+	 * than this one.
+	 * 
+	 * @param broadcastMessage
+	 *            the message to compare with
+	 * @return true if both messages have the same expected destinations, false
+	 *         otherwise
+	 */
+	public boolean hasSameDestinations(final BroadcastMessage broadcastMessage) {
+		return expectedDestinations.equals(broadcastMessage.getExpectedDestinations());
+	}
+
+	public void merge(final FilterMessage filterMessage) {
+		filterDelta.merge(filterMessage.filterDelta);
+		// announcements are hints for the receivers, which check them against
+		// the filter, so they are joined
+		announcedParameters.addAll(filterMessage.announcedParameters);
+		fullFilterRequested = fullFilterRequested || filterMessage.fullFilterRequested;
+		payloadMessages.addAll(filterMessage.payloadMessages);
+	}
+
+	@Override
+	public String toString() {
+		return super.toString() + " " + getType() + " " + filterDelta.toString() + (fullFilterRequested ? " request" : "");
+	}
+
+	@Override
+	public void read(ObjectInputStream in) throws IOException {
+		super.read(in);
+		filterDelta.read(in);
+		fullFilterRequested = in.readBoolean();
+
+		try {
+			final int nParameters = in.readUnsignedShort();
+			for (int i = 0; i < nParameters; i++)
+				announcedParameters.add(Parameter.readParameter(in));
+
+			final byte nMessages = in.readByte();
+			for (int i = 0; i < nMessages; i++) {
+				final BroadcastMessage message = MessageTypes.readBroadcastMessage(in);
+				payloadMessages.add(message);
+			}
+		} catch (UnsupportedTypeException e) {
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public void write(ObjectOutputStream out) throws IOException {
+		super.write(out);
+
+		filterDelta.write(out);
+		out.writeBoolean(fullFilterRequested);
+		// full filters announce all their parameters, which can exceed a byte
+		out.writeShort(announcedParameters.size());
+		for (final Parameter p : announcedParameters)
+			p.write(out);
+		SerializationUtils.writeCollection(payloadMessages, out);
+	}
+}
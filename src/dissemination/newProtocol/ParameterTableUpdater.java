@@ -24,15 +24,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import peer.CommunicationLayer;
 import peer.RegisterCommunicationLayerException;
 import peer.ReliableBroadcastPeer;
+import peer.ScheduledLayer;
+import peer.SendPriority;
 import peer.message.BroadcastMessage;
 import peer.peerid.PeerID;
 import taxonomy.BasicTaxonomy;
@@ -48,6 +48,8 @@ import dissemination.TableChangedListener;
 import dissemination.newProtocol.message.TableMessage;
 import dissemination.newProtocol.ptable.ParameterTable;
 import dissemination.newProtocol.ptable.ParameterTable.UpdateResult;
+import dissemination.newProtocol.ptable.ParameterTableSnapshot;
+import dissemination.newProtocol.ptable.TableChanges;
 import dissemination.newProtocol.ptable.UpdateTable;
 
 /**
@@ -58,7 +60,7 @@ import dissemination.newProtocol.ptable.UpdateTable;
  * @author Unai Aguilera (unai.aguilera@gmail.com)
  * 
  */
-public class ParameterTableUpdater implements CommunicationLayer, NeighborEventsListener, ParameterDisseminator {
+public class ParameterTableUpdater implements ScheduledLayer, NeighborEventsListener, ParameterDisseminator {
 
 	// the maximum distance parameters are disseminated
 	private int MAX_DISTANCE = 5; // default value
@@ -81,6 +83,10 @@ public class ParameterTableUpdater implements CommunicationLayer, NeighborEvents
 	// the local parameter table of this node
 	private ParameterTable pTable;
 
+	// the last published snapshot of the table. Queries are answered using it
+	// without taking the mutex used by the table updates
+	private volatile ParameterTableSnapshot snapshot;
+
 	private final Logger logger = Logger.getLogger(ParameterTableUpdater.class);
 
 	/**
@@ -176,17 +182,10 @@ public class ParameterTableUpdater implements CommunicationLayer, NeighborEvents
 		final UpdateTable finalUpdateTable = new UpdateTable();
 				
 		final Set<Parameter> addedParameters = new HashSet<Parameter>();
-		final Set<Parameter> newParameters = new HashSet<Parameter>();
-		final Set<Parameter> removedParameters = new HashSet<Parameter>();
-		
-		final Set<Parameter> parametersBeforeUpdate = pTable.getParameters();
 		
-		final Map<Parameter, DistanceChange> changedParameters = new HashMap<Parameter, DistanceChange>();
+		final TableChanges changes;
 		
 		synchronized (mutex) {			
-			for (final Parameter parameter : pTable.getParameters())
-				changedParameters.put(parameter, new DistanceChange(pTable.getEstimatedDistance(parameter), 0));
-				
 			if (!addLocalParameters.isEmpty()) {
 				final UpdateTable updateTable = pTable.addLocalParameters(addLocalParameters);
 				finalUpdateTable.add(updateTable);
@@ -203,14 +202,15 @@ public class ParameterTableUpdater implements CommunicationLayer, NeighborEvents
 			addLocalParameters.clear();
 			removeLocalParameters.clear();
 			
-			checkParameters(newParameters, removedParameters, changedParameters, parametersBeforeUpdate);
+			changes = pTable.takeChanges();
+			snapshot = pTable.publishSnapshot();
 		}
 		
-		logger.trace("Peer " + peer.getPeerID() + " added new parameters " + newParameters + " to local table");
-		logger.trace("Peer " + peer.getPeerID() + " removed parameters " + removedParameters + " from local table");
+		logger.trace("Peer " + peer.getPeerID() + " added new parameters " + changes.getNewParameters() + " to local table");
+		logger.trace("Peer " + peer.getPeerID() + " removed parameters " + changes.getRemovedParameters() + " from local table");
 
 		// Notify added and removed parameters
-		final BroadcastMessage payload = notifyTableChangedListener(peer.getPeerID(), addedParameters, removedParameters, removedParameters, changedParameters, addedParameters, Collections.<BroadcastMessage> emptyList());
+		final BroadcastMessage payload = notifyTableChangedListener(peer.getPeerID(), addedParameters, changes.getRemovedParameters(), changes.getRemovedParameters(), changes.getChangedParameters(), addedParameters, Collections.<BroadcastMessage> emptyList());
 
 		// Send the tables using a table message only if neighbors exist
 		final Set<PeerID> currentNeighbors = peer.getDetector().getCurrentNeighbors();
@@ -237,9 +237,7 @@ public class ParameterTableUpdater implements CommunicationLayer, NeighborEvents
 	 */
 	@Override
 	public boolean isLocalParameter(final Parameter parameter) {
-		synchronized (mutex) {
-			return pTable.isLocalParameter(parameter);
-		}
+		return snapshot.isLocalParameter(parameter);
 	}
 
 	/*
@@ -251,9 +249,7 @@ public class ParameterTableUpdater implements CommunicationLayer, NeighborEvents
 	 */
 	@Override
 	public Set<Parameter> subsumesLocalParameter(final Parameter parameter) {
-		synchronized (mutex) {
-			return pTable.subsumesLocalParameter(parameter);
-		}
+		return snapshot.subsumesLocalParameter(parameter);
 	}
 
 	/*
@@ -265,9 +261,7 @@ public class ParameterTableUpdater implements CommunicationLayer, NeighborEvents
 	 */
 	@Override
 	public int getEstimatedDistance(final Parameter parameter) {
-		synchronized (mutex) {
-			return pTable.getEstimatedDistance(parameter);
-		}
+		return snapshot.getEstimatedDistance(parameter);
 	}
 
 	/*
@@ -280,9 +274,7 @@ public class ParameterTableUpdater implements CommunicationLayer, NeighborEvents
 	//TODO This methods should be renamed. It is not the distance but the dissemination value
 	@Override
 	public int getDistance(final Parameter p, final PeerID neighbor) {
-		synchronized (mutex) {
-			return pTable.getDistance(p, neighbor);
-		}
+		return snapshot.getDistance(p, neighbor);
 	}
 	
 	@Override
@@ -297,9 +289,8 @@ public class ParameterTableUpdater implements CommunicationLayer, NeighborEvents
 	 */
 	@Override
 	public Set<Parameter> getParameters() {
-		synchronized (mutex) {
-			return pTable.getParameters();
-		}
+		// the snapshot is shared, so callers receive a copy they can modify
+		return new HashSet<Parameter>(snapshot.getParameters());
 	}
 
 	/*
@@ -309,9 +300,7 @@ public class ParameterTableUpdater implements CommunicationLayer, NeighborEvents
 	 */
 	@Override
 	public Set<Parameter> getLocalParameters() {
-		synchronized (mutex) {
-			return pTable.getLocalParameters();
-		}
+		return new HashSet<Parameter>(snapshot.getLocalParameters());
 	}
 
 	@Override
@@ -349,9 +338,10 @@ public class ParameterTableUpdater implements CommunicationLayer, NeighborEvents
 						finalUpdateTable.add(updateResult.getUpdateTable());
 					}
 				}
+				snapshot = pTable.publishSnapshot();
 			}
 
-			logger.trace("Peer " + peer.getPeerID() + " table after removal: " + pTable);
+			logger.trace("Peer " + peer.getPeerID() + " table after removal: " + snapshot);
 
 			logger.trace("Peer " + peer.getPeerID() + " update table: " + finalUpdateTable);
 
@@ -391,6 +381,7 @@ public class ParameterTableUpdater implements CommunicationLayer, NeighborEvents
 
 		// Create the parameter table using loaded configuration
 		pTable = new ParameterTable(this, peer.getPeerID(), getTaxonomy());
+		snapshot = pTable.publishSnapshot();
 	}
 
 	@Override
@@ -422,74 +413,30 @@ public class ParameterTableUpdater implements CommunicationLayer, NeighborEvents
 
 	private void processTableMessage(final TableMessage tableMessage) {
 		if (!tableMessage.getUpdateTable().isEmpty()) {
-			logger.trace("Peer " + peer.getPeerID() + " updating table " + pTable + " with update table " + tableMessage.getUpdateTable().pretty(taxonomy) + " from neighbor " + tableMessage.getSender());
-			
-			final Set<Parameter> newParameters = new HashSet<Parameter>();
-			final Set<Parameter> removedParameters = new HashSet<Parameter>();
-			
-			final Map<Parameter, DistanceChange> changedParameters = new HashMap<Parameter, DistanceChange>();
+			logger.trace("Peer " + peer.getPeerID() + " updating table " + snapshot + " with update table " + tableMessage.getUpdateTable().pretty(taxonomy) + " from neighbor " + tableMessage.getSender());
 			
 			final UpdateResult updateResult;
 
 			synchronized (mutex) {
-				// Get parameters before update
-				final Set<Parameter> parametersBeforeUpdate = pTable.getParameters();
-	
-				for (final Parameter parameter : pTable.getParameters())
-					changedParameters.put(parameter, new DistanceChange(pTable.getEstimatedDistance(parameter), 0));
-	
+				// the update result contains only the modified parameters
 				updateResult = pTable.updateTable(tableMessage.getUpdateTable(), tableMessage.getSender());
-	
-				checkParameters(newParameters, removedParameters, changedParameters, parametersBeforeUpdate);
+				snapshot = pTable.publishSnapshot();
 			}
 			
-			String pTableStatus;
-			synchronized (mutex) {
-				pTableStatus = pTable.toString();
-			}
-			logger.trace("Peer " + peer.getPeerID() + " local table after update " + pTableStatus);
+			final TableChanges changes = updateResult.getChanges();
+			
+			logger.trace("Peer " + peer.getPeerID() + " local table after update " + snapshot);
 
 			// Notify table changes to listeners
-			final BroadcastMessage payload = notifyTableChangedListener(tableMessage.getSender(), newParameters, removedParameters, new HashSet<Parameter>(), changedParameters, tableMessage.getUpdateTable().getAdditions(), tableMessage.getPayloadMessages());
+			final BroadcastMessage payload = notifyTableChangedListener(tableMessage.getSender(), changes.getNewParameters(), changes.getRemovedParameters(), new HashSet<Parameter>(), changes.getChangedParameters(), tableMessage.getUpdateTable().getAdditions(), tableMessage.getPayloadMessages());
 
-			logger.trace("Peer " + peer.getPeerID() + " addedParameters: " + newParameters + " removedParameters: " + removedParameters);
+			logger.trace("Peer " + peer.getPeerID() + " addedParameters: " + changes.getNewParameters() + " removedParameters: " + changes.getRemovedParameters());
 			logger.trace("Peer " + peer.getPeerID() + " adding payload " + payload + " to table message");
 
 			sendUpdateTableMessage(updateResult.getUpdateTable(), BroadcastMessage.removePropagatedNeighbors(tableMessage, peer), payload);
 		}
 	}
 
-	private void checkParameters(final Set<Parameter> newParameters, final Set<Parameter> removedParameters, final Map<Parameter, DistanceChange> changedParameters, final Set<Parameter> parametersBeforeUpdate) {
-		// Get parameters after update
-		final Set<Parameter> parametersAfterUpdate = pTable.getParameters();
-
-		// obtain distance changes
-		for (final Parameter parameter : parametersAfterUpdate) {
-			if (changedParameters.containsKey(parameter)) {
-				final DistanceChange dChange = changedParameters.get(parameter);
-				changedParameters.put(parameter, new DistanceChange(dChange.getPreviousValue(), pTable.getEstimatedDistance(parameter)));
-			} else
-				changedParameters.put(parameter, new DistanceChange(0, pTable.getEstimatedDistance(parameter)));
-		}
-
-		// If parameters were added or removed
-		if (!parametersAfterUpdate.equals(parametersBeforeUpdate)) {
-			final Set<Parameter> tempAddedParameters = new HashSet<Parameter>(parametersAfterUpdate);
-			final Set<Parameter> tempRemovedParameters = new HashSet<Parameter>(parametersBeforeUpdate);
-
-			// Obtain added parameters
-			tempAddedParameters.removeAll(parametersBeforeUpdate);
-
-			// Obtain removed parameters
-			final Set<Parameter> differenceParameters = new HashSet<Parameter>(parametersAfterUpdate);
-			differenceParameters.removeAll(tempAddedParameters);
-			tempRemovedParameters.removeAll(differenceParameters);
-
-			newParameters.addAll(tempAddedParameters);
-			removedParameters.addAll(tempRemovedParameters);
-		}
-	}
-
 	// Sends a message which contains a table to be added or removed
 	private void sendUpdateTableMessage(final UpdateTable updateTable, final Set<PeerID> destNeighbors, final BroadcastMessage payload) {
 		// Only send message if tables are non empty
@@ -521,16 +468,49 @@ public class ParameterTableUpdater implements CommunicationLayer, NeighborEvents
 
 	@Override
 	public boolean merge(List<BroadcastMessage> waitingMessages, BroadcastMessage sendingMessage) {
-		for (final BroadcastMessage waitingMessage : waitingMessages) {
-			if (waitingMessage instanceof TableMessage) { 
-				TableMessage waitingTableMessage = (TableMessage) waitingMessage;
-				TableMessage sendingTableMessage = (TableMessage) sendingMessage;
-				waitingTableMessage.merge(sendingTableMessage, getTaxonomy());
-				return true;
-			}
+		// only the newest waiting message can be merged without reordering
+		if (waitingMessages.isEmpty())
+			return false;
+		final BroadcastMessage waitingMessage = waitingMessages.get(waitingMessages.size() - 1);
+		return waitingMessage instanceof TableMessage && merge(waitingMessage, sendingMessage);
+	}
+	
+	@Override
+	public boolean merge(final BroadcastMessage waitingMessage, final BroadcastMessage sendingMessage) {
+		final TableMessage waitingTableMessage = (TableMessage) waitingMessage;
+		final TableMessage sendingTableMessage = (TableMessage) sendingMessage;
+		// updates are only coalesced with the pending message for the same
+		// neighbor set, otherwise the merged message would wait for the
+		// acknowledgements of neighbors which were not addressed
+		if (waitingTableMessage.hasSameDestinations(sendingTableMessage)) {
+			waitingTableMessage.merge(sendingTableMessage, getTaxonomy());
+			logger.trace("Peer " + peer.getPeerID() + " coalesced update table message " + sendingTableMessage + " into " + waitingTableMessage);
+			return true;
 		}
 		return false;
 	}
+	
+	@Override
+	public Object getMergeKey(final BroadcastMessage message) {
+		if (message instanceof TableMessage)
+			return new HashSet<PeerID>(message.getExpectedDestinations());
+		return null;
+	}
+	
+	@Override
+	public SendPriority getSendPriority(final BroadcastMessage message) {
+		return SendPriority.HIGH;
+	}
+	
+	// Known limitation: the queue of this layer is not bounded and its
+	// producers are not throttled. Table updates cannot be dropped or delayed
+	// without leaving the tables of the neighbors inconsistent, so congestion
+	// is only logged. Updates with the same destinations are merged into the
+	// newest waiting message, which limits the growth of the queue.
+	@Override
+	public void queueCongested(final SendPriority priority, final boolean congested) {
+		logger.debug("Peer " + peer.getPeerID() + " update table queue congested " + congested);
+	}
 
 	@Override
 	public int getMaxDistance() {
@@ -123,6 +123,19 @@ public class TableMessage extends BroadcastMessage implements BigEnvelopeMessage
 		SerializationUtils.writeCollection(payloadMessages, out);
 	}
 
+	/**
+	 * Checks if the passed message is addressed to the same set of neighbors
+	 * than this one.
+	 * 
+	 * @param broadcastMessage
+	 *            the message to compare with
+	 * @return true if both messages have the same expected destinations, false
+	 *         otherwise
+	 */
+	public boolean hasSameDestinations(final BroadcastMessage broadcastMessage) {
+		return expectedDestinations.equals(broadcastMessage.getExpectedDestinations());
+	}
+
 	public void merge(final BroadcastMessage broadcastMessage, final Taxonomy taxonomy) {
 		addExpectedDestinations(broadcastMessage.getExpectedDestinations());
 		
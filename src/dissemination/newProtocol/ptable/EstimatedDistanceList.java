@@ -21,7 +21,7 @@ package dissemination.newProtocol.ptable;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
 
 import peer.peerid.PeerID;
@@ -30,6 +30,11 @@ import peer.peerid.PeerID;
  * This class contains the list of estimated distances for a parameter. It does
  * not contain duplicates.
  * 
+ * Entries are stored as parallel primitive arrays (neighbor identifiers,
+ * distances and optional flags) which are kept sorted by distance and neighbor,
+ * so updates do not allocate and the effective distance is always the last
+ * entry.
+ * 
  * @author Unai Aguilera (unai.aguilera@gmail.com)
  * 
  */
@@ -40,8 +45,23 @@ class EstimatedDistanceList implements Serializable {
 	 */
 	private static final long serialVersionUID = 1L;
 
-	// the list if estimated distances implemented through.
-	private final List<EstimatedDistance> estimatedDistances = new ArrayList<EstimatedDistance>();
+	private static final int INITIAL_CAPACITY = 2;
+
+	// the entries of the list sorted by distance and neighbor
+	private int[] neighbors = new int[INITIAL_CAPACITY];
+	private byte[] distances = new byte[INITIAL_CAPACITY];
+	private boolean[] optionals = new boolean[INITIAL_CAPACITY];
+	private int size = 0;
+
+	// the version of the non optional contents of the list
+	private int version = 0;
+
+	// last removed entry, used to detect that a removal has been undone by the
+	// following insertion
+	private boolean undoAvailable = false;
+	private int undoNeighbor;
+	private byte undoDistance;
+	private int undoVersion;
 
 	/**
 	 * Creates an empty estimated distances list.
@@ -50,46 +70,74 @@ class EstimatedDistanceList implements Serializable {
 	}
 
 	/**
-	 * Creates a copy of the passed distance list. It is NOT a deep copy.
+	 * Creates a copy of the passed distance list.
 	 * 
 	 * @param eDistanceList
 	 *            the list to copy.
 	 */
 	public EstimatedDistanceList(final EstimatedDistanceList eDistanceList) {
-		if (eDistanceList != null)
-			this.estimatedDistances.addAll(eDistanceList.estimatedDistances);
+		if (eDistanceList != null) {
+			this.neighbors = Arrays.copyOf(eDistanceList.neighbors, eDistanceList.neighbors.length);
+			this.distances = Arrays.copyOf(eDistanceList.distances, eDistanceList.distances.length);
+			this.optionals = Arrays.copyOf(eDistanceList.optionals, eDistanceList.optionals.length);
+			this.size = eDistanceList.size;
+			this.version = eDistanceList.version;
+		}
 	}
 
 	/**
 	 * Updates the list with the passed estimated distance. If an entry with the
-	 * same neighbor that the passed one already exists it is substituted. If
-	 * the passed entry has the value 0 for distance means to remove the entry
-	 * with the same neighbor from the list.
+	 * same neighbor that the passed one already exists it is substituted.
 	 * 
 	 * @param eDistance
 	 *            the estimated distance to insert.
-	 * @returns the previous value for the passed neighbor if it existed, null
-	 *          otherwise.
+	 * @return true if the list was modified, false otherwise
+	 */
+	public boolean updateEstimatedDistance(final EstimatedDistance eDistance) {
+		return updateEstimatedDistance(eDistance.getDistance(), eDistance.getNeighbor(), eDistance.isOptional());
+	}
+
+	/**
+	 * Updates the list with the passed distance for the specified neighbor. If
+	 * an entry with the same neighbor already exists it is substituted.
+	 * 
+	 * @param distance
+	 *            the estimated distance
+	 * @param neighbor
+	 *            the neighbor which propagated the distance
+	 * @param optional
+	 *            tells if the entry is optional or not
+	 * @return true if the list was modified, false otherwise
 	 */
-	public EstimatedDistance updateEstimatedDistance(final EstimatedDistance eDistance) {
+	public boolean updateEstimatedDistance(final int distance, final PeerID neighbor, final boolean optional) {
+		final int neighborID = neighbor.getID();
+		final byte bDistance = (byte) distance;
+
 		// Check if a value from the same neighbor exists
-		final EstimatedDistance previousEstimatedDistance = search(eDistance.getNeighbor());
+		final int previous = indexOf(neighborID);
 
-		// If was previously inserted do nothing and return false
-		if (previousEstimatedDistance != null && previousEstimatedDistance.equals(eDistance))
-			return previousEstimatedDistance;
+		// If was previously inserted do nothing
+		if (previous != -1 && distances[previous] == bDistance)
+			return false;
 
-		// if there was another estimated value from the same neighbor remove it
-		// and add the new one
-		if (previousEstimatedDistance != null)
-			estimatedDistances.remove(previousEstimatedDistance);
+		boolean contentChanged = !optional;
+		if (previous != -1) {
+			contentChanged |= !optionals[previous];
+			removeAt(previous);
+		}
 
-		estimatedDistances.add(eDistance);
+		insertSorted(neighborID, bDistance, optional);
 
-		// Sort list
-		Collections.sort(estimatedDistances);
+		if (contentChanged) {
+			if (previous == -1 && !optional && undoAvailable && undoNeighbor == neighborID && undoDistance == bDistance && version == undoVersion + 1)
+				// the insertion restores the entry which was just removed
+				version = undoVersion;
+			else
+				version++;
+		}
+		undoAvailable = false;
 
-		return previousEstimatedDistance;
+		return true;
 	}
 
 	/**
@@ -100,14 +148,24 @@ class EstimatedDistanceList implements Serializable {
 	 * @returns the previous removed value, or null if nothing was removed
 	 */
 	public EstimatedDistance removeEstimatedDistanceFrom(final PeerID neighbor) {
-		final EstimatedDistance previousEstimatedDistance = search(neighbor);
+		final int index = indexOf(neighbor.getID());
+		if (index == -1)
+			return null;
 
-		if (previousEstimatedDistance != null) {
-			estimatedDistances.remove(previousEstimatedDistance);
-			return previousEstimatedDistance;
+		final EstimatedDistance previousEstimatedDistance = new EstimatedDistance(distances[index], neighbor, optionals[index]);
+
+		undoAvailable = false;
+		if (!optionals[index]) {
+			undoAvailable = true;
+			undoNeighbor = neighbors[index];
+			undoDistance = distances[index];
+			undoVersion = version;
+			version++;
 		}
 
-		return null;
+		removeAt(index);
+
+		return previousEstimatedDistance;
 	}
 
 	/**
@@ -117,10 +175,35 @@ class EstimatedDistanceList implements Serializable {
 	 * @return the effective estimated distance. Null if the list is empty.
 	 */
 	public EstimatedDistance getEffectiveDistance() {
-		if (estimatedDistances.isEmpty())
+		if (size == 0)
 			return null;
 
-		return estimatedDistances.get(estimatedDistances.size() - 1);
+		return new EstimatedDistance(distances[size - 1], new PeerID(neighbors[size - 1]), optionals[size - 1]);
+	}
+
+	/**
+	 * Gets the value of the effective estimated distance.
+	 * 
+	 * @return the effective distance value, 0 if the list is empty
+	 */
+	public int getEffectiveDistanceValue() {
+		if (size == 0)
+			return 0;
+
+		return distances[size - 1];
+	}
+
+	/**
+	 * Gets the neighbor which provided the effective estimated distance.
+	 * 
+	 * @return the neighbor of the effective distance, null if the list is
+	 *         empty
+	 */
+	public PeerID getEffectiveNeighbor() {
+		if (size == 0)
+			return null;
+
+		return new PeerID(neighbors[size - 1]);
 	}
 
 	/**
@@ -129,7 +212,7 @@ class EstimatedDistanceList implements Serializable {
 	 * @return true if empty, false otherwise.
 	 */
 	public boolean isEmpty() {
-		return estimatedDistances.isEmpty();
+		return size == 0;
 	}
 
 	/**
@@ -139,15 +222,25 @@ class EstimatedDistanceList implements Serializable {
 	 * @return a copy of the estimated distance list
 	 */
 	public List<EstimatedDistance> getList() {
-		return new ArrayList<EstimatedDistance>(estimatedDistances);
+		final List<EstimatedDistance> list = new ArrayList<EstimatedDistance>(size);
+		for (int i = 0; i < size; i++)
+			list.add(new EstimatedDistance(distances[i], new PeerID(neighbors[i]), optionals[i]));
+		return list;
 	}
 
 	/**
 	 * Decrements the distances of all elements contained in the list
 	 */
 	public void decEstimatedDistances() {
-		for (final EstimatedDistance eDistance : estimatedDistances)
-			eDistance.decrement();
+		if (size == 0)
+			return;
+
+		// decrementing all the elements keeps the order of the list
+		for (int i = 0; i < size; i++)
+			distances[i]--;
+
+		version++;
+		undoAvailable = false;
 	}
 
 	/**
@@ -159,11 +252,102 @@ class EstimatedDistanceList implements Serializable {
 	 *         exist
 	 */
 	public EstimatedDistance search(final PeerID neighbor) {
-		for (final EstimatedDistance eDistance : estimatedDistances)
-			if (eDistance.getNeighbor().equals(neighbor))
-				return eDistance;
+		final int index = indexOf(neighbor.getID());
+		if (index == -1)
+			return null;
+
+		return new EstimatedDistance(distances[index], neighbor, optionals[index]);
+	}
+
+	/**
+	 * Tells if the list contains an entry coming from the passed neighbor
+	 * 
+	 * @param neighbor
+	 *            the neighbor to check
+	 * @return true if an entry for the neighbor exists, false otherwise
+	 */
+	public boolean contains(final PeerID neighbor) {
+		return indexOf(neighbor.getID()) != -1;
+	}
+
+	/**
+	 * Gets the distance which was obtained from the passed neighbor
+	 * 
+	 * @param neighbor
+	 *            the neighbor the distance was obtained from
+	 * @return the distance of the passed neighbor, 0 if does not exist
+	 */
+	public int getDistanceFrom(final PeerID neighbor) {
+		final int index = indexOf(neighbor.getID());
+		if (index == -1)
+			return 0;
+
+		return distances[index];
+	}
+
+	/**
+	 * Gets the version of the list. The version only changes when a non
+	 * optional entry is added, removed or modified. Undoing the last removal
+	 * with an insertion of the same entry restores the previous version, so
+	 * two equal version values observed on the same list imply equal non
+	 * optional contents.
+	 * 
+	 * @return the current version of the list
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	// returns the position of the passed neighbor in the list or -1
+	private int indexOf(final int neighborID) {
+		for (int i = 0; i < size; i++)
+			if (neighbors[i] == neighborID)
+				return i;
+		return -1;
+	}
+
+	private void removeAt(final int index) {
+		final int moved = size - index - 1;
+		if (moved > 0) {
+			System.arraycopy(neighbors, index + 1, neighbors, index, moved);
+			System.arraycopy(distances, index + 1, distances, index, moved);
+			System.arraycopy(optionals, index + 1, optionals, index, moved);
+		}
+		size--;
+	}
+
+	private void insertSorted(final int neighborID, final byte distance, final boolean optional) {
+		if (size == neighbors.length) {
+			final int capacity = neighbors.length * 2;
+			neighbors = Arrays.copyOf(neighbors, capacity);
+			distances = Arrays.copyOf(distances, capacity);
+			optionals = Arrays.copyOf(optionals, capacity);
+		}
+
+		// find insertion point, entries are sorted by distance and neighbor
+		int index = size;
+		while (index > 0 && compare(distances[index - 1], neighbors[index - 1], distance, neighborID) > 0)
+			index--;
+
+		final int moved = size - index;
+		if (moved > 0) {
+			System.arraycopy(neighbors, index, neighbors, index + 1, moved);
+			System.arraycopy(distances, index, distances, index + 1, moved);
+			System.arraycopy(optionals, index, optionals, index + 1, moved);
+		}
+
+		neighbors[index] = neighborID;
+		distances[index] = distance;
+		optionals[index] = optional;
+		size++;
+	}
 
-		return null;
+	// same ordering as EstimatedDistance.compareTo()
+	private static int compare(final byte distanceA, final int neighborA, final byte distanceB, final int neighborB) {
+		final int distanceComparison = distanceA - distanceB;
+		if (distanceComparison != 0)
+			return distanceComparison;
+		return neighborA - neighborB;
 	}
 
 	@Override
@@ -177,32 +361,42 @@ class EstimatedDistanceList implements Serializable {
 	}
 
 	private boolean equalOptional(final EstimatedDistanceList list) {
-		for (final EstimatedDistance eDistance : estimatedDistances)
-			if (!list.estimatedDistances.contains(eDistance) && !eDistance.isOptional())
-				return false;
+		for (int i = 0; i < size; i++)
+			if (!optionals[i]) {
+				final int index = list.indexOf(neighbors[i]);
+				if (index == -1 || list.distances[index] != distances[i])
+					return false;
+			}
 
 		return true;
 	}
 
 	@Override
 	public int hashCode() {
-		return estimatedDistances.hashCode();
+		// optional entries are ignored by equals()
+		int result = 17;
+		for (int i = 0; i < size; i++)
+			if (!optionals[i]) {
+				result = result * 31 + distances[i];
+				result = result * 31 + neighbors[i];
+			}
+		return result;
 	}
 
 	@Override
 	public String toString() {
-		return estimatedDistances.toString();
+		return getList().toString();
 	}
 
 	public int getOptionalEntriesSize() {
 		int counter = 0;
-		for (final EstimatedDistance eDistance : estimatedDistances)
-			if (eDistance.isOptional())
+		for (int i = 0; i < size; i++)
+			if (optionals[i])
 				counter++;
 		return counter;
 	}
 
 	public int size() {
-		return estimatedDistances.size();
+		return size;
 	}
 }
@@ -52,6 +52,7 @@ import taxonomy.parameter.OutputParameter;
 import taxonomy.parameter.Parameter;
 import taxonomy.parameter.ParameterFactory;
 import util.logger.Logger;
+import dissemination.DistanceChange;
 
 public class ParameterTable implements XMLSerializable {
 
@@ -78,6 +79,16 @@ public class ParameterTable implements XMLSerializable {
 	// the taxonomy used for parameter grouping
 	private final Taxonomy taxonomy;
 
+	// previous distances of the parameters modified since the last call to
+	// takeChanges(). A null value means that the parameter was not contained
+	// in the table.
+	private final Map<Parameter, Integer> changeLog = new HashMap<Parameter, Integer>();
+
+	// the last published snapshot and the modifications not included in it
+	private ParameterTableSnapshot snapshot;
+	private final Set<Parameter> unpublishedParameters = new HashSet<Parameter>();
+	private boolean unpublishedLocalParameters = false;
+
 	private final Logger logger = Logger.getLogger(ParameterTable.class);
 
 	/**
@@ -94,6 +105,7 @@ public class ParameterTable implements XMLSerializable {
 		this.disseminationInfo = disseminationInfo;
 		this.host = host;
 		this.taxonomy = taxonomy;
+		this.snapshot = new ParameterTableSnapshot(taxonomy);
 	}
 
 	// finds the group to which this parameter belongs to
@@ -104,6 +116,73 @@ public class ParameterTable implements XMLSerializable {
 		return null;
 	}
 
+	// records the state of the passed parameter before it is modified
+	private void logChange(final Parameter p) {
+		unpublishedParameters.add(p);
+		if (!changeLog.containsKey(p)) {
+			final EstimatedDistanceList list = table.get(new ParameterGroup(p, taxonomy));
+			if (list != null)
+				changeLog.put(p, Integer.valueOf(list.getEffectiveDistanceValue()));
+			else
+				changeLog.put(p, null);
+		}
+	}
+
+	/**
+	 * Gets the changes performed in the table since the last call to this
+	 * method.
+	 * 
+	 * @return the changes performed in the table
+	 */
+	public TableChanges takeChanges() {
+		final TableChanges changes = new TableChanges();
+		for (final Map.Entry<Parameter, Integer> entry : changeLog.entrySet()) {
+			final Parameter p = entry.getKey();
+			final EstimatedDistanceList list = table.get(new ParameterGroup(p, taxonomy));
+
+			final boolean contained = entry.getValue() != null;
+			final int previousDistance = contained?entry.getValue().intValue():0;
+			final int newDistance = (list != null)?list.getEffectiveDistanceValue():0;
+
+			if (!contained && list != null)
+				changes.addNewParameter(p);
+			else if (contained && list == null)
+				changes.addRemovedParameter(p);
+
+			if (contained != (list != null) || previousDistance != newDistance)
+				changes.addDistanceChange(p, new DistanceChange(previousDistance, newDistance));
+		}
+		changeLog.clear();
+		return changes;
+	}
+
+	/**
+	 * Publishes the modifications performed since the last call to this method
+	 * as a new immutable snapshot of the table. The returned snapshot shares
+	 * the entries of the unmodified parameters with the previous one.
+	 * 
+	 * @return the current snapshot of the table
+	 */
+	public ParameterTableSnapshot publishSnapshot() {
+		if (unpublishedParameters.isEmpty() && !unpublishedLocalParameters)
+			return snapshot;
+
+		final Map<Parameter, ParameterTableSnapshot.Entry> modifiedEntries = new HashMap<Parameter, ParameterTableSnapshot.Entry>();
+		for (final Parameter p : unpublishedParameters) {
+			final EstimatedDistanceList list = table.get(new ParameterGroup(p, taxonomy));
+			if (list != null)
+				modifiedEntries.put(p, new ParameterTableSnapshot.Entry(p, list, taxonomy));
+			else
+				modifiedEntries.put(p, null);
+		}
+
+		snapshot = snapshot.update(modifiedEntries, unpublishedLocalParameters?localParameters:null);
+
+		unpublishedParameters.clear();
+		unpublishedLocalParameters = false;
+		return snapshot;
+	}
+
 	/**
 	 * Adds a set of parameters as local parameters.
 	 * 
@@ -115,21 +194,25 @@ public class ParameterTable implements XMLSerializable {
 		final UpdateTable updateTable = new UpdateTable();
 
 		for (final Parameter p : parameters) {
-			insertParameter(host, updateTable, p, new EstimatedDistance(disseminationInfo.getMaxDistance(), host), true);
+			insertParameter(host, updateTable, p, disseminationInfo.getMaxDistance(), true, null);
 
 			localParameters.add(p);
 		}
+		unpublishedLocalParameters = true;
 
 		logger.debug("Peer " + host + " added local parameters: " + parameters);
 
 		return updateTable;
 	}
 
-	private EstimatedDistanceList updateTable(final Parameter p) {
+	private EstimatedDistanceList updateTable(final Parameter p, final EstimatedDistanceList emptiedList) {
 		EstimatedDistanceList list;
 		// Obtain or create the estimated list for parameter p
 		final ParameterGroup relatedGroup = findGroup(p);
+		// the representative parameter of the group may change
+		logChange(p);
 		if (relatedGroup != null) {
+			logChange(relatedGroup.getCurrentParameter());
 			// Remove from the map
 			list = table.remove(relatedGroup);
 			// Add the new parameter to the group
@@ -137,7 +220,8 @@ public class ParameterTable implements XMLSerializable {
 			// Reinsert the parameter group again
 			table.put(relatedGroup, list);
 		} else {
-			list = new EstimatedDistanceList();
+			// reuse the list emptied during the current update, if any
+			list = (emptiedList != null)?emptiedList:new EstimatedDistanceList();
 			final ParameterGroup pGroup = new ParameterGroup(p, taxonomy);
 			table.put(pGroup, list);
 		}
@@ -157,12 +241,14 @@ public class ParameterTable implements XMLSerializable {
 		for (final Parameter p : parameters) {
 			final ParameterGroup relatedGroup = findGroup(p);
 			localParameters.remove(p);
+			unpublishedLocalParameters = true;
 			if (relatedGroup != null) {
 				final EstimatedDistanceList list = table.get(relatedGroup);
 				// Remove all parameters which are originated in the host node
 				// only if the removed parameter was the last parameter of the
 				// group
 				if (localGroupCount(p) == 0) {
+					logChange(relatedGroup.getCurrentParameter());
 					final EstimatedDistance previousEstimatedDistance = list.removeEstimatedDistanceFrom(host);
 					// if entries were removed
 					if (previousEstimatedDistance != null)
@@ -170,7 +256,7 @@ public class ParameterTable implements XMLSerializable {
 
 					// If the effective distance is not 0 notify neighbors
 					if (getEstimatedDistance(p) != 0)
-						updateTable.setAddition(p, getEffectiveDistance(p).getDistance(), getEffectiveDistance(p).getNeighbor());
+						updateTable.setAddition(p, list.getEffectiveDistanceValue(), list.getEffectiveNeighbor());
 				}
 			}
 		}
@@ -214,12 +300,12 @@ public class ParameterTable implements XMLSerializable {
 	public UpdateTable getNewNeighborTable() {
 		final UpdateTable updateTable = new UpdateTable();
 
-		for (final ParameterGroup pGroup : table.keySet()) {
-			final EstimatedDistance effectiveDistance = table.get(pGroup).getEffectiveDistance();
+		for (final Map.Entry<ParameterGroup, EstimatedDistanceList> entry : table.entrySet()) {
+			final EstimatedDistanceList list = entry.getValue();
 
 			// Check if effective distance is greater than 1.
-			if (effectiveDistance.getDistance() > 1)
-				updateTable.setAddition(pGroup.getCurrentParameter(), effectiveDistance.getDistance(), effectiveDistance.getNeighbor());
+			if (list.getEffectiveDistanceValue() > 1)
+				updateTable.setAddition(entry.getKey().getCurrentParameter(), list.getEffectiveDistanceValue(), list.getEffectiveNeighbor());
 		}
 
 		return updateTable;
@@ -235,9 +321,9 @@ public class ParameterTable implements XMLSerializable {
 	 *            the estimated distance of the parameter
 	 */
 	public int getEstimatedDistance(final Parameter p) {
-		final ParameterGroup pGroup = findGroup(p);
-		if (table.containsKey(pGroup) && !table.get(pGroup).isEmpty())
-			return table.get(pGroup).getEffectiveDistance().getDistance();
+		final EstimatedDistanceList list = getEffectiveDistanceList(p);
+		if (list != null)
+			return list.getEffectiveDistanceValue();
 
 		return 0;
 	}
@@ -253,11 +339,9 @@ public class ParameterTable implements XMLSerializable {
 	 * @return the distance to parameter according to the specified neighbor
 	 */
 	public int getDistance(final Parameter p, final PeerID neighbor) {
-		final ParameterGroup pGroup = findGroup(p);
-		if (table.containsKey(pGroup))
-			for (final EstimatedDistance eDistance : table.get(pGroup).getList())
-				if (eDistance.getNeighbor().equals(neighbor))
-					return eDistance.getDistance();
+		final EstimatedDistanceList list = getEffectiveDistanceList(p);
+		if (list != null)
+			return list.getDistanceFrom(neighbor);
 		return 0;
 	}
 
@@ -282,11 +366,9 @@ public class ParameterTable implements XMLSerializable {
 	 */
 	public Set<Parameter> getParameters(final PeerID neighbor) {
 		final Set<Parameter> parameters = new HashSet<Parameter>();
-		for (final ParameterGroup pGroup : table.keySet()) {
-			final EstimatedDistanceList list = table.get(pGroup);
-			if (list.search(neighbor) != null)
-				parameters.add(pGroup.getCurrentParameter());
-		}
+		for (final Map.Entry<ParameterGroup, EstimatedDistanceList> entry : table.entrySet())
+			if (entry.getValue().contains(neighbor))
+				parameters.add(entry.getKey().getCurrentParameter());
 
 		return parameters;
 	}
@@ -330,8 +412,10 @@ public class ParameterTable implements XMLSerializable {
 	 * Decrements all estimated distances in one unit.
 	 */
 	public void decEstimatedDistances() {
-		for (final EstimatedDistanceList list : table.values())
-			list.decEstimatedDistances();
+		for (final Map.Entry<ParameterGroup, EstimatedDistanceList> entry : table.entrySet()) {
+			logChange(entry.getKey().getCurrentParameter());
+			entry.getValue().decEstimatedDistances();
+		}
 	}
 
 	/**
@@ -346,10 +430,16 @@ public class ParameterTable implements XMLSerializable {
 	public class UpdateResult {
 		private final UpdateTable updateTable;
 		private final Set<Parameter> addedEParameters = new HashSet<Parameter>();
+		private final TableChanges changes;
 	
-		public UpdateResult(final UpdateTable updateTable, final Set<Parameter> addedEntries) {
+		public UpdateResult(final UpdateTable updateTable, final Set<Parameter> addedEntries, final TableChanges changes) {
 			this.updateTable = updateTable;
 			this.addedEParameters.addAll(addedEntries);
+			this.changes = changes;
+		}
+
+		public TableChanges getChanges() {
+			return changes;
 		}
 
 		public UpdateTable getUpdateTable() {
@@ -369,11 +459,12 @@ public class ParameterTable implements XMLSerializable {
 		for (final Parameter p : updates.getParameters()) {
 			// Save the current status of the estimated distance list
 			final EstimatedDistanceList currentList = getEffectiveDistanceList(p);
-			EstimatedDistanceList listBackup;
-			if (currentList != null)
-				listBackup = new EstimatedDistanceList(getEffectiveDistanceList(p));
-			else
-				listBackup = new EstimatedDistanceList();
+			final int previousVersion = (currentList != null)?currentList.getVersion():0;
+			final int previousSize = (currentList != null)?currentList.size():0;
+
+			// list emptied by the deletion. It is reused if the parameter is
+			// inserted again so its version can be compared
+			EstimatedDistanceList emptiedList = null;
 
 			// Get elements
 			final EstimatedDistance delete = updates.getDeletion(p);
@@ -387,13 +478,16 @@ public class ParameterTable implements XMLSerializable {
 				// Check that the parameter exists in the local list
 				if (effectiveDistance > 0) {
 					final ParameterGroup pGroup = findGroup(p);
-					final EstimatedDistanceList localList = getEffectiveDistanceList(p);
+					final EstimatedDistanceList localList = table.get(pGroup);
+					logChange(pGroup.getCurrentParameter());
 					// Remove entry coming specified neighbor
 					final EstimatedDistance removedDistance = localList.removeEstimatedDistanceFrom(delete.getNeighbor());
 
 					// Remove parameter p if its list is empty
-					if (getEffectiveDistanceList(p).isEmpty())
+					if (localList.isEmpty()) {
 						table.remove(pGroup);
+						emptiedList = localList;
+					}
 
 					// Check if an elements was eliminated
 					if (removedDistance != null) {
@@ -404,8 +498,8 @@ public class ParameterTable implements XMLSerializable {
 
 						// Generate an addition if current effective distance is
 						// greater than one
-						if (getEstimatedDistance(p) > 1)
-							updateTable.setAddition(pGroup.getCurrentParameter(), getEffectiveDistance(p).getDistance(), getEffectiveDistance(p).getNeighbor());
+						if (localList.getEffectiveDistanceValue() > 1)
+							updateTable.setAddition(pGroup.getCurrentParameter(), localList.getEffectiveDistanceValue(), localList.getEffectiveNeighbor());
 					}
 				}
 			}
@@ -415,48 +509,53 @@ public class ParameterTable implements XMLSerializable {
 			// Insertion is only processed if information does not
 			// originally comes from the current node
 			if (insert != null && !insert.getNeighbor().equals(host))
-				parameterChanged = insertParameter(neighbor, updateTable, p, insert, false);
+				parameterChanged = insertParameter(neighbor, updateTable, p, insert.getDistance(), false, emptiedList);
 
 			// If the estimated distance list has not changed remove current
 			// parameter from the updateTable
 			final ParameterGroup pGroup = findGroup(p);
 			if (pGroup != null) {
-				if (listBackup.equals(getEffectiveDistanceList(p)) && !parameterChanged) {
+				final EstimatedDistanceList list = table.get(pGroup);
+				final boolean listChanged = currentList == null || list.getVersion() != previousVersion;
+				if (!listChanged && !parameterChanged) {
 					updateTable.removeParameter(pGroup.getCurrentParameter());
 				} else {
 					//only if is not shorter -> not elements were removed
-					if (getEffectiveDistanceList(p).getList().size() >= listBackup.size())
+					if (list.size() >= previousSize)
 						addedParameters.add(pGroup.getCurrentParameter());
 				}
 			}
 		}
 
-		return new UpdateResult(updateTable, addedParameters);
+		return new UpdateResult(updateTable, addedParameters, takeChanges());
 	}
 
-	private boolean insertParameter(final PeerID neighbor, final UpdateTable updateTable, final Parameter p, final EstimatedDistance insert, final boolean local) {
+	private boolean insertParameter(final PeerID neighbor, final UpdateTable updateTable, final Parameter p, final int distance, final boolean local, final EstimatedDistanceList emptiedList) {
 		final int effectiveDistance = getEstimatedDistance(p);
 
 		// Insert the received distance decrementing its value and using the id
 		// of the node which sent the information
 		boolean parameterChanged = false;
 		if (local)
-			parameterChanged = addEntry(p, new EstimatedDistance(insert.getDistance(), neighbor));
+			parameterChanged = addEntry(p, distance, neighbor, false, emptiedList);
 		else
-			parameterChanged = addEntry(p, new EstimatedDistance(insert.getDistance() - 1, neighbor));
+			parameterChanged = addEntry(p, distance - 1, neighbor, false, emptiedList);
 
-		if ((getEstimatedDistance(p) != effectiveDistance && getEstimatedDistance(p) > 1) || (parameterChanged && getEstimatedDistance(p) > 1)) {
-			final ParameterGroup pGroup = findGroup(p);
-			updateTable.setAddition(pGroup.getCurrentParameter(), getEffectiveDistance(p).getDistance(), getEffectiveDistance(p).getNeighbor());
-		}
+		final ParameterGroup pGroup = findGroup(p);
+		final EstimatedDistanceList list = table.get(pGroup);
+		final int newEffectiveDistance = list.getEffectiveDistanceValue();
+		if ((newEffectiveDistance != effectiveDistance && newEffectiveDistance > 1) || (parameterChanged && newEffectiveDistance > 1))
+			updateTable.setAddition(pGroup.getCurrentParameter(), newEffectiveDistance, list.getEffectiveNeighbor());
 
 		return parameterChanged;
 	}
 
 	// Adds an entry directly to the table
 	boolean addEntry(final Parameter p, final EstimatedDistance eDistance) {
-		EstimatedDistanceList list;
+		return addEntry(p, eDistance.getDistance(), eDistance.getNeighbor(), eDistance.isOptional(), null);
+	}
 
+	private boolean addEntry(final Parameter p, final int distance, final PeerID neighbor, final boolean optional, final EstimatedDistanceList emptiedList) {
 		final ParameterGroup priorGroup = findGroup(p);
 		Parameter parameter;
 		if (priorGroup == null)
@@ -464,10 +563,10 @@ public class ParameterTable implements XMLSerializable {
 		else
 			parameter = priorGroup.getCurrentParameter();
 
-		list = updateTable(p);
+		final EstimatedDistanceList list = updateTable(p, emptiedList);
 		final ParameterGroup pGroup = findGroup(p);
 
-		list.updateEstimatedDistance(eDistance);
+		list.updateEstimatedDistance(distance, neighbor, optional);
 
 		if (parameter == null)
 			return false;
@@ -499,8 +598,10 @@ public class ParameterTable implements XMLSerializable {
 	private void cleanTable() {
 		for (final Iterator<ParameterGroup> it = table.keySet().iterator(); it.hasNext();) {
 			final ParameterGroup p = it.next();
-			if (table.get(p).isEmpty())
+			if (table.get(p).isEmpty()) {
+				logChange(p.getCurrentParameter());
 				it.remove();
+			}
 		}
 	}
 
@@ -575,9 +676,9 @@ public class ParameterTable implements XMLSerializable {
 				// By default entries are not optional
 				try {
 					if (optional.isEmpty() || optional.equals("false"))
-						addEntry(ParameterFactory.createParameter(parameterID, taxonomy), new EstimatedDistance(Integer.parseInt(distance), new PeerID(neighbor), false));
+						addEntry(ParameterFactory.createParameter(parameterID, taxonomy), Integer.parseInt(distance), new PeerID(neighbor), false, null);
 					else
-						addEntry(ParameterFactory.createParameter(parameterID, taxonomy), new EstimatedDistance(Integer.parseInt(distance), new PeerID(neighbor), true));
+						addEntry(ParameterFactory.createParameter(parameterID, taxonomy), Integer.parseInt(distance), new PeerID(neighbor), true, null);
 				} catch (final InvalidParameterIDException ie) {
 					throw new IOException(ie);
 				}
@@ -0,0 +1,197 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package dissemination.newProtocol.ptable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import peer.peerid.PeerID;
+import taxonomy.Taxonomy;
+import taxonomy.parameter.Parameter;
+
+/**
+ * This class is an immutable copy of the contents of a parameter table. It is
+ * published by the table after each update batch and can be queried without
+ * any locking while the table continues being updated. Consecutive snapshots
+ * share the entries of those parameters which were not modified.
+ * 
+ * @author Unai Aguilera (unai.aguilera@gmail.com)
+ * 
+ */
+public class ParameterTableSnapshot {
+
+	// immutable entry of the snapshot for a parameter group
+	static class Entry {
+
+		private final ParameterGroup group;
+		private final EstimatedDistanceList list;
+
+		Entry(final Parameter p, final EstimatedDistanceList list, final Taxonomy taxonomy) {
+			this.group = new ParameterGroup(p, taxonomy);
+			this.list = new EstimatedDistanceList(list);
+		}
+	}
+
+	// entries indexed by the representative parameter of each group
+	private final Map<Parameter, Entry> entries;
+
+	private final Set<Parameter> localParameters;
+
+	private final Taxonomy taxonomy;
+
+	/**
+	 * Creates an empty snapshot
+	 * 
+	 * @param taxonomy
+	 *            the taxonomy used for parameter grouping
+	 */
+	ParameterTableSnapshot(final Taxonomy taxonomy) {
+		this(Collections.<Parameter, Entry> emptyMap(), Collections.<Parameter> emptySet(), taxonomy);
+	}
+
+	ParameterTableSnapshot(final Map<Parameter, Entry> entries, final Set<Parameter> localParameters, final Taxonomy taxonomy) {
+		this.entries = Collections.unmodifiableMap(entries);
+		this.localParameters = Collections.unmodifiableSet(localParameters);
+		this.taxonomy = taxonomy;
+	}
+
+	// finds the entry of the group to which this parameter belongs to
+	private Entry findEntry(final Parameter p) {
+		final Entry entry = entries.get(p);
+		if (entry != null)
+			return entry;
+
+		for (final Entry e : entries.values())
+			if (e.group.belongs(p))
+				return e;
+		return null;
+	}
+
+	/**
+	 * Gets the estimated distance for the specified parameter. Parameters which
+	 * are not located in the table get a value of 0.
+	 * 
+	 * @param p
+	 *            the parameter whose distance is obtained
+	 * @return the estimated distance of the parameter
+	 */
+	public int getEstimatedDistance(final Parameter p) {
+		final Entry entry = findEntry(p);
+		if (entry != null)
+			return entry.list.getEffectiveDistanceValue();
+		return 0;
+	}
+
+	/**
+	 * Gets the distance for passed parameter which comes from the specified
+	 * neighbor
+	 * 
+	 * @param p
+	 *            the parameter whose distance is obtained
+	 * @param neighbor
+	 *            the neighbor whose distance is obtained
+	 * @return the distance to parameter according to the specified neighbor
+	 */
+	public int getDistance(final Parameter p, final PeerID neighbor) {
+		final Entry entry = findEntry(p);
+		if (entry != null)
+			return entry.list.getDistanceFrom(neighbor);
+		return 0;
+	}
+
+	/**
+	 * Gets the set of parameters contained in the snapshot.
+	 * 
+	 * @return an unmodifiable set of the parameters
+	 */
+	public Set<Parameter> getParameters() {
+		return entries.keySet();
+	}
+
+	/**
+	 * Gets the set of local parameters.
+	 * 
+	 * @return an unmodifiable set of the local parameters
+	 */
+	public Set<Parameter> getLocalParameters() {
+		return localParameters;
+	}
+
+	/**
+	 * Tells if a parameter is a local parameter.
+	 * 
+	 * @param p
+	 *            the parameter to check
+	 * @return true if the parameter is local, false otherwise
+	 */
+	public boolean isLocalParameter(final Parameter p) {
+		return localParameters.contains(p);
+	}
+
+	/**
+	 * Checks if the specified parameter subsumes a local parameter
+	 * 
+	 * @param p
+	 *            the checked parameter
+	 * @return the set of subsumed parameters
+	 */
+	public Set<Parameter> subsumesLocalParameter(final Parameter p) {
+		final Set<Parameter> subsumedParameters = new HashSet<Parameter>();
+		for (final Parameter localParameter : localParameters)
+			if (taxonomy.subsumes(p.getID(), localParameter.getID()))
+				subsumedParameters.add(localParameter);
+		return subsumedParameters;
+	}
+
+	/**
+	 * Creates a new snapshot replacing the entries of the passed parameters.
+	 * 
+	 * @param modifiedEntries
+	 *            the new entries of the modified parameters. A null value
+	 *            removes the parameter.
+	 * @param localParameters
+	 *            the new local parameters, null if they did not change
+	 * @return the new snapshot
+	 */
+	ParameterTableSnapshot update(final Map<Parameter, Entry> modifiedEntries, final Set<Parameter> localParameters) {
+		// the map is copied but the entries are shared with this snapshot
+		final Map<Parameter, Entry> newEntries = new HashMap<Parameter, Entry>(entries);
+		for (final Map.Entry<Parameter, Entry> modifiedEntry : modifiedEntries.entrySet()) {
+			if (modifiedEntry.getValue() != null)
+				newEntries.put(modifiedEntry.getKey(), modifiedEntry.getValue());
+			else
+				newEntries.remove(modifiedEntry.getKey());
+		}
+
+		final Set<Parameter> newLocalParameters = (localParameters != null)?new HashSet<Parameter>(localParameters):this.localParameters;
+		return new ParameterTableSnapshot(newEntries, newLocalParameters, taxonomy);
+	}
+
+	@Override
+	public String toString() {
+		final Map<Parameter, EstimatedDistanceList> lists = new HashMap<Parameter, EstimatedDistanceList>();
+		for (final Map.Entry<Parameter, Entry> entry : entries.entrySet())
+			lists.put(entry.getKey(), entry.getValue().list);
+		return lists.toString();
+	}
+}
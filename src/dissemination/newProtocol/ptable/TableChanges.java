@@ -0,0 +1,98 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package dissemination.newProtocol.ptable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import taxonomy.parameter.Parameter;
+import dissemination.DistanceChange;
+
+/**
+ * This class contains the changes performed on a parameter table since they
+ * were last taken. Only the parameters which were actually modified are
+ * included.
+ * 
+ * @author Unai Aguilera (unai.aguilera@gmail.com)
+ * 
+ */
+public class TableChanges {
+
+	private final Set<Parameter> newParameters = new HashSet<Parameter>();
+	private final Set<Parameter> removedParameters = new HashSet<Parameter>();
+	private final Map<Parameter, DistanceChange> changedParameters = new HashMap<Parameter, DistanceChange>();
+
+	void addNewParameter(final Parameter p) {
+		newParameters.add(p);
+	}
+
+	void addRemovedParameter(final Parameter p) {
+		removedParameters.add(p);
+	}
+
+	void addDistanceChange(final Parameter p, final DistanceChange dChange) {
+		changedParameters.put(p, dChange);
+	}
+
+	/**
+	 * Gets the parameters which were added to the table
+	 * 
+	 * @return the added parameters
+	 */
+	public Set<Parameter> getNewParameters() {
+		return Collections.unmodifiableSet(newParameters);
+	}
+
+	/**
+	 * Gets the parameters which were removed from the table
+	 * 
+	 * @return the removed parameters
+	 */
+	public Set<Parameter> getRemovedParameters() {
+		return Collections.unmodifiableSet(removedParameters);
+	}
+
+	/**
+	 * Gets the distance changes of the modified parameters. Added parameters
+	 * have a previous value of 0 and removed parameters a new value of 0.
+	 * 
+	 * @return the distance changes of the modified parameters
+	 */
+	public Map<Parameter, DistanceChange> getChangedParameters() {
+		return Collections.unmodifiableMap(changedParameters);
+	}
+
+	/**
+	 * Tells if the table was not modified
+	 * 
+	 * @return true if there are no changes, false otherwise
+	 */
+	public boolean isEmpty() {
+		return changedParameters.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return "New: " + newParameters + " Removed: " + removedParameters + " Changed: " + changedParameters;
+	}
+}
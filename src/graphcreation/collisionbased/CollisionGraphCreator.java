@@ -32,6 +32,7 @@ import graphcreation.collisionbased.sdg.sdgtaxonomy.IndirectRoute;
 import graphcreation.collisionbased.sdg.sdgtaxonomy.SDGTaxonomy;
 import graphcreation.services.Service;
 import graphcreation.services.ServiceList;
+import graphcreation.util.ParameterCounter;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -85,7 +86,7 @@ public class CollisionGraphCreator implements CommunicationLayer, ParameterSearc
 	private final ParameterSearch pSearch;
 
 	// parameter references count
-	private final Map<Parameter, Integer> pReferences = new HashMap<Parameter, Integer>();
+	private final ParameterCounter pReferences = new ParameterCounter();
 
 	// listener for upper layers
 	private final MulticastMessageListener mMessageListener;
@@ -166,7 +167,8 @@ public class CollisionGraphCreator implements CommunicationLayer, ParameterSearc
 	public void forwardMessage(final BroadcastMessage payload, final Set<Service> destinations, final boolean directBroadcast, final boolean multiplePaths) {		
 		logger.debug("Peer " + peer.getPeerID() + " forwarding " + payload.getType() + " to " + destinations);
 	
-		final int maxPaths = multiplePaths?MAX_PATHS:1;
+		// redundant paths are not used while the multicast queue is congested
+		final int maxPaths = (multiplePaths && !pSearch.isCongested())?MAX_PATHS:1;
 		final Map<PeerID, List<Route>> routes = obtainMaxPaths(destinations, maxPaths);
 		logger.trace("Peer " + peer.getPeerID() + " routes " + routes);
 		for (final Entry<PeerID, List<Route>> entry : routes.entrySet()) {
@@ -230,53 +232,51 @@ public class CollisionGraphCreator implements CommunicationLayer, ParameterSearc
 		final Map<Service, Set<ServiceDistance>> newSuccessors = new HashMap<Service, Set<ServiceDistance>>();
 		final Map<Service, Set<ServiceDistance>> newAncestors = new HashMap<Service, Set<ServiceDistance>>();
 		
-		for (final Service addedService : addedServices) {
-			if (addedService.isLocal(peer.getPeerID()) && !sdg.contains(addedService)) {
-				// Increment parameter references
-				for (final Parameter parameter : addedService.getParameters()) {
-					incReference(parameter);
-	
-					// Is the first addition of the parameter
-					if (refCount(parameter) == 1)
-						pSearch.addLocalParameter(parameter);
-				}
-	
-				synchronized (sdg) {
-					sdg.addLocalService(addedService);
-					
-					final Set<ServiceDistance> successors = sdg.getSuccessors(addedService);
-					if (!successors.isEmpty())
-						newSuccessors.put(addedService, successors);
-
-					final Set<ServiceDistance> ancestors = sdg.getAncestors(addedService);
-					if (!ancestors.isEmpty())
-						newAncestors.put(addedService, ancestors);
-					
-					for (final ServiceDistance localSuccessor : sdg.getLocalSuccessors(addedService)) {
-						if (!newAncestors.containsKey(localSuccessor.getService()))
-							newAncestors.put(localSuccessor.getService(), new HashSet<ServiceDistance>());
-						newAncestors.get(localSuccessor.getService()).add(new ServiceDistance(addedService, new Integer(0)));
-					}
-					
-					for (final ServiceDistance localAncestor : sdg.getLocalAncestors(addedService)) {
-						if (!newSuccessors.containsKey(localAncestor.getService()))
-							newSuccessors.put(localAncestor.getService(), new HashSet<ServiceDistance>());
-						newSuccessors.get(localAncestor.getService()).add(new ServiceDistance(addedService, new Integer(0)));
-					}
-				}
+		final Set<Service> newServices = new HashSet<Service>();
+		synchronized (sdg) {
+			for (final Service addedService : addedServices)
+				if (addedService.isLocal(peer.getPeerID()) && !sdg.contains(addedService))
+					newServices.add(addedService);
+		}
+		
+		// Increment parameter references
+		for (final Service newService : newServices)
+			for (final Parameter parameter : newService.getParameters())
+				// Is the first addition of the parameter
+				if (pReferences.increment(parameter) == 1)
+					pSearch.addLocalParameter(parameter);
+		
+		synchronized (sdg) {
+			// all services are linked before obtaining any connection
+			sdg.addLocalServices(newServices);
+			
+			for (final Service newService : newServices) {
+				final Set<ServiceDistance> successors = sdg.getSuccessors(newService);
+				if (!successors.isEmpty())
+					newSuccessors.put(newService, successors);
+				
+				final Set<ServiceDistance> ancestors = sdg.getAncestors(newService);
+				if (!ancestors.isEmpty())
+					newAncestors.put(newService, ancestors);
+				
+				// local services connected with the new one are also notified
+				for (final ServiceDistance successor : successors)
+					if (successor.getService().isLocal(peer.getPeerID()))
+						addConnection(newAncestors, successor.getService(), newService);
+				
+				for (final ServiceDistance ancestor : ancestors)
+					if (ancestor.getService().isLocal(peer.getPeerID()))
+						addConnection(newSuccessors, ancestor.getService(), newService);
 			}
 		}
 		
 		synchronized (sdg) {
 			for (final Service removedService : removedServices)
 				if (containsLocalService(removedService)) {
-					for (final Parameter parameter : removedService.getParameters()) {
-						decReference(parameter);
-	
+					for (final Parameter parameter : removedService.getParameters())
 						// Only remove parameter if reference count is 0
-						if (refCount(parameter) == 0)
+						if (pReferences.decrement(parameter) == 0)
 							pSearch.removeLocalParameter(parameter);
-					}
 	
 					sdg.removeLocalService(removedService);
 				}
@@ -291,27 +291,10 @@ public class CollisionGraphCreator implements CommunicationLayer, ParameterSearc
 			graphCreationListener.newAncestors(newAncestors);
 	}
 
-	private void incReference(final Parameter p) {
-		if (!pReferences.containsKey(p))
-			pReferences.put(p, Integer.valueOf(0));
-
-		final Integer currentValue = pReferences.get(p);
-		pReferences.put(p, Integer.valueOf(currentValue.intValue() + 1));
-	}
-
-	private int refCount(final Parameter p) {
-		if (!(pReferences.containsKey(p)))
-			return 0;
-
-		return pReferences.get(p).intValue();
-	}
-
-	private void decReference(final Parameter p) {
-		if (!pReferences.containsKey(p))
-			return;
-
-		final Integer currentValue = pReferences.get(p);
-		pReferences.put(p, Integer.valueOf(currentValue.intValue() - 1));
+	private void addConnection(final Map<Service, Set<ServiceDistance>> connections, final Service localService, final Service newService) {
+		if (!connections.containsKey(localService))
+			connections.put(localService, new HashSet<ServiceDistance>());
+		connections.get(localService).add(new ServiceDistance(newService, new Integer(0)));
 	}
 
 	/*
@@ -606,5 +589,7 @@ public class CollisionGraphCreator implements CommunicationLayer, ParameterSearc
 	@Override
 	public void neighborsChanged(Set<PeerID> newNeighbors, Set<PeerID> lostNeighbors) {
 		//collisionNode.neighborsChanged(lostNeighbors);
+		if (!lostNeighbors.isEmpty())
+			collisionNode.neighborsLost();
 	}
 }
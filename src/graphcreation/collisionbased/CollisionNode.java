@@ -24,6 +24,7 @@ import graphcreation.GraphCreator;
 import graphcreation.GraphCreator.GraphType;
 import graphcreation.collisionbased.collisiondetector.Collision;
 import graphcreation.collisionbased.collisiondetector.CollisionDetector;
+import graphcreation.collisionbased.collisiondetector.CollisionIndex;
 import graphcreation.collisionbased.connectionManager.Connection;
 import graphcreation.collisionbased.connectionManager.ConnectionsManager;
 import graphcreation.collisionbased.message.CollisionResponseMessage;
@@ -52,6 +53,7 @@ import peer.ReliableBroadcastPeer;
 import peer.message.BroadcastMessage;
 import peer.peerid.PeerID;
 import peer.peerid.PeerIDSet;
+import taxonomy.ConceptAncestors;
 import taxonomy.parameter.InputParameter;
 import taxonomy.parameter.OutputParameter;
 import taxonomy.parameter.Parameter;
@@ -74,11 +76,21 @@ class CollisionNode {
 	// the connections manager
 	private final ConnectionsManager cManager;
 	
+	// ancestors of the taxonomy concepts used for collision detection
+	private final ConceptAncestors ancestors;
+	
+	// index of the representative parameters of the table. The table is
+	// empty when created and the index is updated with each notified table
+	// change
+	private final CollisionIndex tableIndex;
+	
 	public CollisionNode(final ReliableBroadcastPeer peer, final GraphCreator gCreator, final GraphCreationListener graphCreationListener, final GraphType graphType) {
 		this.peer = peer;
 		this.gCreator = gCreator;
 		this.graphCreationListener = graphCreationListener;
 		this.cManager = new ConnectionsManager(gCreator.getPSearch().getDisseminationLayer().getTaxonomy(), graphType);
+		this.ancestors = new ConceptAncestors(gCreator.getPSearch().getDisseminationLayer().getTaxonomy());
+		this.tableIndex = new CollisionIndex(ancestors);
 	}
 	
 	private void updateNeighborInhibitions(final Inhibition inhibition) {
@@ -152,13 +164,11 @@ class CollisionNode {
 	}
 
 	private Set<Collision> getChangedParameterCollisions(final Map<Parameter, DistanceChange> changedParameters, final Set<Parameter> tableAdditions) {
-		final Set<Collision> collisions = new HashSet<Collision>();
 		final Set<Parameter> validParameters = getValidParameters(tableAdditions, changedParameters);
-		if (!validParameters.isEmpty()) {
+		if (!validParameters.isEmpty())
 			logger.debug("Peer " + peer.getPeerID() + " checking collisions for " + validParameters);
-			collisions.addAll(checkParametersCollisions(validParameters));
-		}
-		return collisions;
+		// the index is updated even if there are no parameters to check
+		return checkParametersCollisions(validParameters, changedParameters);
 	}
 
 	private void checkRemovedParameters(final Set<Parameter> removedParameters) {
@@ -222,10 +232,34 @@ class CollisionNode {
 		gCreator.getPSearch().sendSearchMessage(searchedParameters, null, SearchType.Generic);
 	}	
 
-	// checks for new collisions taking into account the new added parameters.
+	// checks for new collisions taking into account the new added parameters
+	// and updates the table index with the changes. The changed parameters
+	// are the representative ones of the table, those which appeared have a
+	// previous distance of 0 and those which disappeared a new distance of 0.
 	// Returns the list of detected collisions
-	private Set<Collision> checkParametersCollisions(final Set<Parameter> addedParameters) {
-		return CollisionDetector.getParametersColliding(addedParameters, gCreator.getPSearch().getDisseminationLayer().getParameters(), false, gCreator.getPSearch().getDisseminationLayer().getTaxonomy());
+	private Set<Collision> checkParametersCollisions(final Set<Parameter> checkedParameters, final Map<Parameter, DistanceChange> changedParameters) {
+		final Set<Parameter> appearedParameters = new HashSet<Parameter>();
+		final Set<Parameter> disappearedParameters = new HashSet<Parameter>();
+		for (final Entry<Parameter, DistanceChange> entry : changedParameters.entrySet()) {
+			if (entry.getValue().getNewValue() == 0)
+				disappearedParameters.add(entry.getKey());
+			else if (entry.getValue().getPreviousValue() == 0)
+				appearedParameters.add(entry.getKey());
+		}
+		
+		synchronized (tableIndex) {
+			return CollisionDetector.getParametersColliding(checkedParameters, appearedParameters, disappearedParameters, tableIndex);
+		}
+	}
+	
+	// rebuilds the index from the table. Removals caused by lost neighbors
+	// are not notified as table changes
+	public void neighborsLost() {
+		synchronized (tableIndex) {
+			tableIndex.clear();
+			for (final Parameter p : gCreator.getPSearch().getDisseminationLayer().getParameters())
+				tableIndex.add(p);
+		}
 	}
 	
 	public void processRemovedServicesMessage(final RemovedServicesMessage removedServicesMessage) {
@@ -19,13 +19,11 @@
 
 package graphcreation.collisionbased.collisiondetector;
 
-import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 
+import taxonomy.ConceptAncestors;
 import taxonomy.Taxonomy;
-import taxonomy.parameter.InputParameter;
 import taxonomy.parameter.OutputParameter;
 import taxonomy.parameter.Parameter;
 
@@ -33,57 +31,61 @@ public class CollisionDetector {
 
 	// gets the parameters which are colliding in the current node
 	public static Set<Collision> getParametersColliding(final Set<Parameter> newParameters, final Set<Parameter> allParameters, final boolean checkAddedParameters, final Taxonomy taxonomy) {
-		// Get old parameters (all parameters - new parameters)
-		final Set<Parameter> oldParameters = new HashSet<Parameter>(allParameters);
-		oldParameters.removeAll(newParameters);
+		return getParametersColliding(newParameters, allParameters, checkAddedParameters, new ConceptAncestors(taxonomy));
+	}
 
-		// Filter parameters using I/O attribute
-		final Set<OutputParameter> newOutputParams = getOutputParams(newParameters);
-		final Set<InputParameter> newInputParams = getInputParams(newParameters);
-		final Set<OutputParameter> oldOutputParams = getOutputParams(oldParameters);
-		final Set<InputParameter> oldInputParams = getInputParams(oldParameters);
+	// gets the parameters which are colliding in the current node using the
+	// passed ancestors of the taxonomy concepts
+	public static Set<Collision> getParametersColliding(final Set<Parameter> newParameters, final Set<Parameter> allParameters, final boolean checkAddedParameters, final ConceptAncestors ancestors) {
+		// Index old parameters (all parameters - new parameters)
+		final CollisionIndex oldParameters = new CollisionIndex(ancestors);
+		for (final Parameter p : allParameters)
+			if (!newParameters.contains(p))
+				oldParameters.add(p);
 
 		// Detect collisions
-		final Set<Collision> collisions = new HashSet<Collision>();
-		// Among new output parameters and old input parameters
-		collisions.addAll(computeCollisions(newOutputParams, oldInputParams, taxonomy));
-		// Among old output parameters and new input parameters
-		collisions.addAll(computeCollisions(oldOutputParams, newInputParams, taxonomy));
+		final Set<Collision> collisions = getParametersColliding(newParameters, oldParameters);
 
-		if (checkAddedParameters)
+		if (checkAddedParameters) {
 			// Among new output parameters and new input parameters
-			collisions.addAll(computeCollisions(newOutputParams, newInputParams, taxonomy));
+			final CollisionIndex addedParameters = new CollisionIndex(ancestors);
+			for (final Parameter p : newParameters)
+				addedParameters.add(p);
+
+			for (final Parameter p : newParameters)
+				if (p instanceof OutputParameter)
+					collisions.addAll(addedParameters.getCollisions(p));
+		}
 
 		return collisions;
 	}
 
-	// Gets those parameters which are input parameters
-	private static Set<InputParameter> getInputParams(final Set<Parameter> parameters) {
-		final Set<InputParameter> inputParameters = new HashSet<InputParameter>();
-		for (final Parameter p : parameters)
-			if (p instanceof InputParameter)
-				inputParameters.add((InputParameter) p);
-		return inputParameters;
-	}
+	// updates the index of the table parameters with the added and removed
+	// ones and gets the collisions of the checked parameters with the rest of
+	// the table. The checked parameters must be contained in the table after
+	// the update. Only the changed parameters are visited.
+	public static Set<Collision> getParametersColliding(final Set<Parameter> checkedParameters, final Set<Parameter> addedParameters, final Set<Parameter> removedParameters, final CollisionIndex tableParameters) {
+		for (final Parameter p : removedParameters)
+			tableParameters.remove(p);
+		for (final Parameter p : addedParameters)
+			tableParameters.add(p);
 
-	// Gets those parameters which are output parameters
-	private static Set<OutputParameter> getOutputParams(final Set<Parameter> parameters) {
-		final Set<OutputParameter> outputParameters = new HashSet<OutputParameter>();
-		for (final Parameter p : parameters)
-			if (p instanceof OutputParameter)
-				outputParameters.add((OutputParameter) p);
-		return outputParameters;
+		// checked parameters are excluded while their collisions are detected
+		for (final Parameter p : checkedParameters)
+			tableParameters.remove(p);
+		final Set<Collision> collisions = getParametersColliding(checkedParameters, tableParameters);
+		for (final Parameter p : checkedParameters)
+			tableParameters.add(p);
+
+		return collisions;
 	}
 
-	// Obtains the collisions among the passed parameters
-	private static List<Collision> computeCollisions(final Set<OutputParameter> outputParameters, final Set<InputParameter> inputParameters, final Taxonomy taxonomy) {
-		final List<Collision> collisions = new ArrayList<Collision>();
-		for (final OutputParameter output : outputParameters)
-			for (final InputParameter input : inputParameters)
-				// If a parameters are related through taxonomy a collision is
-				// detected
-				if (taxonomy.areRelated(input.getID(), output.getID()))
-					collisions.add(new Collision(input, output));
+	// Among new output parameters and old input parameters and among old
+	// output parameters and new input parameters
+	private static Set<Collision> getParametersColliding(final Set<Parameter> newParameters, final CollisionIndex oldParameters) {
+		final Set<Collision> collisions = new HashSet<Collision>();
+		for (final Parameter p : newParameters)
+			collisions.addAll(oldParameters.getCollisions(p));
 		return collisions;
 	}
 }
@@ -0,0 +1,173 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package graphcreation.collisionbased.collisiondetector;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import taxonomy.ConceptAncestors;
+import taxonomy.parameter.InputParameter;
+import taxonomy.parameter.OutputParameter;
+import taxonomy.parameter.Parameter;
+
+/**
+ * Indexes parameters by the path from their concept to the taxonomy root.
+ * Two parameters are related if one of them subsumes the other, i.e. if
+ * the concept of one parameter is in the root path of the other. Therefore,
+ * the parameters related with a concept are those placed under each
+ * concept of its root path plus those whose root path contains the concept.
+ * Both sets are obtained with one lookup per ancestor, so detecting the
+ * collisions of a parameter does not depend on the number of indexed
+ * parameters but on the depth of its concept and the number of collisions.
+ * 
+ * @author Unai Aguilera (unai.aguilera@gmail.com)
+ * 
+ */
+public class CollisionIndex {
+
+	private final ConceptAncestors ancestors;
+
+	// parameters indexed by their concept
+	private final Map<Short, InputParameter> inputs = new HashMap<Short, InputParameter>();
+	private final Map<Short, OutputParameter> outputs = new HashMap<Short, OutputParameter>();
+
+	// parameters indexed by each concept of their root path
+	private final Map<Short, Set<InputParameter>> inputsUnder = new HashMap<Short, Set<InputParameter>>();
+	private final Map<Short, Set<OutputParameter>> outputsUnder = new HashMap<Short, Set<OutputParameter>>();
+
+	/**
+	 * Constructor of the class
+	 * 
+	 * @param ancestors
+	 *            the ancestors of the concepts in the used taxonomy
+	 */
+	public CollisionIndex(final ConceptAncestors ancestors) {
+		this.ancestors = ancestors;
+	}
+
+	/**
+	 * Adds the passed parameter to the index
+	 * 
+	 * @param p
+	 *            the parameter to add
+	 */
+	public void add(final Parameter p) {
+		final List<Short> rootPath = ancestors.getConcepts(p.getID());
+		if (p instanceof InputParameter) {
+			inputs.put(rootPath.get(0), (InputParameter) p);
+			for (final Short concept : rootPath)
+				add(inputsUnder, concept, (InputParameter) p);
+		} else if (p instanceof OutputParameter) {
+			outputs.put(rootPath.get(0), (OutputParameter) p);
+			for (final Short concept : rootPath)
+				add(outputsUnder, concept, (OutputParameter) p);
+		}
+	}
+
+	/**
+	 * Removes the passed parameter from the index
+	 * 
+	 * @param p
+	 *            the parameter to remove
+	 */
+	public void remove(final Parameter p) {
+		final List<Short> rootPath = ancestors.getConcepts(p.getID());
+		if (p instanceof InputParameter) {
+			if (inputs.remove(rootPath.get(0)) != null)
+				for (final Short concept : rootPath)
+					remove(inputsUnder, concept, (InputParameter) p);
+		} else if (p instanceof OutputParameter) {
+			if (outputs.remove(rootPath.get(0)) != null)
+				for (final Short concept : rootPath)
+					remove(outputsUnder, concept, (OutputParameter) p);
+		}
+	}
+
+	/**
+	 * Removes all the indexed parameters
+	 */
+	public void clear() {
+		inputs.clear();
+		outputs.clear();
+		inputsUnder.clear();
+		outputsUnder.clear();
+	}
+
+	/**
+	 * Gets the collisions of the passed parameter with the indexed ones. An
+	 * input parameter collides with the related output parameters and
+	 * vice versa.
+	 * 
+	 * @param p
+	 *            the parameter whose collisions are obtained
+	 * @return the collisions of the parameter
+	 */
+	public Set<Collision> getCollisions(final Parameter p) {
+		final Set<Collision> collisions = new HashSet<Collision>();
+		final List<Short> rootPath = ancestors.getConcepts(p.getID());
+		if (p instanceof InputParameter) {
+			final InputParameter input = (InputParameter) p;
+			for (final OutputParameter output : getRelated(rootPath, outputs, outputsUnder))
+				collisions.add(new Collision(input, output));
+		} else if (p instanceof OutputParameter) {
+			final OutputParameter output = (OutputParameter) p;
+			for (final InputParameter input : getRelated(rootPath, inputs, inputsUnder))
+				collisions.add(new Collision(input, output));
+		}
+		return collisions;
+	}
+
+	// gets the parameters subsumed by the first concept of the root path and
+	// those subsuming it
+	private static <P extends Parameter> Set<P> getRelated(final List<Short> rootPath, final Map<Short, P> parameters, final Map<Short, Set<P>> parametersUnder) {
+		final Set<P> related = new HashSet<P>();
+		final Set<P> subsumed = parametersUnder.get(rootPath.get(0));
+		if (subsumed != null)
+			related.addAll(subsumed);
+
+		for (int i = 1; i < rootPath.size(); i++) {
+			final P ancestor = parameters.get(rootPath.get(i));
+			if (ancestor != null)
+				related.add(ancestor);
+		}
+		return related;
+	}
+
+	private static <P> void add(final Map<Short, Set<P>> index, final Short concept, final P p) {
+		Set<P> parameters = index.get(concept);
+		if (parameters == null) {
+			parameters = new HashSet<P>();
+			index.put(concept, parameters);
+		}
+		parameters.add(p);
+	}
+
+	private static <P> void remove(final Map<Short, Set<P>> index, final Short concept, final P p) {
+		final Set<P> parameters = index.get(concept);
+		if (parameters != null) {
+			parameters.remove(p);
+			if (parameters.isEmpty())
+				index.remove(concept);
+		}
+	}
+}
@@ -28,7 +28,6 @@ import graphsearch.util.Utility;
 
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
@@ -47,11 +46,11 @@ public class Connection {
 
 	// the responses received from those peers with inputs compatible with the
 	// collision input
-	private final Set<CollisionResponseMessage> inputResponses = new HashSet<CollisionResponseMessage>();
+	private final Responses inputResponses = new Responses();
 
 	// the responses received from those peers with outputs compatible with the
 	// collision output
-	private final Set<CollisionResponseMessage> outputResponses = new HashSet<CollisionResponseMessage>();
+	private final Responses outputResponses = new Responses();
 
 	// the taxonomy used during management
 	private final Taxonomy taxonomy;
@@ -180,7 +179,7 @@ public class Connection {
 
 	private Set<CollisionResponseMessage> getConnectedOutputResponses(final CollisionResponseMessage inputResponse) {
 		final Set<CollisionResponseMessage> connectedOutputResponses = new HashSet<CollisionResponseMessage>();
-		for (final CollisionResponseMessage outputResponse : outputResponses)
+		for (final CollisionResponseMessage outputResponse : outputResponses.getAll())
 			for (final OutputParameter p : outputResponse.getOutputParameters())
 				if (isSubsumedByAny(p, inputResponse.getInputParameters())) {
 					connectedOutputResponses.add(outputResponse);
@@ -191,7 +190,7 @@ public class Connection {
 
 	private Set<CollisionResponseMessage> getConnectedInputResponses(final CollisionResponseMessage outputResponse) {
 		final Set<CollisionResponseMessage> connectedInputResponses = new HashSet<CollisionResponseMessage>();
-		for (final CollisionResponseMessage inputResponse : inputResponses)
+		for (final CollisionResponseMessage inputResponse : inputResponses.getAll())
 			for (final OutputParameter p : outputResponse.getOutputParameters())
 				if (isSubsumedByAny(p, inputResponse.getInputParameters())) {
 					connectedInputResponses.add(inputResponse);
@@ -225,7 +224,7 @@ public class Connection {
 	public Set<ServiceDistance> getInputServicesTable() {
 		final Set<ServiceDistance> inputServicesTable = new HashSet<ServiceDistance>();
 
-		for (final CollisionResponseMessage collisionResponseMessage : inputResponses) {
+		for (final CollisionResponseMessage collisionResponseMessage : inputResponses.getAll()) {
 			for (final Service s : collisionResponseMessage.getServices())
 				inputServicesTable.add(new ServiceDistance(s, collisionResponseMessage.getDistance(s)));
 		}
@@ -242,7 +241,7 @@ public class Connection {
 	public Set<ServiceDistance> getOutputServicesTable() {
 		final Set<ServiceDistance> outputServicesTable = new HashSet<ServiceDistance>();
 
-		for (final CollisionResponseMessage collisionResponseMessage : outputResponses) {
+		for (final CollisionResponseMessage collisionResponseMessage : outputResponses.getAll()) {
 			for (final Service s : collisionResponseMessage.getServices())
 				outputServicesTable.add(new ServiceDistance(s, collisionResponseMessage.getDistance(s)));
 		}
@@ -311,34 +310,49 @@ public class Connection {
 
 	// removes the specified parameters from responses coming from the passed
 	// source. Only for input responses.
-	private boolean removeServices(final Set<Service> services, final PeerID source, final Set<CollisionResponseMessage> responses) {
+	private boolean removeServices(final Set<Service> services, final PeerID source, final Responses responses) {
 		boolean removed = false;
-		for (final Iterator<CollisionResponseMessage> it = responses.iterator(); it.hasNext();) {
-			final CollisionResponseMessage response = it.next();
-			if (response.getSource().equals(source)) {
-				removed = response.removeServices(services);
-				if (response.getServices().isEmpty())
-					it.remove();
-			}
+		for (final CollisionResponseMessage response : responses.getFrom(source)) {
+			removed = response.removeServices(services);
+			if (response.getServices().isEmpty())
+				responses.remove(response);
 		}
 		return removed;
 	}
 
 	// removes the responses identified by the passed routes
-	private Set<Service> removeResponses(final Set<PeerID> fromPeers, final Set<CollisionResponseMessage> responses) {
+	private Set<Service> removeResponses(final Set<PeerID> fromPeers, final Responses responses) {
 		final Set<Service> lostServices = new HashSet<Service>();
-		for (final Iterator<CollisionResponseMessage> it = responses.iterator(); it.hasNext();) {
-			final CollisionResponseMessage response = it.next();
-			if (fromPeers.contains(response.getSource())) {
-				it.remove();
-
+		for (final PeerID peer : fromPeers)
+			for (final CollisionResponseMessage response : responses.removeFrom(peer))
 				// Add invalid services
 				lostServices.addAll(response.getServices());
-			}
-		}
 		return lostServices;
 	}
 
+	/**
+	 * Checks if the connection contains responses from the passed peer
+	 * 
+	 * @param peer
+	 *            the peer to check
+	 * @return true if some input or output response comes from the peer,
+	 *         false otherwise
+	 */
+	public boolean hasResponsesFrom(final PeerID peer) {
+		return inputResponses.containsFrom(peer) || outputResponses.containsFrom(peer);
+	}
+
+	/**
+	 * Gets the peers which sent the responses contained by this connection
+	 * 
+	 * @return the peers which sent input or output responses
+	 */
+	public Set<PeerID> getResponders() {
+		final Set<PeerID> responders = new HashSet<PeerID>(inputResponses.getSources());
+		responders.addAll(outputResponses.getSources());
+		return responders;
+	}
+
 	public Map<PeerIDSet, Set<Service>> getAllNotifications() {
 		final Map<PeerIDSet, Set<Service>> notifications = new HashMap<PeerIDSet, Set<Service>>();
 
@@ -21,42 +21,86 @@ package graphcreation.collisionbased.connectionManager;
 
 import graphcreation.GraphCreator.GraphType;
 import graphcreation.collisionbased.collisiondetector.Collision;
+import graphcreation.collisionbased.message.CollisionResponseMessage;
 import graphcreation.services.Service;
 
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
 import multicast.search.message.SearchResponseMessage;
-import peer.conditionregister.ConditionRegister;
 import peer.peerid.PeerID;
 import peer.peerid.PeerIDSet;
+import taxonomy.ConceptAncestors;
 import taxonomy.Taxonomy;
+import taxonomy.parameter.InputParameter;
+import taxonomy.parameter.OutputParameter;
 import taxonomy.parameter.Parameter;
 
 public class ConnectionsManager {
 
 	// collisions detected by the current node
-	private final Set<Connection> detectedConnections = new HashSet<Connection>();
+	private final Map<Collision, Connection> detectedConnections = new HashMap<Collision, Connection>();
 	
 	private static final long CLEAN_INVALID_TIME = 60000;
 	
-	private final ConditionRegister<Connection> invalidConnections = new ConditionRegister<Connection>(CLEAN_INVALID_TIME);
+	private static class InvalidConnection {
+		
+		private final Connection connection;
+		private final long timestamp;
+		
+		public InvalidConnection(final Connection connection, final long timestamp) {
+			this.connection = connection;
+			this.timestamp = timestamp;
+		}
+	}
+	
+	// connections invalidated by the removal of their parameters indexed by
+	// their collision and kept in invalidation order. They are removed,
+	// together with their entries in the peer index, once they expire
+	private final Map<Collision, InvalidConnection> invalidConnections = new LinkedHashMap<Collision, InvalidConnection>();
+	
+	// the time invalid connections are kept
+	private final long invalidExpiration;
+	
+	// detected connections indexed by the input and the output of their
+	// collision
+	private final Map<Short, Set<Connection>> connectionsByInput = new HashMap<Short, Set<Connection>>();
+	private final Map<Short, Set<Connection>> connectionsByOutput = new HashMap<Short, Set<Connection>>();
+	
+	// collisions of those connections containing responses from each peer
+	private final Map<PeerID, Set<Collision>> collisionsByPeer = new HashMap<PeerID, Set<Collision>>();
 	
 	private final GraphType graphType;
 
 	// the taxonomy used during management
 	private final Taxonomy taxonomy;
+	
+	// ancestors of the concepts in the used taxonomy
+	private final ConceptAncestors ancestors;
 
 	/**
 	 * Constructor of the connections manager
 	 */
 	public ConnectionsManager(final Taxonomy taxonomy, final GraphType graphType) {
+		this(taxonomy, graphType, CLEAN_INVALID_TIME);
+	}
+	
+	/**
+	 * Constructor of the connections manager
+	 * 
+	 * @param invalidExpiration
+	 *            the time (in milliseconds) invalid connections are kept
+	 */
+	public ConnectionsManager(final Taxonomy taxonomy, final GraphType graphType, final long invalidExpiration) {
 		this.taxonomy = taxonomy;
 		this.graphType = graphType;
+		this.ancestors = new ConceptAncestors(taxonomy);
+		this.invalidExpiration = invalidExpiration;
 	}
 
 	/**
@@ -68,7 +112,12 @@ public class ConnectionsManager {
 	 * @param
 	 */
 	public void addCollision(final Collision collision) {
-		detectedConnections.add(new Connection(collision, taxonomy, graphType));
+		if (!detectedConnections.containsKey(collision)) {
+			final Connection connection = new Connection(collision, taxonomy, graphType);
+			detectedConnections.put(collision, connection);
+			add(connectionsByInput, Short.valueOf(collision.getInput().getID()), connection);
+			add(connectionsByOutput, Short.valueOf(collision.getOutput().getID()), connection);
+		}
 	}
 
 	/**
@@ -79,16 +128,50 @@ public class ConnectionsManager {
 	 */
 	public Map<Connection, Set<PeerID>> updateConnections(final SearchResponseMessage searchResponseMessage) {
 		final Map<Connection, Set<PeerID>> updatedConnections = new HashMap<Connection, Set<PeerID>>();
-		for (final Connection connection : detectedConnections) {
+		if (!(searchResponseMessage.getPayload() instanceof CollisionResponseMessage))
+			return updatedConnections;
+		
+		removeExpiredConnections();
+		
+		final PeerID source = ((CollisionResponseMessage) searchResponseMessage.getPayload()).getSource();
+		for (final Connection connection : getAffectedConnections(searchResponseMessage.getParameters())) {
 			final Set<PeerID> notifiedPeers = connection.addSearchResponse(searchResponseMessage);
 			if (!notifiedPeers.isEmpty())
 				updatedConnections.put(connection, notifiedPeers);
+			
+			if (connection.hasResponsesFrom(source))
+				add(collisionsByPeer, source, connection.getCollision());
 		}
 		return updatedConnections;
 	}
+	
+	// gets the detected connections whose collision subsumes any of the
+	// passed parameters
+	private Set<Connection> getAffectedConnections(final Set<Parameter> parameters) {
+		final Set<Connection> connections = new HashSet<Connection>();
+		for (final Parameter p : parameters) {
+			final Map<Short, Set<Connection>> index;
+			if (p instanceof InputParameter)
+				index = connectionsByInput;
+			else if (p instanceof OutputParameter)
+				index = connectionsByOutput;
+			else
+				continue;
+			
+			for (final Short concept : ancestors.getConcepts(p.getID())) {
+				final Set<Connection> conceptConnections = index.get(concept);
+				if (conceptConnections != null)
+					connections.addAll(conceptConnections);
+			}
+		}
+		return connections;
+	}
 
 	/**
-	 * Removes those responses identified by the passed route identifiers
+	 * Removes those responses identified by the passed route identifiers.
+	 * Only the connections containing responses from the lost peers are
+	 * affected and they are removed if they are no longer connected. Other
+	 * connections which are still waiting for responses are kept.
 	 * 
 	 * @param lostRoutes
 	 *            the routes which have been lost
@@ -97,16 +180,25 @@ public class ConnectionsManager {
 	public Map<PeerIDSet, Set<Service>> removeResponses(final Set<PeerID> lostDestinations) {
 		final Map<PeerIDSet, Set<Service>> notifications = new HashMap<PeerIDSet, Set<Service>>();
 		final Set<Connection> removedConnections = new HashSet<Connection>(); 
+		
+		removeExpiredConnections();
+		
+		// only those connections with responses from the lost peers are
+		// affected
+		final Set<Connection> affectedConnections = new HashSet<Connection>();
+		for (final PeerID lostDestination : lostDestinations) {
+			final Set<Collision> collisions = collisionsByPeer.remove(lostDestination);
+			if (collisions != null)
+				for (final Collision collision : collisions) {
+					final Connection connection = getConnection(collision);
+					if (connection != null)
+						affectedConnections.add(connection);
+				}
+		}
 				
-		for (Iterator<Connection> it = getAllConnections().iterator(); it.hasNext(); ) {
-			Connection connection = it.next();
+		for (final Connection connection : affectedConnections) {
 			final Map<PeerIDSet, Set<Service>> partialNotifications = connection.removeResponses(lostDestinations);
-			for (final Entry<PeerIDSet, Set<Service>> entry : partialNotifications.entrySet()) {
-				final PeerIDSet peers = entry.getKey();
-				if (!notifications.containsKey(peers))
-					notifications.put(peers, new HashSet<Service>());
-				notifications.get(peers).addAll(entry.getValue());
-			}
+			addNotifications(notifications, partialNotifications);
 			
 			if (!connection.isConnected())
 				removedConnections.add(connection);
@@ -119,8 +211,15 @@ public class ConnectionsManager {
 	
 	private void removeConnections(final Set<Connection> removedConnections) {
 		for (final Connection removedConnection : removedConnections) {
-			invalidConnections.remove(removedConnection);
-			detectedConnections.remove(removedConnection);
+			final Collision collision = removedConnection.getCollision();
+			invalidConnections.remove(collision);
+			
+			final Connection detectedConnection = detectedConnections.remove(collision);
+			if (detectedConnection != null)
+				unindex(detectedConnection);
+			
+			for (final PeerID responder : removedConnection.getResponders())
+				remove(collisionsByPeer, responder, collision);
 		}
 	}
 
@@ -136,23 +235,61 @@ public class ConnectionsManager {
 	public Map<PeerIDSet, Set<Service>> removeServices(final Set<Service> removedServices, final PeerID source) {
 		final Map<PeerIDSet, Set<Service>> notifications = new HashMap<PeerIDSet, Set<Service>>();
 		
-		for (final Connection connection : getAllConnections()) {
-			final Map<PeerIDSet, Set<Service>> partialNotifications = connection.removeServices(removedServices, source);
-			for (final Entry<PeerIDSet, Set<Service>> entry : partialNotifications.entrySet()) {
-				final PeerIDSet peers = entry.getKey();
-				if (!notifications.containsKey(peers))
-					notifications.put(peers, new HashSet<Service>());
-				notifications.get(peers).addAll(entry.getValue());
+		removeExpiredConnections();
+		
+		final Set<Collision> collisions = collisionsByPeer.get(source);
+		if (collisions == null)
+			return notifications;
+		
+		for (final Iterator<Collision> it = collisions.iterator(); it.hasNext(); ) {
+			final Connection connection = getConnection(it.next());
+			if (connection != null) {
+				final Map<PeerIDSet, Set<Service>> partialNotifications = connection.removeServices(removedServices, source);
+				addNotifications(notifications, partialNotifications);
 			}
+			
+			if (connection == null || !connection.hasResponsesFrom(source))
+				it.remove();
 		}
+		
+		if (collisions.isEmpty())
+			collisionsByPeer.remove(source);
+		
 		return notifications;
 	}
-
-	private Set<Connection> getAllConnections() {
-		//include valid & invalid connections
-		final Set<Connection> checkedConnections = new HashSet<Connection>(detectedConnections);
-		checkedConnections.addAll(invalidConnections.getEntries());
-		return checkedConnections;
+	
+	// gets the valid or invalid connection of the passed collision. Valid
+	// connections are preferred.
+	private Connection getConnection(final Collision collision) {
+		final Connection connection = detectedConnections.get(collision);
+		if (connection != null)
+			return connection;
+		
+		final InvalidConnection invalidConnection = invalidConnections.get(collision);
+		if (invalidConnection != null)
+			return invalidConnection.connection;
+		return null;
+	}
+	
+	// removes the expired invalid connections and the entries of their
+	// responders which are not used by a valid connection of the same
+	// collision
+	private void removeExpiredConnections() {
+		final long now = System.currentTimeMillis();
+		for (final Iterator<InvalidConnection> it = invalidConnections.values().iterator(); it.hasNext(); ) {
+			final InvalidConnection invalidConnection = it.next();
+			// the remaining connections were invalidated later
+			if (now - invalidConnection.timestamp < invalidExpiration)
+				break;
+			
+			it.remove();
+			
+			final Collision collision = invalidConnection.connection.getCollision();
+			final Connection detectedConnection = detectedConnections.get(collision);
+			for (final PeerID responder : invalidConnection.connection.getResponders())
+				if (detectedConnection == null || !detectedConnection.hasResponsesFrom(responder))
+					remove(collisionsByPeer, responder, collision);
+		}
 	}
 
 	/**
@@ -163,15 +300,28 @@ public class ConnectionsManager {
 	 * @return the invalid collisions
 	 */
 	public Set<Connection> checkCollisions(final Set<Parameter> removedParameters) {
+		removeExpiredConnections();
+		
 		final Set<Connection> connections = new HashSet<Connection>();
-		for (final Iterator<Connection> it = detectedConnections.iterator(); it.hasNext();) {
-			final Connection connection = it.next();
+		for (final Parameter p : removedParameters) {
+			Set<Connection> affectedConnections = null;
+			if (p instanceof InputParameter)
+				affectedConnections = connectionsByInput.get(Short.valueOf(p.getID()));
+			else if (p instanceof OutputParameter)
+				affectedConnections = connectionsByOutput.get(Short.valueOf(p.getID()));
+			
+			if (affectedConnections != null)
+				connections.addAll(affectedConnections);
+		}
+		
+		final long now = System.currentTimeMillis();
+		for (final Connection connection : connections) {
 			final Collision collision = connection.getCollision();
-			if (removedParameters.contains(collision.getInput()) || removedParameters.contains(collision.getOutput())) {
-				connections.add(connection);
-				it.remove();
-				invalidConnections.addEntry(connection);
-			}
+			detectedConnections.remove(collision);
+			unindex(connection);
+			// reinserted to keep the invalidation order
+			invalidConnections.remove(collision);
+			invalidConnections.put(collision, new InvalidConnection(connection, now));
 		}
 
 		return connections;
@@ -179,20 +329,46 @@ public class ConnectionsManager {
 
 	public Map<PeerIDSet, Set<Service>> getNotifications(final Set<Connection> connections) {
 		final Map<PeerIDSet, Set<Service>> notifications = new HashMap<PeerIDSet, Set<Service>>();
-		for (final Connection connection : connections) {
-			final Map<PeerIDSet, Set<Service>> partialNotifications = connection.getAllNotifications();
-			for (final Entry<PeerIDSet, Set<Service>> entry : partialNotifications.entrySet()) {
-				final PeerIDSet peers = entry.getKey();
-				if (!notifications.containsKey(peers))
-					notifications.put(peers, new HashSet<Service>());
-				notifications.get(peers).addAll(entry.getValue());
-			}
-		}
+		for (final Connection connection : connections)
+			addNotifications(notifications, connection.getAllNotifications());
 
 		return notifications;
 	}
 	
 	public boolean contains(final Collision collision) {
-		return detectedConnections.contains(new Connection(collision, taxonomy, graphType)); 
+		return detectedConnections.containsKey(collision); 
+	}
+	
+	private void unindex(final Connection connection) {
+		final Collision collision = connection.getCollision();
+		remove(connectionsByInput, Short.valueOf(collision.getInput().getID()), connection);
+		remove(connectionsByOutput, Short.valueOf(collision.getOutput().getID()), connection);
+	}
+	
+	private static void addNotifications(final Map<PeerIDSet, Set<Service>> notifications, final Map<PeerIDSet, Set<Service>> partialNotifications) {
+		for (final Entry<PeerIDSet, Set<Service>> entry : partialNotifications.entrySet()) {
+			final PeerIDSet peers = entry.getKey();
+			if (!notifications.containsKey(peers))
+				notifications.put(peers, new HashSet<Service>());
+			notifications.get(peers).addAll(entry.getValue());
+		}
+	}
+	
+	private static <K, V> void add(final Map<K, Set<V>> index, final K key, final V value) {
+		Set<V> values = index.get(key);
+		if (values == null) {
+			values = new HashSet<V>();
+			index.put(key, values);
+		}
+		values.add(value);
+	}
+	
+	private static <K, V> void remove(final Map<K, Set<V>> index, final K key, final V value) {
+		final Set<V> values = index.get(key);
+		if (values != null) {
+			values.remove(value);
+			if (values.isEmpty())
+				index.remove(key);
+		}
 	}
 }
@@ -0,0 +1,106 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package graphcreation.collisionbased.connectionManager;
+
+import graphcreation.collisionbased.message.CollisionResponseMessage;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import peer.peerid.PeerID;
+
+/**
+ * Stores the responses received by a connection indexed by the peer which
+ * sent them, so the responses of a peer are obtained without checking all
+ * the received ones.
+ * 
+ * @author Unai Aguilera (unai.aguilera@gmail.com)
+ * 
+ */
+class Responses {
+
+	private final Set<CollisionResponseMessage> responses = new HashSet<CollisionResponseMessage>();
+
+	private final Map<PeerID, Set<CollisionResponseMessage>> responsesBySource = new HashMap<PeerID, Set<CollisionResponseMessage>>();
+
+	public boolean add(final CollisionResponseMessage response) {
+		if (!responses.add(response))
+			return false;
+
+		Set<CollisionResponseMessage> sourceResponses = responsesBySource.get(response.getSource());
+		if (sourceResponses == null) {
+			sourceResponses = new HashSet<CollisionResponseMessage>();
+			responsesBySource.put(response.getSource(), sourceResponses);
+		}
+		sourceResponses.add(response);
+		return true;
+	}
+
+	public void remove(final CollisionResponseMessage response) {
+		if (responses.remove(response)) {
+			final Set<CollisionResponseMessage> sourceResponses = responsesBySource.get(response.getSource());
+			sourceResponses.remove(response);
+			if (sourceResponses.isEmpty())
+				responsesBySource.remove(response.getSource());
+		}
+	}
+
+	// removes the responses sent by the passed peer and returns them
+	public Set<CollisionResponseMessage> removeFrom(final PeerID source) {
+		final Set<CollisionResponseMessage> sourceResponses = responsesBySource.remove(source);
+		if (sourceResponses == null)
+			return Collections.emptySet();
+
+		responses.removeAll(sourceResponses);
+		return sourceResponses;
+	}
+
+	// gets a copy of the responses sent by the passed peer
+	public Set<CollisionResponseMessage> getFrom(final PeerID source) {
+		final Set<CollisionResponseMessage> sourceResponses = responsesBySource.get(source);
+		if (sourceResponses == null)
+			return Collections.emptySet();
+		return new HashSet<CollisionResponseMessage>(sourceResponses);
+	}
+
+	public boolean containsFrom(final PeerID source) {
+		return responsesBySource.containsKey(source);
+	}
+
+	public Set<PeerID> getSources() {
+		return Collections.unmodifiableSet(responsesBySource.keySet());
+	}
+
+	public Set<CollisionResponseMessage> getAll() {
+		return Collections.unmodifiableSet(responses);
+	}
+
+	public boolean isEmpty() {
+		return responses.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return responses.toString();
+	}
+}
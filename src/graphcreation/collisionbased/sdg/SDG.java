@@ -22,6 +22,7 @@ package graphcreation.collisionbased.sdg;
 import graphcreation.collisionbased.ServiceDistance;
 import graphcreation.services.Service;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -43,6 +44,18 @@ public interface SDG extends XMLSerializable {
 	 */
 	public void addLocalService(Service service) throws NonLocalServiceException;
 
+	/**
+	 * Adds the passed services to the SDG. All services are linked before
+	 * returning, so connections among them are also created.
+	 * 
+	 * @param services
+	 *            the services to add
+	 * @throws exception
+	 *             is thrown when a non local service is passed. No service is
+	 *             added in that case
+	 */
+	public void addLocalServices(Collection<Service> services) throws NonLocalServiceException;
+
 	/**
 	 * Removes the passed local service from the SDG
 	 * 
@@ -0,0 +1,164 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package graphcreation.collisionbased.sdg.sdgtaxonomy;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import peer.peerid.PeerID;
+
+/**
+ * Stores the indirect routes known through collision nodes. Routes are
+ * indexed both by destination and by collision node, so lookups and
+ * removals only touch the affected routes.
+ * 
+ * @author Unai Aguilera (unai.aguilera@gmail.com)
+ * 
+ */
+class IndirectRouteTable {
+
+	// routes indexed by destination and collision node
+	private final Map<PeerID, Map<PeerID, IndirectRoute>> routesByDest = new HashMap<PeerID, Map<PeerID, IndirectRoute>>();
+
+	// destinations reachable through each collision node
+	private final Map<PeerID, Set<PeerID>> destsByCollisionNode = new HashMap<PeerID, Set<PeerID>>();
+
+	/**
+	 * Adds the passed route. If an equal route already exists the table is
+	 * not modified.
+	 * 
+	 * @param route
+	 *            the route to add
+	 * @return true if the route was added, false otherwise
+	 */
+	public boolean add(final IndirectRoute route) {
+		Map<PeerID, IndirectRoute> routes = routesByDest.get(route.getDest());
+		if (routes == null) {
+			routes = new HashMap<PeerID, IndirectRoute>();
+			routesByDest.put(route.getDest(), routes);
+		}
+
+		if (routes.containsKey(route.getThrough()))
+			return false;
+
+		routes.put(route.getThrough(), route);
+
+		Set<PeerID> dests = destsByCollisionNode.get(route.getThrough());
+		if (dests == null) {
+			dests = new HashSet<PeerID>();
+			destsByCollisionNode.put(route.getThrough(), dests);
+		}
+		dests.add(route.getDest());
+		return true;
+	}
+
+	/**
+	 * Removes the route to the destination through the collision node
+	 * 
+	 * @param dest
+	 *            the destination of the route
+	 * @param collisionNode
+	 *            the collision node the route passes through
+	 */
+	public void remove(final PeerID dest, final PeerID collisionNode) {
+		final Map<PeerID, IndirectRoute> routes = routesByDest.get(dest);
+		if (routes != null && routes.remove(collisionNode) != null) {
+			if (routes.isEmpty())
+				routesByDest.remove(dest);
+
+			final Set<PeerID> dests = destsByCollisionNode.get(collisionNode);
+			dests.remove(dest);
+			if (dests.isEmpty())
+				destsByCollisionNode.remove(collisionNode);
+		}
+	}
+
+	/**
+	 * Removes all routes passing through the collision node
+	 * 
+	 * @param collisionNode
+	 *            the collision node whose routes are removed
+	 */
+	public void removeThrough(final PeerID collisionNode) {
+		final Set<PeerID> dests = destsByCollisionNode.remove(collisionNode);
+		if (dests != null)
+			for (final PeerID dest : dests) {
+				final Map<PeerID, IndirectRoute> routes = routesByDest.get(dest);
+				routes.remove(collisionNode);
+				if (routes.isEmpty())
+					routesByDest.remove(dest);
+			}
+	}
+
+	/**
+	 * Gets the routes to the passed destination
+	 * 
+	 * @param dest
+	 *            the destination of the routes
+	 * @return an unmodifiable view of the routes to the destination
+	 */
+	public Collection<IndirectRoute> getRoutes(final PeerID dest) {
+		final Map<PeerID, IndirectRoute> routes = routesByDest.get(dest);
+		if (routes == null)
+			return Collections.emptySet();
+		return Collections.unmodifiableCollection(routes.values());
+	}
+
+	/**
+	 * Gets the collision nodes which provide a route to the destination
+	 * 
+	 * @param dest
+	 *            the destination of the routes
+	 * @return the collision nodes of the routes to the destination
+	 */
+	public Set<PeerID> getCollisionNodes(final PeerID dest) {
+		final Map<PeerID, IndirectRoute> routes = routesByDest.get(dest);
+		if (routes == null)
+			return new HashSet<PeerID>();
+		return new HashSet<PeerID>(routes.keySet());
+	}
+
+	/**
+	 * Checks if some route to the destination is known
+	 * 
+	 * @param dest
+	 *            the destination to check
+	 * @return true if a route to the destination exists, false otherwise
+	 */
+	public boolean knowsRouteTo(final PeerID dest) {
+		return routesByDest.containsKey(dest);
+	}
+
+	/**
+	 * Gets the number of stored routes
+	 * 
+	 * @return the number of routes
+	 */
+	public int size() {
+		int size = 0;
+		for (final Map<PeerID, IndirectRoute> routes : routesByDest.values())
+			size += routes.size();
+		return size;
+	}
+}
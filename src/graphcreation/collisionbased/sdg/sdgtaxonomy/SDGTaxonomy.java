@@ -30,9 +30,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -41,6 +42,7 @@ import multicast.ParameterSearch;
 import multicast.Util;
 import multicast.search.Route;
 import peer.peerid.PeerID;
+import taxonomy.ConceptAncestors;
 import taxonomy.Taxonomy;
 import taxonomy.parameter.InputParameter;
 import taxonomy.parameter.OutputParameter;
@@ -55,8 +57,16 @@ import util.logger.Logger;
  */
 public class SDGTaxonomy implements SDG {
 
-	//a set of known indirect routes
-	private final Set<IndirectRoute> indirectRoutes = new HashSet<IndirectRoute>();
+	// the known indirect routes
+	private final IndirectRouteTable indirectRoutes = new IndirectRouteTable();
+
+	// local services indexed by the concepts of their inputs and all their
+	// ancestors, i.e. by every input parameter they are compatible with
+	private final Map<Short, Set<Service>> localInputs = new HashMap<Short, Set<Service>>();
+
+	// local services indexed by the concepts of their outputs and all their
+	// ancestors
+	private final Map<Short, Set<Service>> localOutputs = new HashMap<Short, Set<Service>>();
 
 	// the local service dependency graph
 	private final ExtendedServiceGraph eServiceGraph;
@@ -66,8 +76,8 @@ public class SDGTaxonomy implements SDG {
 	
 	private final ParameterSearch pSearch;
 
-	// the used taxonomy
-	private final Taxonomy taxonomy;
+	// ancestors of the concepts in the used taxonomy
+	private final ConceptAncestors ancestors;
 
 	private final Logger logger = Logger.getLogger(SDGTaxonomy.class);
 
@@ -81,19 +91,69 @@ public class SDGTaxonomy implements SDG {
 	 */
 	public SDGTaxonomy(final PeerID peerID, final ParameterSearch pSearch, final Taxonomy taxonomy) {
 		this.peerID = peerID;
-		this.taxonomy = taxonomy;
 		this.pSearch = pSearch;
+		this.ancestors = new ConceptAncestors(taxonomy);
 		eServiceGraph = new ExtendedServiceGraph(taxonomy);
 	}
 
 	@Override
 	public void addLocalService(final Service service) throws NonLocalServiceException {
-		if (service.isLocal(peerID))
+		if (service.isLocal(peerID)) {
 			eServiceGraph.merge(service);
-		else
+			indexLocalService(service);
+		} else
 			throw new NonLocalServiceException();
 	}
 
+	@Override
+	public void addLocalServices(final Collection<Service> services) throws NonLocalServiceException {
+		for (final Service service : services)
+			if (!service.isLocal(peerID))
+				throw new NonLocalServiceException();
+
+		eServiceGraph.merge(services);
+		for (final Service service : services)
+			indexLocalService(service);
+	}
+
+	private void indexLocalService(final Service service) {
+		for (final InputParameter input : service.getInputParams())
+			for (final Short concept : ancestors.getConcepts(input.getID()))
+				add(localInputs, concept, service);
+
+		for (final OutputParameter output : service.getOutputParams())
+			for (final Short concept : ancestors.getConcepts(output.getID()))
+				add(localOutputs, concept, service);
+	}
+
+	private void unindexLocalService(final Service service) {
+		for (final InputParameter input : service.getInputParams())
+			for (final Short concept : ancestors.getConcepts(input.getID()))
+				remove(localInputs, concept, service);
+
+		for (final OutputParameter output : service.getOutputParams())
+			for (final Short concept : ancestors.getConcepts(output.getID()))
+				remove(localOutputs, concept, service);
+	}
+
+	private static void add(final Map<Short, Set<Service>> index, final Short concept, final Service service) {
+		Set<Service> services = index.get(concept);
+		if (services == null) {
+			services = new HashSet<Service>();
+			index.put(concept, services);
+		}
+		services.add(service);
+	}
+
+	private static void remove(final Map<Short, Set<Service>> index, final Short concept, final Service service) {
+		final Set<Service> services = index.get(concept);
+		if (services != null) {
+			services.remove(service);
+			if (services.isEmpty())
+				index.remove(concept);
+		}
+	}
+
 	@Override
 	public Set<ServiceDistance> connectServices(final Service localService, final Set<ServiceDistance> remoteServices, final PeerID collisionNode) {
 		final Set<ServiceDistance> addedServices = new HashSet<ServiceDistance>();
@@ -104,8 +164,7 @@ public class SDGTaxonomy implements SDG {
 				addedServices.add(remoteService);
 			}
 				
-			IndirectRoute route = new IndirectRoute(remoteService.getService().getPeerID(), collisionNode, remoteService.getDistance());
-			indirectRoutes.add(route);
+			indirectRoutes.add(new IndirectRoute(remoteService.getService().getPeerID(), collisionNode, remoteService.getDistance()));
 		}
 		
 		return addedServices; 
@@ -152,6 +211,11 @@ public class SDGTaxonomy implements SDG {
 
 	@Override
 	public Set<ServiceDistance> removeLocalService(final Service service) {
+		// the passed service may not contain the parameters, use the stored one
+		final Service storedService = eServiceGraph.getService(service.getID());
+		if (storedService != null && storedService.isLocal(peerID))
+			unindexLocalService(storedService);
+		
 		if (eServiceGraph.removeService(service))
 			return removeNonLocalDisconnectedServices();
 		return Collections.emptySet();
@@ -165,58 +229,31 @@ public class SDGTaxonomy implements SDG {
 	@Override
 	public Set<Service> findLocalCompatibleServices(final Set<Parameter> parameters) {
 		final Set<Service> services = new HashSet<Service>();
-		for (final Service service : eServiceGraph.getServices())
-			if (service.isLocal(peerID) && isCompatible(service, parameters))
-				services.add(service);
+		for (final Parameter p : parameters) {
+			Set<Service> compatibleServices = null;
+			if (p instanceof InputParameter)
+				compatibleServices = localInputs.get(Short.valueOf(p.getID()));
+			else if (p instanceof OutputParameter)
+				compatibleServices = localOutputs.get(Short.valueOf(p.getID()));
+			
+			if (compatibleServices != null)
+				services.addAll(compatibleServices);
+		}
 		return services;
 	}
-
-	private boolean isCompatible(final Service service, final Set<Parameter> parameters) {
-		for (final Parameter p : parameters)
-			if (p instanceof InputParameter) {
-				for (final InputParameter input : service.getInputParams())
-					if (taxonomy.subsumes(p.getID(), input.getID()))
-						return true;
-			} else if (p instanceof OutputParameter)
-				for (final OutputParameter output : service.getOutputParams())
-					if (taxonomy.subsumes(p.getID(), output.getID()))
-						return true;
-		return false;
-	}
 	
 	private void removeIndirectRoutesThrough(final Set<PeerID> peers) {
-		for (final PeerID peer : peers) {
-			removeIndirectRouteThrough(peer);
-		}
-	}
-	
-	private void removeIndirectRouteThrough(final PeerID collisionNode) {
-		for (final Iterator<IndirectRoute> it = indirectRoutes.iterator(); it.hasNext(); ) {
-			IndirectRoute route = it.next(); 
-			if (route.getThrough().equals(collisionNode))
-				it.remove();
-		}
+		for (final PeerID peer : peers)
+			indirectRoutes.removeThrough(peer);
 	}
 	
 	@Override
 	public void removeIndirectRoute(final PeerID dest, final PeerID collisionNode) {
-		for (final Iterator<IndirectRoute> it = indirectRoutes.iterator(); it.hasNext(); ) {
-			IndirectRoute route = it.next(); 
-			if (route.getThrough().equals(collisionNode) && route.getDest().equals(dest))
-				it.remove();
-		}
+		indirectRoutes.remove(dest, collisionNode);
 	}
 	
 	private boolean knowsRouteTo(final PeerID destination) {
-		return knowsIndirectRouteTo(destination) || pSearch.knowsRouteTo(destination);
-	}
-	
-	private boolean knowsIndirectRouteTo(final PeerID destination) {
-		for (final IndirectRoute route : indirectRoutes) {
-			if (route.getDest().equals(destination))
-				return true;
-		}
-		return false;
+		return indirectRoutes.knowsRouteTo(destination) || pSearch.knowsRouteTo(destination);
 	}
 	
 	@Override
@@ -270,27 +307,13 @@ public class SDGTaxonomy implements SDG {
 	
 	@Override
 	public Set<PeerID> getThroughCollisionNodes(final Service service) {
-		final Set<PeerID> collisionNodes = new HashSet<PeerID>();
-		for (final IndirectRoute route : indirectRoutes) {
-			if (route.getDest().equals(service.getPeerID()))
-				collisionNodes.add(route.getThrough());
-		}
-		return collisionNodes;
-	}
-	
-	private Set<IndirectRoute> obtainIndirectRoutes(final PeerID destination) {
-		final Set<IndirectRoute> routes = new HashSet<IndirectRoute>();
-		for (final IndirectRoute indirectRoute : indirectRoutes) {
-			if (indirectRoute.getDest().equals(destination))
-				routes.add(indirectRoute);
-		}
-		return routes;
+		return indirectRoutes.getCollisionNodes(service.getPeerID());
 	}
 
 	@Override
 	public Route getShortestRoute(final PeerID destination) {
 		final Set<Route> availableRoutes = new HashSet<Route>();
-		availableRoutes.addAll(obtainIndirectRoutes(destination));
+		availableRoutes.addAll(indirectRoutes.getRoutes(destination));
 		
 		final Route directRoute = pSearch.getRoute(destination);
 		if (directRoute != null)
@@ -302,7 +325,7 @@ public class SDGTaxonomy implements SDG {
 	@Override
 	public Set<Route> getRoutes(final PeerID destination) {
 		final Set<Route> availableRoutes = new HashSet<Route>();
-		availableRoutes.addAll(obtainIndirectRoutes(destination));
+		availableRoutes.addAll(indirectRoutes.getRoutes(destination));
 		availableRoutes.addAll(pSearch.getRoutes(destination));
 		return availableRoutes;
 	}
@@ -316,7 +339,7 @@ public class SDGTaxonomy implements SDG {
 	
 	@Override
 	public List<Route> getIndirectRoutes(final PeerID destination) {
-		final List<Route> routes = new ArrayList<Route>(obtainIndirectRoutes(destination));
+		final List<Route> routes = new ArrayList<Route>(indirectRoutes.getRoutes(destination));
 		Collections.sort(routes, Util.distanceComparator);
 		return routes;
 	}
@@ -329,6 +352,12 @@ public class SDGTaxonomy implements SDG {
 	@Override
 	public void readFromXML(final InputStream is) throws IOException {
 		eServiceGraph.readFromXML(is);
+		
+		localInputs.clear();
+		localOutputs.clear();
+		for (final Service service : eServiceGraph.getServices())
+			if (service.isLocal(peerID))
+				indexLocalService(service);
 	}
 
 	@Override
@@ -26,45 +26,35 @@ import graphcreation.graph.andorgraph.node.ANDNodeFactory;
 import graphcreation.graph.andorgraph.node.ANDNodeSet;
 import graphcreation.graph.andorgraph.node.GraphNode;
 import graphcreation.graph.andorgraph.node.ORNode;
+import graphcreation.util.MinimalCovers;
 import graphcreation.util.PowerSet;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
 import org.jgrapht.DirectedGraph;
-import org.jgrapht.alg.BellmanFordShortestPath;
-import org.jgrapht.alg.DijkstraShortestPath;
 import org.jgrapht.graph.AsUndirectedGraph;
-import org.jgrapht.graph.AsWeightedGraph;
-import org.jgrapht.graph.DirectedMaskSubgraph;
-import org.jgrapht.graph.MaskFunctor;
 import org.jgrapht.graph.SimpleDirectedGraph;
 import org.jgrapht.traverse.BreadthFirstIterator;
 import org.jgrapht.traverse.DepthFirstIterator;
 
+/**
+ * AND/OR graph whose nodes and edges are stored in a compact adjacency core.
+ * Disabled AND nodes are masked in the core, so masked queries skip them
+ * without building a subgraph. The mask is the only enabled state of the
+ * nodes in the graph, the enabled field of the nodes is not used because
+ * nodes are shared among graph copies.
+ * 
+ * @author Unai Aguilera (unai.aguilera@gmail.com)
+ * 
+ */
 public class ANDORGraph<A extends ANDNode, O extends ORNode> {
 
-	static class MaskByEnable implements MaskFunctor<GraphNode, EqualsEdge> {
-
-		@Override
-		public boolean isEdgeMasked(final EqualsEdge e) {
-			return false;
-		}
-
-		@Override
-		public boolean isVertexMasked(final GraphNode node) {
-			if (node instanceof ANDNode) {
-				final ANDNode andNode = (ANDNode) node;
-				return !andNode.isEnabled();
-			}
-			return false;
-		}
-
-	}
-
 	static class VirtualGraphIterator<A extends ANDNode, O extends ORNode, S extends ANDNodeSet<A>> extends BreadthFirstIterator<A, EqualsEdge> {
 
 		private final DirectedGraph<A, EqualsEdge> virtualGraph;
@@ -81,19 +71,21 @@ public class ANDORGraph<A extends ANDNode, O extends ORNode> {
 		@Override
 		protected void encounterVertex(final A s, final EqualsEdge e) {
 			super.encounterVertex(s, e);
-			final Set<A> ancestors = getFullCoverSets(s);
+			// only the minimal covers are virtual ancestors, their supersets
+			// do not add anything to the search
+			final Set<A> ancestors = getMinimalCoverSets(s);
 			for (final A a : ancestors) {
 				virtualGraph.addVertex(a);
 				virtualGraph.addEdge(a, s);
 			}
 		}
 
+		// all the sets of ancestors which fully cover the passed node
 		@SuppressWarnings("unchecked")
 		protected Set<A> getFullCoverSets(final A covered) {
 			final Set<A> fullyCoversSet = new HashSet<A>();
 			final Set<A> ancestors = new HashSet<A>(g.getAncestors(covered, true));
-			final Set<Set<A>> powerSet = PowerSet.powersetAsc(ancestors);
-			for (final Set<A> set : powerSet) {
+			for (final Set<A> set : PowerSet.subsetsAsc(ancestors)) {
 				A andNode;
 				if (set.size() == 1)
 					andNode = set.iterator().next();
@@ -104,16 +96,39 @@ public class ANDORGraph<A extends ANDNode, O extends ORNode> {
 			}
 			return fullyCoversSet;
 		}
+
+		// the sets of ancestors which fully cover the passed node and do not
+		// contain a smaller one which also covers it
+		@SuppressWarnings("unchecked")
+		protected Set<A> getMinimalCoverSets(final A covered) {
+			final Set<A> minimalCoverSets = new HashSet<A>();
+			final Set<A> ancestors = new HashSet<A>(g.getAncestors(covered, true));
+			final MinimalCovers<A> minimalCovers = new MinimalCovers<A>(g.getAncestorORNodes(covered, false));
+			for (final A ancestor : ancestors)
+				minimalCovers.addCandidate(ancestor, g.getSucessorORNodes(ancestor, false));
+			for (final Set<A> set : minimalCovers.enumerate(MinimalCovers.NO_LIMIT)) {
+				A andNode;
+				if (set.size() == 1)
+					andNode = set.iterator().next();
+				else
+					andNode = (A) factory.create(set);
+				minimalCoverSets.add(andNode);
+			}
+			return minimalCoverSets;
+		}
 	}
 
-	private final DirectedGraph<GraphNode, EqualsEdge> g;
+	// weights of the edges from AND nodes and to AND nodes
+	private static final double AND_OR_WEIGHT = 1;
+	private static final double OR_AND_WEIGHT = 0;
 
-	private final AsWeightedGraph<GraphNode, EqualsEdge> weightedGraph;
+	private final AdjacencyGraph<GraphNode> g;
 
-	transient private final DirectedMaskSubgraph<GraphNode, EqualsEdge> maskedGraph;
+	private Set<A> andNodes = new HashSet<A>();
+	private Set<O> orNodes = new HashSet<O>();
 
-	private final Set<A> andNodes = new HashSet<A>();
-	private final Set<O> orNodes = new HashSet<O>();
+	// the node sets are shared with a copy
+	private boolean sharedNodeSets = false;
 
 	private final Set<A> notifySuccessors = new HashSet<A>();
 	private final Set<A> notifyAncestors = new HashSet<A>();
@@ -121,9 +136,32 @@ public class ANDORGraph<A extends ANDNode, O extends ORNode> {
 	private boolean initialized = false;
 
 	public ANDORGraph() {
-		g = new SimpleDirectedGraph<GraphNode, EqualsEdge>(EqualsEdge.class);
-		maskedGraph = new DirectedMaskSubgraph<GraphNode, EqualsEdge>(g, new MaskByEnable());
-		weightedGraph = new AsWeightedGraph<GraphNode, EqualsEdge>(g, new HashMap<EqualsEdge, Double>());
+		g = new AdjacencyGraph<GraphNode>();
+	}
+
+	/**
+	 * Creates a copy of the passed graph. Nodes are shared by both graphs and
+	 * the storage of the nodes and edges is only duplicated when any of the
+	 * graphs is modified. The enabled state of the nodes is kept by the mask
+	 * of each graph.
+	 * 
+	 * @param graph
+	 *            the copied graph
+	 */
+	protected ANDORGraph(final ANDORGraph<A, O> graph) {
+		g = graph.g.copy();
+		andNodes = graph.andNodes;
+		orNodes = graph.orNodes;
+		graph.sharedNodeSets = true;
+		sharedNodeSets = true;
+	}
+
+	private void unshareNodeSets() {
+		if (sharedNodeSets) {
+			andNodes = new HashSet<A>(andNodes);
+			orNodes = new HashSet<O>(orNodes);
+			sharedNodeSets = false;
+		}
 	}
 
 	public void init() {
@@ -144,7 +182,11 @@ public class ANDORGraph<A extends ANDNode, O extends ORNode> {
 	}
 
 	protected boolean addNode(final A andNode) {
-		if (g.addVertex(andNode)) {
+		final int id = g.addNode(andNode);
+		if (id != AdjacencyGraph.NO_NODE) {
+			// nodes are disabled until they are covered
+			g.setMasked(id, true);
+			unshareNodeSets();
 			andNodes.add(andNode);
 			return true;
 		}
@@ -152,56 +194,82 @@ public class ANDORGraph<A extends ANDNode, O extends ORNode> {
 	}
 
 	protected boolean addNode(final O orNode) {
-		if (g.addVertex(orNode)) {
+		if (g.addNode(orNode) != AdjacencyGraph.NO_NODE) {
+			unshareNodeSets();
 			orNodes.add(orNode);
 			return true;
 		}
 		return false;
 	}
 
-	public EqualsEdge addEdge(final A andNode, final O orNode) {
-		final EqualsEdge e = g.addEdge(andNode, orNode);
-		weightedGraph.setEdgeWeight(e, 1);
-		return e;
+	/**
+	 * Adds an edge from an AND node to an OR node. Both nodes must be
+	 * contained in the graph.
+	 * 
+	 * @return true if the edge was added, false if it already existed
+	 */
+	public boolean addEdge(final A andNode, final O orNode) {
+		return g.addEdge(getID(andNode), getID(orNode), AND_OR_WEIGHT);
 	}
 
-	public EqualsEdge addEdge(final O orNode, final A andNode) {
-		final EqualsEdge e = g.addEdge(orNode, andNode);
-		weightedGraph.setEdgeWeight(e, 0);
-		return e;
+	/**
+	 * Adds an edge from an OR node to an AND node. Both nodes must be
+	 * contained in the graph.
+	 * 
+	 * @return true if the edge was added, false if it already existed
+	 */
+	public boolean addEdge(final O orNode, final A andNode) {
+		return g.addEdge(getID(orNode), getID(andNode), OR_AND_WEIGHT);
 	}
 
-	protected DirectedGraph<GraphNode, EqualsEdge> getGraph() {
-		return g;
+	private int getID(final GraphNode node) {
+		final int id = g.getID(node);
+		if (id == AdjacencyGraph.NO_NODE)
+			throw new IllegalArgumentException("no such vertex in graph: " + node);
+		return id;
 	}
 
-	protected DirectedGraph<GraphNode, EqualsEdge> getMaskedGraph() {
-		return maskedGraph;
+	/**
+	 * Creates a graph containing the nodes and edges of this one. It is
+	 * intended for exporting, as the returned graph is not updated.
+	 * 
+	 * @return a copy of the graph
+	 */
+	protected DirectedGraph<GraphNode, EqualsEdge> getGraph() {
+		final DirectedGraph<GraphNode, EqualsEdge> graph = new SimpleDirectedGraph<GraphNode, EqualsEdge>(EqualsEdge.class);
+		for (int id = 0; id < g.getCapacity(); id++)
+			if (g.getNode(id) != null)
+				graph.addVertex(g.getNode(id));
+
+		for (int id = 0; id < g.getCapacity(); id++)
+			if (g.getNode(id) != null)
+				for (int i = 0; i < g.getOutDegree(id); i++)
+					graph.addEdge(g.getNode(id), g.getNode(g.getOut(id, i)));
+		return graph;
 	}
 
 	@SuppressWarnings("unchecked")
 	protected void merge(final ANDORGraph<A, O> graphB) {
-		final Set<EqualsEdge> edgesB = graphB.getGraph().edgeSet();
-
-		final Set<A> addedAndNodes = new HashSet<A>();
-
 		for (final A a : graphB.andNodeSet()) {
-			final A andNode = (A) a.copy();
-			this.addNode(andNode);
-			addedAndNodes.add(andNode);
+			final A copy = (A) a.copy();
+			// the mask contains the state of the node in the merged graph
+			if (this.addNode(copy))
+				g.setMasked(getID(copy), graphB.g.isMasked(graphB.getID(a)));
 		}
 
 		for (final O o : graphB.orNodeSet())
 			this.addNode((O) o.copy());
 
-		for (final EqualsEdge e : edgesB) {
-			final GraphNode source = g.getEdgeSource(e);
-			final GraphNode target = g.getEdgeTarget(e);
-
-			if (source instanceof ANDNode && target instanceof ORNode)
-				this.addEdge((A) source, (O) target);
-			else
-				this.addEdge((O) source, (A) target);
+		final AdjacencyGraph<GraphNode> gB = graphB.g;
+		for (int idB = 0; idB < gB.getCapacity(); idB++) {
+			final GraphNode source = gB.getNode(idB);
+			if (source != null) {
+				final int id = g.getID(source);
+				for (int i = 0; i < gB.getOutDegree(idB); i++) {
+					final GraphNode target = gB.getNode(gB.getOut(idB, i));
+					g.addEdge(id, g.getID(target), (source instanceof ANDNode) ? AND_OR_WEIGHT : OR_AND_WEIGHT);
+				}
+			}
 		}
 	}
 
@@ -210,26 +278,31 @@ public class ANDORGraph<A extends ANDNode, O extends ORNode> {
 	}
 
 	public void remove(final A andNode, final RemoveType removeType) {
-		final Set<O> relatedOrNodes = getAllORNodes(andNode, false);
-
-		g.removeAllEdges(g.edgesOf(andNode));
-
-		for (final O orNode : relatedOrNodes)
-			if ((removeType.equals(RemoveType.Normal) && g.edgesOf(orNode).isEmpty()) || removeType.equals(RemoveType.SharedORNodes) || (removeType.equals(RemoveType.DisconnectedOrNodes) && isDisconnected(orNode))) {
-				g.removeAllEdges(g.edgesOf(orNode));
-				g.removeVertex(orNode);
-				orNodes.remove(orNode);
+		unshareNodeSets();
+		final int andID = g.getID(andNode);
+		if (andID != AdjacencyGraph.NO_NODE) {
+			final Set<O> relatedOrNodes = getAllORNodes(andNode, false);
+
+			g.removeEdges(andID);
+
+			for (final O orNode : relatedOrNodes) {
+				final int orID = g.getID(orNode);
+				if ((removeType.equals(RemoveType.Normal) && g.getInDegree(orID) + g.getOutDegree(orID) == 0) || removeType.equals(RemoveType.SharedORNodes) || (removeType.equals(RemoveType.DisconnectedOrNodes) && isDisconnected(orID))) {
+					g.removeNode(orID);
+					orNodes.remove(orNode);
+				}
 			}
 
-		g.removeVertex(andNode);
+			g.removeNode(andID);
+		}
 		andNodes.remove(andNode);
 
 		// remove notifications
 		removeNotifications(andNode);
 	}
 
-	private boolean isDisconnected(final O orNode) {
-		return g.incomingEdgesOf(orNode).isEmpty() || g.outgoingEdgesOf(orNode).isEmpty();
+	private boolean isDisconnected(final int orID) {
+		return g.getInDegree(orID) == 0 || g.getOutDegree(orID) == 0;
 	}
 
 	public boolean isDisconnected(final A andNode) {
@@ -239,16 +312,14 @@ public class ANDORGraph<A extends ANDNode, O extends ORNode> {
 	public long getCoveredNodes() {
 		long i = 0;
 		for (final A andNode : andNodes)
-			if (andNode.isEnabled())
+			if (!g.isMasked(getID(andNode)))
 				i++;
 		return i;
 	}
 
 	private void printGraphStatistics() {
-		final Set<GraphNode> vertices = g.vertexSet();
-		final Set<EqualsEdge> edges = g.edgeSet();
-		System.out.println("Vertices: " + vertices.size());
-		System.out.println("Edges: " + edges.size());
+		System.out.println("Vertices: " + g.nodeCount());
+		System.out.println("Edges: " + g.edgeCount());
 	}
 
 	public void printANDORGraphStatistics() {
@@ -267,10 +338,10 @@ public class ANDORGraph<A extends ANDNode, O extends ORNode> {
 		if (andNode instanceof ANDNodeSet<?>)
 			return getSetAncestorORNodes((ANDNodeSet<A>) andNode, mask);
 
-		final DirectedGraph<GraphNode, EqualsEdge> graph = (mask ? this.maskedGraph : this.g);
+		final int id = getID(andNode);
 		final Set<O> ancestorORNodes = new HashSet<O>();
-		for (final EqualsEdge e : graph.incomingEdgesOf(andNode))
-			ancestorORNodes.add((O) graph.getEdgeSource(e));
+		for (int i = 0; i < g.getInDegree(id); i++)
+			ancestorORNodes.add((O) g.getNode(g.getIn(id, i)));
 		return ancestorORNodes;
 	}
 
@@ -279,10 +350,10 @@ public class ANDORGraph<A extends ANDNode, O extends ORNode> {
 		if (andNode instanceof ANDNodeSet<?>)
 			return getSetSucessorORNodes((ANDNodeSet<A>) andNode, mask);
 
-		final DirectedGraph<GraphNode, EqualsEdge> graph = (mask ? this.maskedGraph : this.g);
+		final int id = getID(andNode);
 		final Set<O> succesorORNodes = new HashSet<O>();
-		for (final EqualsEdge e : graph.outgoingEdgesOf(andNode))
-			succesorORNodes.add((O) graph.getEdgeTarget(e));
+		for (int i = 0; i < g.getOutDegree(id); i++)
+			succesorORNodes.add((O) g.getNode(g.getOut(id, i)));
 		return succesorORNodes;
 	}
 
@@ -291,14 +362,14 @@ public class ANDORGraph<A extends ANDNode, O extends ORNode> {
 		if (andNode instanceof ANDNodeSet<?>)
 			return getSetAncestors((ANDNodeSet<A>) andNode, mask);
 
-		final DirectedGraph<GraphNode, EqualsEdge> graph = (mask ? this.maskedGraph : this.g);
-		final Set<O> ancestorORNodes = getAncestorORNodes(andNode, mask);
+		final int id = getID(andNode);
 		final Set<A> ancestors = new HashSet<A>();
-		for (final O orNode : ancestorORNodes) {
-			final Set<EqualsEdge> ancestorEdges = graph.incomingEdgesOf(orNode);
-			for (final EqualsEdge e : ancestorEdges) {
-				final A ancestor = (A) graph.getEdgeSource(e);
-				ancestors.add(ancestor);
+		for (int i = 0; i < g.getInDegree(id); i++) {
+			final int orID = g.getIn(id, i);
+			for (int j = 0; j < g.getInDegree(orID); j++) {
+				final int ancestor = g.getIn(orID, j);
+				if (!mask || !g.isMasked(ancestor))
+					ancestors.add((A) g.getNode(ancestor));
 			}
 		}
 		return ancestors;
@@ -309,14 +380,14 @@ public class ANDORGraph<A extends ANDNode, O extends ORNode> {
 		if (andNode instanceof ANDNodeSet<?>)
 			return getSetSucessors((ANDNodeSet<A>) andNode, mask);
 
-		final DirectedGraph<GraphNode, EqualsEdge> graph = (mask ? this.maskedGraph : this.g);
-		final Set<O> sucessorORNodes = getSucessorORNodes(andNode, mask);
+		final int id = getID(andNode);
 		final Set<A> sucessors = new HashSet<A>();
-		for (final ORNode orNode : sucessorORNodes) {
-			final Set<EqualsEdge> sucessorEdges = graph.outgoingEdgesOf(orNode);
-			for (final EqualsEdge e : sucessorEdges) {
-				final A succesor = (A) graph.getEdgeTarget(e);
-				sucessors.add(succesor);
+		for (int i = 0; i < g.getOutDegree(id); i++) {
+			final int orID = g.getOut(id, i);
+			for (int j = 0; j < g.getOutDegree(orID); j++) {
+				final int succesor = g.getOut(orID, j);
+				if (!mask || !g.isMasked(succesor))
+					sucessors.add((A) g.getNode(succesor));
 			}
 		}
 		return sucessors;
@@ -330,15 +401,36 @@ public class ANDORGraph<A extends ANDNode, O extends ORNode> {
 
 	public boolean isCovered(final A andNode) {
 		for (final O ancestorORNode : getAncestorORNodes(andNode, false))
-			if (g.incomingEdgesOf(ancestorORNode).size() == 0)
+			if (g.getInDegree(g.getID(ancestorORNode)) == 0)
 				return false;
 		return true;
 	}
 
+	// changes the enabled state of the node in this graph. The node itself
+	// is not modified as it may be shared with other graphs
+	protected void setEnabled(final A andNode, final boolean enable) {
+		final int id = g.getID(andNode);
+		if (id != AdjacencyGraph.NO_NODE)
+			g.setMasked(id, !enable);
+	}
+
+	/**
+	 * Checks if the node is enabled in this graph
+	 * 
+	 * @param andNode
+	 *            the checked node
+	 * @return true if the node is contained in the graph and enabled, false
+	 *         otherwise
+	 */
+	public boolean isEnabled(final A andNode) {
+		final int id = g.getID(andNode);
+		return id != AdjacencyGraph.NO_NODE && !g.isMasked(id);
+	}
+
 	protected void enableSucessors(final A andNode) {
 		final Set<A> successors = getSuccessors(andNode, false);
 		for (final A s : successors)
-			s.setEnabled(true);
+			setEnabled(s, true);
 	}
 
 	public Set<O> getAllORNodes(final A andNode, final boolean mask) {
@@ -392,21 +484,44 @@ public class ANDORGraph<A extends ANDNode, O extends ORNode> {
 	protected void calculateCoveredGraph() {
 		for (final A andNode : andNodeSet())
 			if (isCovered(andNode))
-				andNode.setEnabled(true);
+				setEnabled(andNode, true);
 	}
 
 	public void printPath(final A start, final A end) {
-		final List<EqualsEdge> shortestPath = DijkstraShortestPath.findPathBetween(new AsUndirectedGraph<GraphNode, EqualsEdge>(g), start, end);
-		if (shortestPath != null)
-			for (final EqualsEdge e : shortestPath)
+		// breadth first search ignoring edge directions
+		final int startID = getID(start);
+		final int endID = getID(end);
+		final int[] previous = new int[g.getCapacity()];
+		final BitSet visited = new BitSet(g.getCapacity());
+		final LinkedList<Integer> queue = new LinkedList<Integer>();
+		visited.set(startID);
+		queue.add(Integer.valueOf(startID));
+		while (!queue.isEmpty() && !visited.get(endID)) {
+			final int node = queue.removeFirst().intValue();
+			for (int i = 0; i < g.getOutDegree(node) + g.getInDegree(node); i++) {
+				final int next = i < g.getOutDegree(node) ? g.getOut(node, i) : g.getIn(node, i - g.getOutDegree(node));
+				if (!visited.get(next)) {
+					visited.set(next);
+					previous[next] = node;
+					queue.add(Integer.valueOf(next));
+				}
+			}
+		}
+
+		if (visited.get(endID)) {
+			final List<String> edges = new ArrayList<String>();
+			for (int node = endID; node != startID; node = previous[node])
+				edges.add("(" + g.getNode(previous[node]) + " : " + g.getNode(node) + ")");
+			Collections.reverse(edges);
+			for (final String e : edges)
 				System.out.println(e);
-		else
+		} else
 			System.out.println("Path not found!");
 	}
 
 	@Override
 	public String toString() {
-		return g.toString();
+		return getGraph().toString();
 	}
 
 	protected <S extends ANDNodeSet<A>> DirectedGraph<A, EqualsEdge> searchSolution(final A goalNode, final A initNode, final ANDNodeFactory<A, S> factory) {
@@ -427,11 +542,11 @@ public class ANDORGraph<A extends ANDNode, O extends ORNode> {
 
 	public <S extends ANDNodeSet<A>> List<A> findSolution(final A initNode, final A goalNode, final ANDNodeFactory<A, S> factory) throws SolutionFindingException {
 		// Enable nodes
-		initNode.setEnabled(true);
+		setEnabled(initNode, true);
 		if (!isCovered(goalNode))
 			throw new SolutionFindingException("Solution cannot be found. GOAL node missing!");
 
-		goalNode.setEnabled(true);
+		setEnabled(goalNode, true);
 		System.out.println("Solution could be found someday");
 		enableSucessors(initNode);
 		System.out.println("ReCovered graph with init and goal: ");
@@ -450,21 +565,25 @@ public class ANDORGraph<A extends ANDNode, O extends ORNode> {
 	}
 
 	public ANDORGraph<A, O> copy() {
-		final ANDORGraph<A, O> copy = new ANDORGraph<A, O>();
-
-		copy.merge(this);
-
-		return copy;
+		return new ANDORGraph<A, O>(this);
 	}
 
+	/**
+	 * Sets the weight of the edges going out from the node. Weights must be
+	 * non negative.
+	 */
 	public void setWeight(final A node, final A successor, final double weight) {
+		final int id = getID(node);
 		final Set<O> commonOrNodes = getCommonORNodes(node, successor, false);
-		for (final O orNode : commonOrNodes) {
-			final EqualsEdge e = weightedGraph.getEdge(node, orNode);
-			weightedGraph.setEdgeWeight(e, weight);
-		}
+		for (final O orNode : commonOrNodes)
+			g.setWeight(id, g.getID(orNode), weight);
 	}
 
+	/**
+	 * Finds the AND nodes of the cheapest path between two AND nodes
+	 * 
+	 * @return the nodes of the path or an empty list if there is no path
+	 */
 	@SuppressWarnings("unchecked")
 	public List<A> findShortestPath(final A startAndNode, final A endAndNode) {
 		final List<A> shortestPath = new ArrayList<A>();
@@ -474,28 +593,31 @@ public class ANDORGraph<A extends ANDNode, O extends ORNode> {
 			return shortestPath;
 		}
 
-		final BellmanFordShortestPath<GraphNode, EqualsEdge> bellmanFordShortestPath = new BellmanFordShortestPath<GraphNode, EqualsEdge>(weightedGraph, startAndNode);
-
-		final List<EqualsEdge> edgeList = bellmanFordShortestPath.getPathEdgeList(endAndNode);
+		final int startID = getID(startAndNode);
+		final int endID = getID(endAndNode);
+		final int[] previous = g.shortestPaths(startID, new double[g.getCapacity()]);
+		if (previous[endID] == AdjacencyGraph.NO_NODE)
+			return shortestPath;
 
-		for (final EqualsEdge e : edgeList) {
-			if (e.getSource() instanceof ANDNode && !shortestPath.contains(e.getSource()))
-				shortestPath.add((A) e.getSource());
-			if (e.getTarget() instanceof ANDNode && !shortestPath.contains(e.getTarget()))
-				shortestPath.add((A) e.getTarget());
-		}
+		for (int node = endID; node != AdjacencyGraph.NO_NODE; node = previous[node])
+			if (g.getNode(node) instanceof ANDNode)
+				shortestPath.add((A) g.getNode(node));
+		Collections.reverse(shortestPath);
 		return shortestPath;
 	}
 
+	/**
+	 * Gets the cost of the cheapest path between two AND nodes
+	 * 
+	 * @return the cost of the path or infinity if there is no path
+	 */
 	public double getShortestPathCost(final A startAndNode, final A endAndNode) {
 		if (startAndNode.equals(endAndNode))
 			return 0;
 
-		final BellmanFordShortestPath<GraphNode, EqualsEdge> bellmanFordShortestPath = new BellmanFordShortestPath<GraphNode, EqualsEdge>(weightedGraph, startAndNode);
-
-		final double pathCost = bellmanFordShortestPath.getCost(endAndNode);
-
-		return pathCost;
+		final double[] distances = new double[g.getCapacity()];
+		g.shortestPaths(getID(startAndNode), distances);
+		return distances[getID(endAndNode)];
 	}
 
 	public Set<O> getCommonORNodes(final A ancestor, final A sucessor, final boolean mask) {
@@ -516,8 +638,28 @@ public class ANDORGraph<A extends ANDNode, O extends ORNode> {
 		final ANDORGraph<?, ?> andORGraph = (ANDORGraph<?, ?>) o;
 		final boolean andNodesEquals = this.andNodeSet().equals(andORGraph.andNodeSet());
 		final boolean orNodeEquals = this.orNodeSet().equals(andORGraph.orNodeSet());
-		final boolean edgeEquals = this.g.edgeSet().equals(andORGraph.g.edgeSet());
-		return andNodesEquals && orNodeEquals && edgeEquals;
+		return andNodesEquals && orNodeEquals && edgesEquals(andORGraph);
+	}
+
+	// checks that the other graph, containing the same nodes, has the same
+	// edges
+	private boolean edgesEquals(final ANDORGraph<?, ?> andORGraph) {
+		final AdjacencyGraph<GraphNode> otherG = andORGraph.g;
+		if (g.edgeCount() != otherG.edgeCount())
+			return false;
+
+		for (int id = 0; id < g.getCapacity(); id++) {
+			final GraphNode node = g.getNode(id);
+			if (node != null) {
+				final int otherID = otherG.getID(node);
+				if (otherID == AdjacencyGraph.NO_NODE)
+					return false;
+				for (int i = 0; i < g.getOutDegree(id); i++)
+					if (!otherG.containsEdge(otherID, otherG.getID(g.getNode(g.getOut(id, i)))))
+						return false;
+			}
+		}
+		return true;
 	}
 
 	@Override
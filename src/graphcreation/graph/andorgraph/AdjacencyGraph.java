@@ -0,0 +1,442 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package graphcreation.graph.andorgraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Compact directed graph used as the core of the AND/OR graphs. Nodes are
+ * mapped to integer identifiers, which are reused after removal, and the
+ * incoming and outgoing edges of each node are stored in growable integer
+ * arrays. The weight of each outgoing edge is kept in a parallel array and
+ * masked nodes are marked in a bit set.
+ * 
+ * Queries return node identifiers and do not allocate edge objects.
+ * 
+ * Copies share the storage of the original graph. The node tables are
+ * duplicated by the first modification of any of the graphs and the edge
+ * arrays of each node are duplicated when the edges of that node change, so
+ * copying is constant time and unmodified parts are never duplicated.
+ * 
+ * @author Unai Aguilera (unai.aguilera@gmail.com)
+ * 
+ */
+final class AdjacencyGraph<N> {
+
+	public static final int NO_NODE = -1;
+
+	private static final int INITIAL_CAPACITY = 16;
+	private static final int INITIAL_DEGREE = 4;
+
+	private Map<N, Integer> ids = new HashMap<N, Integer>();
+	private List<N> nodes = new ArrayList<N>();
+
+	// identifiers of removed nodes
+	private int[] freeIDs = new int[INITIAL_DEGREE];
+	private int freeCount = 0;
+
+	private int[][] out = new int[INITIAL_CAPACITY][];
+	private double[][] weights = new double[INITIAL_CAPACITY][];
+	private int[] outDegree = new int[INITIAL_CAPACITY];
+
+	private int[][] in = new int[INITIAL_CAPACITY][];
+	private int[] inDegree = new int[INITIAL_CAPACITY];
+
+	private BitSet masked = new BitSet();
+
+	private int edgeCount = 0;
+
+	// the node tables are shared with a copy
+	private boolean shared = false;
+
+	// nodes whose edge arrays are shared with a copy
+	private BitSet sharedRows = new BitSet();
+
+	public AdjacencyGraph() {
+	}
+
+	private AdjacencyGraph(final AdjacencyGraph<N> graph) {
+		ids = graph.ids;
+		nodes = graph.nodes;
+		freeIDs = graph.freeIDs;
+		freeCount = graph.freeCount;
+		out = graph.out;
+		weights = graph.weights;
+		outDegree = graph.outDegree;
+		in = graph.in;
+		inDegree = graph.inDegree;
+		masked = graph.masked;
+		edgeCount = graph.edgeCount;
+		shared = true;
+		sharedRows = (BitSet) graph.sharedRows.clone();
+	}
+
+	/**
+	 * Creates a copy of this graph. The storage is shared until any of the
+	 * graphs is modified.
+	 * 
+	 * @return the copy of the graph
+	 */
+	public AdjacencyGraph<N> copy() {
+		shared = true;
+		sharedRows.set(0, getCapacity());
+		return new AdjacencyGraph<N>(this);
+	}
+
+	/**
+	 * Adds a node to the graph
+	 * 
+	 * @param node
+	 *            the added node
+	 * @return the identifier of the node or NO_NODE if it was already
+	 *         contained
+	 */
+	public int addNode(final N node) {
+		if (ids.containsKey(node))
+			return NO_NODE;
+
+		unshare();
+
+		final int id;
+		if (freeCount > 0) {
+			id = freeIDs[--freeCount];
+			nodes.set(id, node);
+		} else {
+			id = nodes.size();
+			nodes.add(node);
+			ensureCapacity(id + 1);
+		}
+
+		ids.put(node, Integer.valueOf(id));
+		sharedRows.clear(id);
+		out[id] = new int[INITIAL_DEGREE];
+		weights[id] = new double[INITIAL_DEGREE];
+		in[id] = new int[INITIAL_DEGREE];
+		return id;
+	}
+
+	/**
+	 * Removes a node and all its edges from the graph
+	 * 
+	 * @param id
+	 *            the identifier of the removed node
+	 */
+	public void removeNode(final int id) {
+		removeEdges(id);
+		unshare();
+
+		ids.remove(nodes.get(id));
+		nodes.set(id, null);
+		out[id] = null;
+		weights[id] = null;
+		in[id] = null;
+		sharedRows.clear(id);
+		masked.clear(id);
+
+		if (freeCount == freeIDs.length)
+			freeIDs = Arrays.copyOf(freeIDs, freeCount * 2);
+		freeIDs[freeCount++] = id;
+	}
+
+	/**
+	 * Removes all the incoming and outgoing edges of a node
+	 * 
+	 * @param id
+	 *            the node identifier
+	 */
+	public void removeEdges(final int id) {
+		while (outDegree[id] > 0)
+			removeEdge(id, out[id][outDegree[id] - 1]);
+		while (inDegree[id] > 0)
+			removeEdge(in[id][inDegree[id] - 1], id);
+	}
+
+	/**
+	 * Gets the identifier of the node
+	 * 
+	 * @param node
+	 *            the node
+	 * @return the identifier of the node or NO_NODE if it is not contained
+	 */
+	public int getID(final Object node) {
+		final Integer id = ids.get(node);
+		return id == null ? NO_NODE : id.intValue();
+	}
+
+	public N getNode(final int id) {
+		return nodes.get(id);
+	}
+
+	public boolean contains(final Object node) {
+		return ids.containsKey(node);
+	}
+
+	/**
+	 * Gets the upper bound of node identifiers. Identifiers of removed nodes
+	 * below this bound have no node.
+	 * 
+	 * @return the upper bound of node identifiers
+	 */
+	public int getCapacity() {
+		return nodes.size();
+	}
+
+	public int nodeCount() {
+		return ids.size();
+	}
+
+	public int edgeCount() {
+		return edgeCount;
+	}
+
+	/**
+	 * Adds an edge between two nodes
+	 * 
+	 * @param source
+	 *            the source node identifier
+	 * @param target
+	 *            the target node identifier
+	 * @param weight
+	 *            the weight of the edge
+	 * @return true if the edge was added, false if it already existed
+	 */
+	public boolean addEdge(final int source, final int target, final double weight) {
+		if (indexOf(out[source], outDegree[source], target) != NO_NODE)
+			return false;
+
+		unshare();
+		ownRows(source);
+		ownRows(target);
+
+		if (outDegree[source] == out[source].length) {
+			out[source] = Arrays.copyOf(out[source], outDegree[source] * 2);
+			weights[source] = Arrays.copyOf(weights[source], outDegree[source] * 2);
+		}
+		out[source][outDegree[source]] = target;
+		weights[source][outDegree[source]] = weight;
+		outDegree[source]++;
+
+		if (inDegree[target] == in[target].length)
+			in[target] = Arrays.copyOf(in[target], inDegree[target] * 2);
+		in[target][inDegree[target]++] = source;
+
+		edgeCount++;
+		return true;
+	}
+
+	/**
+	 * Removes the edge between two nodes
+	 * 
+	 * @param source
+	 *            the source node identifier
+	 * @param target
+	 *            the target node identifier
+	 * @return true if the edge was removed, false if it did not exist
+	 */
+	public boolean removeEdge(final int source, final int target) {
+		final int outIndex = indexOf(out[source], outDegree[source], target);
+		if (outIndex == NO_NODE)
+			return false;
+
+		unshare();
+		ownRows(source);
+		ownRows(target);
+
+		// the last edge is moved to the removed position
+		final int lastOut = --outDegree[source];
+		out[source][outIndex] = out[source][lastOut];
+		weights[source][outIndex] = weights[source][lastOut];
+
+		final int inIndex = indexOf(in[target], inDegree[target], source);
+		final int lastIn = --inDegree[target];
+		in[target][inIndex] = in[target][lastIn];
+
+		edgeCount--;
+		return true;
+	}
+
+	public boolean containsEdge(final int source, final int target) {
+		return indexOf(out[source], outDegree[source], target) != NO_NODE;
+	}
+
+	/**
+	 * Sets the weight of the edge between two nodes
+	 * 
+	 * @param source
+	 *            the source node identifier
+	 * @param target
+	 *            the target node identifier
+	 * @param weight
+	 *            the new weight
+	 * @return true if the edge exists, false otherwise
+	 */
+	public boolean setWeight(final int source, final int target, final double weight) {
+		final int index = indexOf(out[source], outDegree[source], target);
+		if (index == NO_NODE)
+			return false;
+
+		unshare();
+		ownRows(source);
+		weights[source][index] = weight;
+		return true;
+	}
+
+	public int getOutDegree(final int id) {
+		return outDegree[id];
+	}
+
+	public int getOut(final int id, final int index) {
+		return out[id][index];
+	}
+
+	public double getWeight(final int id, final int index) {
+		return weights[id][index];
+	}
+
+	public int getInDegree(final int id) {
+		return inDegree[id];
+	}
+
+	public int getIn(final int id, final int index) {
+		return in[id][index];
+	}
+
+	public void setMasked(final int id, final boolean mask) {
+		if (masked.get(id) == mask)
+			return;
+
+		unshare();
+		masked.set(id, mask);
+	}
+
+	public boolean isMasked(final int id) {
+		return masked.get(id);
+	}
+
+	/**
+	 * Computes the shortest paths from the source node using Dijkstra's
+	 * algorithm. Edge weights must be non negative.
+	 * 
+	 * @param source
+	 *            the source node identifier
+	 * @param distances
+	 *            filled with the distance to each node, infinity for
+	 *            unreachable ones. Its length must be at least the capacity
+	 *            of the graph
+	 * @return the previous node of each node in its shortest path or NO_NODE
+	 */
+	public int[] shortestPaths(final int source, final double[] distances) {
+		final int capacity = getCapacity();
+		final int[] previous = new int[capacity];
+		Arrays.fill(previous, NO_NODE);
+		Arrays.fill(distances, 0, capacity, Double.POSITIVE_INFINITY);
+
+		final BitSet settled = new BitSet(capacity);
+		final PriorityQueue<Candidate> queue = new PriorityQueue<Candidate>();
+		distances[source] = 0;
+		queue.add(new Candidate(source, 0));
+
+		while (!queue.isEmpty()) {
+			final Candidate candidate = queue.poll();
+			final int node = candidate.node;
+			if (settled.get(node))
+				continue;
+			settled.set(node);
+
+			for (int i = 0; i < outDegree[node]; i++) {
+				final int target = out[node][i];
+				final double distance = candidate.distance + weights[node][i];
+				if (distance < distances[target]) {
+					distances[target] = distance;
+					previous[target] = node;
+					queue.add(new Candidate(target, distance));
+				}
+			}
+		}
+		return previous;
+	}
+
+	private static class Candidate implements Comparable<Candidate> {
+
+		private final int node;
+		private final double distance;
+
+		public Candidate(final int node, final double distance) {
+			this.node = node;
+			this.distance = distance;
+		}
+
+		@Override
+		public int compareTo(final Candidate candidate) {
+			return Double.compare(distance, candidate.distance);
+		}
+	}
+
+	private static int indexOf(final int[] array, final int length, final int value) {
+		for (int i = 0; i < length; i++)
+			if (array[i] == value)
+				return i;
+		return NO_NODE;
+	}
+
+	// duplicates the node tables if they are shared with a copy. The edge
+	// arrays of each node are still shared
+	private void unshare() {
+		if (shared) {
+			ids = new HashMap<N, Integer>(ids);
+			nodes = new ArrayList<N>(nodes);
+			freeIDs = freeIDs.clone();
+			out = out.clone();
+			weights = weights.clone();
+			outDegree = outDegree.clone();
+			in = in.clone();
+			inDegree = inDegree.clone();
+			masked = (BitSet) masked.clone();
+			shared = false;
+		}
+	}
+
+	// duplicates the edge arrays of the node if they are shared with a copy
+	private void ownRows(final int id) {
+		if (sharedRows.get(id)) {
+			out[id] = out[id].clone();
+			weights[id] = weights[id].clone();
+			in[id] = in[id].clone();
+			sharedRows.clear(id);
+		}
+	}
+
+	private void ensureCapacity(final int capacity) {
+		if (capacity > out.length) {
+			final int newCapacity = Math.max(capacity, out.length * 2);
+			out = Arrays.copyOf(out, newCapacity);
+			weights = Arrays.copyOf(weights, newCapacity);
+			outDegree = Arrays.copyOf(outDegree, newCapacity);
+			in = Arrays.copyOf(in, newCapacity);
+			inDegree = Arrays.copyOf(inDegree, newCapacity);
+		}
+	}
+}
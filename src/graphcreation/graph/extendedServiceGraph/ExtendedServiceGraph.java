@@ -31,6 +31,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -53,6 +54,7 @@ import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
 import serialization.xml.XMLSerializable;
+import taxonomy.ConceptAncestors;
 import taxonomy.Taxonomy;
 import taxonomy.parameter.InputParameter;
 import taxonomy.parameter.InvalidParameterIDException;
@@ -71,13 +73,55 @@ public class ExtendedServiceGraph extends ANDORGraph<ServiceNode, ConnectionNode
 	private final static String SERVICE_NODE_MARK = "Service:";
 	private final static String INVALID_NODE_MARK = "INVALID_NODE";
 
-	private final Map<Service, ServiceNode> serviceNodeMap = new HashMap<Service, ServiceNode>();
+	private Map<Service, ServiceNode> serviceNodeMap = new HashMap<Service, ServiceNode>();
+
+	// the service map is shared with a copy
+	private boolean sharedServiceNodes = false;
 
 	// taxonomy used for input/output connection
 	private final Taxonomy taxonomy;
 
+	// services producing each output, indexed by the output concept and all
+	// its ancestors, i.e. by every input concept they are compatible with
+	private final Map<Short, Map<OutputParameter, Set<Service>>> producers = new HashMap<Short, Map<OutputParameter, Set<Service>>>();
+
+	// services consuming each input, indexed by the input concept
+	private final Map<Short, Map<InputParameter, Set<Service>>> consumers = new HashMap<Short, Map<InputParameter, Set<Service>>>();
+
+	// copies build their indexes when they are modified for the first time
+	private boolean indexed = true;
+
+	private final ConceptAncestors ancestors;
+
 	public ExtendedServiceGraph(final Taxonomy taxonomy) {
 		this.taxonomy = taxonomy;
+		this.ancestors = new ConceptAncestors(taxonomy);
+	}
+
+	private ExtendedServiceGraph(final ExtendedServiceGraph graph) {
+		super(graph);
+		this.taxonomy = graph.taxonomy;
+		this.ancestors = new ConceptAncestors(taxonomy);
+		this.serviceNodeMap = graph.serviceNodeMap;
+		graph.sharedServiceNodes = true;
+		this.sharedServiceNodes = true;
+		this.indexed = false;
+	}
+
+	private Map<Service, ServiceNode> getWritableServiceNodes() {
+		if (sharedServiceNodes) {
+			serviceNodeMap = new HashMap<Service, ServiceNode>(serviceNodeMap);
+			sharedServiceNodes = false;
+		}
+		return serviceNodeMap;
+	}
+
+	private void ensureIndexed() {
+		if (!indexed) {
+			for (final ServiceNode sNode : serviceNodeMap.values())
+				index(sNode.getService());
+			indexed = true;
+		}
 	}
 
 	public Taxonomy getTaxonomy() {
@@ -85,11 +129,16 @@ public class ExtendedServiceGraph extends ANDORGraph<ServiceNode, ConnectionNode
 	}
 
 	public void merge(final ExtendedServiceGraph eServiceGraph) {
-		for (final Service service : eServiceGraph.serviceNodeMap.keySet())
+		merge(eServiceGraph.serviceNodeMap.keySet());
+	}
+
+	public void merge(final Collection<Service> services) {
+		for (final Service service : services)
 			this.merge(service);
 	}
 
 	public ServiceNode merge(final Service s) {
+		ensureIndexed();
 		final ServiceNode sNode = new ServiceNode(s);
 		this.addNode(sNode);
 
@@ -128,7 +177,8 @@ public class ExtendedServiceGraph extends ANDORGraph<ServiceNode, ConnectionNode
 			}
 		}
 
-		serviceNodeMap.put(s, sNode);
+		getWritableServiceNodes().put(s, sNode);
+		index(s);
 
 		return sNode;
 	}
@@ -138,10 +188,11 @@ public class ExtendedServiceGraph extends ANDORGraph<ServiceNode, ConnectionNode
 	// new object is created
 	private Map<ConnectionNode, Set<Service>> getCompatibleConnections(final InputParameter input) {
 		final Map<ConnectionNode, Set<Service>> connections = new HashMap<ConnectionNode, Set<Service>>();
-		for (final Service service : serviceNodeMap.keySet())
-			for (final OutputParameter output : service.getOutputParams())
-				if (taxonomy.subsumes(input.getID(), output.getID()))
-					put(connections, new ConnectionNode(output, input, taxonomy), service);
+		final Map<OutputParameter, Set<Service>> compatibleOutputs = producers.get(Short.valueOf(input.getID()));
+		if (compatibleOutputs != null)
+			for (final Entry<OutputParameter, Set<Service>> entry : compatibleOutputs.entrySet())
+				for (final Service service : entry.getValue())
+					put(connections, new ConnectionNode(entry.getKey(), input, taxonomy), service);
 		return connections;
 	}
 
@@ -156,16 +207,70 @@ public class ExtendedServiceGraph extends ANDORGraph<ServiceNode, ConnectionNode
 	// new object is created
 	private Map<ConnectionNode, Set<Service>> getCompatibleConnections(final OutputParameter output) {
 		final Map<ConnectionNode, Set<Service>> connections = new HashMap<ConnectionNode, Set<Service>>();
-		for (final Service service : serviceNodeMap.keySet())
-			for (final InputParameter input : service.getInputParams())
-				if (taxonomy.subsumes(input.getID(), output.getID()))
-					put(connections, new ConnectionNode(output, input, taxonomy), service);
+		for (final Short concept : ancestors.getConcepts(output.getID())) {
+			final Map<InputParameter, Set<Service>> compatibleInputs = consumers.get(concept);
+			if (compatibleInputs != null)
+				for (final Entry<InputParameter, Set<Service>> entry : compatibleInputs.entrySet())
+					for (final Service service : entry.getValue())
+						put(connections, new ConnectionNode(output, entry.getKey(), taxonomy), service);
+		}
 		return connections;
 	}
 
+	// adds the parameters of the service to the producer and consumer indexes
+	private void index(final Service s) {
+		for (final OutputParameter output : s.getOutputParams())
+			for (final Short concept : ancestors.getConcepts(output.getID()))
+				add(producers, concept, output, s);
+
+		for (final InputParameter input : s.getInputParams())
+			add(consumers, Short.valueOf(input.getID()), input, s);
+	}
+
+	private void unindex(final Service s) {
+		for (final OutputParameter output : s.getOutputParams())
+			for (final Short concept : ancestors.getConcepts(output.getID()))
+				remove(producers, concept, output, s);
+
+		for (final InputParameter input : s.getInputParams())
+			remove(consumers, Short.valueOf(input.getID()), input, s);
+	}
+
+	private static <P> void add(final Map<Short, Map<P, Set<Service>>> index, final Short concept, final P parameter, final Service s) {
+		Map<P, Set<Service>> parameters = index.get(concept);
+		if (parameters == null) {
+			parameters = new HashMap<P, Set<Service>>();
+			index.put(concept, parameters);
+		}
+
+		Set<Service> services = parameters.get(parameter);
+		if (services == null) {
+			services = new HashSet<Service>();
+			parameters.put(parameter, services);
+		}
+		services.add(s);
+	}
+
+	private static <P> void remove(final Map<Short, Map<P, Set<Service>>> index, final Short concept, final P parameter, final Service s) {
+		final Map<P, Set<Service>> parameters = index.get(concept);
+		if (parameters != null) {
+			final Set<Service> services = parameters.get(parameter);
+			if (services != null) {
+				services.remove(s);
+				if (services.isEmpty())
+					parameters.remove(parameter);
+			}
+			if (parameters.isEmpty())
+				index.remove(concept);
+		}
+	}
+
 	public boolean removeService(final Service service) {
-		final ServiceNode sNode = serviceNodeMap.remove(service);
+		ensureIndexed();
+		final ServiceNode sNode = getWritableServiceNodes().remove(service);
 		if (sNode != null) {
+			// the stored service contains the indexed parameters
+			unindex(sNode.getService());
 			this.remove(sNode, RemoveType.DisconnectedOrNodes);
 			return true;
 		}
@@ -174,11 +279,7 @@ public class ExtendedServiceGraph extends ANDORGraph<ServiceNode, ConnectionNode
 
 	@Override
 	public ExtendedServiceGraph copy() {
-		final ExtendedServiceGraph copy = new ExtendedServiceGraph(this.taxonomy);
-
-		copy.merge(this);
-
-		return copy;
+		return new ExtendedServiceGraph(this);
 	}
 
 	public ServiceNode getServiceNode(final Service service) {
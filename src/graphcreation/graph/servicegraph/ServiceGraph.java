@@ -66,7 +66,10 @@ public class ServiceGraph extends ANDORGraph<ServiceNode, ParameterNode> impleme
 	private final static String PARAMETER_NODE_MARK = "Parameter:";
 	private final static String SERVICE_NODE_MARK = "Service:";
 
-	private final Map<Service, ServiceNode> serviceNodeMap = new HashMap<Service, ServiceNode>();
+	private Map<Service, ServiceNode> serviceNodeMap = new HashMap<Service, ServiceNode>();
+	
+	// the service map is shared with a copy
+	private boolean sharedServiceNodes = false;
 	
 	private final Taxonomy taxonomy;
 	
@@ -74,6 +77,22 @@ public class ServiceGraph extends ANDORGraph<ServiceNode, ParameterNode> impleme
 		this.taxonomy = taxonomy;
 	}
 
+	private ServiceGraph(final ServiceGraph graph) {
+		super(graph);
+		this.taxonomy = graph.taxonomy;
+		this.serviceNodeMap = graph.serviceNodeMap;
+		graph.sharedServiceNodes = true;
+		this.sharedServiceNodes = true;
+	}
+	
+	private Map<Service, ServiceNode> getWritableServiceNodes() {
+		if (sharedServiceNodes) {
+			serviceNodeMap = new HashMap<Service, ServiceNode>(serviceNodeMap);
+			sharedServiceNodes = false;
+		}
+		return serviceNodeMap;
+	}
+
 	protected static ServiceGraph createServiceGraphFromService(final Service s, final Taxonomy taxonomy) {
 		final ServiceGraph g = new ServiceGraph(taxonomy);
 
@@ -107,13 +126,13 @@ public class ServiceGraph extends ANDORGraph<ServiceNode, ParameterNode> impleme
 
 		final ServiceNode sNode = serviceGraph.andNodeSet().iterator().next();
 
-		serviceNodeMap.put(s, sNode);
+		getWritableServiceNodes().put(s, sNode);
 
 		return sNode;
 	}
 
 	public boolean removeService(final Service service, final RemoveType removeType) {
-		final ServiceNode sNode = serviceNodeMap.remove(service);
+		final ServiceNode sNode = getWritableServiceNodes().remove(service);
 		if (sNode != null) {
 			this.remove(sNode, removeType);
 			return true;
@@ -121,13 +140,17 @@ public class ServiceGraph extends ANDORGraph<ServiceNode, ParameterNode> impleme
 		return false;
 	}
 
+	/**
+	 * Creates a copy of the graph sharing its storage until any of them is
+	 * modified. Unlike the previous copies, which were created merging the
+	 * nodes of the graph, the copy also contains the services of the graph,
+	 * so getServiceNode() and removeService() work on it.
+	 * 
+	 * @return a copy of the graph
+	 */
 	@Override
 	public ServiceGraph copy() {
-		final ServiceGraph copy = new ServiceGraph(taxonomy);
-
-		copy.merge(this);
-
-		return copy;
+		return new ServiceGraph(this);
 	}
 
 	public ServiceNode getServiceNode(final Service service) {
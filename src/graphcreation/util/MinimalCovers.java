@@ -0,0 +1,229 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package graphcreation.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Enumerates the minimal sets of candidates which cover a set of required
+ * items. Required items are indexed as bits of a mask and the items covered
+ * by each candidate are precomputed, so checking a set of candidates is
+ * reduced to some bitwise operations. Covers are generated in ascending
+ * cardinality using a depth-first search which only extends partial sets
+ * with candidates covering new items and prunes those branches where the
+ * remaining candidates cannot complete the cover. Non minimal sets are never
+ * generated.
+ * 
+ * @author Unai Aguilera (unai.aguilera@gmail.com)
+ * 
+ */
+public class MinimalCovers<E> {
+
+	public static final int NO_LIMIT = 0;
+
+	private final Map<Object, Integer> requiredIndex = new HashMap<Object, Integer>();
+
+	// number of words of each mask
+	private final int words;
+
+	private final long[] required;
+
+	private final List<E> candidates = new ArrayList<E>();
+	private final List<long[]> coverages = new ArrayList<long[]>();
+
+	/**
+	 * Constructor of the class
+	 * 
+	 * @param requiredItems
+	 *            the items which must be covered
+	 */
+	public MinimalCovers(final Collection<?> requiredItems) {
+		for (final Object item : requiredItems)
+			if (!requiredIndex.containsKey(item))
+				requiredIndex.put(item, Integer.valueOf(requiredIndex.size()));
+
+		words = Math.max(1, (requiredIndex.size() + Long.SIZE - 1) / Long.SIZE);
+		required = new long[words];
+		for (int i = 0; i < requiredIndex.size(); i++)
+			set(required, i);
+	}
+
+	/**
+	 * Adds a candidate for the covers
+	 * 
+	 * @param candidate
+	 *            the candidate
+	 * @param coveredItems
+	 *            the items covered by the candidate. Those which are not
+	 *            required are ignored
+	 */
+	public void addCandidate(final E candidate, final Collection<?> coveredItems) {
+		final long[] coverage = new long[words];
+		for (final Object item : coveredItems) {
+			final Integer index = requiredIndex.get(item);
+			if (index != null)
+				set(coverage, index.intValue());
+		}
+		candidates.add(candidate);
+		coverages.add(coverage);
+	}
+
+	/**
+	 * Enumerates the minimal covers in ascending cardinality. If nothing is
+	 * required each candidate is a minimal cover by itself, as the empty set
+	 * is never returned.
+	 * 
+	 * @param maxCovers
+	 *            the maximum number of returned covers or NO_LIMIT
+	 * @return the minimal covers
+	 */
+	public List<Set<E>> enumerate(final int maxCovers) {
+		final List<Set<E>> covers = new ArrayList<Set<E>>();
+
+		if (requiredIndex.isEmpty()) {
+			for (final E candidate : candidates) {
+				if (isFull(covers, maxCovers))
+					break;
+				final Set<E> cover = new LinkedHashSet<E>();
+				cover.add(candidate);
+				covers.add(cover);
+			}
+			return covers;
+		}
+
+		// candidates covering nothing cannot belong to a minimal cover
+		final List<Integer> useful = new ArrayList<Integer>();
+		for (int i = 0; i < candidates.size(); i++)
+			if (!isEmpty(coverages.get(i)))
+				useful.add(Integer.valueOf(i));
+
+		final int[] indexes = new int[useful.size()];
+		final long[][] masks = new long[useful.size()][];
+		for (int i = 0; i < indexes.length; i++) {
+			indexes[i] = useful.get(i).intValue();
+			masks[i] = coverages.get(indexes[i]);
+		}
+
+		// items which can be covered using the candidates from each position
+		final long[][] remaining = new long[masks.length + 1][words];
+		for (int i = masks.length - 1; i >= 0; i--)
+			or(remaining[i + 1], masks[i], remaining[i]);
+
+		if (!coversAll(remaining[0], remaining[0]))
+			return covers;
+
+		// items covered at each depth of the search
+		final long[][] covered = new long[masks.length + 1][words];
+		final int[] selected = new int[masks.length];
+		for (int size = 1; size <= masks.length && !isFull(covers, maxCovers); size++)
+			search(0, 0, size, masks, remaining, covered, indexes, selected, covers, maxCovers);
+
+		return covers;
+	}
+
+	// searches the covers with the specified size extending the current
+	// partial selection
+	private void search(final int start, final int depth, final int size, final long[][] masks, final long[][] remaining, final long[][] covered, final int[] indexes, final int[] selected, final List<Set<E>> covers, final int maxCovers) {
+		final long[] current = covered[depth];
+		final long[] next = covered[depth + 1];
+		for (int i = start; i <= masks.length - (size - depth) && !isFull(covers, maxCovers); i++) {
+			// the candidate must cover something new
+			if (!coversNew(masks[i], current))
+				continue;
+
+			// remaining candidates cannot complete the cover
+			if (!coversAll(current, remaining[i]))
+				return;
+
+			or(current, masks[i], next);
+			selected[depth] = i;
+			final boolean complete = coversAll(next, next);
+			if (depth + 1 == size) {
+				if (complete && isMinimal(selected, size, masks))
+					covers.add(createCover(selected, size, indexes));
+			} else if (!complete)
+				search(i + 1, depth + 1, size, masks, remaining, covered, indexes, selected, covers, maxCovers);
+		}
+	}
+
+	// checks that every selected candidate covers some item not covered by
+	// the others
+	private boolean isMinimal(final int[] selected, final int size, final long[][] masks) {
+		final long[] others = new long[words];
+		for (int i = 0; i < size; i++) {
+			Arrays.fill(others, 0);
+			for (int j = 0; j < size; j++)
+				if (j != i)
+					or(others, masks[selected[j]], others);
+			if (coversAll(others, others))
+				return false;
+		}
+		return true;
+	}
+
+	private Set<E> createCover(final int[] selected, final int size, final int[] indexes) {
+		final Set<E> cover = new LinkedHashSet<E>();
+		for (int i = 0; i < size; i++)
+			cover.add(candidates.get(indexes[selected[i]]));
+		return cover;
+	}
+
+	// checks if the union of both masks contains all required items
+	private boolean coversAll(final long[] a, final long[] b) {
+		for (int i = 0; i < words; i++)
+			if (((a[i] | b[i]) & required[i]) != required[i])
+				return false;
+		return true;
+	}
+
+	private boolean coversNew(final long[] mask, final long[] covered) {
+		for (int i = 0; i < words; i++)
+			if ((mask[i] & ~covered[i]) != 0)
+				return true;
+		return false;
+	}
+
+	private static void or(final long[] a, final long[] b, final long[] result) {
+		for (int i = 0; i < result.length; i++)
+			result[i] = a[i] | b[i];
+	}
+
+	private static boolean isEmpty(final long[] mask) {
+		for (final long word : mask)
+			if (word != 0)
+				return false;
+		return true;
+	}
+
+	private static void set(final long[] mask, final int index) {
+		mask[index / Long.SIZE] |= 1L << (index % Long.SIZE);
+	}
+
+	private static boolean isFull(final List<?> covers, final int maxCovers) {
+		return maxCovers != NO_LIMIT && covers.size() >= maxCovers;
+	}
+}
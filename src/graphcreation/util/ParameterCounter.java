@@ -0,0 +1,160 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package graphcreation.util;
+
+import taxonomy.parameter.InputParameter;
+import taxonomy.parameter.Parameter;
+
+/**
+ * Counts references to parameters. Counters are stored as primitive values
+ * in an open addressing table whose keys combine the type and the identifier
+ * of each parameter, avoiding the creation of boxed integers every time a
+ * counter changes. Only parameters with a positive count are kept.
+ * 
+ * @author Unai Aguilera (unai.aguilera@gmail.com)
+ * 
+ */
+public class ParameterCounter {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	// no valid key is zero because the type is always included
+	private static final int EMPTY = 0;
+
+	private int[] keys = new int[INITIAL_CAPACITY];
+	private int[] counts = new int[INITIAL_CAPACITY];
+
+	private int size = 0;
+
+	/**
+	 * Increments the references of the passed parameter
+	 * 
+	 * @param p
+	 *            the referenced parameter
+	 * @return the number of references after the increment
+	 */
+	public int increment(final Parameter p) {
+		final int key = key(p);
+		int slot = find(key);
+		if (keys[slot] == EMPTY) {
+			if ((size + 1) * 2 > keys.length) {
+				resize(keys.length * 2);
+				slot = find(key);
+			}
+			keys[slot] = key;
+			size++;
+		}
+		return ++counts[slot];
+	}
+
+	/**
+	 * Decrements the references of the passed parameter. The parameter is
+	 * forgotten when no references remain.
+	 * 
+	 * @param p
+	 *            the dereferenced parameter
+	 * @return the number of references after the decrement, zero if the
+	 *         parameter was not referenced
+	 */
+	public int decrement(final Parameter p) {
+		final int slot = find(key(p));
+		if (keys[slot] == EMPTY)
+			return 0;
+
+		final int count = --counts[slot];
+		if (count == 0)
+			delete(slot);
+		return count;
+	}
+
+	/**
+	 * Gets the number of references of the passed parameter
+	 * 
+	 * @param p
+	 *            the parameter to check
+	 * @return the number of references of the parameter
+	 */
+	public int count(final Parameter p) {
+		final int slot = find(key(p));
+		return keys[slot] == EMPTY ? 0 : counts[slot];
+	}
+
+	/**
+	 * Gets the number of referenced parameters
+	 * 
+	 * @return the number of parameters with at least one reference
+	 */
+	public int size() {
+		return size;
+	}
+
+	private static int key(final Parameter p) {
+		final int type = (p instanceof InputParameter) ? Parameter.INPUT_PARAMETER : Parameter.OUTPUT_PARAMETER;
+		return (type << 16) | (p.getID() & 0xFFFF);
+	}
+
+	private static int hash(final int key, final int mask) {
+		final int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	// returns the slot containing the key or the empty slot where it should be
+	// inserted
+	private int find(final int key) {
+		final int mask = keys.length - 1;
+		int slot = hash(key, mask);
+		while (keys[slot] != EMPTY && keys[slot] != key)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	// removes the entry moving back those entries of the same probe sequence
+	private void delete(int slot) {
+		final int mask = keys.length - 1;
+		int next = (slot + 1) & mask;
+		while (keys[next] != EMPTY) {
+			final int home = hash(keys[next], mask);
+			// the entry can be moved if its home position is not between the
+			// freed slot and its current position
+			if (((next - home) & mask) >= ((next - slot) & mask)) {
+				keys[slot] = keys[next];
+				counts[slot] = counts[next];
+				slot = next;
+			}
+			next = (next + 1) & mask;
+		}
+		keys[slot] = EMPTY;
+		counts[slot] = 0;
+		size--;
+	}
+
+	private void resize(final int capacity) {
+		final int[] oldKeys = keys;
+		final int[] oldCounts = counts;
+		keys = new int[capacity];
+		counts = new int[capacity];
+		for (int i = 0; i < oldKeys.length; i++)
+			if (oldKeys[i] != EMPTY) {
+				final int slot = find(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				counts[slot] = oldCounts[i];
+			}
+	}
+}
@@ -20,31 +20,78 @@
 package graphcreation.util;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
-import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 public class PowerSet {
 
-	static class AscComparator<E> implements Comparator<Set<E>> {
+	// maximum number of elements supported by the subset masks
+	public static final int MAX_ELEMENTS = Long.SIZE - 2;
 
-		@Override
-		public int compare(final Set<E> a, final Set<E> b) {
-			return (a.size() - b.size());
+	/**
+	 * Lazily iterates the non empty subsets of an indexed array of elements.
+	 * Each subset is represented by a long mask and the subsets with the same
+	 * cardinality are generated in increasing mask order using Gosper's hack,
+	 * so the power set is never allocated.
+	 */
+	static class SubsetIterator<E> implements Iterator<Set<E>> {
+
+		private final E[] elements;
+		private final boolean ascending;
+
+		private int size;
+		private long mask;
+		private final long limit;
+
+		public SubsetIterator(final E[] elements, final boolean ascending) {
+			this.elements = elements;
+			this.ascending = ascending;
+			this.limit = 1L << elements.length;
+			this.size = ascending ? 1 : elements.length;
+			this.mask = firstMask(size);
 		}
 
-	}
+		@Override
+		public boolean hasNext() {
+			return size >= 1 && size <= elements.length;
+		}
 
-	static class DescComparator<E> implements Comparator<Set<E>> {
+		@Override
+		public Set<E> next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+
+			final Set<E> subset = new LinkedHashSet<E>();
+			for (long bits = mask; bits != 0; bits &= bits - 1)
+				subset.add(elements[Long.numberOfTrailingZeros(bits)]);
+
+			mask = nextMask(mask);
+			if (mask >= limit) {
+				size += ascending ? 1 : -1;
+				mask = firstMask(size);
+			}
+			return subset;
+		}
 
 		@Override
-		public int compare(final Set<E> a, final Set<E> b) {
-			return (b.size() - a.size());
+		public void remove() {
+			throw new UnsupportedOperationException();
 		}
 
+		private static long firstMask(final int size) {
+			return (1L << size) - 1;
+		}
+
+		// the next greater mask with the same number of bits
+		private static long nextMask(final long mask) {
+			final long lowest = mask & -mask;
+			final long ripple = mask + lowest;
+			return (((ripple ^ mask) >>> 2) / lowest) | ripple;
+		}
 	}
 
 	// From
@@ -57,7 +104,7 @@ public class PowerSet {
 			set.add(Integer.valueOf(i));
 
 		System.out.println("Initial elements: " + set.size());
-		System.out.println("Expected elements: " + Math.pow(2, set.size()));
+		System.out.println("Expected elements: " + ((1L << set.size()) - 1));
 		// form the power set
 		final long time = System.currentTimeMillis();
 		final Set<Set<Integer>> myPowerSet = PowerSet.powersetAsc(set);
@@ -70,82 +117,71 @@ public class PowerSet {
 	}
 
 	/**
-	 * Returns the power set from the given set by using a binary counter
-	 * ordered by size Example: S = {a,b,c} P(S) = {[], [c], [b], [b, c], [a],
-	 * [a, c], [a, b], [a, b, c]}
+	 * Returns the non empty subsets of the given collection lazily, ordered by
+	 * ascending size. Example: S = {a,b,c} gives [a], [b], [c], [a, b], [a,
+	 * c], [b, c], [a, b, c]
 	 * 
-	 * @param set
-	 *            String[]
-	 * @return LinkedHashSet
+	 * @param elements
+	 *            the elements of the set, at most MAX_ELEMENTS
+	 * @return an iterable over the subsets
 	 */
-	public static <E> Set<Set<E>> powersetAsc(final Set<E> superSet) {
-		final List<Set<E>> list = powerset(superSet);
-		Collections.sort(list, new AscComparator<E>());
-		return new LinkedHashSet<Set<E>>(list);
+	public static <E> Iterable<Set<E>> subsetsAsc(final Collection<E> elements) {
+		return subsets(elements, true);
 	}
 
-	private static <E> List<Set<E>> powerset(final Set<E> superSet) {
-		final List<E> listSet = new ArrayList<E>(superSet);
-		// create the empty power set
-		final Set<Set<E>> power = new LinkedHashSet<Set<E>>();
-
-		// get the number of elements in the set
-		final int elements = listSet.size();
-
-		// the number of members of a power set is 2^n
-		final int powerElements = (int) Math.pow(2, elements);
-
-		// run a binary counter for the number of power elements
-		for (int i = 0; i < powerElements; i++) {
-
-			// convert the binary number to a String containing n digits
-			final String binary = intToBinary(i, elements);
-
-			// create a new set
-			final LinkedHashSet<E> innerSet = new LinkedHashSet<E>();
-
-			// convert each digit in the current binary number to the
-			// corresponding element
-			// in the given set
-			for (int j = 0; j < binary.length(); j++)
-				if (binary.charAt(j) == '1')
-					innerSet.add(listSet.get(j));
+	/**
+	 * Returns the non empty subsets of the given collection lazily, ordered by
+	 * descending size.
+	 * 
+	 * @param elements
+	 *            the elements of the set, at most MAX_ELEMENTS
+	 * @return an iterable over the subsets
+	 */
+	public static <E> Iterable<Set<E>> subsetsDesc(final Collection<E> elements) {
+		return subsets(elements, false);
+	}
 
-			// add the new set to the power set
-			power.add(innerSet);
+	@SuppressWarnings("unchecked")
+	private static <E> Iterable<Set<E>> subsets(final Collection<E> elements, final boolean ascending) {
+		if (elements.size() > MAX_ELEMENTS)
+			throw new IllegalArgumentException("Cannot iterate the subsets of more than " + MAX_ELEMENTS + " elements");
 
-		}
+		final E[] indexed = (E[]) new ArrayList<E>(elements).toArray();
+		return new Iterable<Set<E>>() {
 
-		final List<Set<E>> list = new ArrayList<Set<E>>(power);
-		list.remove(new LinkedHashSet<E>());
-		return list;
+			@Override
+			public Iterator<Set<E>> iterator() {
+				return new SubsetIterator<E>(indexed, ascending);
+			}
+		};
 	}
 
-	public static <E> Set<Set<E>> powersetDesc(final Set<E> superSet) {
-		final List<Set<E>> list = powerset(superSet);
-		Collections.sort(list, new DescComparator<E>());
-		return new LinkedHashSet<Set<E>>(list);
+	/**
+	 * Returns the non empty subsets of the given set ordered by ascending size
+	 * 
+	 * @param superSet
+	 *            the set
+	 * @return the power set without the empty set
+	 */
+	public static <E> Set<Set<E>> powersetAsc(final Set<E> superSet) {
+		return collect(subsetsAsc(superSet));
 	}
 
 	/**
-	 * Converts the given integer to a String representing a binary number with
-	 * the specified number of digits For example when using 4 digits the binary
-	 * 1 is 0001
+	 * Returns the non empty subsets of the given set ordered by descending size
 	 * 
-	 * @param binary
-	 *            int
-	 * @param digits
-	 *            int
-	 * @return String
+	 * @param superSet
+	 *            the set
+	 * @return the power set without the empty set
 	 */
-	private static String intToBinary(final int binary, final int digits) {
-
-		final String temp = Integer.toBinaryString(binary);
-		final int foundDigits = temp.length();
-		String returner = temp;
-		for (int i = foundDigits; i < digits; i++)
-			returner = "0" + returner;
+	public static <E> Set<Set<E>> powersetDesc(final Set<E> superSet) {
+		return collect(subsetsDesc(superSet));
+	}
 
-		return returner;
+	private static <E> Set<Set<E>> collect(final Iterable<Set<E>> subsets) {
+		final Set<Set<E>> power = new LinkedHashSet<Set<E>>();
+		for (final Set<E> subset : subsets)
+			power.add(subset);
+		return power;
 	}
 }
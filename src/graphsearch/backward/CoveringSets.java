@@ -20,10 +20,8 @@
 package graphsearch.backward;
 
 import graphcreation.collisionbased.ServiceDistance;
-import graphcreation.graph.extendedServiceGraph.ExtendedServiceGraph;
-import graphcreation.graph.extendedServiceGraph.node.ConnectionNode;
 import graphcreation.services.Service;
-import graphcreation.util.PowerSet;
+import graphcreation.util.MinimalCovers;
 
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -31,20 +29,20 @@ import java.util.Set;
 
 import taxonomy.Taxonomy;
 import taxonomy.parameter.InputParameter;
+import taxonomy.parameter.OutputParameter;
 
 public class CoveringSets {
 
 	public static Set<Set<ServiceDistance>> calculateCoveringSets(final Service service, final Set<Set<ServiceDistance>> currentCoveringSets, final Set<ServiceDistance> ancestors, final Taxonomy taxonomy) {
-		final Set<Set<ServiceDistance>> powerSet = PowerSet.powersetAsc(ancestors);
-		// Obtain the new covering sets
-		powerSet.removeAll(currentCoveringSets);
+		// the inputs covered by each ancestor are computed only once
+		final MinimalCovers<ServiceDistance> minimalCovers = new MinimalCovers<ServiceDistance>(service.getInputParams());
+		for (final ServiceDistance ancestor : ancestors)
+			minimalCovers.addCandidate(ancestor, getCoveredInputs(ancestor.getService(), service, taxonomy));
 
-		// Check each set for covering
 		final Set<Set<ServiceDistance>> newCoveringSets = new LinkedHashSet<Set<ServiceDistance>>();
-		for (final Set<ServiceDistance> set : powerSet)
-			// only sets which do not contain previous covering sets and which
-			// fully cover the current service are added
-			if (!contains(set, newCoveringSets) && !contains(set, currentCoveringSets) && covers(set, service, taxonomy))
+		for (final Set<ServiceDistance> set : minimalCovers.enumerate(MinimalCovers.NO_LIMIT))
+			// only sets which do not contain previous covering sets are added
+			if (!contains(set, currentCoveringSets))
 				newCoveringSets.add(set);
 		return newCoveringSets;
 	}
@@ -56,20 +54,16 @@ public class CoveringSets {
 		return false;
 	}
 
-	private static boolean covers(final Set<ServiceDistance> set, final Service service, final Taxonomy taxonomy) {
-		final ExtendedServiceGraph eServiceGraph = new ExtendedServiceGraph(taxonomy);
-
-		for (final ServiceDistance antecessor : set)
-			eServiceGraph.merge(antecessor.getService());
-
-		eServiceGraph.merge(service);
-
-		// check if service is covered
+	// gets the inputs of the service which are connected to some output of
+	// the ancestor
+	private static Set<InputParameter> getCoveredInputs(final Service ancestor, final Service service, final Taxonomy taxonomy) {
 		final Set<InputParameter> coveredInputs = new HashSet<InputParameter>();
-		for (final ConnectionNode connectionNode : eServiceGraph.getAncestorORNodes(eServiceGraph.getServiceNode(service), false))
-			coveredInputs.add(connectionNode.getInput());
-
-		// Check if all service inputs are contained in the covered inputs
-		return coveredInputs.containsAll(service.getInputParams());
+		for (final InputParameter input : service.getInputParams())
+			for (final OutputParameter output : ancestor.getOutputParams())
+				if (taxonomy.subsumes(input.getID(), output.getID())) {
+					coveredInputs.add(input);
+					break;
+				}
+		return coveredInputs;
 	}
 }
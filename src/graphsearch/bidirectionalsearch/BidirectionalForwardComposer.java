@@ -155,8 +155,7 @@ class BidirectionalForwardComposer extends ForwardComposer {
 
 		final ExtendedServiceGraph eServiceGraph = new ExtendedServiceGraph(gCreator.getPSearch().getDisseminationLayer().getTaxonomy());
 
-		for (final Service s : services)
-			eServiceGraph.merge(s);
+		eServiceGraph.merge(services);
 
 		for (final ServiceNode sNode : eServiceGraph.getSuccessors(eServiceGraph.getServiceNode(service), false))
 			successors.add(sNode.getService());
@@ -27,14 +27,17 @@ import graphsearch.CompositionListener;
 import graphsearch.SearchID;
 import graphsearch.backward.backwardCompositionTable.BackwardCompositionData;
 import graphsearch.backward.message.BCompositionMessage;
+import graphsearch.compositionData.ExpiredSearch;
 import graphsearch.bidirectionalsearch.message.CompositionNotificationMessage;
 import graphsearch.bidirectionalsearch.message.ShortestPathNotificationMessage;
 import graphsearch.commonCompositionSearch.CommonCompositionSearch;
 import graphsearch.forward.forwardCompositionTable.ForwardCompositionData;
 import graphsearch.forward.message.FCompositionMessage;
 import graphsearch.shortestpathnotificator.ShortestPathCalculator;
+import graphsearch.shortestpathnotificator.ShortestPathEngine;
 import graphsearch.util.Utility;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -52,6 +55,9 @@ public class BidirectionalSearch extends CommonCompositionSearch {
 	private BidirectionalForwardComposer forwardComposer;
 	private BidirectionalBackwardComposer backwardComposer;
 
+	// shortest path engines of the searches whose compositions were notified
+	private final Map<SearchID, ShortestPathEngine> searchEngines = new HashMap<SearchID, ShortestPathEngine>();
+
 	private final Logger logger = Logger.getLogger(BidirectionalSearch.class);
 
 	public BidirectionalSearch(final ReliableBroadcastPeer peer, final CompositionListener compositionListener) {
@@ -117,13 +123,34 @@ public class BidirectionalSearch extends CommonCompositionSearch {
 
 	public void notifyComposition(final SearchID searchID, final Map<Service, Set<ServiceDistance>> distanceBetweenServices, final PeerID currentPeer, final Taxonomy taxonomy) {
 		logger.debug("Peer " + peer.getPeerID() + " found composition for search " + searchID);
-		final List<Service> notificationPath = ShortestPathCalculator.findShortestPath(distanceBetweenServices, currentPeer, taxonomy);
+		final List<Service> notificationPath = ShortestPathCalculator.findShortestPath(getEngine(searchID, taxonomy), distanceBetweenServices, currentPeer);
 
 		final CompositionNotificationMessage compositionNotificationMessage = new CompositionNotificationMessage(peer.getPeerID(), searchID, distanceBetweenServices, notificationPath);
 
 		getShortestPathNotificator().processShortestPathNotificationMessage(compositionNotificationMessage);
 	}
 
+	private ShortestPathEngine getEngine(final SearchID searchID, final Taxonomy taxonomy) {
+		synchronized (searchEngines) {
+			ShortestPathEngine engine = searchEngines.get(searchID);
+			if (engine == null) {
+				engine = new ShortestPathEngine(taxonomy);
+				searchEngines.put(searchID, engine);
+			}
+			return engine;
+		}
+	}
+
+	@Override
+	public void expiredSearches(final Set<ExpiredSearch> expiredSearches) {
+		synchronized (searchEngines) {
+			for (final ExpiredSearch expiredSearch : expiredSearches)
+				searchEngines.remove(expiredSearch.getSearchID());
+		}
+
+		super.expiredSearches(expiredSearches);
+	}
+
 	@Override
 	public void newSuccessors(final Map<Service, Set<ServiceDistance>> newSuccessors) {
 		forwardComposer.newSuccessors(newSuccessors);
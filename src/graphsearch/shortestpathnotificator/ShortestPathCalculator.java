@@ -20,11 +20,8 @@
 package graphsearch.shortestpathnotificator;
 
 import graphcreation.collisionbased.ServiceDistance;
-import graphcreation.graph.extendedServiceGraph.ExtendedServiceGraph;
-import graphcreation.graph.servicegraph.node.ServiceNode;
 import graphcreation.services.Service;
 import graphsearch.bidirectionalsearch.Util;
-import graphsearch.util.Utility;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -40,6 +37,24 @@ import taxonomy.Taxonomy;
 public class ShortestPathCalculator {
 
 	public static List<Service> findShortestPath(final Map<Service, Set<ServiceDistance>> distanceBetweenServices, final PeerID currentPeer, final Taxonomy taxonomy) {
+		return findShortestPath(new ShortestPathEngine(taxonomy), distanceBetweenServices, currentPeer);
+	}
+
+	/**
+	 * Adds the received services and distances to the engine of a search and
+	 * finds the shortest path of the local services. The same engine must be
+	 * used for all the compositions notified for a search, so only the paths
+	 * affected by the received distances are updated.
+	 * 
+	 * @param engine
+	 *            the engine which maintains the paths of the search
+	 * @param distanceBetweenServices
+	 *            the received distances between services
+	 * @param currentPeer
+	 *            the current peer
+	 * @return the shortest path among those of the local services
+	 */
+	public static List<Service> findShortestPath(final ShortestPathEngine engine, final Map<Service, Set<ServiceDistance>> distanceBetweenServices, final PeerID currentPeer) {
 		// get all services located in the current peer
 		final Set<Service> localServices = new HashSet<Service>();
 		final Set<Service> services = Util.getAllServices(distanceBetweenServices);
@@ -47,18 +62,22 @@ public class ShortestPathCalculator {
 			if (service.getPeerID().equals(currentPeer))
 				localServices.add(service);
 
-		// for each service located in the current node, find its shortest path
-		// to composition starting node
-		final List<Path> possiblePaths = new ArrayList<Path>();
-		for (final Service service : localServices) {
-			final Path path = findShortestPath(distanceBetweenServices, service, taxonomy);
-			possiblePaths.add(path);
-		}
+		synchronized (engine) {
+			updateEngine(engine, distanceBetweenServices, services);
+
+			// for each service located in the current node, find its shortest
+			// path to composition starting node
+			final List<Path> possiblePaths = new ArrayList<Path>();
+			for (final Service service : localServices) {
+				final Path path = findShortestPath(engine, service);
+				possiblePaths.add(path);
+			}
 
-		if (!possiblePaths.isEmpty()) {
-			// find the shortest path
-			Collections.sort(possiblePaths);
-			return possiblePaths.get(0).serviceList;
+			if (!possiblePaths.isEmpty()) {
+				// find the shortest path
+				Collections.sort(possiblePaths);
+				return possiblePaths.get(0).serviceList;
+			}
 		}
 
 		return Collections.emptyList();
@@ -99,57 +118,29 @@ public class ShortestPathCalculator {
 		}
 	}
 
-	private static Path findShortestPath(final Map<Service, Set<ServiceDistance>> distanceBetweenServices, final Service service, final Taxonomy taxonomy) {
-		final ExtendedServiceGraph eServiceGraph = new ExtendedServiceGraph(taxonomy);
-
-		ServiceNode init = null;
-		ServiceNode goal = null;
-
-		for (final Service s : Util.getAllServices(distanceBetweenServices)) {
-			eServiceGraph.merge(s);
+	private static void updateEngine(final ShortestPathEngine engine, final Map<Service, Set<ServiceDistance>> distanceBetweenServices, final Set<Service> services) {
+		// distances of the new services are set before adding them, so their
+		// edges are created with their weight. Distances between services
+		// already added update the current paths
+		for (final Entry<Service, Set<ServiceDistance>> entry : distanceBetweenServices.entrySet())
+			for (final ServiceDistance sDistance : entry.getValue())
+				engine.setDistance(entry.getKey(), sDistance.getService(), sDistance.getDistance().intValue());
 
-			if (Utility.isINITService(s))
-				init = eServiceGraph.getServiceNode(s);
-
-			if (Utility.isGoalService(s))
-				goal = eServiceGraph.getServiceNode(s);
-		}
-
-		// set distance weight
-		for (final Entry<Service, Set<ServiceDistance>> entry : distanceBetweenServices.entrySet()) {
-			final Service s = entry.getKey();
-			for (final ServiceDistance sDistance : entry.getValue()) {
-				final ServiceNode serviceNode = eServiceGraph.getServiceNode(s);
-				final ServiceNode successorNode = eServiceGraph.getServiceNode(sDistance.getService());
-				eServiceGraph.setWeight(serviceNode, successorNode, sDistance.getDistance().intValue());
-			}
-		}
+		for (final Service s : services)
+			engine.addService(s);
+	}
 
+	private static Path findShortestPath(final ShortestPathEngine engine, final Service service) {
 		// Find direct path. INIT -> Service
-		final List<ServiceNode> directPath = eServiceGraph.findShortestPath(init, eServiceGraph.getServiceNode(service));
-		final double directPathCost = eServiceGraph.getShortestPathCost(init, eServiceGraph.getServiceNode(service));
+		final double directPathCost = engine.getCostFromInit(service);
 
 		// Find inverse path. GOAL -> Service
-		final List<ServiceNode> inversePath = eServiceGraph.findShortestPath(eServiceGraph.getServiceNode(service), goal);
-		final double inversePathCost = eServiceGraph.getShortestPathCost(eServiceGraph.getServiceNode(service), goal);
+		final double inversePathCost = engine.getCostToGoal(service);
 
 		// select the shortest path among the different options
-		List<ServiceNode> shortestPath;
-		double cost;
-		if (directPathCost < inversePathCost) {
-			Collections.reverse(directPath);
-			shortestPath = directPath;
-			cost = directPathCost;
-		} else {
-			shortestPath = inversePath;
-			cost = inversePathCost;
-		}
-
-		// return solution
-		final List<Service> services = new ArrayList<Service>();
-		for (final ServiceNode sNode : shortestPath)
-			services.add(sNode.getService());
+		if (directPathCost < inversePathCost)
+			return new Path(engine.getPathFromInit(service), directPathCost);
 
-		return new Path(services, cost);
+		return new Path(engine.getPathToGoal(service), inversePathCost);
 	}
 }
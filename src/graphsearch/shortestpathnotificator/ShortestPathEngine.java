@@ -0,0 +1,331 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package graphsearch.shortestpathnotificator;
+
+import graphcreation.graph.extendedServiceGraph.ExtendedServiceGraph;
+import graphcreation.graph.servicegraph.node.ServiceNode;
+import graphcreation.services.Service;
+import graphsearch.util.Utility;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import taxonomy.Taxonomy;
+
+/**
+ * Maintains the cheapest paths from the INIT service and to the GOAL service
+ * of a composition while its services and the distances between them are
+ * added. Services are connected when some output of one is compatible with
+ * some input of the other. Each insertion only relaxes the distances which
+ * become shorter, propagating the change with decrease-key updates, so the
+ * paths are never recomputed from scratch unless a distance grows.
+ * 
+ * The distances of a service should be set before adding it, so its edges
+ * are created with their weight. Setting the distance of an existing edge
+ * updates the paths using it. Edges without distance have a weight of
+ * DEFAULT_DISTANCE.
+ * 
+ * @author Unai Aguilera (unai.aguilera@gmail.com)
+ * 
+ */
+public class ShortestPathEngine {
+
+	public static final double DEFAULT_DISTANCE = 1;
+
+	private static class Node {
+
+		private final Service service;
+
+		private final List<Edge> out = new ArrayList<Edge>();
+		private final List<Edge> in = new ArrayList<Edge>();
+
+		// cost and previous node of the cheapest path from INIT
+		private double fromInit = Double.POSITIVE_INFINITY;
+		private Node previous;
+
+		// cost and next node of the cheapest path to GOAL
+		private double toGoal = Double.POSITIVE_INFINITY;
+		private Node next;
+
+		public Node(final Service service) {
+			this.service = service;
+		}
+	}
+
+	private static class Edge {
+
+		private final Node from;
+		private final Node to;
+		private double weight;
+
+		public Edge(final Node from, final Node to, final double weight) {
+			this.from = from;
+			this.to = to;
+			this.weight = weight;
+		}
+	}
+
+	private static class Entry implements Comparable<Entry> {
+
+		private final Node node;
+		private final double cost;
+
+		public Entry(final Node node, final double cost) {
+			this.node = node;
+			this.cost = cost;
+		}
+
+		@Override
+		public int compareTo(final Entry entry) {
+			return Double.compare(cost, entry.cost);
+		}
+	}
+
+	// used to find the compatible services
+	private final ExtendedServiceGraph eServiceGraph;
+
+	private final Map<Service, Node> nodes = new HashMap<Service, Node>();
+
+	// distances set for each pair of services
+	private final Map<Service, Map<Service, Double>> distances = new HashMap<Service, Map<Service, Double>>();
+
+	private Node init;
+	private Node goal;
+
+	public ShortestPathEngine(final Taxonomy taxonomy) {
+		eServiceGraph = new ExtendedServiceGraph(taxonomy);
+	}
+
+	/**
+	 * Adds a service connecting it to the compatible services already added
+	 * 
+	 * @param service
+	 *            the added service
+	 */
+	public void addService(final Service service) {
+		if (nodes.containsKey(service))
+			return;
+
+		final Node node = new Node(service);
+		nodes.put(service, node);
+
+		final ServiceNode sNode = eServiceGraph.merge(service);
+
+		if (Utility.isINITService(service)) {
+			init = node;
+			node.fromInit = 0;
+		}
+
+		if (Utility.isGoalService(service)) {
+			goal = node;
+			node.toGoal = 0;
+		}
+
+		for (final ServiceNode successor : eServiceGraph.getSuccessors(sNode, false))
+			addEdge(node, nodes.get(successor.getService()));
+
+		for (final ServiceNode ancestor : eServiceGraph.getAncestors(sNode, false))
+			if (!ancestor.getService().equals(service))
+				addEdge(nodes.get(ancestor.getService()), node);
+
+		if (node == init)
+			relaxFromInit(node);
+
+		if (node == goal)
+			relaxToGoal(node);
+	}
+
+	/**
+	 * Sets the distance between two services. It is used as the weight of the
+	 * edge between them if they are compatible.
+	 * 
+	 * @param from
+	 *            the ancestor service
+	 * @param to
+	 *            the successor service
+	 * @param distance
+	 *            the distance between both services
+	 */
+	public void setDistance(final Service from, final Service to, final double distance) {
+		Map<Service, Double> successorDistances = distances.get(from);
+		if (successorDistances == null) {
+			successorDistances = new HashMap<Service, Double>();
+			distances.put(from, successorDistances);
+		}
+		successorDistances.put(to, Double.valueOf(distance));
+
+		final Node fromNode = nodes.get(from);
+		final Node toNode = nodes.get(to);
+		if (fromNode == null || toNode == null)
+			return;
+
+		for (final Edge edge : fromNode.out)
+			if (edge.to == toNode) {
+				final double oldWeight = edge.weight;
+				edge.weight = distance;
+				if (distance < oldWeight)
+					relax(edge);
+				else if (distance > oldWeight)
+					recompute();
+				return;
+			}
+	}
+
+	/**
+	 * Gets the cost of the cheapest path from INIT to the service
+	 * 
+	 * @return the cost or infinity if there is no path
+	 */
+	public double getCostFromInit(final Service service) {
+		final Node node = nodes.get(service);
+		return node == null ? Double.POSITIVE_INFINITY : node.fromInit;
+	}
+
+	/**
+	 * Gets the cost of the cheapest path from the service to GOAL
+	 * 
+	 * @return the cost or infinity if there is no path
+	 */
+	public double getCostToGoal(final Service service) {
+		final Node node = nodes.get(service);
+		return node == null ? Double.POSITIVE_INFINITY : node.toGoal;
+	}
+
+	/**
+	 * Gets the cheapest path from INIT to the service, starting with the
+	 * service and finishing with INIT
+	 * 
+	 * @return the services of the path or an empty list if there is no path
+	 */
+	public List<Service> getPathFromInit(final Service service) {
+		final List<Service> path = new ArrayList<Service>();
+		final Node node = nodes.get(service);
+		if (node != null && node.fromInit != Double.POSITIVE_INFINITY)
+			for (Node current = node; current != null; current = current.previous)
+				path.add(current.service);
+		return path;
+	}
+
+	/**
+	 * Gets the cheapest path from the service to GOAL
+	 * 
+	 * @return the services of the path or an empty list if there is no path
+	 */
+	public List<Service> getPathToGoal(final Service service) {
+		final List<Service> path = new ArrayList<Service>();
+		final Node node = nodes.get(service);
+		if (node != null && node.toGoal != Double.POSITIVE_INFINITY)
+			for (Node current = node; current != null; current = current.next)
+				path.add(current.service);
+		return path;
+	}
+
+	private void addEdge(final Node from, final Node to) {
+		double weight = DEFAULT_DISTANCE;
+		final Map<Service, Double> successorDistances = distances.get(from.service);
+		if (successorDistances != null && successorDistances.containsKey(to.service))
+			weight = successorDistances.get(to.service).doubleValue();
+
+		final Edge edge = new Edge(from, to, weight);
+		from.out.add(edge);
+		to.in.add(edge);
+		relax(edge);
+	}
+
+	// updates the paths which become cheaper using the edge
+	private void relax(final Edge edge) {
+		if (edge.from.fromInit + edge.weight < edge.to.fromInit) {
+			edge.to.fromInit = edge.from.fromInit + edge.weight;
+			edge.to.previous = edge.from;
+			relaxFromInit(edge.to);
+		}
+
+		if (edge.weight + edge.to.toGoal < edge.from.toGoal) {
+			edge.from.toGoal = edge.weight + edge.to.toGoal;
+			edge.from.next = edge.to;
+			relaxToGoal(edge.from);
+		}
+	}
+
+	// propagates the decreased cost from INIT of the node to its successors
+	private void relaxFromInit(final Node start) {
+		final PriorityQueue<Entry> queue = new PriorityQueue<Entry>();
+		queue.add(new Entry(start, start.fromInit));
+		while (!queue.isEmpty()) {
+			final Entry entry = queue.poll();
+			// outdated entry
+			if (entry.cost > entry.node.fromInit)
+				continue;
+
+			for (final Edge edge : entry.node.out) {
+				final double cost = entry.node.fromInit + edge.weight;
+				if (cost < edge.to.fromInit) {
+					edge.to.fromInit = cost;
+					edge.to.previous = entry.node;
+					queue.add(new Entry(edge.to, cost));
+				}
+			}
+		}
+	}
+
+	// propagates the decreased cost to GOAL of the node to its ancestors
+	private void relaxToGoal(final Node start) {
+		final PriorityQueue<Entry> queue = new PriorityQueue<Entry>();
+		queue.add(new Entry(start, start.toGoal));
+		while (!queue.isEmpty()) {
+			final Entry entry = queue.poll();
+			// outdated entry
+			if (entry.cost > entry.node.toGoal)
+				continue;
+
+			for (final Edge edge : entry.node.in) {
+				final double cost = edge.weight + entry.node.toGoal;
+				if (cost < edge.from.toGoal) {
+					edge.from.toGoal = cost;
+					edge.from.next = entry.node;
+					queue.add(new Entry(edge.from, cost));
+				}
+			}
+		}
+	}
+
+	// recomputes all paths after a distance has grown
+	private void recompute() {
+		for (final Node node : nodes.values()) {
+			node.fromInit = Double.POSITIVE_INFINITY;
+			node.previous = null;
+			node.toGoal = Double.POSITIVE_INFINITY;
+			node.next = null;
+		}
+
+		if (init != null) {
+			init.fromInit = 0;
+			relaxFromInit(init);
+		}
+
+		if (goal != null) {
+			goal.toGoal = 0;
+			relaxToGoal(goal);
+		}
+	}
+}
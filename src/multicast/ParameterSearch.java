@@ -25,6 +25,7 @@ import java.util.Set;
 import multicast.search.Route;
 import multicast.search.message.SearchMessage.SearchType;
 import peer.message.BroadcastMessage;
+import peer.message.MessageID;
 import peer.peerid.PeerID;
 import serialization.xml.XMLSerializable;
 import taxonomy.parameter.Parameter;
@@ -89,6 +90,43 @@ public interface ParameterSearch extends XMLSerializable {
 	public void sendSearchMessageDefaultTTL(Set<Parameter> parameters, BroadcastMessage payload, SearchType searchType);
 	
 	public void sendSearchMessage(Set<SearchedParameter> searchedParameters, BroadcastMessage payload, SearchType searchType);
+	
+	/**
+	 * Sends a batch of searches. Requests with the same search type and
+	 * payload are packed into a single search message and share its route
+	 * identifier.
+	 * 
+	 * @param requests
+	 *            the search requests to send
+	 * @return the route identifier used by each request, in the same order
+	 */
+	public List<MessageID> sendSearchMessages(List<SearchRequest> requests);
+	
+	/**
+	 * Sends a search which starts with a small TTL. The TTL is expanded each
+	 * time the search is not answered by the required number of providers in
+	 * time, until the maximum search TTL is reached.
+	 * 
+	 * @param parameters
+	 *            the searched parameters
+	 * @param payload
+	 *            the payload of the search
+	 * @param searchType
+	 *            the type of the search
+	 * @param requiredProviders
+	 *            the number of different providers which satisfy the search
+	 * @return the identifier of the search
+	 */
+	public MessageID sendExpandingSearchMessage(Set<Parameter> parameters, BroadcastMessage payload, SearchType searchType, int requiredProviders);
+	
+	/**
+	 * Gets the cost accounting of an expanding search
+	 * 
+	 * @param searchID
+	 *            the identifier of the search
+	 * @return the cost of the search or null if it is not known
+	 */
+	public SearchCost getSearchCost(MessageID searchID);
 
 	public Route getRoute(PeerID destination);
 
@@ -99,4 +137,12 @@ public interface ParameterSearch extends XMLSerializable {
 	public Set<? extends PeerID> getKnownDestinations();
 
 	public Set<? extends Route> getRoutes(PeerID destination);
+	
+	/**
+	 * Tells if the queue used to send multicast messages exceeded its budget.
+	 * Upper layers should defer non urgent traffic while congested.
+	 * 
+	 * @return true if the multicast queue is congested, false otherwise
+	 */
+	public boolean isCongested();
 }
\ No newline at end of file
@@ -0,0 +1,105 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package multicast;
+
+/**
+ * This class contains the cost accounting of an expanding ring search.
+ * 
+ * @author Unai Aguilera (unai.aguilera@gmail.com)
+ * 
+ */
+public class SearchCost {
+
+	private final int rings;
+	private final int ttl;
+	private final int responses;
+	private final int providers;
+	private final long elapsedTime;
+	private final boolean satisfied;
+	
+	public SearchCost(final int rings, final int ttl, final int responses, final int providers, final long elapsedTime, final boolean satisfied) {
+		this.rings = rings;
+		this.ttl = ttl;
+		this.responses = responses;
+		this.providers = providers;
+		this.elapsedTime = elapsedTime;
+		this.satisfied = satisfied;
+	}
+
+	/**
+	 * Gets the number of search messages (rings) sent by the search
+	 * 
+	 * @return the number of rings sent
+	 */
+	public int getRings() {
+		return rings;
+	}
+
+	/**
+	 * Gets the TTL used by the last ring of the search
+	 * 
+	 * @return the TTL of the last ring
+	 */
+	public int getTTL() {
+		return ttl;
+	}
+
+	/**
+	 * Gets the number of responses received for all the rings
+	 * 
+	 * @return the number of received responses
+	 */
+	public int getResponses() {
+		return responses;
+	}
+
+	/**
+	 * Gets the number of different providers which answered the search
+	 * 
+	 * @return the number of different providers
+	 */
+	public int getProviders() {
+		return providers;
+	}
+
+	/**
+	 * Gets the time elapsed since the search started until it was satisfied,
+	 * or until now if it was not
+	 * 
+	 * @return the elapsed time in milliseconds
+	 */
+	public long getElapsedTime() {
+		return elapsedTime;
+	}
+
+	/**
+	 * Tells if the required number of providers answered the search
+	 * 
+	 * @return true if the search was satisfied, false otherwise
+	 */
+	public boolean isSatisfied() {
+		return satisfied;
+	}
+	
+	@Override
+	public String toString() {
+		return "rings: " + rings + " TTL: " + ttl + " responses: " + responses + " providers: " + providers + " time: " + elapsedTime + " satisfied: " + satisfied;
+	}
+}
@@ -0,0 +1,64 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package multicast;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import multicast.search.message.SearchMessage.SearchType;
+import peer.message.BroadcastMessage;
+
+/**
+ * This class defines a search request which can be sent together with other
+ * requests using a batch.
+ * 
+ * @author Unai Aguilera (unai.aguilera@gmail.com)
+ * 
+ */
+public class SearchRequest {
+
+	private final Set<SearchedParameter> searchedParameters = new HashSet<SearchedParameter>();
+	private final BroadcastMessage payload;
+	private final SearchType searchType;
+	
+	public SearchRequest(final Set<SearchedParameter> searchedParameters, final BroadcastMessage payload, final SearchType searchType) {
+		this.searchedParameters.addAll(searchedParameters);
+		this.payload = payload;
+		this.searchType = searchType;
+	}
+
+	public Set<SearchedParameter> getSearchedParameters() {
+		return Collections.unmodifiableSet(searchedParameters);
+	}
+
+	public BroadcastMessage getPayload() {
+		return payload;
+	}
+
+	public SearchType getSearchType() {
+		return searchType;
+	}
+	
+	@Override
+	public String toString() {
+		return searchType + " " + searchedParameters;
+	}
+}
@@ -0,0 +1,223 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package multicast.search;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import multicast.SearchCost;
+import multicast.search.message.SearchMessage.SearchType;
+import peer.message.BroadcastMessage;
+import peer.message.MessageID;
+import peer.peerid.PeerID;
+import taxonomy.parameter.Parameter;
+
+/**
+ * This class contains the state of an expanding ring search. The search is
+ * sent with a small TTL which is doubled, up to a maximum, each time a ring
+ * expires without the required number of providers answering.
+ * 
+ * @author Unai Aguilera (unai.aguilera@gmail.com)
+ * 
+ */
+final class ExpandingSearch {
+
+	private final Set<Parameter> parameters = new HashSet<Parameter>();
+	private final BroadcastMessage payload;
+	private final SearchType searchType;
+	private final int requiredProviders;
+	private final int maxTTL;
+	
+	private final long startTime;
+	
+	// the identifier of the first ring, used as search identifier
+	private MessageID searchID = null;
+	
+	// the route identifier of the last ring
+	private MessageID currentRouteID = null;
+	
+	private int ttl;
+	private int rings = 0;
+	private int responses = 0;
+	private long ringStartTime;
+	private long satisfiedTime = -1;
+	private long finishTime = -1;
+	
+	private final Set<PeerID> providers = new HashSet<PeerID>();
+	
+	public ExpandingSearch(final Set<Parameter> parameters, final BroadcastMessage payload, final SearchType searchType, final int requiredProviders, final int initialTTL, final int maxTTL, final long startTime) {
+		// the TTL is doubled on each expansion, so it must be positive
+		if (initialTTL < 1)
+			throw new IllegalArgumentException("Initial ring TTL must be at least 1. " + initialTTL + " received");
+		this.parameters.addAll(parameters);
+		this.payload = payload;
+		this.searchType = searchType;
+		this.requiredProviders = requiredProviders;
+		this.maxTTL = maxTTL;
+		this.ttl = Math.min(initialTTL, maxTTL);
+		this.startTime = startTime;
+		this.ringStartTime = startTime;
+	}
+	
+	public Set<Parameter> getParameters() {
+		return Collections.unmodifiableSet(parameters);
+	}
+	
+	public BroadcastMessage getPayload() {
+		return payload;
+	}
+	
+	public SearchType getSearchType() {
+		return searchType;
+	}
+	
+	public MessageID getSearchID() {
+		return searchID;
+	}
+	
+	public MessageID getCurrentRouteID() {
+		return currentRouteID;
+	}
+	
+	public int getTTL() {
+		return ttl;
+	}
+	
+	public long getRingStartTime() {
+		return ringStartTime;
+	}
+	
+	/**
+	 * Registers a new ring sent with the current TTL
+	 * 
+	 * @param routeID
+	 *            the route identifier of the ring
+	 * @param now
+	 *            the current time
+	 */
+	public void ringSent(final MessageID routeID, final long now) {
+		if (searchID == null)
+			searchID = routeID;
+		currentRouteID = routeID;
+		ringStartTime = now;
+		rings++;
+	}
+	
+	/**
+	 * Registers a response received from a provider
+	 * 
+	 * @param provider
+	 *            the node which answered the search
+	 * @param now
+	 *            the current time
+	 * @return true if the search has just been satisfied, false otherwise
+	 */
+	public boolean responseReceived(final PeerID provider, final long now) {
+		responses++;
+		providers.add(provider);
+		if (!isFinished() && providers.size() >= requiredProviders) {
+			finishTime = now;
+			satisfiedTime = now;
+			return true;
+		}
+		return false;
+	}
+	
+	public boolean isSatisfied() {
+		return satisfiedTime >= 0;
+	}
+	
+	public boolean isFinished() {
+		return finishTime >= 0;
+	}
+	
+	public long getFinishTime() {
+		return finishTime;
+	}
+	
+	/**
+	 * Checks if the current ring expired without satisfying the search
+	 * 
+	 * @param now
+	 *            the current time
+	 * @param timeout
+	 *            the time to wait for the current ring
+	 * @return true if the ring expired, false otherwise
+	 */
+	public boolean hasExpired(final long now, final long timeout) {
+		return !isFinished() && now - ringStartTime >= timeout;
+	}
+	
+	/**
+	 * Removes canceled parameters from the search. The following rings only
+	 * search for the remaining ones and the search is finished when no
+	 * parameters remain.
+	 * 
+	 * @param canceledParameters
+	 *            the parameters which are not searched anymore
+	 * @param now
+	 *            the current time
+	 * @return true if the search was finished, false otherwise
+	 */
+	public boolean cancelParameters(final Set<Parameter> canceledParameters, final long now) {
+		parameters.removeAll(canceledParameters);
+		if (!isFinished() && parameters.isEmpty()) {
+			finishTime = now;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Replaces the searched parameters, for example, after they were
+	 * generalized. The following rings search for the new parameters.
+	 * 
+	 * @param searchedParameters
+	 *            the new searched parameters
+	 */
+	public void setParameters(final Set<Parameter> searchedParameters) {
+		parameters.clear();
+		parameters.addAll(searchedParameters);
+	}
+	
+	/**
+	 * Expands the search doubling its TTL. If the maximum TTL was already used
+	 * the search is finished.
+	 * 
+	 * @param now
+	 *            the current time
+	 * @return true if the search was expanded, false if it finished
+	 */
+	public boolean expand(final long now) {
+		if (ttl >= maxTTL) {
+			finishTime = now;
+			return false;
+		}
+		
+		ttl = Math.min(ttl * 2, maxTTL);
+		return true;
+	}
+	
+	public SearchCost getCost(final long now) {
+		final long endTime = isSatisfied() ? satisfiedTime : now;
+		return new SearchCost(rings, ttl, responses, providers.size(), endTime - startTime, isSatisfied());
+	}
+}
@@ -0,0 +1,126 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+
+package multicast.search;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import peer.peerid.PeerID;
+
+/**
+ * This class assigns the destinations of a multicast message to the branches
+ * of the neighbors it is sent through. Among the neighbors providing a
+ * shortest route to a destination, those shared by more destinations are
+ * greedily preferred, so a single copy of the message travels through common
+ * path prefixes. Ties are broken by the neighbor identifier. The neighbor the
+ * message was received from is never used.
+ * 
+ * @author Unai Aguilera (unai.aguilera@gmail.com)
+ * 
+ */
+final class MulticastBranches {
+
+	private final Set<PeerID> neighbors;
+	private final PeerID sender;
+
+	// the destinations each neighbor provides a shortest route to
+	private final Map<PeerID, Set<PeerID>> candidates = new HashMap<PeerID, Set<PeerID>>();
+
+	/**
+	 * Constructor of the branches
+	 * 
+	 * @param neighbors
+	 *            the current neighbors
+	 * @param sender
+	 *            the neighbor the message was received from
+	 */
+	public MulticastBranches(final Set<PeerID> neighbors, final PeerID sender) {
+		this.neighbors = neighbors;
+		this.sender = sender;
+	}
+
+	/**
+	 * Adds the destination of the passed route. The destination can be
+	 * assigned to the neighbor of the route or to the neighbor of any
+	 * alternative route with the same distance.
+	 * 
+	 * @param route
+	 *            the route used to reach the destination
+	 * @param alternatives
+	 *            other routes to the same destination
+	 */
+	public void addDestination(final Route route, final Collection<Route> alternatives) {
+		if (!route.getThrough().equals(sender))
+			addCandidate(route.getThrough(), route.getDest());
+		for (final Route alternative : alternatives)
+			if (alternative.getDistance() == route.getDistance() && neighbors.contains(alternative.getThrough()) && !alternative.getThrough().equals(sender))
+				addCandidate(alternative.getThrough(), route.getDest());
+	}
+
+	/**
+	 * Gets the branches. Each added destination belongs to exactly one of
+	 * them.
+	 * 
+	 * @return the destinations assigned to each neighbor
+	 */
+	public Map<PeerID, Set<PeerID>> getBranches() {
+		final Map<PeerID, Set<PeerID>> remaining = new HashMap<PeerID, Set<PeerID>>();
+		for (final Entry<PeerID, Set<PeerID>> entry : candidates.entrySet())
+			remaining.put(entry.getKey(), new HashSet<PeerID>(entry.getValue()));
+
+		final Map<PeerID, Set<PeerID>> branches = new HashMap<PeerID, Set<PeerID>>();
+		while (!remaining.isEmpty()) {
+			PeerID selected = null;
+			int selectedSize = 0;
+			for (final Entry<PeerID, Set<PeerID>> entry : remaining.entrySet()) {
+				final int size = entry.getValue().size();
+				if (selected == null || size > selectedSize || (size == selectedSize && entry.getKey().compareTo(selected) < 0)) {
+					selected = entry.getKey();
+					selectedSize = size;
+				}
+			}
+
+			final Set<PeerID> branch = remaining.remove(selected);
+			branches.put(selected, branch);
+			for (final Iterator<Set<PeerID>> it = remaining.values().iterator(); it.hasNext(); ) {
+				final Set<PeerID> candidate = it.next();
+				candidate.removeAll(branch);
+				if (candidate.isEmpty())
+					it.remove();
+			}
+		}
+		return branches;
+	}
+
+	private void addCandidate(final PeerID neighbor, final PeerID destination) {
+		Set<PeerID> candidate = candidates.get(neighbor);
+		if (candidate == null) {
+			candidate = new HashSet<PeerID>();
+			candidates.put(neighbor, candidate);
+		}
+		candidate.add(destination);
+	}
+}
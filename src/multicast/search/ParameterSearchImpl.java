@@ -23,7 +23,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -34,6 +36,8 @@ import java.util.Set;
 
 import multicast.ParameterSearch;
 import multicast.ParameterSearchListener;
+import multicast.SearchCost;
+import multicast.SearchRequest;
 import multicast.SearchedParameter;
 import multicast.search.message.GeneralizeSearchMessage;
 import multicast.search.message.RemoteMessage;
@@ -43,21 +47,27 @@ import multicast.search.message.RemoveRouteMessage;
 import multicast.search.message.SearchMessage;
 import multicast.search.message.SearchMessage.SearchType;
 import multicast.search.message.SearchResponseMessage;
+import multicast.search.unicastTable.RouteCache;
 import multicast.search.unicastTable.UnicastTable;
-import peer.CommunicationLayer;
 import peer.RegisterCommunicationLayerException;
 import peer.ReliableBroadcastPeer;
+import peer.ScheduledLayer;
+import peer.SendPriority;
 import peer.conditionregister.ConditionRegister;
 import peer.message.BroadcastMessage;
 import peer.message.MessageID;
+import peer.message.MessageReceivedListener;
 import peer.peerid.PeerID;
 import taxonomy.parameter.Parameter;
 import taxonomy.parameterList.ParameterList;
 import util.logger.Logger;
+import util.timer.Timer;
+import util.timer.TimerTask;
 import config.Configuration;
 import dissemination.DistanceChange;
 import dissemination.ParameterDisseminator;
 import dissemination.TableChangedListener;
+import dissemination.bloomFilter.BloomFilterDisseminator;
 import dissemination.newProtocol.ParameterTableUpdater;
 
 /**
@@ -67,7 +77,7 @@ import dissemination.newProtocol.ParameterTableUpdater;
  * @author Unai Aguilera (unai.aguilera@gmail.com)
  * 
  */
-public class ParameterSearchImpl implements CommunicationLayer, TableChangedListener, ParameterSearch {
+public class ParameterSearchImpl implements ScheduledLayer, TableChangedListener, ParameterSearch {
 
 	// reference to the lower layer
 	private final ParameterDisseminator pDisseminator;
@@ -83,17 +93,48 @@ public class ParameterSearchImpl implements CommunicationLayer, TableChangedList
 
 	// A reference to the route table
 	private UnicastTable uTable;
+	
+	// cache of resolved and overheard routes
+	private RouteCache routeCache;
+	
+	private static final long DEFAULT_ROUTE_CACHE_EXPIRATION = 5000;
+	
+	// expanding ring searches indexed by the route identifier of each ring
+	private final Map<MessageID, ExpandingSearch> expandingSearches = new HashMap<MessageID, ExpandingSearch>();
+	
+	private RingTimeout ringTimeout;
+	
+	private int INITIAL_RING_TTL = 1; // Default value
+	
+	private static final long DEFAULT_HOP_TIME = 200;
+	private static final long MIN_RING_TIMEOUT = 500;
+	private static final long EXPANDING_CHECK_TIME = 100;
+	
+	// the time the cost of finished expanding searches is kept
+	private static final long EXPANDING_SEARCH_RETENTION = 60000;
+	
+	private final Timer expandingSearchTimer = new Timer(EXPANDING_CHECK_TIME, new TimerTask() {
+		@Override
+		public void perform() throws InterruptedException {
+			checkExpandingSearches();
+		}
+	});
 
 	// Configuration properties
 	private int MAX_TTL = 5; // Default value
 	
-	private static class ReceivedMessageID {
+	private static class HandledDestination {
 		
 		private final MessageID remoteMessageID;
+		private final PeerID destination;
+		
+		// the neighbor the message was received from. It is not used for
+		// comparison.
 		private final PeerID sender;
 		
-		public ReceivedMessageID(final MessageID remoteMessageID, final PeerID sender) {
+		public HandledDestination(final MessageID remoteMessageID, final PeerID destination, final PeerID sender) {
 			this.remoteMessageID = remoteMessageID;
+			this.destination = destination;
 			this.sender = sender;
 		}
 		
@@ -103,22 +144,35 @@ public class ParameterSearchImpl implements CommunicationLayer, TableChangedList
 		
 		@Override
 		public boolean equals(Object o) {
-			if (!(o instanceof ReceivedMessageID))
+			if (!(o instanceof HandledDestination))
 				return false;
 			
-			ReceivedMessageID receivedMessageID = (ReceivedMessageID)o;
-			return this.remoteMessageID.equals(receivedMessageID.remoteMessageID);
+			HandledDestination handledDestination = (HandledDestination)o;
+			return this.remoteMessageID.equals(handledDestination.remoteMessageID) && this.destination.equals(handledDestination.destination);
 		}
 		
 		@Override
 		public int hashCode() {
-			 return remoteMessageID.hashCode();
+			return remoteMessageID.hashCode() * 31 + destination.hashCode();
 		}
 	}
-
-	private final ConditionRegister<ReceivedMessageID> receivedMessages = new ConditionRegister<ReceivedMessageID>(ReliableBroadcastPeer.CLEAN_REC_MSGS);
+	
+	// the multicast destinations already handled by this node for each message
+	private final ConditionRegister<HandledDestination> handledDestinations = new ConditionRegister<HandledDestination>(ReliableBroadcastPeer.CLEAN_REC_MSGS);
 	
 	private boolean enabled = true;
+	
+	// the send priorities whose queues exceeded their budget
+	private final Set<SendPriority> congestedQueues = EnumSet.noneOf(SendPriority.class);
+	
+	// if enabled, responses sent to the same destination through the same
+	// neighbor are aggregated and repeated responses of the same source are
+	// suppressed at intermediate nodes
+	private boolean aggregateResponses = false;
+	
+	// parameters already forwarded for each active search route and responding
+	// source. Entries are removed when the search is canceled or removed.
+	private final Map<MessageID, Map<PeerID, Set<Parameter>>> forwardedResponses = new HashMap<MessageID, Map<PeerID, Set<Parameter>>>();
 
 	private final Logger logger = Logger.getLogger(ParameterSearchImpl.class);
 
@@ -135,7 +189,7 @@ public class ParameterSearchImpl implements CommunicationLayer, TableChangedList
 	public ParameterSearchImpl(final ReliableBroadcastPeer peer, final ParameterSearchListener searchListener, final TableChangedListener tableChangedListener) {
 		this.peer = peer;
 		this.tableChangedListener = tableChangedListener;
-		this.pDisseminator = new ParameterTableUpdater(peer, this);
+		this.pDisseminator = createDisseminator(peer);
 		this.searchListener = searchListener;
 
 		final Set<Class<? extends BroadcastMessage>> messageClasses = new HashSet<Class<? extends BroadcastMessage>>();
@@ -153,6 +207,18 @@ public class ParameterSearchImpl implements CommunicationLayer, TableChangedList
 		}
 	}
 
+	// Creates the dissemination layer selected by the configuration
+	private ParameterDisseminator createDisseminator(final ReliableBroadcastPeer peer) {
+		try {
+			final String mode = Configuration.getInstance().getProperty("dissemination.mode");
+			if (BloomFilterDisseminator.MODE.equals(mode))
+				return new BloomFilterDisseminator(peer, this);
+		} catch (final Exception e) {
+			logger.error("Peer " + peer.getPeerID() + " had problem loading configuration: " + e.getMessage());
+		}
+		return new ParameterTableUpdater(peer, this);
+	}
+
 	public void setDisabled() {
 		enabled = false;
 	}
@@ -211,17 +277,27 @@ public class ParameterSearchImpl implements CommunicationLayer, TableChangedList
 	
 	@Override
 	public void neighborsChanged(final Set<PeerID> newNeighbors, final Set<PeerID> lostNeighbors) {
-		if (!newNeighbors.isEmpty())
+		if (!newNeighbors.isEmpty()) {
+			// new neighbors are directly reachable
+			for (final PeerID neighbor : newNeighbors)
+				routeCache.removeResolvedRoute(neighbor);
+			
 			repropagateCurrentActiveSearches(newNeighbors);
+		}
 		
 		if (!lostNeighbors.isEmpty()) {
 			logger.trace("Peer " + peer.getPeerID() + " removing all messages received from neighbor dissapeared neighbors " + lostNeighbors);
-			for (ReceivedMessageID receivedMessageID : receivedMessages.getEntries()) {
-				if (lostNeighbors.contains(receivedMessageID.getSender())) {
-					receivedMessages.remove(receivedMessageID);
-				}
+			// destinations handled for messages received from lost neighbors
+			// can be received again through other branches
+			synchronized (handledDestinations) {
+				for (final HandledDestination handledDestination : handledDestinations.getEntries())
+					if (lostNeighbors.contains(handledDestination.getSender()))
+						handledDestinations.remove(handledDestination);
 			}
 			
+			for (final PeerID neighbor : lostNeighbors)
+				routeCache.removeNeighbor(neighbor);
+			
 			final Set<MessageID> lostRoutes = new HashSet<MessageID>();
 			
 			synchronized (uTable) { 
@@ -278,6 +354,8 @@ public class ParameterSearchImpl implements CommunicationLayer, TableChangedList
 				}
 			}
 		}
+		
+		cancelExpandingSearches(removedParameters);
 		sendRemoveParametersMessage(removedParameters);
 	}
 
@@ -306,6 +384,7 @@ public class ParameterSearchImpl implements CommunicationLayer, TableChangedList
 
 		logger.trace("Peer " + peer.getPeerID() + " generalizing searches " + routeIDs + " with parameters " + generalizedParameters);
 		sendGeneralizeSearchMessage(generalizedParameters, routeIDs);
+		updateExpandingSearches(routeIDs);
 	}
 
 	private void processLocalAddedParameters(final Set<Parameter> localAddedParameters) {
@@ -387,23 +466,68 @@ public class ParameterSearchImpl implements CommunicationLayer, TableChangedList
 			}
 		}
 
+		try {
+			final String aggregateResponsesStr = Configuration.getInstance().getProperty("parameterSearch.aggregateResponses");
+			aggregateResponses = Boolean.parseBoolean(aggregateResponsesStr);
+			logger.info("Peer " + peer.getPeerID() + " set AGGREGATE_RESPONSES " + aggregateResponses);
+		} catch (final Exception e) {
+			logger.error("Peer " + peer.getPeerID() + " had problem loading configuration: " + e.getMessage());
+		}
+
+		long routeCacheExpiration = DEFAULT_ROUTE_CACHE_EXPIRATION;
+		try {
+			final String routeCacheExpirationStr = Configuration.getInstance().getProperty("parameterSearch.routeCacheExpiration");
+			routeCacheExpiration = Long.parseLong(routeCacheExpirationStr);
+			logger.info("Peer " + peer.getPeerID() + " set ROUTE_CACHE_EXPIRATION " + routeCacheExpiration);
+		} catch (final Exception e) {
+			logger.error("Peer " + peer.getPeerID() + " had problem loading configuration: " + e.getMessage());
+		}
+
+		long hopTime = DEFAULT_HOP_TIME;
+		try {
+			final String initialRingTTLStr = Configuration.getInstance().getProperty("parameterSearch.initialRingTTL");
+			final int initialRingTTL = Integer.parseInt(initialRingTTLStr);
+			// rings double their TTL, so it must be positive
+			if (initialRingTTL < 1)
+				logger.error("Peer " + peer.getPeerID() + " rejected INITIAL_RING_TTL " + initialRingTTL + ". Using " + INITIAL_RING_TTL);
+			else {
+				INITIAL_RING_TTL = initialRingTTL;
+				logger.info("Peer " + peer.getPeerID() + " set INITIAL_RING_TTL " + INITIAL_RING_TTL);
+			}
+			
+			final String hopTimeStr = Configuration.getInstance().getProperty("parameterSearch.ringHopTime");
+			hopTime = Long.parseLong(hopTimeStr);
+			logger.info("Peer " + peer.getPeerID() + " set RING_HOP_TIME " + hopTime);
+		} catch (final Exception e) {
+			logger.error("Peer " + peer.getPeerID() + " had problem loading configuration: " + e.getMessage());
+		}
+
 		uTable = new UnicastTable(peer.getPeerID(), peer.getDetector(), pDisseminator.getTaxonomy());
+		routeCache = new RouteCache(routeCacheExpiration);
+		ringTimeout = new RingTimeout(hopTime, MIN_RING_TIMEOUT);
+		
+		// learn alternative routes from overheard search traffic
+		peer.addHearListener(new MessageReceivedListener() {
+			@Override
+			public void messageReceived(final BroadcastMessage message, final long receptionTime) {
+				if (message instanceof SearchMessage)
+					learnRoute((RemoteMessage) message, receptionTime);
+				else if (message instanceof SearchResponseMessage) {
+					learnRoute((RemoteMessage) message, receptionTime);
+					for (final SearchResponseMessage aggregatedResponse : ((SearchResponseMessage) message).getAggregatedResponses())
+						learnRoute(aggregatedResponse, receptionTime);
+				}
+			}
+		});
 
-		receivedMessages.start();
+		handledDestinations.start();
+		expandingSearchTimer.start();
 	}
 	
 	private void setSearchTTL(final int searchTTL) {
 		MAX_TTL = searchTTL;
 		logger.info("Peer " + peer.getPeerID() + " set MAX_TTL " + MAX_TTL);
 	}
-	
-	private boolean alreadyReceived(final RemoteMessage remoteMessage) {
-		if (receivedMessages.contains(new ReceivedMessageID(remoteMessage.getRemoteMessageID(), remoteMessage.getSender())))
-			return true;
-		
-		receivedMessages.addEntry((new ReceivedMessageID(remoteMessage.getRemoteMessageID(), remoteMessage.getSender())));
-		return false;
-	}
 
 	@Override
 	public void messageReceived(final BroadcastMessage message, final long receptionTime) {
@@ -412,9 +536,13 @@ public class ParameterSearchImpl implements CommunicationLayer, TableChangedList
 		
 		if (message instanceof SearchMessage)
 			processSearchMessage((SearchMessage) message);
-		else if (message instanceof SearchResponseMessage)
-			processSearchResponseMessage((SearchResponseMessage) message);
-		else if (message instanceof RemoteMulticastMessage)
+		else if (message instanceof SearchResponseMessage) {
+			final SearchResponseMessage searchResponseMessage = (SearchResponseMessage) message;
+			processSearchResponseMessage(searchResponseMessage);
+			// aggregated responses are processed as if received separately
+			for (final SearchResponseMessage aggregatedResponse : searchResponseMessage.getAggregatedResponses())
+				processSearchResponseMessage(aggregatedResponse);
+		} else if (message instanceof RemoteMulticastMessage)
 			processMulticastMessage((RemoteMulticastMessage) message);
 		else if (message instanceof RemoveRouteMessage)
 			processRemoveRouteMessage((RemoveRouteMessage) message);
@@ -486,7 +614,8 @@ public class ParameterSearchImpl implements CommunicationLayer, TableChangedList
 
 	@Override
 	public void stop() {
-		receivedMessages.stopAndWait();
+		handledDestinations.stopAndWait();
+		expandingSearchTimer.stopAndWait();
 	}
 
 	private void acceptMulticastMessage(final RemoteMulticastMessage multicastMessage) {
@@ -509,8 +638,155 @@ public class ParameterSearchImpl implements CommunicationLayer, TableChangedList
 
 	private void acceptSearchResponseMessage(final SearchResponseMessage searchResponseMessage) {
 		logger.debug("Peer " + peer.getPeerID() + " found parameters " + (new ParameterList(searchResponseMessage.getParameters())).pretty(pDisseminator.getTaxonomy()) + " in node " + searchResponseMessage.getSource() + " searchID " + searchResponseMessage.getRespondedRouteID() + " distance " + searchResponseMessage.getDistance());
+		updateExpandingSearch(searchResponseMessage);
 		searchListener.parametersFound(searchResponseMessage);
 	}
+	
+	// accounts the response if it belongs to an expanding search
+	private void updateExpandingSearch(final SearchResponseMessage searchResponseMessage) {
+		final long now = System.currentTimeMillis();
+		synchronized (expandingSearches) {
+			final ExpandingSearch expandingSearch = expandingSearches.get(searchResponseMessage.getRespondedRouteID());
+			if (expandingSearch == null)
+				return;
+			
+			if (!expandingSearch.isFinished() && searchResponseMessage.getRespondedRouteID().equals(expandingSearch.getCurrentRouteID()))
+				ringTimeout.addSample(now - expandingSearch.getRingStartTime(), searchResponseMessage.getDistance());
+			
+			if (expandingSearch.responseReceived(searchResponseMessage.getSource(), now))
+				logger.debug("Peer " + peer.getPeerID() + " satisfied expanding search " + expandingSearch.getSearchID() + " " + expandingSearch.getCost(now));
+		}
+	}
+	
+	// expands those searches whose current ring expired without being satisfied
+	private void checkExpandingSearches() {
+		final long now = System.currentTimeMillis();
+		final List<ExpandingSearch> expiredSearches = new ArrayList<ExpandingSearch>();
+		synchronized (expandingSearches) {
+			for (final Iterator<Entry<MessageID, ExpandingSearch>> it = expandingSearches.entrySet().iterator(); it.hasNext(); ) {
+				final Entry<MessageID, ExpandingSearch> entry = it.next();
+				final ExpandingSearch expandingSearch = entry.getValue();
+				if (expandingSearch.isFinished()) {
+					if (now - expandingSearch.getFinishTime() > EXPANDING_SEARCH_RETENTION)
+						it.remove();
+				} else if (entry.getKey().equals(expandingSearch.getCurrentRouteID()) && expandingSearch.hasExpired(now, ringTimeout.getTimeout(expandingSearch.getTTL())))
+					expiredSearches.add(expandingSearch);
+			}
+		}
+		
+		for (final ExpandingSearch expandingSearch : expiredSearches) {
+			final MessageID previousRouteID = expandingSearch.getCurrentRouteID();
+			final boolean expanded;
+			synchronized (expandingSearches) {
+				// the search could be canceled after its ring expired
+				if (expandingSearch.isFinished())
+					continue;
+				expanded = expandingSearch.expand(now);
+			}
+			
+			if (expanded) {
+				// the previous ring is replaced by the expanded one
+				final Map<MessageID, Set<Parameter>> removedParameters = new HashMap<MessageID, Set<Parameter>>();
+				removedParameters.put(previousRouteID, new HashSet<Parameter>(expandingSearch.getParameters()));
+				sendRemoveParametersMessage(removedParameters);
+				
+				logger.debug("Peer " + peer.getPeerID() + " expanding search " + expandingSearch.getSearchID() + " to TTL " + expandingSearch.getTTL());
+				sendRing(expandingSearch);
+			} else
+				logger.debug("Peer " + peer.getPeerID() + " finished expanding search " + expandingSearch.getSearchID() + " without being satisfied " + expandingSearch.getCost(now));
+		}
+	}
+	
+	// removes the canceled parameters from the expanding searches whose current
+	// ring is affected, so they are not searched again when the ring expands.
+	// Searches without parameters are finished and forgotten.
+	private void cancelExpandingSearches(final Map<MessageID, Set<Parameter>> removedParameters) {
+		final long now = System.currentTimeMillis();
+		synchronized (expandingSearches) {
+			for (final Entry<MessageID, Set<Parameter>> entry : removedParameters.entrySet()) {
+				final ExpandingSearch expandingSearch = expandingSearches.get(entry.getKey());
+				if (expandingSearch != null && entry.getKey().equals(expandingSearch.getCurrentRouteID()) && expandingSearch.cancelParameters(entry.getValue(), now)) {
+					logger.debug("Peer " + peer.getPeerID() + " canceled expanding search " + expandingSearch.getSearchID());
+					expandingSearches.values().removeAll(Collections.singleton(expandingSearch));
+				}
+			}
+		}
+	}
+	
+	// the expanding searches whose current ring was generalized use the
+	// generalized parameters in the following rings
+	private void updateExpandingSearches(final Set<MessageID> routeIDs) {
+		final Map<MessageID, Set<Parameter>> searchedParameters = new HashMap<MessageID, Set<Parameter>>();
+		synchronized (uTable) {
+			for (final MessageID routeID : routeIDs) {
+				final SearchMessage searchMessage = uTable.getSearch(routeID);
+				if (searchMessage != null)
+					searchedParameters.put(routeID, new HashSet<Parameter>(searchMessage.getSearchedParameters()));
+			}
+		}
+		
+		synchronized (expandingSearches) {
+			for (final Entry<MessageID, Set<Parameter>> entry : searchedParameters.entrySet()) {
+				final ExpandingSearch expandingSearch = expandingSearches.get(entry.getKey());
+				if (expandingSearch != null && !expandingSearch.isFinished() && entry.getKey().equals(expandingSearch.getCurrentRouteID()))
+					expandingSearch.setParameters(entry.getValue());
+			}
+		}
+	}
+	
+	// sends a new ring of the expanding search using its current TTL
+	private MessageID sendRing(final ExpandingSearch expandingSearch) {
+		final Set<SearchedParameter> searchedParameters = new HashSet<SearchedParameter>();
+		for (final Parameter p : expandingSearch.getParameters())
+			searchedParameters.add(new SearchedParameter(p, expandingSearch.getTTL()));
+		
+		final SearchMessage searchMessage = createSearchMessage(searchedParameters, expandingSearch.getPayload(), expandingSearch.getSearchType());
+		// the ring is registered before processing it because local responses
+		// are received synchronously
+		synchronized (expandingSearches) {
+			expandingSearch.ringSent(searchMessage.getRemoteMessageID(), System.currentTimeMillis());
+			expandingSearches.put(searchMessage.getRemoteMessageID(), expandingSearch);
+		}
+		
+		messageReceived(searchMessage, System.currentTimeMillis());
+		return searchMessage.getRemoteMessageID();
+	}
+
+	// the sender of a search or a search response has a route to the source of
+	// the message, so the source can also be reached through the sender
+	private void learnRoute(final RemoteMessage remoteMessage, final long receptionTime) {
+		if (remoteMessage.getSource().equals(peer.getPeerID()) || remoteMessage.getSender().equals(remoteMessage.getSource()))
+			return;
+		
+		routeCache.learnRoute(remoteMessage.getSource(), remoteMessage.getSender(), remoteMessage.getRemoteMessageID(), getNewDistance(remoteMessage), receptionTime);
+	}
+	
+	// resolves the route to the destination using, in this order, the route
+	// cache, the unicast table and the routes learned from overheard messages.
+	// The resolved route is cached until a new route to the destination is
+	// added to the unicast table or the route is lost. Routes learned through
+	// the sender of the forwarded message are not used, so two neighbors
+	// which learned their routes from each other do not send the message
+	// back and forth. Must be called holding the unicast table lock.
+	private Route resolveRoute(final PeerID destination, final PeerID sender) {
+		final long now = System.currentTimeMillis();
+		final Set<PeerID> neighbors = peer.getDetector().getCurrentNeighbors();
+		
+		Route route = routeCache.getResolvedRoute(destination, neighbors, now);
+		if (route != null && !route.getThrough().equals(sender))
+			return route;
+		
+		route = uTable.getRoute(destination);
+		if (route == null) {
+			route = routeCache.getLearnedRoute(destination, neighbors, sender, now);
+			if (route == null)
+				return null;
+			logger.trace("Peer " + peer.getPeerID() + " using overheard route " + route);
+		}
+		
+		routeCache.putResolvedRoute(route, now);
+		return route;
+	}
 
 	private int getNewDistance(final RemoteMessage remoteMessage) {
 		return remoteMessage.getDistance() + 1;
@@ -518,44 +794,42 @@ public class ParameterSearchImpl implements CommunicationLayer, TableChangedList
 
 	// process the multicast messages in the current node
 	private void processMulticastMessage(final RemoteMulticastMessage multicastMessage) {
-		if (alreadyReceived(multicastMessage))
-			return;
-		
 		logger.trace("Peer " + peer.getPeerID() + " processing multicast message " + multicastMessage);
 		// Check if the current peer is valid to pass through the multicast
 		// message
 		if (!multicastMessage.getThroughPeers().contains(peer.getPeerID()))
 			return;
+		
+		// Get the destinations of the current peer branch which were not
+		// handled before. Different branches of the same message can converge
+		// in the current peer.
+		final Set<PeerID> destinations = new HashSet<PeerID>();
+		synchronized (handledDestinations) {
+			for (final PeerID destination : multicastMessage.getRemoteDestinations(peer.getPeerID())) {
+				final HandledDestination handledDestination = new HandledDestination(multicastMessage.getRemoteMessageID(), destination, multicastMessage.getSender());
+				if (!handledDestinations.contains(handledDestination)) {
+					handledDestinations.addEntry(handledDestination);
+					destinations.add(destination);
+				}
+			}
+		}
+		
+		if (destinations.isEmpty())
+			return;
 
 		// Check if message must be accepted
-		boolean messageAccepted = false;
-		if (multicastMessage.getRemoteDestinations().contains(peer.getPeerID())) {
-			messageAccepted = true;
-			// Remove current destination from destination list
-			multicastMessage.removeRemoteDestination(peer.getPeerID());
-		}
+		final boolean messageAccepted = destinations.remove(peer.getPeerID());
 
-		// Remove invalid destinations. A destination is invalid if cannot be
-		// reached from current peer according to route table
+		// Assign each destination to the branch of a neighbor. Destinations
+		// which cannot be reached from current peer are discarded.
+		final Map<PeerID, Set<PeerID>> branches;
 		synchronized (uTable) {
-			for (final PeerID destination : multicastMessage.getRemoteDestinations())
-				if (!uTable.knowsRouteTo(destination))
-					multicastMessage.removeRemoteDestination(destination);
+			branches = computeBranches(destinations, multicastMessage.getSender());
 		}
 
 		// Check if more destinations are available after purging invalid ones
-		if (!multicastMessage.getRemoteDestinations().isEmpty()) {
-			// Get the new list of neighbors used to send the message
-			final Set<PeerID> throughPeers = new HashSet<PeerID>();
-			
-			synchronized (uTable) {
-				for (final PeerID destination : multicastMessage.getRemoteDestinations()) {
-					final Route route = uTable.getRoute(destination);
-					throughPeers.add(route.getThrough());
-				}
-			}
-
-			final RemoteMulticastMessage newRemoteMulticastMessage = new RemoteMulticastMessage(multicastMessage, peer.getPeerID(), throughPeers, getNewDistance(multicastMessage));
+		if (!branches.isEmpty()) {
+			final RemoteMulticastMessage newRemoteMulticastMessage = new RemoteMulticastMessage(multicastMessage, peer.getPeerID(), branches, getNewDistance(multicastMessage));
 			logger.trace("Peer " + peer.getPeerID() + " multicasting message " + newRemoteMulticastMessage);
 			if (newRemoteMulticastMessage.isDirectBroadcast())
 				peer.directBroadcast(newRemoteMulticastMessage);
@@ -569,6 +843,18 @@ public class ParameterSearchImpl implements CommunicationLayer, TableChangedList
 			acceptMulticastMessage(multicastMessage);
 	}
 	
+	// assigns each reachable destination to the branch of a neighbor. Must
+	// be called holding the unicast table lock.
+	private Map<PeerID, Set<PeerID>> computeBranches(final Set<PeerID> destinations, final PeerID sender) {
+		final MulticastBranches branches = new MulticastBranches(peer.getDetector().getCurrentNeighbors(), sender);
+		for (final PeerID destination : destinations) {
+			final Route route = resolveRoute(destination, sender);
+			if (route != null)
+				branches.addDestination(route, uTable.getRoutes(destination));
+		}
+		return branches.getBranches();
+	}
+	
 	// process the search response messages in the current node
 	private void processSearchResponseMessage(final SearchResponseMessage searchResponseMessage) {
 		logger.trace("Peer " + peer.getPeerID() + " processing search response message " + searchResponseMessage);
@@ -579,6 +865,7 @@ public class ParameterSearchImpl implements CommunicationLayer, TableChangedList
 
 		synchronized (uTable) {	
 			uTable.updateUnicastTable(searchResponseMessage);
+			routeCache.removeResolvedRoute(searchResponseMessage.getSource());
 		}
 
 		// Check if message must be accepted
@@ -589,8 +876,13 @@ public class ParameterSearchImpl implements CommunicationLayer, TableChangedList
 
 		synchronized (uTable) {			
 			// Check if more destinations are available after purging invalid ones
-			if (uTable.knowsRouteTo(searchResponseMessage.getRemoteDestination())) {
-				Route route = uTable.getRoute(searchResponseMessage.getRemoteDestination());
+			final Route route = resolveRoute(searchResponseMessage.getRemoteDestination(), searchResponseMessage.getSender());
+			if (route != null) {
+				if (aggregateResponses && alreadyForwarded(searchResponseMessage)) {
+					logger.trace("Peer " + peer.getPeerID() + " suppressed search response " + searchResponseMessage + ". Parameters already forwarded.");
+					return;
+				}
+				
 				final SearchResponseMessage newSearchResponseMessage = new SearchResponseMessage(searchResponseMessage, peer.getPeerID(), route.getThrough(), getNewDistance(searchResponseMessage));
 				logger.trace("Peer " + peer.getPeerID() + " multicasting search response " + newSearchResponseMessage);
 				peer.enqueueBroadcast(newSearchResponseMessage, this);
@@ -599,11 +891,52 @@ public class ParameterSearchImpl implements CommunicationLayer, TableChangedList
 		}
 	}
 
+	// checks if the parameters contained in the response were already forwarded
+	// for the same search route and source. Responses carrying a payload are
+	// always forwarded. Forwarded parameters are only recorded while the
+	// search is active, so they are removed together with it. Must be called
+	// holding the unicast table lock.
+	private boolean alreadyForwarded(final SearchResponseMessage searchResponseMessage) {
+		if (!uTable.isSearchRoute(searchResponseMessage.getRespondedRouteID()))
+			return false;
+		
+		synchronized (forwardedResponses) {
+			Map<PeerID, Set<Parameter>> sources = forwardedResponses.get(searchResponseMessage.getRespondedRouteID());
+			if (sources == null) {
+				sources = new HashMap<PeerID, Set<Parameter>>();
+				forwardedResponses.put(searchResponseMessage.getRespondedRouteID(), sources);
+			}
+			
+			Set<Parameter> forwarded = sources.get(searchResponseMessage.getSource());
+			if (forwarded == null) {
+				forwarded = new HashSet<Parameter>();
+				sources.put(searchResponseMessage.getSource(), forwarded);
+			}
+			
+			if (!searchResponseMessage.hasPayload() && forwarded.containsAll(searchResponseMessage.getParameters()))
+				return true;
+			
+			forwarded.addAll(searchResponseMessage.getParameters());
+			return false;
+		}
+	}
+	
+	private void clearForwardedResponses(final Set<MessageID> routeIDs) {
+		if (!aggregateResponses)
+			return;
+		
+		synchronized (forwardedResponses) {
+			forwardedResponses.keySet().removeAll(routeIDs);
+		}
+	}
+
 	private void processRemoveParametersMessage(final RemoveParametersMessage removeParametersMessage) {
 		logger.trace("Peer " + peer.getPeerID() + " processing remove parameters message " + removeParametersMessage);
 
 		boolean broadcastMessage = false;
 		
+		clearForwardedResponses(removeParametersMessage.getRemovedParameters().keySet());
+		
 		synchronized (uTable) {
 			Map<MessageID, Set<Parameter>> removedParameters = removeParametersMessage.getRemovedParameters();
 			for (final Iterator<MessageID> it = removedParameters.keySet().iterator(); it.hasNext(); ) {
@@ -694,6 +1027,7 @@ public class ParameterSearchImpl implements CommunicationLayer, TableChangedList
 			
 				final PeerID lostDestination = uTable.removeRoute(routeID,removeRouteMessage.getSender());
 				if (!lostDestination.equals(PeerID.VOID_PEERID)) {
+					routeCache.invalidate(lostDestination, removeRouteMessage.getSender());
 					removedRoutes.add(routeID);
 					notify = true;
 					if (!uTable.knowsRouteTo(lostDestination))
@@ -702,8 +1036,7 @@ public class ParameterSearchImpl implements CommunicationLayer, TableChangedList
 			}
 		}
 		
-		for (final MessageID removedSearch : canceledSearches)
-			receivedMessages.remove(new ReceivedMessageID(removedSearch, PeerID.VOID_PEERID));
+		clearForwardedResponses(removedRoutes);
 		
 		searchListener.searchCanceled(Collections.unmodifiableSet(canceledSearches));
 
@@ -714,9 +1047,12 @@ public class ParameterSearchImpl implements CommunicationLayer, TableChangedList
 		
 		if (!removeRouteMessage.getSender().equals(peer.getPeerID())) {
 			final Set<SearchMessage> repropagatedSearches = new HashSet<SearchMessage>();
-			for (final SearchMessage activeSearch : uTable.getActiveSearches()) {
-				if (removeRouteMessage.getRemovedSearches().contains(activeSearch.getRemoteMessageID()))
-					repropagatedSearches.add(activeSearch);
+			synchronized (uTable) {
+				for (final MessageID removedSearch : removeRouteMessage.getRemovedSearches()) {
+					final SearchMessage activeSearch = uTable.getSearch(removedSearch);
+					if (activeSearch != null)
+						repropagatedSearches.add(activeSearch);
+				}
 			}
 			 
 //			if (!repropagatedSearches.isEmpty()) {
@@ -740,6 +1076,8 @@ public class ParameterSearchImpl implements CommunicationLayer, TableChangedList
 		boolean updated = false;
 		synchronized (uTable) {
 			updated = uTable.updateUnicastTable(searchMessage);
+			if (updated)
+				routeCache.removeResolvedRoute(searchMessage.getSource());
 		}
 		
 		if (updated) {
@@ -798,13 +1136,65 @@ public class ParameterSearchImpl implements CommunicationLayer, TableChangedList
 		if (!enabled)
 			return; 
 		
+		final SearchMessage searchMessage = createSearchMessage(searchedParameters, payload, searchType);
+		messageReceived(searchMessage, System.currentTimeMillis());
+	}
+	
+	@Override
+	public List<MessageID> sendSearchMessages(final List<SearchRequest> requests) {
+		if (!enabled)
+			return Collections.emptyList();
+		
+		final SearchBatch searchBatch = new SearchBatch(requests);
+		final List<SearchMessage> searchMessages = new ArrayList<SearchMessage>();
+		for (final SearchBatch.Group group : searchBatch.getGroups()) {
+			if (group.isEmpty())
+				searchMessages.add(null);
+			else
+				searchMessages.add(createSearchMessage(group.getSearchedParameters(), group.getPayload(), group.getSearchType()));
+		}
+		
+		logger.debug("Peer " + peer.getPeerID() + " packed " + requests.size() + " search requests into " + searchMessages.size() + " search messages");
+		
+		final List<MessageID> routeIDs = new ArrayList<MessageID>();
+		for (int i = 0; i < requests.size(); i++) {
+			final SearchMessage searchMessage = searchMessages.get(searchBatch.getGroup(i));
+			routeIDs.add(searchMessage == null ? null : searchMessage.getRemoteMessageID());
+		}
+		
+		for (final SearchMessage searchMessage : searchMessages)
+			if (searchMessage != null)
+				messageReceived(searchMessage, System.currentTimeMillis());
+		
+		return routeIDs;
+	}
+	
+	@Override
+	public MessageID sendExpandingSearchMessage(final Set<Parameter> parameters, final BroadcastMessage payload, final SearchType searchType, final int requiredProviders) {
+		if (!enabled)
+			return null;
+		
+		final ExpandingSearch expandingSearch = new ExpandingSearch(parameters, payload, searchType, requiredProviders, INITIAL_RING_TTL, MAX_TTL, System.currentTimeMillis());
+		return sendRing(expandingSearch);
+	}
+	
+	@Override
+	public SearchCost getSearchCost(final MessageID searchID) {
+		synchronized (expandingSearches) {
+			final ExpandingSearch expandingSearch = expandingSearches.get(searchID);
+			if (expandingSearch == null)
+				return null;
+			return expandingSearch.getCost(System.currentTimeMillis());
+		}
+	}
+	
+	private SearchMessage createSearchMessage(final Set<SearchedParameter> searchedParameters, final BroadcastMessage payload, final SearchType searchType) {
 		final SearchMessage searchMessage = new SearchMessage(peer.getPeerID(), peer.getDetector().getCurrentNeighbors(), searchedParameters, payload, 0, searchType);
 		final String payloadType = (payload == null)?"null":payload.getType();
 		logger.debug("Peer " + peer.getPeerID() + " started search for parameters " + (new ParameterList(searchMessage.getSearchedParameters())).pretty(pDisseminator.getTaxonomy()) + " searchID " + searchMessage.getRemoteMessageID() + " with payload type of " + payloadType);
 
 		logger.trace("Peer " + peer.getPeerID() + " searching parameters with message " + searchMessage);
-		
-		messageReceived(searchMessage, System.currentTimeMillis());
+		return searchMessage;
 	}
 
 	// Sends a message which generalizes the specified parameters
@@ -894,14 +1284,75 @@ public class ParameterSearchImpl implements CommunicationLayer, TableChangedList
 
 	@Override
 	public boolean merge(List<BroadcastMessage> waitingMessages, BroadcastMessage sendingMessage) {
+		if (getMergeKey(sendingMessage) == null)
+			return false;
+		
+		// only the newest waiting message can be merged without reordering
+		if (waitingMessages.isEmpty())
+			return false;
+		final BroadcastMessage waitingMessage = waitingMessages.get(waitingMessages.size() - 1);
+		return waitingMessage instanceof SearchResponseMessage && merge(waitingMessage, sendingMessage);
+	}
+	
+	@Override
+	public boolean merge(final BroadcastMessage waitingMessage, final BroadcastMessage sendingMessage) {
+		final SearchResponseMessage waitingResponse = (SearchResponseMessage) waitingMessage;
+		final SearchResponseMessage sendingResponse = (SearchResponseMessage) sendingMessage;
+		if (waitingResponse.canAggregate(sendingResponse)) {
+			waitingResponse.aggregate(sendingResponse);
+			logger.trace("Peer " + peer.getPeerID() + " aggregated search response " + sendingResponse + " into " + waitingResponse);
+			return true;
+		}
 		return false;
 	}
+	
+	@Override
+	public Object getMergeKey(final BroadcastMessage message) {
+		if (!aggregateResponses || !(message instanceof SearchResponseMessage))
+			return null;
+		
+		// responses of different responders are aggregated by destination and
+		// next hop, each one keeps its own source and payload
+		final SearchResponseMessage searchResponseMessage = (SearchResponseMessage) message;
+		return Arrays.asList(searchResponseMessage.getRemoteDestinations(), new HashSet<PeerID>(searchResponseMessage.getExpectedDestinations()));
+	}
+	
+	@Override
+	public SendPriority getSendPriority(final BroadcastMessage message) {
+		// multicast messages carry the bulk messages of the upper layers. The
+		// rest of the messages, including responses, build and remove the
+		// routes and share a queue so they are sent in the same order they
+		// were enqueued. Later control messages can overtake multicast
+		// messages safely: a multicast is forwarded by the next hop using its
+		// own route to the destination, which does not pass through this node
+		// and is not affected by the removals sent by it.
+		if (message instanceof RemoteMulticastMessage && !(message instanceof SearchResponseMessage))
+			return SendPriority.LOW;
+		return SendPriority.HIGH;
+	}
+	
+	@Override
+	public void queueCongested(final SendPriority priority, final boolean congested) {
+		logger.debug("Peer " + peer.getPeerID() + " search queue " + priority + " congested " + congested);
+		synchronized (congestedQueues) {
+			if (congested)
+				congestedQueues.add(priority);
+			else
+				congestedQueues.remove(priority);
+		}
+	}
+	
+	@Override
+	public boolean isCongested() {
+		synchronized (congestedQueues) {
+			return congestedQueues.contains(SendPriority.LOW);
+		}
+	}
 
 	@Override
 	public Set<PeerID> getKnownDestinations() {
-		final Set<PeerID> availableDestinations = new HashSet<PeerID>();
-		for (final Route route : getAllRoutes())
-			availableDestinations.add(route.getDest());
-		return Collections.unmodifiableSet(availableDestinations);
+		synchronized (uTable) {
+			return Collections.unmodifiableSet(uTable.getKnownDestinations());
+		}
 	}
 }
@@ -0,0 +1,80 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package multicast.search;
+
+/**
+ * This class estimates the time to wait for the responses of an expanding
+ * ring search. It keeps a smoothed per hop response time and its variation,
+ * which are updated with the latency of each received response. The timeout
+ * of a ring grows linearly with its TTL.
+ * 
+ * @author Unai Aguilera (unai.aguilera@gmail.com)
+ * 
+ */
+final class RingTimeout {
+
+	private static final double ALPHA = 0.125;
+	private static final double BETA = 0.25;
+	
+	private final long minTimeout;
+	
+	private double hopTime;
+	private double hopTimeVar;
+	
+	/**
+	 * Constructor of the ring timeout estimator
+	 * 
+	 * @param initialHopTime
+	 *            the initial per hop response time
+	 * @param minTimeout
+	 *            the minimum timeout returned for any ring
+	 */
+	public RingTimeout(final long initialHopTime, final long minTimeout) {
+		this.hopTime = initialHopTime;
+		this.hopTimeVar = initialHopTime / 2.0;
+		this.minTimeout = minTimeout;
+	}
+	
+	/**
+	 * Updates the estimation with the latency of a response
+	 * 
+	 * @param latency
+	 *            the time elapsed since the ring was sent
+	 * @param distance
+	 *            the distance traversed by the response
+	 */
+	public synchronized void addSample(final long latency, final int distance) {
+		final double sample = latency / (double) Math.max(distance, 1);
+		hopTimeVar = (1 - BETA) * hopTimeVar + BETA * Math.abs(hopTime - sample);
+		hopTime = (1 - ALPHA) * hopTime + ALPHA * sample;
+	}
+	
+	/**
+	 * Gets the time to wait for the responses of a ring
+	 * 
+	 * @param ttl
+	 *            the TTL of the ring
+	 * @return the timeout in milliseconds
+	 */
+	public synchronized long getTimeout(final int ttl) {
+		final long timeout = (long) (ttl * (hopTime + 4 * hopTimeVar));
+		return Math.max(timeout, minTimeout);
+	}
+}
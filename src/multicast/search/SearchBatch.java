@@ -0,0 +1,125 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package multicast.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import multicast.SearchRequest;
+import multicast.SearchedParameter;
+import multicast.search.message.SearchMessage.SearchType;
+import peer.message.BroadcastMessage;
+import taxonomy.parameter.Parameter;
+
+/**
+ * This class packs multiple search requests into the minimum number of
+ * groups, each one sent using a single search message. Requests are packed
+ * together if they have the same search type and payload. Payloads are opaque
+ * so they are compared by identity. If a parameter is requested more than
+ * once in a group, the greatest TTL is used.
+ * 
+ * @author Unai Aguilera (unai.aguilera@gmail.com)
+ * 
+ */
+final class SearchBatch {
+
+	static final class Group {
+		
+		private final SearchType searchType;
+		private final BroadcastMessage payload;
+		
+		private final Map<Parameter, Integer> ttls = new HashMap<Parameter, Integer>();
+		
+		private Group(final SearchType searchType, final BroadcastMessage payload) {
+			this.searchType = searchType;
+			this.payload = payload;
+		}
+		
+		private boolean accepts(final SearchRequest request) {
+			return searchType.equals(request.getSearchType()) && payload == request.getPayload();
+		}
+		
+		private void add(final SearchRequest request) {
+			for (final SearchedParameter searchedParameter : request.getSearchedParameters()) {
+				final Integer ttl = ttls.get(searchedParameter.getParameter());
+				if (ttl == null || ttl.intValue() < searchedParameter.getMaxTTL())
+					ttls.put(searchedParameter.getParameter(), Integer.valueOf(searchedParameter.getMaxTTL()));
+			}
+		}
+		
+		public SearchType getSearchType() {
+			return searchType;
+		}
+		
+		public BroadcastMessage getPayload() {
+			return payload;
+		}
+		
+		public Set<SearchedParameter> getSearchedParameters() {
+			final Set<SearchedParameter> searchedParameters = new HashSet<SearchedParameter>();
+			for (final Map.Entry<Parameter, Integer> entry : ttls.entrySet())
+				searchedParameters.add(new SearchedParameter(entry.getKey(), entry.getValue().intValue()));
+			return searchedParameters;
+		}
+		
+		public boolean isEmpty() {
+			return ttls.isEmpty();
+		}
+	}
+	
+	private final List<Group> groups = new ArrayList<Group>();
+	
+	// the group index assigned to each request
+	private final List<Integer> assignments = new ArrayList<Integer>();
+	
+	public SearchBatch(final List<SearchRequest> requests) {
+		for (final SearchRequest request : requests) {
+			int index = 0;
+			while (index < groups.size() && !groups.get(index).accepts(request))
+				index++;
+			
+			if (index == groups.size())
+				groups.add(new Group(request.getSearchType(), request.getPayload()));
+			
+			groups.get(index).add(request);
+			assignments.add(Integer.valueOf(index));
+		}
+	}
+	
+	public List<Group> getGroups() {
+		return Collections.unmodifiableList(groups);
+	}
+	
+	/**
+	 * Gets the group index of the request in the specified position
+	 * 
+	 * @param request
+	 *            the position of the request in the batch
+	 * @return the index of the group the request was packed into
+	 */
+	public int getGroup(final int request) {
+		return assignments.get(request).intValue();
+	}
+}
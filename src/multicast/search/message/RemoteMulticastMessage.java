@@ -22,8 +22,13 @@ package multicast.search.message;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 
 import peer.message.BroadcastMessage;
@@ -47,8 +52,19 @@ public class RemoteMulticastMessage extends RemoteMessage implements MulticastMe
 	// the nodes that the message is sent through
 	private final Set<PeerID> throughPeers = new HashSet<PeerID>();
 	
+	// the destinations each through node is responsible for. If empty, all
+	// through nodes are responsible for all the remote destinations
+	private final Map<PeerID, Set<PeerID>> branches = new HashMap<PeerID, Set<PeerID>>();
+	
 	private final boolean directBroadcast;
 	
+	private static final byte DIRECT_BROADCAST = 0x01;
+	private static final byte BRANCHED = 0x02;
+	
+	// the index written for destinations which are not in the branch of any
+	// through node, for example if a through node was removed
+	private static final byte NO_BRANCH = -1;
+	
 	public RemoteMulticastMessage() {
 		super(MessageTypes.REMOTE_MULTICAST_MESSAGE);
 		directBroadcast = false;
@@ -93,6 +109,29 @@ public class RemoteMulticastMessage extends RemoteMessage implements MulticastMe
 		this.throughPeers.addAll(throughPeers);
 		this.directBroadcast = multicastMessage.directBroadcast;
 	}
+	
+	/**
+	 * Constructs a multicast message which uses another one as base. Each
+	 * through node is only responsible for the destinations of its branch.
+	 * 
+	 * @param multicastMessage
+	 *            the message used as base
+	 * @param sender
+	 *            the new sender of the message
+	 * @param branches
+	 *            the destinations assigned to each through node
+	 * @param newDistance
+	 *            the new distance traversed by the message
+	 */
+	public RemoteMulticastMessage(final RemoteMulticastMessage multicastMessage, final PeerID sender, final Map<PeerID, Set<PeerID>> branches, final int newDistance) {
+		super(multicastMessage, sender, branches.keySet(), newDistance);
+		for (final Entry<PeerID, Set<PeerID>> entry : branches.entrySet()) {
+			this.throughPeers.add(entry.getKey());
+			this.remoteDestinations.addAll(entry.getValue());
+			this.branches.put(entry.getKey(), new HashSet<PeerID>(entry.getValue()));
+		}
+		this.directBroadcast = multicastMessage.directBroadcast;
+	}
 
 	/**
 	 * Gets the set of destinations this message is sent to
@@ -103,6 +142,24 @@ public class RemoteMulticastMessage extends RemoteMessage implements MulticastMe
 		return new HashSet<PeerID>(remoteDestinations);
 	}
 
+	/**
+	 * Gets the set of destinations the specified through node is responsible
+	 * for
+	 * 
+	 * @param through
+	 *            the through node
+	 * @return a set containing the destinations of the through node branch
+	 */
+	public Set<PeerID> getRemoteDestinations(final PeerID through) {
+		if (branches.isEmpty())
+			return getRemoteDestinations();
+		
+		final Set<PeerID> branch = branches.get(through);
+		if (branch == null)
+			return new HashSet<PeerID>();
+		return new HashSet<PeerID>(branch);
+	}
+
 	/**
 	 * Gets the set of neighbors used sent the message through
 	 * 
@@ -120,6 +177,8 @@ public class RemoteMulticastMessage extends RemoteMessage implements MulticastMe
 	 */
 	public void removeRemoteDestination(final PeerID destination) {
 		remoteDestinations.remove(destination);
+		for (final Set<PeerID> branch : branches.values())
+			branch.remove(destination);
 	}
 	
 	public boolean isDirectBroadcast() {
@@ -140,17 +199,66 @@ public class RemoteMulticastMessage extends RemoteMessage implements MulticastMe
 	public void read(ObjectInputStream in) throws IOException {
 		super.read(in);
 		
-		SerializationUtils.readPeers(remoteDestinations, in);
-		SerializationUtils.readPeers(throughPeers, in);
-		SerializationUtils.setFinalField(RemoteMulticastMessage.class, this, "directBroadcast", in.readBoolean());
+		final List<PeerID> destinationList = readPeerList(in);
+		final List<PeerID> throughList = readPeerList(in);
+		remoteDestinations.addAll(destinationList);
+		throughPeers.addAll(throughList);
+		
+		final byte flags = in.readByte();
+		SerializationUtils.setFinalField(RemoteMulticastMessage.class, this, "directBroadcast", (flags & DIRECT_BROADCAST) != 0);
+		
+		// branches are encoded as the index of the through node of each destination
+		if ((flags & BRANCHED) != 0) {
+			for (final PeerID through : throughList)
+				branches.put(through, new HashSet<PeerID>());
+			for (final PeerID destination : destinationList) {
+				final byte index = in.readByte();
+				if (index != NO_BRANCH)
+					branches.get(throughList.get(index)).add(destination);
+			}
+		}
 	}
 
 	@Override
 	public void write(ObjectOutputStream out) throws IOException {
 		super.write(out);
 		
-		SerializationUtils.writeCollection(remoteDestinations, out);
-		SerializationUtils.writeCollection(throughPeers, out);
-		out.writeBoolean(directBroadcast);
+		final List<PeerID> destinationList = new ArrayList<PeerID>(remoteDestinations);
+		final List<PeerID> throughList = new ArrayList<PeerID>(throughPeers);
+		SerializationUtils.writeCollection(destinationList, out);
+		SerializationUtils.writeCollection(throughList, out);
+		
+		byte flags = 0;
+		if (directBroadcast)
+			flags |= DIRECT_BROADCAST;
+		if (!branches.isEmpty())
+			flags |= BRANCHED;
+		out.writeByte(flags);
+		
+		if (!branches.isEmpty()) {
+			final Map<PeerID, Byte> throughIndexes = new HashMap<PeerID, Byte>();
+			for (byte i = 0; i < throughList.size(); i++) {
+				final Set<PeerID> branch = branches.get(throughList.get(i));
+				if (branch != null)
+					for (final PeerID destination : branch)
+						throughIndexes.put(destination, Byte.valueOf(i));
+			}
+			
+			for (final PeerID destination : destinationList) {
+				final Byte index = throughIndexes.get(destination);
+				out.writeByte((index == null) ? NO_BRANCH : index.byteValue());
+			}
+		}
+	}
+	
+	private static List<PeerID> readPeerList(final ObjectInputStream in) throws IOException {
+		final List<PeerID> peers = new ArrayList<PeerID>();
+		final byte nPeers = in.readByte();
+		for (int i = 0; i < nPeers; i++) {
+			final PeerID peerID = new PeerID();
+			peerID.read(in);
+			peers.add(peerID);
+		}
+		return peers;
 	}
 }
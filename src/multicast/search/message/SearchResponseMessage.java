@@ -22,8 +22,10 @@ package multicast.search.message;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import peer.message.BroadcastMessage;
@@ -41,6 +43,9 @@ import taxonomy.parameter.Parameter;
  * 
  */
 public class SearchResponseMessage extends RemoteMulticastMessage {
+	
+	// maximum number of responses carried by an aggregate
+	private static final int MAX_AGGREGATED = Byte.MAX_VALUE;
 
 	// the set of parameters found in the source node
 	private final Set<Parameter> parameters = new HashSet<Parameter>();
@@ -48,6 +53,9 @@ public class SearchResponseMessage extends RemoteMulticastMessage {
 	// the search route identifier which this message responds to
 	private final MessageID respondedRouteID;
 	
+	// responses of other responders sent together with this one
+	private final List<SearchResponseMessage> aggregatedResponses = new ArrayList<SearchResponseMessage>();
+	
 	public SearchResponseMessage() {
 		super(MessageTypes.SEARCH_RESPONSE_MESSAGE);
 		respondedRouteID = new MessageID();
@@ -118,9 +126,73 @@ public class SearchResponseMessage extends RemoteMulticastMessage {
 	public MessageID getRespondedRouteID() {
 		return respondedRouteID;
 	}
+	
+	/**
+	 * Gets the responses of other responders sent together with this one.
+	 * They must be processed as if they were received separately.
+	 * 
+	 * @return the aggregated responses
+	 */
+	public List<SearchResponseMessage> getAggregatedResponses() {
+		return Collections.unmodifiableList(aggregatedResponses);
+	}
+	
+	/**
+	 * Checks if the passed response can be aggregated into this one. Both
+	 * responses must be addressed to the same destination and be sent
+	 * through the same neighbor. They can come from different responders.
+	 * 
+	 * @param searchResponseMessage
+	 *            the response to aggregate
+	 * @return true if the response can be aggregated, false otherwise
+	 */
+	public boolean canAggregate(final SearchResponseMessage searchResponseMessage) {
+		return aggregatedResponses.size() + searchResponseMessage.aggregatedResponses.size() < MAX_AGGREGATED
+				&& getRemoteDestinations().equals(searchResponseMessage.getRemoteDestinations())
+				&& getExpectedDestinations().equals(searchResponseMessage.getExpectedDestinations());
+	}
+	
+	/**
+	 * Aggregates the passed response into this one. Each response creates,
+	 * in the nodes it traverses, the route back to its own source, so the
+	 * responses of different responders are kept separately together with
+	 * their payloads. The parameters of a later response without payload are
+	 * added to the previous response of the same source and search route.
+	 * 
+	 * @param searchResponseMessage
+	 *            the response to aggregate
+	 */
+	public void aggregate(final SearchResponseMessage searchResponseMessage) {
+		aggregateResponse(searchResponseMessage);
+		for (final SearchResponseMessage aggregatedResponse : searchResponseMessage.aggregatedResponses)
+			aggregateResponse(aggregatedResponse);
+		searchResponseMessage.aggregatedResponses.clear();
+	}
+	
+	private void aggregateResponse(final SearchResponseMessage searchResponseMessage) {
+		if (!searchResponseMessage.hasPayload()) {
+			if (combine(searchResponseMessage))
+				return;
+			for (final SearchResponseMessage aggregatedResponse : aggregatedResponses)
+				if (aggregatedResponse.combine(searchResponseMessage))
+					return;
+		}
+		aggregatedResponses.add(searchResponseMessage);
+	}
+	
+	// adds the parameters of a response of the same source and search route
+	private boolean combine(final SearchResponseMessage searchResponseMessage) {
+		if (getSource().equals(searchResponseMessage.getSource()) && respondedRouteID.equals(searchResponseMessage.getRespondedRouteID())) {
+			parameters.addAll(searchResponseMessage.getParameters());
+			return true;
+		}
+		return false;
+	}
 
 	@Override
 	public String toString() {
+		if (!aggregatedResponses.isEmpty())
+			return super.toString() + " P: " + getParameters() + " +" + aggregatedResponses.size() + " responses";
 		return super.toString() + " P: " + getParameters();
 	}
 
@@ -139,6 +211,14 @@ public class SearchResponseMessage extends RemoteMulticastMessage {
 		}
 		
 		respondedRouteID.read(in);
+		
+		try {
+			final byte nResponses = in.readByte();
+			for (int i = 0; i < nResponses; i++)
+				aggregatedResponses.add((SearchResponseMessage) MessageTypes.readBroadcastMessage(in));
+		} catch (UnsupportedTypeException e) {
+			throw new IOException(e);
+		}
 	}
 
 	@Override
@@ -147,5 +227,9 @@ public class SearchResponseMessage extends RemoteMulticastMessage {
 		
 		SerializationUtils.writeCollection(parameters, out);
 		respondedRouteID.write(out);
+		
+		out.writeByte(aggregatedResponses.size());
+		for (final SearchResponseMessage aggregatedResponse : aggregatedResponses)
+			aggregatedResponse.write(out);
 	}
 }
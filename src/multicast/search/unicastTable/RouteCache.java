@@ -0,0 +1,255 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package multicast.search.unicastTable;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import multicast.search.Route;
+import peer.message.MessageID;
+import peer.peerid.PeerID;
+
+/**
+ * This class stores alternative routes learned from overheard traffic, which
+ * can be used when the unicast table does not contain a route to the
+ * destination anymore, and caches the route resolved, from the unicast table
+ * or from the learned routes, for those destinations which are repeatedly
+ * used by the multicast layer. All entries expire after a configurable amount
+ * of time.
+ * 
+ * @author Unai Aguilera (unai.aguilera@gmail.com)
+ * 
+ */
+public class RouteCache {
+
+	private static class CacheEntry {
+		
+		private final Route route;
+		private final long timestamp;
+		
+		public CacheEntry(final Route route, final long timestamp) {
+			this.route = route;
+			this.timestamp = timestamp;
+		}
+	}
+	
+	// the routes resolved for each destination
+	private final Map<PeerID, CacheEntry> resolvedRoutes = new HashMap<PeerID, CacheEntry>();
+	
+	// the routes learned from overheard messages indexed by destination and neighbor
+	private final Map<PeerID, Map<PeerID, CacheEntry>> learnedRoutes = new HashMap<PeerID, Map<PeerID, CacheEntry>>();
+	
+	// the time an entry is considered fresh
+	private final long expiration;
+	
+	private long lastPurge = 0;
+	
+	/**
+	 * Constructor of the route cache
+	 * 
+	 * @param expiration
+	 *            the time (in milliseconds) entries are considered fresh
+	 */
+	public RouteCache(final long expiration) {
+		this.expiration = expiration;
+	}
+	
+	/**
+	 * Gets the cached route for the specified destination. The route is only
+	 * returned if it is fresh and its next hop is still a neighbor.
+	 * 
+	 * @param dest
+	 *            the destination of the route
+	 * @param neighbors
+	 *            the current neighbors of the node
+	 * @param now
+	 *            the current time
+	 * @return the cached route or null if there is not a valid one
+	 */
+	public synchronized Route getResolvedRoute(final PeerID dest, final Set<PeerID> neighbors, final long now) {
+		final CacheEntry entry = resolvedRoutes.get(dest);
+		if (entry != null) {
+			if (isFresh(entry, now) && neighbors.contains(entry.route.getThrough()))
+				return entry.route;
+			resolvedRoutes.remove(dest);
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Stores the route resolved for its destination
+	 * 
+	 * @param route
+	 *            the resolved route
+	 * @param now
+	 *            the current time
+	 */
+	public synchronized void putResolvedRoute(final Route route, final long now) {
+		resolvedRoutes.put(route.getDest(), new CacheEntry(route, now));
+		purge(now);
+	}
+	
+	/**
+	 * Removes the resolved route for the specified destination, so it is
+	 * resolved again when a new route to the destination is known
+	 * 
+	 * @param dest
+	 *            the destination whose resolved route is removed
+	 */
+	public synchronized void removeResolvedRoute(final PeerID dest) {
+		resolvedRoutes.remove(dest);
+	}
+	
+	/**
+	 * Stores a route learned from an overheard message
+	 * 
+	 * @param dest
+	 *            the destination of the route
+	 * @param neighbor
+	 *            the neighbor which knows a route to the destination
+	 * @param routeID
+	 *            the identifier of the route known by the neighbor
+	 * @param distance
+	 *            the distance to the destination through the neighbor
+	 * @param now
+	 *            the current time
+	 */
+	public synchronized void learnRoute(final PeerID dest, final PeerID neighbor, final MessageID routeID, final int distance, final long now) {
+		Map<PeerID, CacheEntry> destRoutes = learnedRoutes.get(dest);
+		if (destRoutes == null) {
+			destRoutes = new HashMap<PeerID, CacheEntry>();
+			learnedRoutes.put(dest, destRoutes);
+		}
+		
+		final CacheEntry previous = destRoutes.get(neighbor);
+		if (previous == null || !isFresh(previous, now) || previous.route.getDistance() >= distance)
+			destRoutes.put(neighbor, new CacheEntry(new BroadcastRoute(dest, neighbor, routeID, distance), now));
+		
+		purge(now);
+	}
+	
+	/**
+	 * Gets the shortest fresh route learned for the specified destination
+	 * whose next hop is still a neighbor. Routes through the excluded neighbor
+	 * are ignored, so a message is never sent back to the neighbor it was
+	 * received from.
+	 * 
+	 * @param dest
+	 *            the destination of the route
+	 * @param neighbors
+	 *            the current neighbors of the node
+	 * @param excluded
+	 *            the neighbor which cannot be used as next hop, or null
+	 * @param now
+	 *            the current time
+	 * @return the learned route or null if there is not a valid one
+	 */
+	public synchronized Route getLearnedRoute(final PeerID dest, final Set<PeerID> neighbors, final PeerID excluded, final long now) {
+		final Map<PeerID, CacheEntry> destRoutes = learnedRoutes.get(dest);
+		if (destRoutes == null)
+			return null;
+		
+		CacheEntry best = null;
+		for (final Iterator<CacheEntry> it = destRoutes.values().iterator(); it.hasNext(); ) {
+			final CacheEntry entry = it.next();
+			if (!isFresh(entry, now))
+				it.remove();
+			else if (neighbors.contains(entry.route.getThrough()) && !entry.route.getThrough().equals(excluded) && (best == null || entry.route.getDistance() < best.route.getDistance()))
+				best = entry;
+		}
+		
+		if (destRoutes.isEmpty())
+			learnedRoutes.remove(dest);
+		
+		if (best == null)
+			return null;
+		
+		return best.route;
+	}
+	
+	/**
+	 * Removes the resolved route for the specified destination and the route
+	 * learned through the neighbor which notified that the destination is
+	 * not reachable through it anymore
+	 * 
+	 * @param dest
+	 *            the destination whose cached routes are removed
+	 * @param neighbor
+	 *            the neighbor which lost its route to the destination
+	 */
+	public synchronized void invalidate(final PeerID dest, final PeerID neighbor) {
+		resolvedRoutes.remove(dest);
+		
+		final Map<PeerID, CacheEntry> destRoutes = learnedRoutes.get(dest);
+		if (destRoutes != null) {
+			destRoutes.remove(neighbor);
+			if (destRoutes.isEmpty())
+				learnedRoutes.remove(dest);
+		}
+	}
+	
+	/**
+	 * Removes all routes, resolved or learned, passing through the specified
+	 * neighbor
+	 * 
+	 * @param neighbor
+	 *            the lost neighbor
+	 */
+	public synchronized void removeNeighbor(final PeerID neighbor) {
+		for (final Iterator<CacheEntry> it = resolvedRoutes.values().iterator(); it.hasNext(); )
+			if (it.next().route.getThrough().equals(neighbor))
+				it.remove();
+		
+		for (final Iterator<Map<PeerID, CacheEntry>> it = learnedRoutes.values().iterator(); it.hasNext(); ) {
+			final Map<PeerID, CacheEntry> destRoutes = it.next();
+			destRoutes.remove(neighbor);
+			if (destRoutes.isEmpty())
+				it.remove();
+		}
+	}
+	
+	private boolean isFresh(final CacheEntry entry, final long now) {
+		return now - entry.timestamp < expiration;
+	}
+	
+	// removes expired entries at most once per expiration period
+	private void purge(final long now) {
+		if (now - lastPurge < expiration)
+			return;
+		
+		lastPurge = now;
+		
+		for (final Iterator<CacheEntry> it = resolvedRoutes.values().iterator(); it.hasNext(); )
+			if (!isFresh(it.next(), now))
+				it.remove();
+		
+		for (final Iterator<Map<PeerID, CacheEntry>> it = learnedRoutes.values().iterator(); it.hasNext(); ) {
+			final Map<PeerID, CacheEntry> destRoutes = it.next();
+			for (final Iterator<CacheEntry> it2 = destRoutes.values().iterator(); it2.hasNext(); )
+				if (!isFresh(it2.next(), now))
+					it2.remove();
+			if (destRoutes.isEmpty())
+				it.remove();
+		}
+	}
+}
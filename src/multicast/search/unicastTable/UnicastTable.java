@@ -23,10 +23,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -42,7 +43,6 @@ import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
 import multicast.SearchedParameter;
-import multicast.Util;
 import multicast.search.Route;
 import multicast.search.message.SearchMessage;
 import multicast.search.message.SearchMessage.SearchType;
@@ -57,6 +57,7 @@ import peer.message.MessageID;
 import peer.message.MessageIDGenerator;
 import peer.peerid.PeerID;
 import serialization.xml.XMLSerializable;
+import taxonomy.ConceptAncestors;
 import taxonomy.Taxonomy;
 import taxonomy.parameter.InvalidParameterIDException;
 import taxonomy.parameter.Parameter;
@@ -85,12 +86,26 @@ public class UnicastTable implements XMLSerializable {
 
 	private final static String UNICAST_TABLE_TAG = "unicastTable";
 
-	// table which contains normal routes (non-search).
-	private final List<BroadcastRoute> routes = new ArrayList<BroadcastRoute>();
+	// table which contains normal routes (non-search) indexed by route
+	// identifier
+	private final Map<MessageID, BroadcastRoute> routes = new LinkedHashMap<MessageID, BroadcastRoute>();
 
-	// the list contains the active searches for the current node. It is related
-	// with a search route
-	private final List<SearchMessage> activeSearches = new ArrayList<SearchMessage>();
+	// routes indexed by destination. Each list is sorted by distance, routes
+	// with the same distance are kept in insertion order
+	private final Map<PeerID, List<BroadcastRoute>> routesByDest = new HashMap<PeerID, List<BroadcastRoute>>();
+
+	// route identifiers indexed by the neighbor they pass through
+	private final Map<PeerID, Set<MessageID>> routesByNeighbor = new HashMap<PeerID, Set<MessageID>>();
+
+	// the active searches for the current node indexed by their route
+	// identifier. Each one is related with a search route
+	private final Map<MessageID, SearchMessage> activeSearches = new LinkedHashMap<MessageID, SearchMessage>();
+
+	// active searches indexed by the identifier of their searched parameters
+	private final Map<Short, Set<SearchMessage>> searchesByParameter = new HashMap<Short, Set<SearchMessage>>();
+
+	// cached taxonomy ancestors of parameter identifiers
+	private final ConceptAncestors conceptAncestors;
 
 	// the identification of the peer which hosts the unicast table
 	private final PeerID peerID;
@@ -113,11 +128,12 @@ public class UnicastTable implements XMLSerializable {
 		this.peerID = peerID;
 		this.nDetector = nDetector;
 		this.taxonomy = taxonomy;
+		this.conceptAncestors = new ConceptAncestors(taxonomy);
 		
 		this.defaultRouteID = new MessageID(peerID, MessageIDGenerator.getNewID());
 	}
 	
-	private Map<PeerID, Set<Parameter>> createActiveSearchesMap(final List<SearchMessage> activeSearchList) {
+	private Map<PeerID, Set<Parameter>> createActiveSearchesMap(final Collection<SearchMessage> activeSearchList) {
 		final Map<PeerID, Set<Parameter>> activeSearchesMap = new HashMap<PeerID, Set<Parameter>>();
 		for (final SearchMessage activeSearch : activeSearchList) {
 			if (!activeSearchesMap.containsKey(activeSearch.getSource()))
@@ -134,9 +150,9 @@ public class UnicastTable implements XMLSerializable {
 
 		final UnicastTable unicastTable = (UnicastTable) o;
 
-		if (this.routes.containsAll(unicastTable.routes)) {
-			final Map<PeerID, Set<Parameter>> thisMap = createActiveSearchesMap(this.activeSearches);
-			final Map<PeerID, Set<Parameter>> otherMap = createActiveSearchesMap(unicastTable.activeSearches);
+		if (this.routes.keySet().containsAll(unicastTable.routes.keySet())) {
+			final Map<PeerID, Set<Parameter>> thisMap = createActiveSearchesMap(this.activeSearches.values());
+			final Map<PeerID, Set<Parameter>> otherMap = createActiveSearchesMap(unicastTable.activeSearches.values());
 			
 			return mapEquality(thisMap, otherMap);
 		}
@@ -173,35 +189,45 @@ public class UnicastTable implements XMLSerializable {
 		if (isSearchRoute(routeID)) {
 			final SearchMessage searchMessage = getSearch(routeID);
 			if (searchMessage != null && searchMessage.getSearchType().equals(SearchType.Generic)) {
-				final SearchMessage activeSearch = getSearch(searchMessage.getRemoteMessageID());
-				return activeSearch.generalizeParameters(generalizations, taxonomy);
+				// searched parameters change, so the search is indexed again
+				unindexSearch(searchMessage);
+				final Map<Parameter, Parameter> generalizedParameters = searchMessage.generalizeParameters(generalizations, taxonomy);
+				indexSearch(searchMessage);
+				return generalizedParameters;
 			}
 		}
 		return new HashMap<Parameter, Parameter>();
 	}
 	
 	public SearchMessage getSearch(final MessageID routeID) {
-		for (final SearchMessage searchMessage : getSearches())
-			if (searchMessage.getRemoteMessageID().equals(routeID))
-				return searchMessage;
-		return null;
+		return activeSearches.get(routeID);
 	}
 
 	public List<SearchMessage> getActiveSearches() {
-		return Collections.unmodifiableList(activeSearches);
+		return getSearches();
 	}
 
+	/**
+	 * Gets the searches which are looking for the passed parameter or for any
+	 * of its ancestors in the taxonomy
+	 * 
+	 * @param parameter
+	 *            the parameter to match
+	 * @return the set of matching searches
+	 */
 	public Set<SearchMessage> getSearches(final Parameter parameter) {
 		final Set<SearchMessage> searchMessages = new HashSet<SearchMessage>();
-		for (final SearchMessage searchMessage : getSearches()) {
-			for (final Parameter searchedParameter : searchMessage.getSearchedParameters()) {
-				if (parameter.equals(searchedParameter) || taxonomy.subsumes(searchedParameter.getID(), parameter.getID()))
-					searchMessages.add(searchMessage);
-			}
-		}
+		for (final Short id : conceptAncestors.getConcepts(parameter.getID()))
+			addIndexedSearches(id.shortValue(), searchMessages);
 		return searchMessages;
 	}
 
+	private void addIndexedSearches(final short parameterID, final Set<SearchMessage> searchMessages) {
+		final Set<SearchMessage> indexedSearches = searchesByParameter.get(Short.valueOf(parameterID));
+		if (indexedSearches != null)
+			searchMessages.addAll(indexedSearches);
+	}
+
 	/**
 	 * Gets the set of search messages which were searching for the passed
 	 * parameter and are originated in the specified peer
@@ -214,9 +240,11 @@ public class UnicastTable implements XMLSerializable {
 	 */
 	public Set<SearchMessage> getSearches(final Parameter parameter, final PeerID peer) {
 		final Set<SearchMessage> searchMessages = new HashSet<SearchMessage>();
-		for (final SearchMessage searchMessage : getSearches())
-			if (searchMessage.getSearchedParameters().contains(parameter) && searchMessage.getSource().equals(peer))
-				searchMessages.add(searchMessage);
+		final Set<SearchMessage> indexedSearches = searchesByParameter.get(Short.valueOf(parameter.getID()));
+		if (indexedSearches != null)
+			for (final SearchMessage searchMessage : indexedSearches)
+				if (searchMessage.getSearchedParameters().contains(parameter) && searchMessage.getSource().equals(peer))
+					searchMessages.add(searchMessage);
 		return searchMessages;
 	}
 	
@@ -227,11 +255,11 @@ public class UnicastTable implements XMLSerializable {
 		if (nDetector.getCurrentNeighbors().contains(dest))
 			return new BroadcastRoute(dest, dest, defaultRouteID, 1);
 		
-		final Set<Route> availableRoutes = getRoutes(dest);		
-		if (availableRoutes.isEmpty())
+		final List<BroadcastRoute> availableRoutes = routesByDest.get(dest);
+		if (availableRoutes == null)
 			return null;
 		
-		return Util.getShortestRoute(availableRoutes); 
+		return availableRoutes.get(0); 
 	}
 	
 	public Set<Route> getRoutes(PeerID dest) {
@@ -241,12 +269,10 @@ public class UnicastTable implements XMLSerializable {
 		if (nDetector.getCurrentNeighbors().contains(dest))
 			return Collections.<Route>singleton(new BroadcastRoute(dest, dest, defaultRouteID, 1));
 		
-		final Set<Route> availableRoutes = new HashSet<Route>();
-		// find the more recent route to destination
-		for (final Route route : getAllRoutes())
-			if (route.getDest().equals(dest))
-				availableRoutes.add(route);
-		return availableRoutes;
+		final List<BroadcastRoute> availableRoutes = routesByDest.get(dest);
+		if (availableRoutes == null)
+			return new HashSet<Route>();
+		return new HashSet<Route>(availableRoutes);
 	}
 
 	/**
@@ -258,8 +284,9 @@ public class UnicastTable implements XMLSerializable {
 	 */
 	public Set<MessageID> getRouteIDs(final PeerID dest) {
 		final Set<MessageID> routeIDs = new HashSet<MessageID>();
-		for (final BroadcastRoute route : getAllRoutes())
-			if (route.getDest().equals(dest))
+		final List<BroadcastRoute> availableRoutes = routesByDest.get(dest);
+		if (availableRoutes != null)
+			for (final BroadcastRoute route : availableRoutes)
 				routeIDs.add(route.getRouteID());
 
 		return routeIDs;
@@ -274,12 +301,10 @@ public class UnicastTable implements XMLSerializable {
 	 * @return the set of routes passing through the specified neighbor
 	 */
 	public Set<MessageID> getRoutesThrough(final PeerID neighbor) {
-		final Set<MessageID> routeIDs = new HashSet<MessageID>();
-		for (final BroadcastRoute route : getAllRoutes())
-			if (route.getThrough().equals(neighbor))
-				routeIDs.add(route.getRouteID());
-
-		return routeIDs;
+		final Set<MessageID> routeIDs = routesByNeighbor.get(neighbor);
+		if (routeIDs == null)
+			return new HashSet<MessageID>();
+		return new HashSet<MessageID>(routeIDs);
 	}
 
 	/**
@@ -316,13 +341,13 @@ public class UnicastTable implements XMLSerializable {
 	public int hashCode() {
 		int result = 17;
 
-		result = 37 * result + routes.hashCode();
+		result = 37 * result + routes.keySet().hashCode();
 		result = 37 * result + activeSearches.hashCode();
 		return result;
 	}
 	
 	public boolean isRoute(final MessageID routeID) {
-		return routes.contains(new BroadcastRoute(PeerID.VOID_PEERID, PeerID.VOID_PEERID, routeID, 0));
+		return routes.containsKey(routeID);
 	}
 
 	/**
@@ -339,11 +364,16 @@ public class UnicastTable implements XMLSerializable {
 		if (nDetector.getCurrentNeighbors().contains(dest))
 			return true;
 		
-		for (final Route route : getAllRoutes())
-			if (route.getDest().equals(dest))
-				return true;
+		return routesByDest.containsKey(dest);
+	}
 
-		return false;
+	/**
+	 * Gets the destinations which can be reached using the known routes
+	 * 
+	 * @return the set of known destinations
+	 */
+	public Set<PeerID> getKnownDestinations() {
+		return new HashSet<PeerID>(routesByDest.keySet());
 	}
 	
 	@Override
@@ -381,7 +411,7 @@ public class UnicastTable implements XMLSerializable {
 			} 
 
 			SearchMessage activeSearch = new SearchMessage(new PeerID(peer), Collections.<PeerID> emptySet(), searchedParameters, null, 0, SearchType.Exact);
-			activeSearches.add(activeSearch);
+			addSearch(activeSearch);
 		}
 
 		final NodeList routeList = document.getElementsByTagName(ROUTE_TAG);
@@ -397,9 +427,12 @@ public class UnicastTable implements XMLSerializable {
 		final SearchMessage search = getSearch(routeID);
 		
 		if (isSearchRoute(routeID)) {
+			unindexSearch(search);
 			final Set<Parameter> removedParameters = search.removeParameters(parameters);
 			if (search.getSearchedParameters().isEmpty())
 				removeSearch(routeID);
+			else
+				indexSearch(search);
 			
 			logUTable();
 			
@@ -410,14 +443,22 @@ public class UnicastTable implements XMLSerializable {
 	}
 
 	public PeerID removeRoute(final MessageID routeID, final PeerID neighbor) {
-		for (final Iterator<BroadcastRoute> it = routes.iterator(); it.hasNext();) {
-			final BroadcastRoute route = it.next();
-			if (route.getRouteID().equals(routeID) && (route.getThrough().equals(neighbor) || neighbor.equals(peerID))) {
-				it.remove();
-				final PeerID dest = route.getDest();
-				logger.trace("Peer " + peerID + " removed route " + route);
-				return dest;
-			}
+		final BroadcastRoute route = routes.get(routeID);
+		if (route != null && (route.getThrough().equals(neighbor) || neighbor.equals(peerID))) {
+			routes.remove(routeID);
+			
+			final List<BroadcastRoute> destRoutes = routesByDest.get(route.getDest());
+			destRoutes.remove(route);
+			if (destRoutes.isEmpty())
+				routesByDest.remove(route.getDest());
+			
+			final Set<MessageID> neighborRoutes = routesByNeighbor.get(route.getThrough());
+			neighborRoutes.remove(routeID);
+			if (neighborRoutes.isEmpty())
+				routesByNeighbor.remove(route.getThrough());
+			
+			logger.trace("Peer " + peerID + " removed route " + route);
+			return route.getDest();
 		}
 		return PeerID.VOID_PEERID;
 	}
@@ -434,7 +475,7 @@ public class UnicastTable implements XMLSerializable {
 	}
 	
 	public List<SearchMessage> getSearches() {
-		return Collections.unmodifiableList(activeSearches);
+		return Collections.unmodifiableList(new ArrayList<SearchMessage>(activeSearches.values()));
 	}
 
 	@Override
@@ -459,7 +500,7 @@ public class UnicastTable implements XMLSerializable {
 			root.appendChild(searchElement);
 		}
 
-		for (final Route route : routes) {
+		for (final Route route : routes.values()) {
 			final Element routeElement = doc.createElement(ROUTE_TAG);
 			routeElement.setAttribute(ROUTE_DEST_ATTRIB, route.getDest().toString());
 			routeElement.setAttribute(ROUTE_NEIGHBOR_ATTRIB, route.getThrough().toString());
@@ -489,7 +530,7 @@ public class UnicastTable implements XMLSerializable {
 		for (final SearchMessage activeSearch : getSearches())
 			strBuilder.append(activeSearch.getSource() + ":" + activeSearch.getSearchedParameters() + " ");
 		
-		for (final Route route : routes)
+		for (final Route route : routes.values())
 			strBuilder.append("(" + route.getDest() + " -> " + route.getThrough() + ") ");
 		
 		strBuilder.append("]");
@@ -498,17 +539,43 @@ public class UnicastTable implements XMLSerializable {
 	}
 	
 	public boolean updateUnicastTable(final SearchMessage searchMessage) {
-		if (activeSearches.contains(searchMessage))
+		if (activeSearches.containsKey(searchMessage.getRemoteMessageID()))
 			return false;
 		
 		updateTable(searchMessage);
 		
 		logUTable();
 		
-		activeSearches.add(searchMessage);
+		addSearch(searchMessage);
 		return true;
 	}
 
+	private void addSearch(final SearchMessage searchMessage) {
+		activeSearches.put(searchMessage.getRemoteMessageID(), searchMessage);
+		indexSearch(searchMessage);
+	}
+
+	private void indexSearch(final SearchMessage searchMessage) {
+		for (final Parameter p : searchMessage.getSearchedParameters()) {
+			final Short parameterID = Short.valueOf(p.getID());
+			if (!searchesByParameter.containsKey(parameterID))
+				searchesByParameter.put(parameterID, new HashSet<SearchMessage>());
+			searchesByParameter.get(parameterID).add(searchMessage);
+		}
+	}
+
+	private void unindexSearch(final SearchMessage searchMessage) {
+		for (final Parameter p : searchMessage.getSearchedParameters()) {
+			final Short parameterID = Short.valueOf(p.getID());
+			final Set<SearchMessage> indexedSearches = searchesByParameter.get(parameterID);
+			if (indexedSearches != null) {
+				indexedSearches.remove(searchMessage);
+				if (indexedSearches.isEmpty())
+					searchesByParameter.remove(parameterID);
+			}
+		}
+	}
+
 	private void updateTable(final SearchMessage searchMessage) {
 		if (!searchMessage.getSource().equals(peerID))
 			addRoute(searchMessage.getRemoteMessageID(), searchMessage.getSource(), searchMessage.getSender(), searchMessage.getDistance());
@@ -529,37 +596,42 @@ public class UnicastTable implements XMLSerializable {
 	}
 
 	private void addRoute(final MessageID routeID, final PeerID dest, final PeerID neighbor, final int distance) {
-		final BroadcastRoute route = new BroadcastRoute(dest, neighbor, routeID, distance);
-		if (!routes.contains(route)) {
+		if (!routes.containsKey(routeID)) {
+			final BroadcastRoute route = new BroadcastRoute(dest, neighbor, routeID, distance);
 			logger.trace("Peer " + peerID + " added route to " + dest);
-			routes.add(route);
+			routes.put(routeID, route);
+			
+			if (!routesByDest.containsKey(dest))
+				routesByDest.put(dest, new ArrayList<BroadcastRoute>());
+			final List<BroadcastRoute> destRoutes = routesByDest.get(dest);
+			// insert after the routes which are not longer
+			int index = destRoutes.size();
+			while (index > 0 && destRoutes.get(index - 1).getDistance() > distance)
+				index--;
+			destRoutes.add(index, route);
+			
+			if (!routesByNeighbor.containsKey(neighbor))
+				routesByNeighbor.put(neighbor, new HashSet<MessageID>());
+			routesByNeighbor.get(neighbor).add(routeID);
 		}
 	}
 
 	public List<BroadcastRoute> getAllRoutes() {
-		return Collections.unmodifiableList(routes);
+		return Collections.unmodifiableList(new ArrayList<BroadcastRoute>(routes.values()));
 	}
 
 	private boolean removeSearch(final MessageID routeID) {	 
-		//check active searches
-		for (final Iterator<SearchMessage> activeSearchesIterator = activeSearches.iterator(); activeSearchesIterator.hasNext(); ) {
-			final SearchMessage activeSearch = activeSearchesIterator.next();
-			if (activeSearch.getRemoteMessageID().equals(routeID)) {
-				activeSearchesIterator.remove();				
-				logUTable(); 
-				return true;
-			}
+		final SearchMessage activeSearch = activeSearches.remove(routeID);
+		if (activeSearch != null) {
+			unindexSearch(activeSearch);
+			logUTable(); 
+			return true;
 		}
 		
 		return false;
 	}
 	
 	public boolean isSearchRoute(final MessageID routeID) {
-		for (final Iterator<SearchMessage> it = getSearches().iterator(); it.hasNext();) {
-			final SearchMessage search = it.next();
-			if (search.getRemoteMessageID().equals(routeID))
-				return true;
-		}
-		return false;
+		return activeSearches.containsKey(routeID);
 	}
 }
@@ -150,15 +150,15 @@ public class BasicPeer implements Peer {
 	}
 
 	/**
-	 * Sets the listener for message hearing. This listener is notified every
-	 * time a message is received and not depends on the message class.
+	 * Adds a listener for message hearing. Hear listeners are notified every
+	 * time a message is received and not depend on the message class.
 	 * 
 	 * @param hearListener
 	 *            the listener for heard messages
 	 */
 	@Override
-	public void setHearListener(final MessageReceivedListener hearListener) {
-		receivedProcessor.setHearListerner(hearListener);
+	public void addHearListener(final MessageReceivedListener hearListener) {
+		receivedProcessor.addHearListener(hearListener);
 	}
 
 	/**
@@ -33,7 +33,7 @@ public interface Peer {
 
 	public void addReceivingListener(Class<? extends BroadcastMessage> messageClass, MessageReceivedListener receivedListener) throws AlreadyRegisteredListenerException;
 
-	public void setHearListener(MessageReceivedListener hearListener);
+	public void addHearListener(MessageReceivedListener hearListener);
 
 	public void addSentListener(MessageSentListener sentListener);
 
@@ -89,7 +89,7 @@ class ReceivedProcessor {
 		return peer;
 	}
 
-	public void setHearListerner(MessageReceivedListener hearListener) {
-		receivingThread.setHearListener(hearListener);
+	public void addHearListener(MessageReceivedListener hearListener) {
+		receivingThread.addHearListener(hearListener);
 	}
 }
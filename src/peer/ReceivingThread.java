@@ -22,6 +22,8 @@ package peer;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import peer.message.BroadcastMessage;
 import peer.message.MessageReceivedListener;
@@ -45,8 +47,8 @@ final class ReceivingThread extends WaitableThread {
 	private final BasicPeer peer;
 	private final MessageCounter msgCounter;
 	
-	// Sets the message hearing listener
-	private MessageReceivedListener hearListener = null;
+	// the message hearing listeners
+	private final List<MessageReceivedListener> hearListeners = new CopyOnWriteArrayList<MessageReceivedListener>();
 	
 
 	public ReceivingThread(final ReceivedProcessor receivedProcessor, final BasicPeer peer, final MessageCounter msgCounter) {
@@ -55,12 +57,12 @@ final class ReceivingThread extends WaitableThread {
 		this.msgCounter = msgCounter;
 	}
 	
-	public void setHearListener(final MessageReceivedListener hearListener) {
-		this.hearListener = hearListener;
+	public void addHearListener(final MessageReceivedListener hearListener) {
+		hearListeners.add(hearListener);
 	}
 	
 	private void notifyHearListener(final BroadcastMessage message, final long receptionTime) {
-		if (hearListener != null)
+		for (final MessageReceivedListener hearListener : hearListeners)
 			hearListener.messageReceived(message, receptionTime);
 	}
 
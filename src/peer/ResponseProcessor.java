@@ -21,9 +21,11 @@ package peer;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 
@@ -51,7 +53,11 @@ final class ResponseProcessor extends WaitableThread {
 	
 	private final Logger logger = Logger.getLogger(ResponseProcessor.class);
 
-	private final List<BroadcastMessage> waitingResponses = new ArrayList<BroadcastMessage>();
+	// the queues of waiting messages for each layer and priority
+	private final Map<CommunicationLayer, Map<SendPriority, SendQueue>> layerQueues = new HashMap<CommunicationLayer, Map<SendPriority, SendQueue>>();
+	
+	// the queues of each priority in creation order
+	private final Map<SendPriority, List<SendQueue>> priorityQueues = new EnumMap<SendPriority, List<SendQueue>>(SendPriority.class);
 	
 	private final Set<ACKMessage> waitingACKMessages = new HashSet<ACKMessage>(); 
 
@@ -110,23 +116,67 @@ final class ResponseProcessor extends WaitableThread {
 		}
 	}
 
+	// creates a bundle using a weighted round robin among all queues. In each
+	// round, queues take as many messages as the weight of their priority.
+	// Messages of each layer keep their order, but messages of different
+	// layers are not sent in the order they were enqueued. Receivers deliver
+	// each message only to the layer handling its type, so layers never
+	// observe the order of the messages of other layers.
 	public BundleMessage processResponses() {
 		final List<BroadcastMessage> responses = new ArrayList<BroadcastMessage>();
+		final List<SendQueue> changedQueues = new ArrayList<SendQueue>();
 		
-		synchronized (waitingResponses) {
-			int counter = 0;
-			if (!waitingResponses.isEmpty())	 {								
-				for (final Iterator<BroadcastMessage> it = waitingResponses.iterator(); it.hasNext() && counter < MAX_MESSAGES;) {
-					final BroadcastMessage broadcastMessage = it.next();
-					responses.add(broadcastMessage);
-					it.remove();
-					counter++;
+		synchronized (layerQueues) {
+			boolean pending = true;
+			while (pending && responses.size() < MAX_MESSAGES) {
+				pending = false;
+				for (final List<SendQueue> queues : priorityQueues.values()) {
+					for (final SendQueue queue : queues) {
+						for (int i = 0; i < queue.getPriority().getWeight() && !queue.isEmpty() && responses.size() < MAX_MESSAGES; i++)
+							responses.add(queue.poll());
+						pending |= !queue.isEmpty();
+					}
 				}
-			}					
+			}
+			
+			for (final List<SendQueue> queues : priorityQueues.values())
+				for (final SendQueue queue : queues)
+					if (queue.updateCongestion())
+						changedQueues.add(queue);
 		}
+		
+		notifyCongestion(changedQueues);
 
 		return new BundleMessage(peer.getPeerID(), responses);
 	}
+	
+	private void notifyCongestion(final List<SendQueue> changedQueues) {
+		for (final SendQueue queue : changedQueues) {
+			logger.debug("Peer " + peer.getPeerID() + " queue " + queue.getPriority() + " of layer " + queue.getLayer() + " congested " + queue.isCongested() + " with " + queue.size() + " messages");
+			if (queue.getLayer() instanceof ScheduledLayer)
+				((ScheduledLayer) queue.getLayer()).queueCongested(queue.getPriority(), queue.isCongested());
+		}
+	}
+	
+	// gets the queue for the layer and priority, creating it if necessary
+	private SendQueue getQueue(final CommunicationLayer layer, final SendPriority priority) {
+		Map<SendPriority, SendQueue> queues = layerQueues.get(layer);
+		if (queues == null) {
+			queues = new EnumMap<SendPriority, SendQueue>(SendPriority.class);
+			layerQueues.put(layer, queues);
+		}
+		
+		SendQueue queue = queues.get(priority);
+		if (queue == null) {
+			queue = new SendQueue(layer, priority);
+			queues.put(priority, queue);
+			
+			if (!priorityQueues.containsKey(priority))
+				priorityQueues.put(priority, new ArrayList<SendQueue>());
+			priorityQueues.get(priority).add(queue);
+		}
+		return queue;
+	}
 
 	private void sendResponses(final BundleMessage bundleMessage) {
 		msgCounter.addSent(bundleMessage.getClass());
@@ -143,19 +193,21 @@ final class ResponseProcessor extends WaitableThread {
 	}
 
 	public boolean addResponse(final BroadcastMessage message, CommunicationLayer layer) {
-		synchronized (waitingResponses) {
-			if (layer != null) {
-				final boolean merged = layer.merge(Collections.unmodifiableList(waitingResponses), message);
-				if (!merged) {
-					waitingResponses.add(message);				
-					return true;
-				}
-				return false;
-			}
-			
-			waitingResponses.add(message);				
-			return true;
+		final SendPriority priority = (layer instanceof ScheduledLayer)?((ScheduledLayer) layer).getSendPriority(message):SendPriority.NORMAL;
+		
+		final SendQueue queue;
+		final boolean queued;
+		final boolean changed;
+		synchronized (layerQueues) {
+			queue = getQueue(layer, priority);
+			queued = queue.add(message);
+			changed = queue.updateCongestion();
 		}
+		
+		if (changed)
+			notifyCongestion(Collections.singletonList(queue));
+		
+		return queued;
 	}
 
 	public void addReceivedACKResponse(final ACKMessage ackMessage) {
@@ -0,0 +1,76 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package peer;
+
+import peer.message.BroadcastMessage;
+
+/**
+ * This interface defines a communication layer whose enqueued messages are
+ * scheduled by priority and merged using a key instead of scanning all the
+ * waiting messages.
+ * 
+ * @author Unai Aguilera (unai.aguilera@gmail.com)
+ * 
+ */
+public interface ScheduledLayer extends CommunicationLayer {
+
+	/**
+	 * Gets the priority used to send the passed message
+	 * 
+	 * @param message
+	 *            the message to send
+	 * @return the priority of the message
+	 */
+	public SendPriority getSendPriority(BroadcastMessage message);
+	
+	/**
+	 * Gets the key used to decide if the passed message can be merged into the
+	 * newest waiting message. Messages can only be merged with a waiting
+	 * message having an equal key and no message queued after it.
+	 * 
+	 * @param message
+	 *            the message to send
+	 * @return the merge key or null if the message cannot be merged
+	 */
+	public Object getMergeKey(BroadcastMessage message);
+	
+	/**
+	 * Merges the sending message into the newest waiting message, which has
+	 * the same key.
+	 * 
+	 * @param waitingMessage
+	 *            the message waiting to be sent
+	 * @param sendingMessage
+	 *            the message to send
+	 * @return true if the message was merged, false otherwise
+	 */
+	public boolean merge(BroadcastMessage waitingMessage, BroadcastMessage sendingMessage);
+	
+	/**
+	 * Called when the queue of the specified priority exceeds its budget or
+	 * drains below it again.
+	 * 
+	 * @param priority
+	 *            the priority of the queue
+	 * @param congested
+	 *            true if the queue exceeded its budget, false if it drained
+	 */
+	public void queueCongested(SendPriority priority, boolean congested);
+}
@@ -0,0 +1,50 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package peer;
+
+/**
+ * This enumeration defines the priorities of the messages waiting to be
+ * sent. Each priority has a weight, which is the number of messages taken
+ * from each of its queues in every round of bundle creation, and a budget,
+ * which is the queue length considered congested.
+ * 
+ * @author Unai Aguilera (unai.aguilera@gmail.com)
+ * 
+ */
+public enum SendPriority {
+	
+	HIGH(4, 200), NORMAL(2, 100), LOW(1, 50);
+	
+	private final int weight;
+	private final int budget;
+	
+	private SendPriority(final int weight, final int budget) {
+		this.weight = weight;
+		this.budget = budget;
+	}
+	
+	public int getWeight() {
+		return weight;
+	}
+	
+	public int getBudget() {
+		return budget;
+	}
+}
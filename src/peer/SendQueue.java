@@ -0,0 +1,130 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package peer;
+
+import java.util.Collections;
+import java.util.LinkedList;
+
+import peer.message.BroadcastMessage;
+
+/**
+ * This class contains the messages waiting to be sent by a layer with the
+ * same priority. Messages of scheduled layers are only merged into the
+ * newest waiting message when both have the same merge key, so a merged
+ * message never overtakes the messages queued before it. Other layers are
+ * asked to merge against the waiting messages of their own queue.
+ * 
+ * @author Unai Aguilera (unai.aguilera@gmail.com)
+ * 
+ */
+final class SendQueue {
+
+	private final CommunicationLayer layer;
+	private final SendPriority priority;
+	
+	private final LinkedList<BroadcastMessage> messages = new LinkedList<BroadcastMessage>();
+	
+	// the merge key of the newest waiting message
+	private Object lastMergeKey;
+	
+	private boolean congested = false;
+	
+	public SendQueue(final CommunicationLayer layer, final SendPriority priority) {
+		this.layer = layer;
+		this.priority = priority;
+	}
+	
+	public CommunicationLayer getLayer() {
+		return layer;
+	}
+	
+	public SendPriority getPriority() {
+		return priority;
+	}
+	
+	/**
+	 * Adds the message to the queue unless it can be merged into a waiting
+	 * one
+	 * 
+	 * @param message
+	 *            the message to send
+	 * @return true if the message was queued, false if it was merged
+	 */
+	public boolean add(final BroadcastMessage message) {
+		if (layer instanceof ScheduledLayer) {
+			final ScheduledLayer scheduledLayer = (ScheduledLayer) layer;
+			final Object key = scheduledLayer.getMergeKey(message);
+			if (key != null && key.equals(lastMergeKey) && scheduledLayer.merge(messages.getLast(), message))
+				return false;
+			
+			lastMergeKey = key;
+		} else if (layer != null && layer.merge(Collections.unmodifiableList(messages), message))
+			return false;
+		
+		messages.add(message);
+		return true;
+	}
+	
+	/**
+	 * Removes the first waiting message
+	 * 
+	 * @return the first waiting message or null if the queue is empty
+	 */
+	public BroadcastMessage poll() {
+		final BroadcastMessage message = messages.poll();
+		// the newest message cannot be merged once it is being sent
+		if (messages.isEmpty())
+			lastMergeKey = null;
+		return message;
+	}
+	
+	public boolean isEmpty() {
+		return messages.isEmpty();
+	}
+	
+	public int size() {
+		return messages.size();
+	}
+	
+	/**
+	 * Updates the congestion state of the queue. A queue is congested when
+	 * it exceeds its budget and stops being congested when it drains to half
+	 * of it.
+	 * 
+	 * @return true if the congestion state changed, false otherwise
+	 */
+	public boolean updateCongestion() {
+		if (!congested && messages.size() > priority.getBudget()) {
+			congested = true;
+			return true;
+		}
+		
+		if (congested && messages.size() <= priority.getBudget() / 2) {
+			congested = false;
+			return true;
+		}
+		
+		return false;
+	}
+	
+	public boolean isCongested() {
+		return congested;
+	}
+}
@@ -39,6 +39,7 @@ import multicast.search.message.RemoveRouteMessage;
 import multicast.search.message.SearchMessage;
 import multicast.search.message.SearchResponseMessage;
 import detection.message.BeaconMessage;
+import dissemination.bloomFilter.message.FilterMessage;
 import dissemination.newProtocol.message.TableMessage;
 
 public class MessageTypes {
@@ -71,6 +72,8 @@ public class MessageTypes {
 	
 	public static final byte FLOOD_COMPOSITION_MESSAGE = 0x15;
 	
+	public static final byte FILTER_MESSAGE = 0x16;
+	
 	private static BroadcastMessage getInstance(final byte mType) throws UnsupportedTypeException {
 		switch (mType) {
 			case BEACON_MESSAGE:
@@ -113,6 +116,8 @@ public class MessageTypes {
 				return new BCompositionMessage();
 			case FLOOD_COMPOSITION_MESSAGE:
 				return new FloodCompositionMessage();
+			case FILTER_MESSAGE:
+				return new FilterMessage();
 		}
 		
 		throw new UnsupportedTypeException("Message type " + mType + " not supported");
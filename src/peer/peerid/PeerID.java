@@ -51,6 +51,10 @@ public final class PeerID implements Comparable<PeerID>, BSerializable {
 		this.id = id;
 	}
 
+	public int getID() {
+		return id;
+	}
+
 	@Override
 	public String toString() {
 		return "" + id;
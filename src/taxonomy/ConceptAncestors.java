@@ -0,0 +1,76 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package taxonomy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Obtains the ancestors of taxonomy concepts. The taxonomy does not change,
+ * so the ancestors of each concept are calculated only once.
+ * 
+ * @author Unai Aguilera (unai.aguilera@gmail.com)
+ * 
+ */
+public class ConceptAncestors {
+
+	private final Taxonomy taxonomy;
+
+	private final Map<Short, List<Short>> ancestors = new HashMap<Short, List<Short>>();
+
+	public ConceptAncestors(final Taxonomy taxonomy) {
+		this.taxonomy = taxonomy;
+	}
+
+	/**
+	 * Gets the passed concept and all its ancestors, i.e. all the concepts
+	 * which subsume it.
+	 * 
+	 * @param id
+	 *            the concept whose ancestors are obtained
+	 * @return the concept followed by its ancestors up to the root
+	 */
+	public List<Short> getConcepts(final short id) {
+		final Short key = Short.valueOf(id);
+		List<Short> concepts = ancestors.get(key);
+		if (concepts == null) {
+			concepts = new ArrayList<Short>();
+			concepts.add(key);
+			// only taxonomy concepts have positive identifiers
+			if (id > 0) {
+				try {
+					String parent = taxonomy.getParent(taxonomy.decode(id));
+					while (parent != null && !parent.equals(BasicTaxonomy.NONE)) {
+						concepts.add(Short.valueOf(taxonomy.encode(parent)));
+						parent = taxonomy.getParent(parent);
+					}
+				} catch (final TaxonomyException e) {
+					// the concept has no more ancestors
+				}
+			}
+			concepts = Collections.unmodifiableList(concepts);
+			ancestors.put(key, concepts);
+		}
+		return concepts;
+	}
+}
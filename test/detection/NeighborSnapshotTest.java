@@ -0,0 +1,57 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package detection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import peer.peerid.PeerID;
+
+public class NeighborSnapshotTest {
+
+	@Test
+	public void testContains() {
+		final Set<PeerID> neighbors = new HashSet<PeerID>();
+		for (int i = 0; i < 20; i++)
+			neighbors.add(new PeerID(i * 16));
+
+		final NeighborSnapshot snapshot = new NeighborSnapshot(neighbors);
+		assertEquals(20, snapshot.size());
+		assertEquals(neighbors, snapshot);
+
+		for (int i = 0; i < 20; i++) {
+			assertTrue(snapshot.contains(new PeerID(i * 16)));
+			assertFalse(snapshot.contains(new PeerID(i * 16 + 1)));
+		}
+		assertFalse(snapshot.contains("0"));
+	}
+
+	@Test
+	public void testEmpty() {
+		assertTrue(NeighborSnapshot.EMPTY.isEmpty());
+		assertFalse(NeighborSnapshot.EMPTY.contains(PeerID.VOID_PEERID));
+	}
+}
@@ -0,0 +1,48 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package detection.beaconDetector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class BeaconRateTest {
+
+	@Test
+	public void testNextBeaconTime() {
+		final BeaconRate beaconRate = new BeaconRate(1000, 250);
+		assertEquals(1000, beaconRate.nextBeaconTime());
+
+		beaconRate.neighborsChanged(2);
+		final int changingTime = beaconRate.nextBeaconTime();
+		assertEquals(500, changingTime);
+
+		beaconRate.neighborsChanged(20);
+		assertEquals(250, beaconRate.nextBeaconTime());
+
+		// the period recovers when the neighborhood becomes stable
+		int beaconTime = 0;
+		for (int i = 0; i < 20; i++)
+			beaconTime = beaconRate.nextBeaconTime();
+		assertTrue(beaconTime > 990);
+		assertTrue(beaconTime <= 1000);
+	}
+}
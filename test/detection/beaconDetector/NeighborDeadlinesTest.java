@@ -0,0 +1,79 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package detection.beaconDetector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import peer.peerid.PeerID;
+
+public class NeighborDeadlinesTest {
+
+	@Test
+	public void testExpire() {
+		final NeighborDeadlines deadlines = new NeighborDeadlines();
+		assertEquals(Long.MAX_VALUE, deadlines.nextDeadline());
+
+		assertTrue(deadlines.refresh(new PeerID(1), 100));
+		assertTrue(deadlines.refresh(new PeerID(2), 200));
+		assertTrue(deadlines.refresh(new PeerID(3), 300));
+		assertFalse(deadlines.refresh(new PeerID(1), 400));
+
+		assertEquals(100, deadlines.nextDeadline());
+		assertTrue(deadlines.expire(99).isEmpty());
+
+		// the refreshed neighbor is moved to its new deadline
+		assertEquals(Collections.singleton(new PeerID(2)), deadlines.expire(250));
+		assertEquals(300, deadlines.nextDeadline());
+		assertEquals(2, deadlines.size());
+		assertTrue(deadlines.contains(new PeerID(1)));
+		assertFalse(deadlines.contains(new PeerID(2)));
+
+		final Set<PeerID> expected = new HashSet<PeerID>();
+		expected.add(new PeerID(1));
+		expected.add(new PeerID(3));
+		assertEquals(expected, deadlines.expire(400));
+		assertEquals(0, deadlines.size());
+		assertEquals(Long.MAX_VALUE, deadlines.nextDeadline());
+	}
+
+	@Test
+	public void testUpdate() {
+		final NeighborDeadlines deadlines = new NeighborDeadlines();
+
+		// only contained neighbors are updated
+		assertFalse(deadlines.update(new PeerID(1), 100));
+		assertFalse(deadlines.contains(new PeerID(1)));
+
+		assertTrue(deadlines.refresh(new PeerID(1), 100));
+		assertTrue(deadlines.update(new PeerID(1), 300));
+
+		assertTrue(deadlines.expire(200).isEmpty());
+		assertEquals(300, deadlines.nextDeadline());
+		assertEquals(Collections.singleton(new PeerID(1)), deadlines.expire(300));
+	}
+}
@@ -0,0 +1,76 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package detection.beaconDetector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import peer.peerid.PeerID;
+
+public class NeighborEventsTest {
+
+	@Test
+	public void testFoundAndLost() {
+		final NeighborEvents events = new NeighborEvents();
+		assertTrue(events.isEmpty());
+
+		events.found(new PeerID(1));
+		events.lost(new PeerID(2));
+		assertEquals(Collections.singleton(new PeerID(1)), events.getFoundNeighbors());
+		assertEquals(Collections.singleton(new PeerID(2)), events.getLostNeighbors());
+		assertFalse(events.hasRefoundNeighbors());
+
+		events.clear();
+		assertTrue(events.isEmpty());
+	}
+
+	@Test
+	public void testLostAndFoundAgain() {
+		final NeighborEvents events = new NeighborEvents();
+
+		// the neighbor is reported as lost and as new
+		events.lost(new PeerID(1));
+		events.found(new PeerID(1));
+		assertEquals(Collections.singleton(new PeerID(1)), events.getFoundNeighbors());
+		assertEquals(Collections.singleton(new PeerID(1)), events.getLostNeighbors());
+		assertTrue(events.hasRefoundNeighbors());
+
+		// lost once more, it is only reported as lost
+		events.lost(new PeerID(1));
+		assertTrue(events.getFoundNeighbors().isEmpty());
+		assertEquals(Collections.singleton(new PeerID(1)), events.getLostNeighbors());
+		assertFalse(events.hasRefoundNeighbors());
+	}
+
+	@Test
+	public void testFoundAndLostAgain() {
+		final NeighborEvents events = new NeighborEvents();
+
+		// a neighbor which was never notified is not reported
+		events.found(new PeerID(1));
+		events.lost(new PeerID(1));
+		assertTrue(events.isEmpty());
+	}
+}
@@ -0,0 +1,111 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package dissemination.bloomFilter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import peer.peerid.PeerID;
+import taxonomy.parameter.InputParameter;
+import taxonomy.parameter.OutputParameter;
+import taxonomy.parameter.Parameter;
+import dissemination.bloomFilter.filter.AttenuatedBloomFilter;
+import dissemination.bloomFilter.filter.BloomFilter;
+import dissemination.bloomFilter.filter.FilterDelta;
+
+public class NeighborFiltersTest {
+
+	private final PeerID peerA = new PeerID("1");
+
+	private AttenuatedBloomFilter filterA;
+
+	@Before
+	public void setUp() {
+		filterA = new AttenuatedBloomFilter(3, BloomFilter.DEFAULT_SIZE, BloomFilter.DEFAULT_HASHES);
+		filterA.getLevel(0).add(new InputParameter((short) 1));
+		filterA.getLevel(1).add(new OutputParameter((short) 2));
+	}
+
+	@Test
+	public void testDetectedBeforeDetecting() {
+		// A detects B and sends its whole filter before B detects A
+		final NeighborFilters filtersB = new NeighborFilters();
+		assertFalse(filtersB.apply(peerA, FilterDelta.full(filterA)));
+		assertEquals(filterA, filtersB.get(peerA));
+
+		// the later changes of A are applied over the received filter
+		final AttenuatedBloomFilter changedFilterA = new AttenuatedBloomFilter(filterA);
+		changedFilterA.getLevel(2).add(new InputParameter((short) 3));
+		assertFalse(filtersB.apply(peerA, FilterDelta.diff(filterA, changedFilterA)));
+		assertEquals(changedFilterA, filtersB.get(peerA));
+	}
+
+	@Test
+	public void testDeltaWithoutFilter() {
+		final AttenuatedBloomFilter changedFilterA = new AttenuatedBloomFilter(filterA);
+		changedFilterA.getLevel(2).add(new InputParameter((short) 3));
+		final FilterDelta delta = FilterDelta.diff(filterA, changedFilterA);
+
+		final NeighborFilters filtersB = new NeighborFilters();
+		// the delta is discarded and the full filter requested only once
+		assertTrue(filtersB.apply(peerA, delta));
+		assertNull(filtersB.get(peerA));
+		assertFalse(filtersB.apply(peerA, delta));
+		assertNull(filtersB.get(peerA));
+
+		assertFalse(filtersB.apply(peerA, FilterDelta.full(changedFilterA)));
+		assertEquals(changedFilterA, filtersB.get(peerA));
+
+		// a lost neighbor must send its full filter again
+		filtersB.remove(peerA);
+		assertTrue(filtersB.apply(peerA, delta));
+		assertNull(filtersB.get(peerA));
+	}
+
+	@Test
+	public void testAnnouncedParameters() {
+		final NeighborFilters filtersB = new NeighborFilters();
+		filtersB.apply(peerA, FilterDelta.full(filterA));
+
+		final Set<Parameter> announced = new HashSet<Parameter>();
+		announced.add(new InputParameter((short) 1));
+		announced.add(new OutputParameter((short) 2));
+		filtersB.addAnnouncedParameters(announced);
+		assertEquals(announced, filtersB.getAnnouncedParameters());
+
+		// parameters are discarded when no filter contains them
+		final AttenuatedBloomFilter changedFilterA = new AttenuatedBloomFilter(3, BloomFilter.DEFAULT_SIZE, BloomFilter.DEFAULT_HASHES);
+		changedFilterA.getLevel(0).add(new InputParameter((short) 1));
+		filtersB.apply(peerA, FilterDelta.diff(filterA, changedFilterA));
+		assertEquals(Collections.singleton(new InputParameter((short) 1)), filtersB.getAnnouncedParameters());
+
+		filtersB.remove(peerA);
+		assertTrue(filtersB.getAnnouncedParameters().isEmpty());
+	}
+}
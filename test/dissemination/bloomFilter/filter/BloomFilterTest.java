@@ -0,0 +1,68 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package dissemination.bloomFilter.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import taxonomy.parameter.InputParameter;
+import taxonomy.parameter.OutputParameter;
+
+public class BloomFilterTest {
+
+	@Test
+	public void testContains() {
+		final BloomFilter bloomFilter = new BloomFilter(BloomFilter.DEFAULT_SIZE, BloomFilter.DEFAULT_HASHES);
+		assertTrue(bloomFilter.isEmpty());
+
+		for (short i = 1; i <= 50; i++)
+			bloomFilter.add(new InputParameter(i));
+
+		assertFalse(bloomFilter.isEmpty());
+		for (short i = 1; i <= 50; i++)
+			assertTrue(bloomFilter.contains(new InputParameter(i)));
+
+		int falsePositives = 0;
+		for (short i = 1; i <= 50; i++)
+			if (bloomFilter.contains(new OutputParameter(i)))
+				falsePositives++;
+		assertTrue(falsePositives < 5);
+	}
+
+	@Test
+	public void testOr() {
+		final BloomFilter bloomFilterA = new BloomFilter(64, 2);
+		bloomFilterA.add(new InputParameter((short) 1));
+
+		final BloomFilter bloomFilterB = new BloomFilter(64, 2);
+		bloomFilterB.add(new OutputParameter((short) 2));
+
+		final BloomFilter copy = new BloomFilter(bloomFilterA);
+		bloomFilterA.or(bloomFilterB);
+
+		assertTrue(bloomFilterA.contains(new InputParameter((short) 1)));
+		assertTrue(bloomFilterA.contains(new OutputParameter((short) 2)));
+		assertFalse(copy.equals(bloomFilterA));
+		assertEquals(copy, new BloomFilter(copy));
+	}
+}
@@ -0,0 +1,136 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package dissemination.bloomFilter.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import taxonomy.parameter.InputParameter;
+import taxonomy.parameter.OutputParameter;
+
+public class FilterDeltaTest {
+
+	private AttenuatedBloomFilter previous;
+
+	@Before
+	public void setUp() {
+		previous = new AttenuatedBloomFilter(3, BloomFilter.DEFAULT_SIZE, BloomFilter.DEFAULT_HASHES);
+		for (short i = 1; i <= 100; i++)
+			previous.getLevel(i % 3).add(new InputParameter(i));
+	}
+
+	@Test
+	public void testApply() {
+		final AttenuatedBloomFilter current = new AttenuatedBloomFilter(previous);
+		current.getLevel(0).add(new OutputParameter((short) 7));
+		current.getLevel(2).clear(0);
+
+		final FilterDelta delta = FilterDelta.diff(previous, current);
+		assertFalse(delta.isFull());
+		assertEquals(current, delta.apply(previous));
+		// applying the delta again has no effect
+		assertEquals(current, delta.apply(delta.apply(previous)));
+
+		assertTrue(FilterDelta.diff(current, current).isEmpty());
+		assertEquals(previous, FilterDelta.full(previous).apply(current));
+		assertEquals(0, FilterDelta.full(previous).apply(current).getFirstLevel(new InputParameter((short) 3)));
+	}
+
+	@Test
+	public void testMerge() {
+		final AttenuatedBloomFilter middle = new AttenuatedBloomFilter(previous);
+		middle.getLevel(0).add(new OutputParameter((short) 7));
+
+		final AttenuatedBloomFilter current = new AttenuatedBloomFilter(3, BloomFilter.DEFAULT_SIZE, BloomFilter.DEFAULT_HASHES);
+		current.getLevel(1).add(new OutputParameter((short) 8));
+
+		final FilterDelta delta = FilterDelta.diff(previous, middle);
+		delta.merge(FilterDelta.diff(middle, current));
+
+		assertEquals(current, delta.apply(previous));
+	}
+
+	@Test
+	public void testSerialization() throws IOException {
+		final AttenuatedBloomFilter current = new AttenuatedBloomFilter(previous);
+		current.getLevel(1).add(new OutputParameter((short) 7));
+
+		final FilterDelta delta = FilterDelta.diff(previous, current);
+		final byte[] deltaData = serialize(delta);
+		final byte[] fullData = serialize(FilterDelta.full(current));
+
+		// a small change is much smaller than the whole filter
+		assertTrue(deltaData.length * 10 < fullData.length);
+
+		final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(deltaData));
+		final FilterDelta result = new FilterDelta();
+		result.read(in);
+		in.close();
+
+		assertEquals(current, result.apply(previous));
+	}
+
+	@Test
+	public void testMaxSizeSerialization() throws IOException {
+		final AttenuatedBloomFilter empty = new AttenuatedBloomFilter(2, BloomFilter.MAX_SIZE, BloomFilter.DEFAULT_HASHES);
+		final AttenuatedBloomFilter current = new AttenuatedBloomFilter(empty);
+		current.getLevel(1).set(BloomFilter.MAX_SIZE - 1);
+
+		final FilterDelta delta = FilterDelta.diff(empty, current);
+		assertEquals(current, deserialize(serialize(delta)).apply(empty));
+		assertEquals(current, deserialize(serialize(FilterDelta.full(current))).apply(null));
+	}
+
+	@Test(expected = IOException.class)
+	public void testInvalidSize() throws IOException {
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		final ObjectOutputStream out = new ObjectOutputStream(bos);
+		out.writeBoolean(true);
+		out.writeInt(BloomFilter.MAX_SIZE + 64);
+		out.close();
+		deserialize(bos.toByteArray());
+	}
+
+	private FilterDelta deserialize(final byte[] data) throws IOException {
+		final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data));
+		final FilterDelta delta = new FilterDelta();
+		delta.read(in);
+		in.close();
+		return delta;
+	}
+
+	private byte[] serialize(final FilterDelta delta) throws IOException {
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		final ObjectOutputStream out = new ObjectOutputStream(bos);
+		delta.write(out);
+		out.close();
+		return bos.toByteArray();
+	}
+}
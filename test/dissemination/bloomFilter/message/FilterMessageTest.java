@@ -0,0 +1,93 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+
+package dissemination.bloomFilter.message;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import peer.message.MessageTypes;
+import peer.message.UnsupportedTypeException;
+import peer.peerid.PeerID;
+import taxonomy.BasicTaxonomy;
+import taxonomy.Taxonomy;
+import taxonomy.parameter.InvalidParameterIDException;
+import taxonomy.parameter.Parameter;
+import taxonomy.parameter.ParameterFactory;
+import dissemination.bloomFilter.filter.AttenuatedBloomFilter;
+import dissemination.bloomFilter.filter.BloomFilter;
+import dissemination.bloomFilter.filter.FilterDelta;
+
+public class FilterMessageTest {
+
+	private final Taxonomy emptyTaxonomy = new BasicTaxonomy();
+
+	@Test
+	public void testSerialization() throws IOException, UnsupportedTypeException, InvalidParameterIDException {
+		final AttenuatedBloomFilter filter = new AttenuatedBloomFilter(3, BloomFilter.DEFAULT_SIZE, BloomFilter.DEFAULT_HASHES);
+		// more announced parameters than a byte can count
+		final Set<Parameter> parameters = new HashSet<Parameter>();
+		for (int i = 0; i < 300; i++) {
+			final Parameter p = ParameterFactory.createParameter("I-" + i, emptyTaxonomy);
+			filter.getLevel(0).add(p);
+			parameters.add(p);
+		}
+
+		final FilterMessage filterMessage = new FilterMessage(new PeerID("1"), Collections.singleton(new PeerID("2")), FilterDelta.full(filter), parameters, null, false);
+
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		final ObjectOutputStream out = new ObjectOutputStream(bos);
+		filterMessage.write(out);
+		out.close();
+
+		final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+		final FilterMessage result = (FilterMessage) MessageTypes.readBroadcastMessage(in);
+		in.close();
+
+		assertEquals(filterMessage, result);
+		assertEquals(parameters, result.getAnnouncedParameters());
+		assertEquals(filter, result.getFilterDelta().apply(null));
+	}
+
+	@Test
+	public void testMerge() throws InvalidParameterIDException {
+		final AttenuatedBloomFilter filter = new AttenuatedBloomFilter(3, BloomFilter.DEFAULT_SIZE, BloomFilter.DEFAULT_HASHES);
+		final Parameter p1 = ParameterFactory.createParameter("I-1", emptyTaxonomy);
+		final Parameter p2 = ParameterFactory.createParameter("O-2", emptyTaxonomy);
+
+		final FilterMessage filterMessage = new FilterMessage(new PeerID("1"), Collections.singleton(new PeerID("2")), FilterDelta.full(filter), Collections.singleton(p1), null, false);
+		filterMessage.merge(new FilterMessage(new PeerID("1"), Collections.singleton(new PeerID("2")), FilterDelta.diff(filter, filter), Collections.singleton(p2), null, false));
+
+		final Set<Parameter> parameters = new HashSet<Parameter>();
+		parameters.add(p1);
+		parameters.add(p2);
+		assertEquals(parameters, filterMessage.getAnnouncedParameters());
+	}
+}
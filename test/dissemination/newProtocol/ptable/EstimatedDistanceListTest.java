@@ -160,4 +160,51 @@ public class EstimatedDistanceListTest {
 
 		assertEquals(1, list2.getOptionalEntriesSize());
 	}
+
+	@Test
+	public void testVersion() {
+		final EstimatedDistanceList list = new EstimatedDistanceList();
+		final int initialVersion = list.getVersion();
+
+		list.updateEstimatedDistance(new EstimatedDistance(4, new PeerID("1")));
+		list.updateEstimatedDistance(new EstimatedDistance(3, new PeerID("2")));
+		final int version = list.getVersion();
+		assertFalse(initialVersion == version);
+
+		// same entry, nothing changes
+		assertFalse(list.updateEstimatedDistance(new EstimatedDistance(4, new PeerID("1"))));
+		assertEquals(version, list.getVersion());
+
+		// removal undone by the insertion of the same entry
+		list.removeEstimatedDistanceFrom(new PeerID("1"));
+		assertFalse(version == list.getVersion());
+		list.updateEstimatedDistance(new EstimatedDistance(4, new PeerID("1")));
+		assertEquals(version, list.getVersion());
+
+		// optional entries do not change the version
+		list.updateEstimatedDistance(new EstimatedDistance(2, new PeerID("3"), true));
+		assertEquals(version, list.getVersion());
+
+		list.updateEstimatedDistance(new EstimatedDistance(5, new PeerID("1")));
+		assertFalse(version == list.getVersion());
+	}
+
+	@Test
+	public void testSortedEntries() {
+		final EstimatedDistanceList list = new EstimatedDistanceList();
+		list.updateEstimatedDistance(new EstimatedDistance(3, new PeerID("1")));
+		list.updateEstimatedDistance(new EstimatedDistance(5, new PeerID("2")));
+		list.updateEstimatedDistance(new EstimatedDistance(4, new PeerID("3")));
+		list.updateEstimatedDistance(new EstimatedDistance(1, new PeerID("4")));
+
+		assertEquals(new EstimatedDistance(5, new PeerID("2")), list.getEffectiveDistance());
+		assertEquals(5, list.getEffectiveDistanceValue());
+
+		list.updateEstimatedDistance(new EstimatedDistance(2, new PeerID("2")));
+
+		assertEquals(new EstimatedDistance(4, new PeerID("3")), list.getEffectiveDistance());
+		assertEquals(2, list.getDistanceFrom(new PeerID("2")));
+		assertEquals(0, list.getDistanceFrom(new PeerID("5")));
+		assertEquals(4, list.size());
+	}
 }
@@ -728,4 +728,71 @@ public class ParameterTableTest {
 
 		assertTrue(updateTable.isEmpty());
 	}
+
+	@Test
+	public void testTakeChanges() throws InvalidParameterIDException {
+		final ParameterTable table = new ParameterTable(disseminationInfo, host, emptyTaxonomy);
+		final Set<Parameter> newParameters = new HashSet<Parameter>();
+		newParameters.add(ParameterFactory.createParameter("I-1", emptyTaxonomy));
+		newParameters.add(ParameterFactory.createParameter("I-2", emptyTaxonomy));
+		table.addLocalParameters(newParameters);
+
+		TableChanges changes = table.takeChanges();
+		assertEquals(newParameters, changes.getNewParameters());
+		assertTrue(changes.getRemovedParameters().isEmpty());
+		assertEquals(5, changes.getChangedParameters().get(ParameterFactory.createParameter("I-1", emptyTaxonomy)).getNewValue());
+
+		assertTrue(table.takeChanges().isEmpty());
+
+		final UpdateTable updateTable = new UpdateTable();
+		updateTable.setAddition(ParameterFactory.createParameter("I-3", emptyTaxonomy), 4, otherPeer);
+		updateTable.setAddition(ParameterFactory.createParameter("I-1", emptyTaxonomy), 3, otherPeer);
+		changes = table.updateTable(updateTable, otherPeer).getChanges();
+
+		// only the added parameter is changed, I-1 keeps its effective distance
+		assertEquals(1, changes.getChangedParameters().size());
+		assertTrue(changes.getNewParameters().contains(ParameterFactory.createParameter("I-3", emptyTaxonomy)));
+		assertEquals(0, changes.getChangedParameters().get(ParameterFactory.createParameter("I-3", emptyTaxonomy)).getPreviousValue());
+		assertEquals(3, changes.getChangedParameters().get(ParameterFactory.createParameter("I-3", emptyTaxonomy)).getNewValue());
+
+		final UpdateTable removalTable = new UpdateTable();
+		removalTable.setDelete(ParameterFactory.createParameter("I-3", emptyTaxonomy), otherPeer);
+		changes = table.updateTable(removalTable, otherPeer).getChanges();
+
+		assertTrue(changes.getNewParameters().isEmpty());
+		assertTrue(changes.getRemovedParameters().contains(ParameterFactory.createParameter("I-3", emptyTaxonomy)));
+		assertEquals(3, changes.getChangedParameters().get(ParameterFactory.createParameter("I-3", emptyTaxonomy)).getPreviousValue());
+		assertEquals(0, changes.getChangedParameters().get(ParameterFactory.createParameter("I-3", emptyTaxonomy)).getNewValue());
+	}
+
+	@Test
+	public void testPublishSnapshot() throws InvalidParameterIDException {
+		final ParameterTable table = new ParameterTable(disseminationInfo, host, emptyTaxonomy);
+		final Set<Parameter> newParameters = new HashSet<Parameter>();
+		newParameters.add(ParameterFactory.createParameter("I-1", emptyTaxonomy));
+		table.addLocalParameters(newParameters);
+		table.addEntry(ParameterFactory.createParameter("I-2", emptyTaxonomy), new EstimatedDistance(3, otherPeer));
+
+		final ParameterTableSnapshot snapshot = table.publishSnapshot();
+		assertEquals(table.getParameters(), snapshot.getParameters());
+		assertTrue(snapshot.isLocalParameter(ParameterFactory.createParameter("I-1", emptyTaxonomy)));
+		assertEquals(5, snapshot.getEstimatedDistance(ParameterFactory.createParameter("I-1", emptyTaxonomy)));
+		assertEquals(3, snapshot.getDistance(ParameterFactory.createParameter("I-2", emptyTaxonomy), otherPeer));
+
+		// no modifications, the same snapshot is returned
+		assertTrue(snapshot == table.publishSnapshot());
+
+		table.addEntry(ParameterFactory.createParameter("I-2", emptyTaxonomy), new EstimatedDistance(4, anotherPeer));
+		table.removeLocalParameters(newParameters);
+
+		// published snapshots are not modified by the table
+		assertEquals(3, snapshot.getEstimatedDistance(ParameterFactory.createParameter("I-2", emptyTaxonomy)));
+		assertTrue(snapshot.isLocalParameter(ParameterFactory.createParameter("I-1", emptyTaxonomy)));
+
+		final ParameterTableSnapshot newSnapshot = table.publishSnapshot();
+		assertEquals(table.getParameters(), newSnapshot.getParameters());
+		assertEquals(4, newSnapshot.getEstimatedDistance(ParameterFactory.createParameter("I-2", emptyTaxonomy)));
+		assertEquals(0, newSnapshot.getEstimatedDistance(ParameterFactory.createParameter("I-1", emptyTaxonomy)));
+		assertFalse(newSnapshot.isLocalParameter(ParameterFactory.createParameter("I-1", emptyTaxonomy)));
+	}
 }
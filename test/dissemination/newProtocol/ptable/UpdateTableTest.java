@@ -20,13 +20,18 @@
 package dissemination.newProtocol.ptable;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -37,6 +42,7 @@ import taxonomy.Taxonomy;
 import taxonomy.TaxonomyException;
 import taxonomy.parameter.InvalidParameterIDException;
 import taxonomy.parameter.ParameterFactory;
+import dissemination.newProtocol.message.TableMessage;
 
 public class UpdateTableTest {
 	
@@ -164,4 +170,38 @@ public class UpdateTableTest {
 		assertEquals(7, updateTable1.getAddition(ParameterFactory.createParameter("I-Z", taxonomy)).getDistance());
 		assertNull(updateTable1.getAddition(ParameterFactory.createParameter("I-A", taxonomy)));
 	}
+	
+	@Test
+	public void testCoalesceSameNeighbors() throws InvalidParameterIDException {
+		final UpdateTable updateTable2 = new UpdateTable();
+		updateTable2.setAddition(ParameterFactory.createParameter("I-C", taxonomy), 4, new PeerID("0"));
+		
+		final TableMessage waitingMessage = new TableMessage(new PeerID("0"), new HashSet<PeerID>(Arrays.asList(new PeerID("1"), new PeerID("2"))), updateTable1, null);
+		final TableMessage sendingMessage = new TableMessage(new PeerID("0"), new HashSet<PeerID>(Arrays.asList(new PeerID("2"), new PeerID("1"))), updateTable2, null);
+		
+		// updates for the same neighbor set are coalesced in a single message
+		assertTrue(waitingMessage.hasSameDestinations(sendingMessage));
+		waitingMessage.merge(sendingMessage, taxonomy);
+		
+		assertEquals(new HashSet<PeerID>(Arrays.asList(new PeerID("1"), new PeerID("2"))), waitingMessage.getExpectedDestinations());
+		assertEquals(5, waitingMessage.getUpdateTable().getAddition(ParameterFactory.createParameter("I-A", taxonomy)).getDistance());
+		assertEquals(4, waitingMessage.getUpdateTable().getAddition(ParameterFactory.createParameter("I-C", taxonomy)).getDistance());
+	}
+	
+	@Test
+	public void testDifferentNeighborsNotCoalesced() throws InvalidParameterIDException {
+		final UpdateTable updateTable2 = new UpdateTable();
+		updateTable2.setAddition(ParameterFactory.createParameter("I-C", taxonomy), 4, new PeerID("0"));
+		
+		final TableMessage waitingMessage = new TableMessage(new PeerID("0"), new HashSet<PeerID>(Arrays.asList(new PeerID("1"), new PeerID("2"))), updateTable1, null);
+		
+		// a merged message would wait for the acknowledgements of neighbors
+		// which were not addressed by both updates
+		final TableMessage subsetMessage = new TableMessage(new PeerID("0"), Collections.singleton(new PeerID("1")), updateTable2, null);
+		assertFalse(waitingMessage.hasSameDestinations(subsetMessage));
+		assertFalse(subsetMessage.hasSameDestinations(waitingMessage));
+		
+		final TableMessage otherMessage = new TableMessage(new PeerID("0"), new HashSet<PeerID>(Arrays.asList(new PeerID("1"), new PeerID("3"))), updateTable2, null);
+		assertFalse(waitingMessage.hasSameDestinations(otherMessage));
+	}
 }
@@ -28,6 +28,7 @@ import java.util.Set;
 import org.junit.Test;
 
 import taxonomy.BasicTaxonomy;
+import taxonomy.ConceptAncestors;
 import taxonomy.Taxonomy;
 import taxonomy.TaxonomyException;
 import taxonomy.parameter.InputParameter;
@@ -109,4 +110,54 @@ public class CollisionDetectorTest {
 		assertTrue(detectedCollisions.contains(new Collision((InputParameter) ParameterFactory.createParameter("I-A", taxonomy), (OutputParameter) ParameterFactory.createParameter("O-B", taxonomy))));
 		assertTrue(detectedCollisions.contains(new Collision((InputParameter) ParameterFactory.createParameter("I-C", taxonomy), (OutputParameter) ParameterFactory.createParameter("O-C", taxonomy))));
 	}
+
+	@Test
+	public void testGetParametersCollidingIncremental() throws InvalidParameterIDException, TaxonomyException {
+		final Taxonomy taxonomy = new BasicTaxonomy();
+		taxonomy.setRoot("Z");
+		taxonomy.addChild("Z", "A");
+		taxonomy.addChild("Z", "C");
+		taxonomy.addChild("A", "B");
+
+		final ConceptAncestors ancestors = new ConceptAncestors(taxonomy);
+		final CollisionIndex tableIndex = new CollisionIndex(ancestors);
+		final Set<Parameter> table = new HashSet<Parameter>();
+		final Set<Parameter> noParameters = new HashSet<Parameter>();
+
+		// first update adds some parameters without checking them
+		final Set<Parameter> added = new HashSet<Parameter>();
+		added.add(ParameterFactory.createParameter("I-A", taxonomy));
+		added.add(ParameterFactory.createParameter("I-C", taxonomy));
+		added.add(ParameterFactory.createParameter("O-2", taxonomy));
+		table.addAll(added);
+		assertTrue(CollisionDetector.getParametersColliding(noParameters, added, noParameters, tableIndex).isEmpty());
+
+		// second update adds and checks new parameters
+		final Set<Parameter> checked = new HashSet<Parameter>();
+		checked.add(ParameterFactory.createParameter("O-B", taxonomy));
+		checked.add(ParameterFactory.createParameter("I-2", taxonomy));
+		table.addAll(checked);
+		Set<Collision> detectedCollisions = CollisionDetector.getParametersColliding(checked, checked, noParameters, tableIndex);
+		assertEquals(CollisionDetector.getParametersColliding(checked, table, false, ancestors), detectedCollisions);
+		assertEquals(2, detectedCollisions.size());
+
+		// third update removes a parameter and checks one already in the table
+		final Set<Parameter> removed = new HashSet<Parameter>();
+		removed.add(ParameterFactory.createParameter("I-A", taxonomy));
+		table.removeAll(removed);
+		checked.clear();
+		checked.add(ParameterFactory.createParameter("O-B", taxonomy));
+		detectedCollisions = CollisionDetector.getParametersColliding(checked, noParameters, removed, tableIndex);
+		assertEquals(CollisionDetector.getParametersColliding(checked, table, false, ancestors), detectedCollisions);
+		assertTrue(detectedCollisions.isEmpty());
+
+		// checked parameters remain indexed
+		checked.clear();
+		checked.add(ParameterFactory.createParameter("I-B", taxonomy));
+		table.addAll(checked);
+		detectedCollisions = CollisionDetector.getParametersColliding(checked, checked, noParameters, tableIndex);
+		assertEquals(CollisionDetector.getParametersColliding(checked, table, false, ancestors), detectedCollisions);
+		assertEquals(1, detectedCollisions.size());
+		assertTrue(detectedCollisions.contains(new Collision((InputParameter) ParameterFactory.createParameter("I-B", taxonomy), (OutputParameter) ParameterFactory.createParameter("O-B", taxonomy))));
+	}
 }
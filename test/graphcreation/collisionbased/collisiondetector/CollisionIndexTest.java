@@ -0,0 +1,158 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package graphcreation.collisionbased.collisiondetector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import taxonomy.BasicTaxonomy;
+import taxonomy.ConceptAncestors;
+import taxonomy.Taxonomy;
+import taxonomy.TaxonomyException;
+import taxonomy.parameter.InputParameter;
+import taxonomy.parameter.InvalidParameterIDException;
+import taxonomy.parameter.OutputParameter;
+import taxonomy.parameter.Parameter;
+import taxonomy.parameter.ParameterFactory;
+
+public class CollisionIndexTest {
+
+	private Taxonomy taxonomy;
+
+	private CollisionIndex index;
+
+	@Before
+	public void setUp() throws TaxonomyException {
+		taxonomy = new BasicTaxonomy();
+		taxonomy.setRoot("Z");
+		taxonomy.addChild("Z", "A");
+		taxonomy.addChild("Z", "C");
+		taxonomy.addChild("A", "B");
+		taxonomy.addChild("B", "D");
+
+		index = new CollisionIndex(new ConceptAncestors(taxonomy));
+	}
+
+	@Test
+	public void testGetCollisions() throws InvalidParameterIDException {
+		index.add(ParameterFactory.createParameter("I-A", taxonomy));
+		index.add(ParameterFactory.createParameter("I-D", taxonomy));
+		index.add(ParameterFactory.createParameter("I-C", taxonomy));
+		index.add(ParameterFactory.createParameter("I-1", taxonomy));
+		index.add(ParameterFactory.createParameter("O-A", taxonomy));
+
+		final Set<Collision> collisions = index.getCollisions(ParameterFactory.createParameter("O-B", taxonomy));
+		assertEquals(2, collisions.size());
+		assertTrue(collisions.contains(collision("I-A", "O-B")));
+		assertTrue(collisions.contains(collision("I-D", "O-B")));
+
+		assertEquals(1, index.getCollisions(ParameterFactory.createParameter("O-1", taxonomy)).size());
+		assertTrue(index.getCollisions(ParameterFactory.createParameter("O-2", taxonomy)).isEmpty());
+		assertEquals(3, index.getCollisions(ParameterFactory.createParameter("O-Z", taxonomy)).size());
+
+		// input parameters only collide with output parameters
+		assertEquals(1, index.getCollisions(ParameterFactory.createParameter("I-B", taxonomy)).size());
+	}
+
+	@Test
+	public void testRemove() throws InvalidParameterIDException {
+		index.add(ParameterFactory.createParameter("I-A", taxonomy));
+		index.add(ParameterFactory.createParameter("I-D", taxonomy));
+
+		index.remove(ParameterFactory.createParameter("I-D", taxonomy));
+		index.remove(ParameterFactory.createParameter("O-D", taxonomy));
+
+		final Set<Collision> collisions = index.getCollisions(ParameterFactory.createParameter("O-B", taxonomy));
+		assertEquals(1, collisions.size());
+		assertTrue(collisions.contains(collision("I-A", "O-B")));
+	}
+
+	@Test
+	public void testClear() throws InvalidParameterIDException {
+		index.add(ParameterFactory.createParameter("I-A", taxonomy));
+		index.add(ParameterFactory.createParameter("O-D", taxonomy));
+
+		index.clear();
+		assertTrue(index.getCollisions(ParameterFactory.createParameter("O-B", taxonomy)).isEmpty());
+		assertTrue(index.getCollisions(ParameterFactory.createParameter("I-D", taxonomy)).isEmpty());
+
+		index.add(ParameterFactory.createParameter("I-A", taxonomy));
+		assertEquals(1, index.getCollisions(ParameterFactory.createParameter("O-B", taxonomy)).size());
+	}
+
+	@Test
+	public void testEquivalentToPairwiseCheck() throws InvalidParameterIDException {
+		final String[] concepts = { "Z", "A", "B", "C", "D", "1", "2", "3" };
+		final Random random = new Random(0);
+
+		for (int i = 0; i < 50; i++) {
+			final Set<Parameter> allParameters = new HashSet<Parameter>();
+			final Set<Parameter> newParameters = new HashSet<Parameter>();
+			for (final String concept : concepts) {
+				for (final String type : new String[] { "I-", "O-" }) {
+					final int choice = random.nextInt(3);
+					if (choice > 0) {
+						final Parameter p = ParameterFactory.createParameter(type + concept, taxonomy);
+						allParameters.add(p);
+						if (choice == 2)
+							newParameters.add(p);
+					}
+				}
+			}
+
+			final boolean checkAdded = random.nextBoolean();
+			assertEquals(getPairwiseCollisions(newParameters, allParameters, checkAdded), CollisionDetector.getParametersColliding(newParameters, allParameters, checkAdded, taxonomy));
+		}
+	}
+
+	private Set<Collision> getPairwiseCollisions(final Set<Parameter> newParameters, final Set<Parameter> allParameters, final boolean checkAdded) {
+		final List<InputParameter> inputs = new ArrayList<InputParameter>();
+		final List<OutputParameter> outputs = new ArrayList<OutputParameter>();
+		for (final Parameter p : allParameters)
+			if (p instanceof InputParameter)
+				inputs.add((InputParameter) p);
+			else
+				outputs.add((OutputParameter) p);
+
+		final Set<Collision> collisions = new HashSet<Collision>();
+		for (final OutputParameter output : outputs)
+			for (final InputParameter input : inputs) {
+				final boolean newOutput = newParameters.contains(output);
+				final boolean newInput = newParameters.contains(input);
+				final boolean checked = checkAdded ? newOutput || newInput : newOutput != newInput;
+				if (checked && taxonomy.areRelated(input.getID(), output.getID()))
+					collisions.add(new Collision(input, output));
+			}
+		return collisions;
+	}
+
+	private Collision collision(final String input, final String output) throws InvalidParameterIDException {
+		return new Collision((InputParameter) ParameterFactory.createParameter(input, taxonomy), (OutputParameter) ParameterFactory.createParameter(output, taxonomy));
+	}
+}
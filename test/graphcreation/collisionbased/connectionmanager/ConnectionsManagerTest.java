@@ -20,6 +20,7 @@
 package graphcreation.collisionbased.connectionmanager;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import graphcreation.GraphCreator.GraphType;
 import graphcreation.collisionbased.collisiondetector.Collision;
@@ -202,6 +203,97 @@ public class ConnectionsManagerTest {
 		assertTrue(notifications.isEmpty());
 	}
 
+	@Test
+	public void testRemoveResponsesFromUnknownPeer() throws InvalidParameterIDException {
+		cManager.updateConnections(searchResponseMessage1);
+		cManager.updateConnections(searchResponseMessage2);
+		cManager.updateConnections(searchResponseMessage4);
+
+		final Set<PeerID> lostDestinations = new HashSet<PeerID>();
+		lostDestinations.add(new PeerID("9"));
+
+		assertTrue(cManager.removeResponses(lostDestinations).isEmpty());
+
+		// connections without responses from the lost peer are not affected
+		assertTrue(cManager.contains(new Collision((InputParameter) ParameterFactory.createParameter("I-1", emptyTaxonomy), (OutputParameter) ParameterFactory.createParameter("O-1", emptyTaxonomy))));
+		assertTrue(cManager.contains(new Collision((InputParameter) ParameterFactory.createParameter("I-2", emptyTaxonomy), (OutputParameter) ParameterFactory.createParameter("O-2", emptyTaxonomy))));
+		assertTrue(cManager.contains(new Collision((InputParameter) ParameterFactory.createParameter("I-3", emptyTaxonomy), (OutputParameter) ParameterFactory.createParameter("O-3", emptyTaxonomy))));
+	}
+
+	@Test
+	public void testRemoveResponsesKeepsWaitingConnections() throws InvalidParameterIDException {
+		cManager.updateConnections(searchResponseMessage1);
+		cManager.updateConnections(searchResponseMessage2);
+
+		final Collision connected = new Collision((InputParameter) ParameterFactory.createParameter("I-2", emptyTaxonomy), (OutputParameter) ParameterFactory.createParameter("O-2", emptyTaxonomy));
+		final Collision waitingWithResponses = new Collision((InputParameter) ParameterFactory.createParameter("I-3", emptyTaxonomy), (OutputParameter) ParameterFactory.createParameter("O-3", emptyTaxonomy));
+		final Collision waitingWithoutResponses = new Collision((InputParameter) ParameterFactory.createParameter("I-1", emptyTaxonomy), (OutputParameter) ParameterFactory.createParameter("O-1", emptyTaxonomy));
+
+		final Set<PeerID> lostDestinations = new HashSet<PeerID>();
+		lostDestinations.add(searchResponseMessage1.getSource());
+		cManager.removeResponses(lostDestinations);
+
+		// the connection which lost its only input is removed while those
+		// which are still waiting for responses and contain none from the
+		// lost peer are kept
+		assertFalse(cManager.contains(connected));
+		assertTrue(cManager.contains(waitingWithResponses));
+		assertTrue(cManager.contains(waitingWithoutResponses));
+
+		// losing the peer which responded to a waiting connection removes it
+		lostDestinations.clear();
+		lostDestinations.add(searchResponseMessage2.getSource());
+		cManager.removeResponses(lostDestinations);
+
+		assertFalse(cManager.contains(waitingWithResponses));
+		assertTrue(cManager.contains(waitingWithoutResponses));
+	}
+
+	@Test
+	public void testRemoveServicesOfInvalidConnection() throws InvalidParameterIDException {
+		cManager.updateConnections(searchResponseMessage1);
+		cManager.updateConnections(searchResponseMessage2);
+
+		final Set<Parameter> removedParameters = new HashSet<Parameter>();
+		removedParameters.add(ParameterFactory.createParameter("O-2", emptyTaxonomy));
+		assertEquals(1, cManager.checkCollisions(removedParameters).size());
+
+		// invalid connections still notify the removal of services
+		final Set<Service> removedServices = new HashSet<Service>();
+		removedServices.add(new Service("S1", new PeerID("1")));
+
+		final Map<PeerIDSet, Set<Service>> notifications = cManager.removeServices(removedServices, new PeerID("1"));
+		assertEquals(1, notifications.size());
+
+		final PeerIDSet notifiedPeers = new PeerIDSet();
+		notifiedPeers.addPeer(new PeerID("2"));
+		assertTrue(notifications.containsKey(notifiedPeers));
+
+		assertTrue(cManager.removeServices(removedServices, new PeerID("1")).isEmpty());
+	}
+
+	@Test
+	public void testExpiredInvalidConnection() throws InvalidParameterIDException {
+		// invalid connections expire as soon as they are invalidated
+		cManager = new ConnectionsManager(emptyTaxonomy, GraphType.BIDIRECTIONAL, 0);
+		cManager.addCollision(new Collision((InputParameter) ParameterFactory.createParameter("I-2", emptyTaxonomy), (OutputParameter) ParameterFactory.createParameter("O-2", emptyTaxonomy)));
+		cManager.updateConnections(searchResponseMessage1);
+		cManager.updateConnections(searchResponseMessage2);
+
+		final Set<Parameter> removedParameters = new HashSet<Parameter>();
+		removedParameters.add(ParameterFactory.createParameter("O-2", emptyTaxonomy));
+		assertEquals(1, cManager.checkCollisions(removedParameters).size());
+
+		// expired connections and their responders are removed
+		final Set<Service> removedServices = new HashSet<Service>();
+		removedServices.add(new Service("S1", new PeerID("1")));
+		assertTrue(cManager.removeServices(removedServices, new PeerID("1")).isEmpty());
+
+		final Set<PeerID> lostDestinations = new HashSet<PeerID>();
+		lostDestinations.add(new PeerID("2"));
+		assertTrue(cManager.removeResponses(lostDestinations).isEmpty());
+	}
+
 	@Test
 	public void testRemoveServices() {
 		cManager.updateConnections(searchResponseMessage1);
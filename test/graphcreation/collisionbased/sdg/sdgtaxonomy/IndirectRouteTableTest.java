@@ -0,0 +1,95 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package graphcreation.collisionbased.sdg.sdgtaxonomy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import peer.peerid.PeerID;
+
+public class IndirectRouteTableTest {
+
+	private final PeerID dest1 = new PeerID("1");
+	private final PeerID dest2 = new PeerID("2");
+	private final PeerID through1 = new PeerID("10");
+	private final PeerID through2 = new PeerID("11");
+
+	@Test
+	public void testAdd() {
+		final IndirectRouteTable table = new IndirectRouteTable();
+		assertTrue(table.add(new IndirectRoute(dest1, through1, Integer.valueOf(2))));
+		assertFalse(table.add(new IndirectRoute(dest1, through1, Integer.valueOf(5))));
+		assertTrue(table.add(new IndirectRoute(dest1, through2, Integer.valueOf(3))));
+
+		assertEquals(2, table.size());
+		assertTrue(table.knowsRouteTo(dest1));
+		assertFalse(table.knowsRouteTo(dest2));
+
+		// existing routes are not replaced
+		for (final IndirectRoute route : table.getRoutes(dest1))
+			if (route.getThrough().equals(through1))
+				assertEquals(2, route.getDistance());
+
+		assertEquals(new HashSet<PeerID>(Arrays.asList(through1, through2)), table.getCollisionNodes(dest1));
+		assertTrue(table.getCollisionNodes(dest2).isEmpty());
+	}
+
+	@Test
+	public void testRemove() {
+		final IndirectRouteTable table = new IndirectRouteTable();
+		table.add(new IndirectRoute(dest1, through1, Integer.valueOf(2)));
+		table.add(new IndirectRoute(dest1, through2, Integer.valueOf(3)));
+
+		table.remove(dest1, through1);
+		assertEquals(1, table.size());
+		assertEquals(new HashSet<PeerID>(Arrays.asList(through2)), table.getCollisionNodes(dest1));
+
+		table.remove(dest2, through2);
+		assertEquals(1, table.size());
+
+		table.remove(dest1, through2);
+		assertEquals(0, table.size());
+		assertFalse(table.knowsRouteTo(dest1));
+		assertTrue(table.getRoutes(dest1).isEmpty());
+	}
+
+	@Test
+	public void testRemoveThrough() {
+		final IndirectRouteTable table = new IndirectRouteTable();
+		table.add(new IndirectRoute(dest1, through1, Integer.valueOf(2)));
+		table.add(new IndirectRoute(dest2, through1, Integer.valueOf(2)));
+		table.add(new IndirectRoute(dest2, through2, Integer.valueOf(1)));
+
+		table.removeThrough(through1);
+		assertEquals(1, table.size());
+		assertFalse(table.knowsRouteTo(dest1));
+		assertTrue(table.knowsRouteTo(dest2));
+		assertEquals(new HashSet<PeerID>(Arrays.asList(through2)), table.getCollisionNodes(dest2));
+
+		table.removeThrough(through1);
+		assertEquals(1, table.size());
+	}
+}
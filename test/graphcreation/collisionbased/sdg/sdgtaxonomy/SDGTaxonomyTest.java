@@ -0,0 +1,134 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package graphcreation.collisionbased.sdg.sdgtaxonomy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import graphcreation.collisionbased.ServiceDistance;
+import graphcreation.collisionbased.sdg.NonLocalServiceException;
+import graphcreation.services.Service;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import multicast.search.Route;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import peer.peerid.PeerID;
+import taxonomy.BasicTaxonomy;
+import taxonomy.Taxonomy;
+import taxonomy.TaxonomyException;
+import taxonomy.parameter.InvalidParameterIDException;
+import taxonomy.parameter.Parameter;
+import taxonomy.parameter.ParameterFactory;
+
+public class SDGTaxonomyTest {
+
+	private Taxonomy taxonomy;
+
+	private SDGTaxonomy sdg;
+
+	private Service s1, s2, s3;
+
+	@Before
+	public void setUp() throws TaxonomyException, InvalidParameterIDException, NonLocalServiceException {
+		taxonomy = new BasicTaxonomy();
+		taxonomy.setRoot("A");
+		taxonomy.addChild("A", "B");
+		taxonomy.addChild("A", "C");
+		taxonomy.addChild("B", "D");
+
+		sdg = new SDGTaxonomy(new PeerID("0"), null, taxonomy);
+
+		s1 = new Service("S1", new PeerID("0"));
+		s1.addParameter(ParameterFactory.createParameter("I-D", taxonomy));
+		s1.addParameter(ParameterFactory.createParameter("O-C", taxonomy));
+
+		s2 = new Service("S2", new PeerID("0"));
+		s2.addParameter(ParameterFactory.createParameter("I-C", taxonomy));
+		s2.addParameter(ParameterFactory.createParameter("O-1", taxonomy));
+
+		s3 = new Service("S3", new PeerID("0"));
+		s3.addParameter(ParameterFactory.createParameter("I-B", taxonomy));
+
+		sdg.addLocalServices(Arrays.asList(s1, s2));
+		sdg.addLocalService(s3);
+	}
+
+	@Test
+	public void testFindLocalCompatibleServices() throws InvalidParameterIDException {
+		assertEquals(new HashSet<Service>(Arrays.asList(s1, s3)), sdg.findLocalCompatibleServices(parameters("I-B")));
+		assertEquals(new HashSet<Service>(Arrays.asList(s1, s2, s3)), sdg.findLocalCompatibleServices(parameters("I-A")));
+		assertEquals(new HashSet<Service>(Arrays.asList(s2)), sdg.findLocalCompatibleServices(parameters("I-C")));
+		assertEquals(new HashSet<Service>(Arrays.asList(s1)), sdg.findLocalCompatibleServices(parameters("O-A")));
+		assertEquals(new HashSet<Service>(Arrays.asList(s2)), sdg.findLocalCompatibleServices(parameters("O-1")));
+		assertEquals(new HashSet<Service>(Arrays.asList(s1, s2)), sdg.findLocalCompatibleServices(parameters("I-D", "O-1")));
+		assertTrue(sdg.findLocalCompatibleServices(parameters("O-D")).isEmpty());
+	}
+
+	@Test
+	public void testFindLocalCompatibleServicesAfterRemoval() throws InvalidParameterIDException {
+		sdg.removeLocalService(new Service("S1", new PeerID("0")));
+
+		assertEquals(new HashSet<Service>(Arrays.asList(s3)), sdg.findLocalCompatibleServices(parameters("I-B")));
+		assertTrue(sdg.findLocalCompatibleServices(parameters("O-A")).isEmpty());
+	}
+
+	@Test
+	public void testIndirectRoutes() throws InvalidParameterIDException {
+		final Service remote1 = new Service("R1", new PeerID("5"));
+		remote1.addParameter(ParameterFactory.createParameter("O-D", taxonomy));
+
+		final Service remote2 = new Service("R2", new PeerID("6"));
+		remote2.addParameter(ParameterFactory.createParameter("I-1", taxonomy));
+
+		sdg.connectServices(s1, Collections.singleton(new ServiceDistance(remote1, Integer.valueOf(3))), new PeerID("10"));
+		sdg.connectServices(s1, Collections.singleton(new ServiceDistance(remote1, Integer.valueOf(2))), new PeerID("11"));
+		sdg.connectServices(s2, Collections.singleton(new ServiceDistance(remote2, Integer.valueOf(4))), new PeerID("10"));
+
+		assertEquals(new HashSet<PeerID>(Arrays.asList(new PeerID("10"), new PeerID("11"))), sdg.getThroughCollisionNodes(remote1));
+		assertEquals(Collections.singleton(new PeerID("10")), sdg.getThroughCollisionNodes(remote2));
+
+		final List<Route> routes = sdg.getIndirectRoutes(new PeerID("5"));
+		assertEquals(2, routes.size());
+		assertEquals(2, routes.get(0).getDistance());
+		assertEquals(3, routes.get(1).getDistance());
+
+		sdg.removeIndirectRoute(new PeerID("5"), new PeerID("11"));
+		assertEquals(Collections.singleton(new PeerID("10")), sdg.getThroughCollisionNodes(remote1));
+
+		sdg.removeIndirectRoute(new PeerID("5"), new PeerID("10"));
+		assertTrue(sdg.getThroughCollisionNodes(remote1).isEmpty());
+		assertTrue(sdg.getIndirectRoutes(new PeerID("5")).isEmpty());
+		assertEquals(Collections.singleton(new PeerID("10")), sdg.getThroughCollisionNodes(remote2));
+	}
+
+	private Set<Parameter> parameters(final String... ids) throws InvalidParameterIDException {
+		final Set<Parameter> parameters = new HashSet<Parameter>();
+		for (final String id : ids)
+			parameters.add(ParameterFactory.createParameter(id, taxonomy));
+		return parameters;
+	}
+}
@@ -0,0 +1,180 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package graphcreation.graph.andorgraph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AdjacencyGraphTest {
+
+	@Test
+	public void testNodesAndEdges() {
+		final AdjacencyGraph<String> g = new AdjacencyGraph<String>();
+		final int a = g.addNode("A");
+		final int b = g.addNode("B");
+		final int c = g.addNode("C");
+		assertEquals(AdjacencyGraph.NO_NODE, g.addNode("A"));
+		assertEquals(3, g.nodeCount());
+
+		assertTrue(g.addEdge(a, b, 1));
+		assertTrue(g.addEdge(a, c, 2));
+		assertTrue(g.addEdge(b, c, 3));
+		assertFalse(g.addEdge(a, b, 1));
+		assertEquals(3, g.edgeCount());
+		assertEquals(2, g.getOutDegree(a));
+		assertEquals(2, g.getInDegree(c));
+
+		assertTrue(g.removeEdge(a, b));
+		assertFalse(g.removeEdge(a, b));
+		assertFalse(g.containsEdge(a, b));
+		assertTrue(g.containsEdge(a, c));
+		assertEquals(c, g.getOut(a, 0));
+		assertEquals(2, g.getWeight(a, 0), 0.0);
+
+		g.removeNode(c);
+		assertEquals(0, g.edgeCount());
+		assertFalse(g.contains("C"));
+
+		// identifiers are reused
+		assertEquals(c, g.addNode("D"));
+		assertEquals(0, g.getInDegree(c));
+		assertEquals("D", g.getNode(c));
+	}
+
+	@Test
+	public void testCopy() {
+		final AdjacencyGraph<String> g = new AdjacencyGraph<String>();
+		final int a = g.addNode("A");
+		final int b = g.addNode("B");
+		final int c = g.addNode("C");
+		g.addEdge(a, b, 1);
+		g.addEdge(b, c, 2);
+
+		final AdjacencyGraph<String> copy = g.copy();
+		assertEquals(3, copy.nodeCount());
+		assertEquals(2, copy.edgeCount());
+		assertTrue(copy.containsEdge(a, b));
+
+		// changes in the copy are not visible in the original graph
+		copy.addEdge(a, c, 3);
+		copy.setWeight(b, c, 5);
+		copy.setMasked(a, true);
+		final int d = copy.addNode("D");
+		copy.removeNode(b);
+
+		assertEquals(3, g.nodeCount());
+		assertEquals(2, g.edgeCount());
+		assertFalse(g.containsEdge(a, c));
+		assertEquals(2, g.getWeight(b, 0), 0.0);
+		assertFalse(g.isMasked(a));
+		assertFalse(g.contains("D"));
+		assertTrue(g.contains("B"));
+		assertEquals(1, g.getInDegree(c));
+
+		// and changes in the original graph are not visible in the copy
+		g.removeEdge(a, b);
+		g.addEdge(c, a, 4);
+
+		assertEquals(1, copy.edgeCount());
+		assertTrue(copy.containsEdge(a, c));
+		assertFalse(copy.containsEdge(c, a));
+		assertEquals(1, copy.getInDegree(c));
+		assertEquals(0, copy.getInDegree(a));
+		assertTrue(copy.isMasked(a));
+		assertEquals("D", copy.getNode(d));
+		assertFalse(copy.contains("B"));
+	}
+
+	@Test
+	public void testCopyOfCopy() {
+		final AdjacencyGraph<String> g = new AdjacencyGraph<String>();
+		final int a = g.addNode("A");
+		final int b = g.addNode("B");
+		g.addEdge(a, b, 1);
+
+		final AdjacencyGraph<String> copy1 = g.copy();
+		final AdjacencyGraph<String> copy2 = copy1.copy();
+
+		copy1.removeEdge(a, b);
+		copy2.addEdge(b, a, 1);
+
+		assertTrue(g.containsEdge(a, b));
+		assertFalse(g.containsEdge(b, a));
+		assertFalse(copy1.containsEdge(a, b));
+		assertFalse(copy1.containsEdge(b, a));
+		assertTrue(copy2.containsEdge(a, b));
+		assertTrue(copy2.containsEdge(b, a));
+	}
+
+	@Test
+	public void testGrowth() {
+		final AdjacencyGraph<Integer> g = new AdjacencyGraph<Integer>();
+		final int center = g.addNode(Integer.valueOf(-1));
+		for (int i = 0; i < 100; i++)
+			g.addEdge(center, g.addNode(Integer.valueOf(i)), i);
+
+		assertEquals(101, g.nodeCount());
+		assertEquals(100, g.getOutDegree(center));
+		for (int i = 0; i < 100; i++) {
+			assertEquals(i + 1, g.getOut(center, i));
+			assertEquals(i, g.getWeight(center, i), 0.0);
+		}
+	}
+
+	@Test
+	public void testShortestPaths() {
+		final AdjacencyGraph<String> g = new AdjacencyGraph<String>();
+		final int a = g.addNode("A");
+		final int b = g.addNode("B");
+		final int c = g.addNode("C");
+		final int d = g.addNode("D");
+		final int e = g.addNode("E");
+
+		g.addEdge(a, b, 1);
+		g.addEdge(b, c, 1);
+		g.addEdge(a, c, 5);
+		g.addEdge(c, d, 0);
+		g.setWeight(a, c, 1);
+
+		final double[] distances = new double[g.getCapacity()];
+		final int[] previous = g.shortestPaths(a, distances);
+		assertEquals(1, distances[c], 0.0);
+		assertEquals(1, distances[d], 0.0);
+		assertEquals(a, previous[c]);
+		assertEquals(c, previous[d]);
+		assertEquals(Double.POSITIVE_INFINITY, distances[e], 0.0);
+		assertEquals(AdjacencyGraph.NO_NODE, previous[e]);
+	}
+
+	@Test
+	public void testMask() {
+		final AdjacencyGraph<String> g = new AdjacencyGraph<String>();
+		final int a = g.addNode("A");
+		assertFalse(g.isMasked(a));
+		g.setMasked(a, true);
+		assertTrue(g.isMasked(a));
+
+		g.removeNode(a);
+		assertFalse(g.isMasked(g.addNode("B")));
+	}
+}
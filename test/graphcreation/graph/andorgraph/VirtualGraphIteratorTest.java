@@ -0,0 +1,137 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+
+package graphcreation.graph.andorgraph;
+
+import static org.junit.Assert.assertEquals;
+import graphcreation.graph.andorgraph.edge.EqualsEdge;
+import graphcreation.graph.andorgraph.node.ANDNodeFactory;
+import graphcreation.graph.andorgraph.node.ANDNodeSet;
+import graphcreation.graph.extendedServiceGraph.ExtendedServiceGraph;
+import graphcreation.graph.extendedServiceGraph.node.ConnectionNode;
+import graphcreation.graph.servicegraph.node.ServiceNode;
+import graphcreation.services.Service;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.jgrapht.DirectedGraph;
+import org.jgrapht.graph.SimpleDirectedGraph;
+import org.junit.Before;
+import org.junit.Test;
+
+import peer.peerid.PeerID;
+import taxonomy.BasicTaxonomy;
+import taxonomy.Taxonomy;
+import taxonomy.parameter.InvalidParameterIDException;
+import taxonomy.parameter.ParameterFactory;
+
+public class VirtualGraphIteratorTest {
+
+	private static class ServiceNodeSet extends ServiceNode implements ANDNodeSet<ServiceNode> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Set<ServiceNode> innerSet;
+
+		public ServiceNodeSet(final Set<ServiceNode> innerSet) {
+			super(getID(innerSet));
+			this.innerSet = innerSet;
+		}
+
+		private static String getID(final Set<ServiceNode> innerSet) {
+			final Set<String> ids = new TreeSet<String>();
+			for (final ServiceNode node : innerSet)
+				ids.add(node.getNodeID());
+			return ids.toString();
+		}
+
+		@Override
+		public Set<ServiceNode> getInnerSet() {
+			return innerSet;
+		}
+	}
+
+	private static final ANDNodeFactory<ServiceNode, ServiceNodeSet> factory = new ANDNodeFactory<ServiceNode, ServiceNodeSet>() {
+
+		@Override
+		public ServiceNodeSet create(final Set<ServiceNode> set) {
+			return new ServiceNodeSet(set);
+		}
+	};
+
+	private final Taxonomy emptyTaxonomy = new BasicTaxonomy();
+
+	private ExtendedServiceGraph eServiceGraph;
+
+	private ServiceNode goal, s1Node, s2Node, s3Node;
+
+	private ANDORGraph.VirtualGraphIterator<ServiceNode, ConnectionNode, ServiceNodeSet> iterator;
+
+	@Before
+	public void setUp() throws InvalidParameterIDException {
+		eServiceGraph = new ExtendedServiceGraph(emptyTaxonomy);
+
+		// the goal requires the outputs of S1 and S2 or those of S3
+		goal = eServiceGraph.merge(createService("G", "I-1", "I-2", "O-9"));
+		s1Node = eServiceGraph.merge(createService("S1", "I-5", "O-1"));
+		s2Node = eServiceGraph.merge(createService("S2", "I-5", "O-2"));
+		s3Node = eServiceGraph.merge(createService("S3", "I-6", "O-1", "O-2"));
+		// virtual ancestors are obtained from the enabled nodes
+		for (final ServiceNode node : Arrays.asList(goal, s1Node, s2Node, s3Node))
+			eServiceGraph.setEnabled(node, true);
+
+		final DirectedGraph<ServiceNode, EqualsEdge> virtualGraph = new SimpleDirectedGraph<ServiceNode, EqualsEdge>(EqualsEdge.class);
+		virtualGraph.addVertex(goal);
+		iterator = new ANDORGraph.VirtualGraphIterator<ServiceNode, ConnectionNode, ServiceNodeSet>(virtualGraph, eServiceGraph, goal, factory);
+	}
+
+	private Service createService(final String id, final String... parameters) throws InvalidParameterIDException {
+		final Service service = new Service(id, new PeerID("1"));
+		for (final String parameter : parameters)
+			service.addParameter(ParameterFactory.createParameter(parameter, emptyTaxonomy));
+		return service;
+	}
+
+	private ServiceNode createSet(final ServiceNode... nodes) {
+		return factory.create(new HashSet<ServiceNode>(Arrays.asList(nodes)));
+	}
+
+	@Test
+	public void testFullCoverSets() {
+		final Set<ServiceNode> expected = new HashSet<ServiceNode>();
+		expected.add(s3Node);
+		expected.add(createSet(s1Node, s2Node));
+		expected.add(createSet(s1Node, s3Node));
+		expected.add(createSet(s2Node, s3Node));
+		expected.add(createSet(s1Node, s2Node, s3Node));
+		assertEquals(expected, iterator.getFullCoverSets(goal));
+	}
+
+	@Test
+	public void testMinimalCoverSets() {
+		final Set<ServiceNode> expected = new HashSet<ServiceNode>();
+		expected.add(s3Node);
+		expected.add(createSet(s1Node, s2Node));
+		assertEquals(expected, iterator.getMinimalCoverSets(goal));
+	}
+}
@@ -28,6 +28,9 @@ import graphcreation.services.Service;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
 import org.junit.Before;
@@ -133,6 +136,71 @@ public class ExtendedServiceGraphTest {
 		assertEquals(1, eServiceGraph.orNodeSet().size());
 	}
 
+	@Test
+	public void mergeAfterRemove() throws InvalidParameterIDException {
+		eServiceGraph.removeService(new Service("S1", new PeerID("1")));
+
+		// removed services are not connected to new ones
+		final Service s6 = new Service("S6", new PeerID("1"));
+		s6.addParameter(ParameterFactory.createParameter("I-B", taxonomy));
+		final ServiceNode s6Node = eServiceGraph.merge(s6);
+
+		final Set<ServiceNode> ancestors = eServiceGraph.getAncestors(s6Node, false);
+		assertEquals(1, ancestors.size());
+		assertTrue(ancestors.contains(eServiceGraph.getServiceNode(new Service("S5", new PeerID("1")))));
+	}
+
+	@Test
+	public void mergeCollection() {
+		final ExtendedServiceGraph eServiceGraph2 = new ExtendedServiceGraph(taxonomy);
+		final List<Service> services = new ArrayList<Service>(eServiceGraph.getServices());
+		Collections.reverse(services);
+		eServiceGraph2.merge(services);
+
+		assertEquals(eServiceGraph, eServiceGraph2);
+		assertEquals(2, eServiceGraph2.getSuccessors(eServiceGraph2.getServiceNode(s1Node.getService()), false).size());
+	}
+
+	@Test
+	public void copyEnabledState() {
+		final ExtendedServiceGraph copy = eServiceGraph.copy();
+		copy.init();
+
+		// nodes are shared, so the enabled state is only kept by each graph
+		assertTrue(copy.isEnabled(s2Node));
+		assertFalse(eServiceGraph.isEnabled(s2Node));
+		assertFalse(s2Node.isEnabled());
+		assertEquals(0, eServiceGraph.getCoveredNodes());
+		assertTrue(copy.getCoveredNodes() > 0);
+	}
+
+	@Test
+	public void copy() throws InvalidParameterIDException {
+		final ExtendedServiceGraph copy = eServiceGraph.copy();
+		assertEquals(eServiceGraph, copy);
+
+		copy.removeService(new Service("S2", new PeerID("1")));
+
+		final Service s6 = new Service("S6", new PeerID("1"));
+		s6.addParameter(ParameterFactory.createParameter("I-Z", taxonomy));
+		final ServiceNode s6Node = copy.merge(s6);
+
+		// the original graph is not modified
+		assertEquals(5, eServiceGraph.andNodeSet().size());
+		assertTrue(eServiceGraph.contains(s2Node.getService()));
+		assertFalse(eServiceGraph.contains(s6));
+		assertEquals(2, eServiceGraph.getSuccessors(s1Node, false).size());
+		assertTrue(eServiceGraph.getSuccessors(s2Node, false).contains(s4Node));
+
+		// the copy is indexed as the original one
+		assertFalse(copy.contains(s2Node.getService()));
+		final Set<ServiceNode> successors = copy.getSuccessors(copy.getServiceNode(s1Node.getService()), false);
+		assertEquals(2, successors.size());
+		assertTrue(successors.contains(s3Node));
+		assertTrue(successors.contains(s6Node));
+		assertTrue(copy.getAncestors(s4Node, false).isEmpty());
+	}
+
 	@Test
 	public void testXML() throws Exception {
 		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -0,0 +1,130 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package graphcreation.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class MinimalCoversTest {
+
+	@Test
+	public void testEnumerate() {
+		final MinimalCovers<String> minimalCovers = new MinimalCovers<String>(Arrays.asList("I1", "I2", "I3"));
+		minimalCovers.addCandidate("A", Arrays.asList("I1", "I2"));
+		minimalCovers.addCandidate("B", Arrays.asList("I3"));
+		minimalCovers.addCandidate("C", Arrays.asList("I1", "I2", "I3"));
+		minimalCovers.addCandidate("D", Arrays.asList("I2", "O1"));
+		minimalCovers.addCandidate("E", Arrays.asList("O1"));
+
+		final List<Set<String>> covers = minimalCovers.enumerate(MinimalCovers.NO_LIMIT);
+		assertEquals(2, covers.size());
+		assertEquals(new HashSet<String>(Arrays.asList("C")), covers.get(0));
+		assertEquals(new HashSet<String>(Arrays.asList("A", "B")), covers.get(1));
+
+		assertEquals(1, minimalCovers.enumerate(1).size());
+	}
+
+	@Test
+	public void testNothingRequired() {
+		final MinimalCovers<String> minimalCovers = new MinimalCovers<String>(new HashSet<String>());
+		minimalCovers.addCandidate("A", Arrays.asList("I1"));
+		minimalCovers.addCandidate("B", new HashSet<String>());
+
+		assertEquals(2, minimalCovers.enumerate(MinimalCovers.NO_LIMIT).size());
+	}
+
+	@Test
+	public void testManyItems() {
+		final List<Integer> items = new ArrayList<Integer>();
+		for (int i = 0; i < 100; i++)
+			items.add(Integer.valueOf(i));
+
+		final MinimalCovers<String> minimalCovers = new MinimalCovers<String>(items);
+		minimalCovers.addCandidate("A", items.subList(0, 70));
+		minimalCovers.addCandidate("B", items.subList(60, 100));
+		minimalCovers.addCandidate("C", items.subList(0, 99));
+
+		final List<Set<String>> covers = minimalCovers.enumerate(MinimalCovers.NO_LIMIT);
+		assertEquals(2, covers.size());
+		assertEquals(new HashSet<String>(Arrays.asList("A", "B")), covers.get(0));
+		assertEquals(new HashSet<String>(Arrays.asList("B", "C")), covers.get(1));
+	}
+
+	@Test
+	public void testPowerSetEquivalence() {
+		final Random r = new Random(0);
+		for (int test = 0; test < 50; test++) {
+			final int items = 1 + r.nextInt(6);
+			final List<Integer> required = new ArrayList<Integer>();
+			for (int i = 0; i < items; i++)
+				required.add(Integer.valueOf(i));
+
+			final Map<Integer, Set<Integer>> coverages = new HashMap<Integer, Set<Integer>>();
+			final MinimalCovers<Integer> minimalCovers = new MinimalCovers<Integer>(required);
+			final int candidates = 1 + r.nextInt(8);
+			for (int c = 0; c < candidates; c++) {
+				final Set<Integer> coverage = new HashSet<Integer>();
+				for (int i = 0; i < items; i++)
+					if (r.nextInt(3) == 0)
+						coverage.add(Integer.valueOf(i));
+				coverages.put(Integer.valueOf(c), coverage);
+				minimalCovers.addCandidate(Integer.valueOf(c), coverage);
+			}
+
+			final List<Set<Integer>> covers = minimalCovers.enumerate(MinimalCovers.NO_LIMIT);
+			final Set<Set<Integer>> expected = bruteForce(coverages, required);
+			assertEquals(expected, new HashSet<Set<Integer>>(covers));
+
+			// covers are sorted by cardinality
+			for (int i = 1; i < covers.size(); i++)
+				assertTrue(covers.get(i - 1).size() <= covers.get(i).size());
+		}
+	}
+
+	private Set<Set<Integer>> bruteForce(final Map<Integer, Set<Integer>> coverages, final List<Integer> required) {
+		final Set<Set<Integer>> covers = new HashSet<Set<Integer>>();
+		for (final Set<Integer> set : PowerSet.powersetAsc(coverages.keySet())) {
+			boolean minimal = true;
+			for (final Set<Integer> cover : covers)
+				if (set.containsAll(cover))
+					minimal = false;
+
+			final Set<Integer> covered = new HashSet<Integer>();
+			for (final Integer candidate : set)
+				covered.addAll(coverages.get(candidate));
+
+			if (minimal && covered.containsAll(required))
+				covers.add(new LinkedHashSet<Integer>(set));
+		}
+		return covers;
+	}
+}
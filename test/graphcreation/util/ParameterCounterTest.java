@@ -0,0 +1,116 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package graphcreation.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import taxonomy.parameter.InputParameter;
+import taxonomy.parameter.OutputParameter;
+import taxonomy.parameter.Parameter;
+
+public class ParameterCounterTest {
+
+	@Test
+	public void testIncrementDecrement() {
+		final ParameterCounter counter = new ParameterCounter();
+		final Parameter input = new InputParameter((short) 5);
+
+		assertEquals(0, counter.count(input));
+		assertEquals(1, counter.increment(input));
+		assertEquals(2, counter.increment(input));
+		assertEquals(2, counter.count(input));
+		assertEquals(1, counter.size());
+
+		assertEquals(1, counter.decrement(input));
+		assertEquals(0, counter.decrement(input));
+		assertEquals(0, counter.count(input));
+		assertEquals(0, counter.size());
+
+		assertEquals(0, counter.decrement(input));
+		assertEquals(0, counter.size());
+	}
+
+	@Test
+	public void testInputAndOutputAreDifferent() {
+		final ParameterCounter counter = new ParameterCounter();
+		final Parameter input = new InputParameter((short) 5);
+		final Parameter output = new OutputParameter((short) 5);
+
+		counter.increment(input);
+		counter.increment(output);
+		counter.increment(output);
+
+		assertEquals(1, counter.count(input));
+		assertEquals(2, counter.count(output));
+		assertEquals(2, counter.size());
+
+		counter.decrement(input);
+		assertEquals(0, counter.count(input));
+		assertEquals(2, counter.count(output));
+	}
+
+	@Test
+	public void testNegativeIdentifiers() {
+		final ParameterCounter counter = new ParameterCounter();
+		final Parameter p = new InputParameter((short) -1);
+		final Parameter q = new InputParameter(Short.MIN_VALUE);
+
+		counter.increment(p);
+		counter.increment(q);
+		counter.increment(q);
+
+		assertEquals(1, counter.count(p));
+		assertEquals(2, counter.count(q));
+	}
+
+	@Test
+	public void testRandomOperations() {
+		final ParameterCounter counter = new ParameterCounter();
+		final Map<Parameter, Integer> expected = new HashMap<Parameter, Integer>();
+		final Random random = new Random(0);
+
+		for (int i = 0; i < 20000; i++) {
+			final short id = (short) random.nextInt(300);
+			final Parameter p = random.nextBoolean() ? new InputParameter(id) : new OutputParameter(id);
+			final int current = expected.containsKey(p) ? expected.get(p).intValue() : 0;
+			if (random.nextInt(3) != 0) {
+				assertEquals(current + 1, counter.increment(p));
+				expected.put(p, Integer.valueOf(current + 1));
+			} else {
+				final int value = Math.max(0, current - 1);
+				assertEquals(value, counter.decrement(p));
+				if (value == 0)
+					expected.remove(p);
+				else
+					expected.put(p, Integer.valueOf(value));
+			}
+		}
+
+		assertEquals(expected.size(), counter.size());
+		for (final Map.Entry<Parameter, Integer> entry : expected.entrySet())
+			assertEquals(entry.getValue().intValue(), counter.count(entry.getKey()));
+	}
+}
@@ -0,0 +1,90 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package graphcreation.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class PowerSetTest {
+
+	@Test
+	public void testSubsetsAsc() {
+		final List<Set<String>> subsets = new ArrayList<Set<String>>();
+		for (final Set<String> subset : PowerSet.subsetsAsc(Arrays.asList("a", "b", "c")))
+			subsets.add(subset);
+
+		assertEquals(7, subsets.size());
+		assertEquals(new HashSet<String>(Arrays.asList("a")), subsets.get(0));
+		assertEquals(new HashSet<String>(Arrays.asList("b")), subsets.get(1));
+		assertEquals(new HashSet<String>(Arrays.asList("c")), subsets.get(2));
+		assertEquals(new HashSet<String>(Arrays.asList("a", "b")), subsets.get(3));
+		assertEquals(new HashSet<String>(Arrays.asList("a", "c")), subsets.get(4));
+		assertEquals(new HashSet<String>(Arrays.asList("b", "c")), subsets.get(5));
+		assertEquals(new HashSet<String>(Arrays.asList("a", "b", "c")), subsets.get(6));
+	}
+
+	@Test
+	public void testSubsetsDesc() {
+		int previousSize = Integer.MAX_VALUE;
+		int count = 0;
+		for (final Set<Integer> subset : PowerSet.subsetsDesc(Arrays.asList(Integer.valueOf(1), Integer.valueOf(2), Integer.valueOf(3), Integer.valueOf(4)))) {
+			assertTrue(subset.size() <= previousSize);
+			previousSize = subset.size();
+			count++;
+		}
+		assertEquals(15, count);
+		assertEquals(1, previousSize);
+	}
+
+	@Test
+	public void testLazyIteration() {
+		final List<Integer> elements = new ArrayList<Integer>();
+		for (int i = 0; i < PowerSet.MAX_ELEMENTS; i++)
+			elements.add(Integer.valueOf(i));
+
+		// only the first subsets are generated
+		final Iterator<Set<Integer>> it = PowerSet.subsetsAsc(elements).iterator();
+		for (int i = 0; i < PowerSet.MAX_ELEMENTS; i++)
+			assertEquals(1, it.next().size());
+		assertEquals(new HashSet<Integer>(Arrays.asList(Integer.valueOf(0), Integer.valueOf(1))), it.next());
+	}
+
+	@Test
+	public void testPowerset() {
+		final Set<String> set = new HashSet<String>(Arrays.asList("a", "b", "c", "d", "e"));
+		final Set<Set<String>> powerSet = PowerSet.powersetAsc(set);
+		assertEquals(31, powerSet.size());
+		assertFalse(powerSet.contains(new HashSet<String>()));
+		assertEquals(powerSet, PowerSet.powersetDesc(set));
+		assertEquals(5, PowerSet.powersetDesc(set).iterator().next().size());
+
+		assertTrue(PowerSet.powersetAsc(new HashSet<String>()).isEmpty());
+	}
+}
@@ -0,0 +1,139 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package graphsearch.shortestpathnotificator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import graphcreation.collisionbased.ServiceDistance;
+import graphcreation.services.Service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import peer.peerid.PeerID;
+import taxonomy.BasicTaxonomy;
+import taxonomy.Taxonomy;
+import taxonomy.parameter.ParameterFactory;
+
+public class ShortestPathEngineTest {
+
+	private Service s1, s2, s3, init, goal;
+
+	private final Taxonomy taxonomy = new BasicTaxonomy();
+
+	@Before
+	public void setUp() throws Exception {
+		init = new Service("Composition-INIT", new PeerID("6"));
+		init.addParameter(ParameterFactory.createParameter("O-1", taxonomy));
+
+		s1 = new Service("S1", new PeerID("1"));
+		s1.addParameter(ParameterFactory.createParameter("I-1", taxonomy));
+		s1.addParameter(ParameterFactory.createParameter("O-2", taxonomy));
+
+		s2 = new Service("S2", new PeerID("2"));
+		s2.addParameter(ParameterFactory.createParameter("I-1", taxonomy));
+		s2.addParameter(ParameterFactory.createParameter("O-2", taxonomy));
+
+		s3 = new Service("S3", new PeerID("3"));
+		s3.addParameter(ParameterFactory.createParameter("I-2", taxonomy));
+		s3.addParameter(ParameterFactory.createParameter("O-3", taxonomy));
+
+		goal = new Service("Composition-GOAL", new PeerID("6"));
+		goal.addParameter(ParameterFactory.createParameter("I-3", taxonomy));
+	}
+
+	@Test
+	public void testIncrementalPaths() {
+		final ShortestPathEngine engine = new ShortestPathEngine(taxonomy);
+		engine.setDistance(s1, s3, 4);
+		engine.setDistance(s2, s3, 2);
+
+		engine.addService(init);
+		engine.addService(goal);
+		engine.addService(s3);
+		assertEquals(Double.POSITIVE_INFINITY, engine.getCostFromInit(s3), 0.0);
+		assertEquals(1, engine.getCostToGoal(s3), 0.0);
+
+		engine.addService(s1);
+		assertEquals(5, engine.getCostFromInit(s3), 0.0);
+		assertEquals(Arrays.asList(s3, s1, init), engine.getPathFromInit(s3));
+		assertEquals(Arrays.asList(init, s1, s3, goal), engine.getPathToGoal(init));
+
+		// a cheaper alternative updates the paths
+		engine.addService(s2);
+		assertEquals(3, engine.getCostFromInit(s3), 0.0);
+		assertEquals(Arrays.asList(s3, s2, init), engine.getPathFromInit(s3));
+		assertEquals(4, engine.getCostFromInit(goal), 0.0);
+		assertEquals(4, engine.getCostToGoal(init), 0.0);
+
+		engine.setDistance(s1, s3, 1);
+		assertEquals(Arrays.asList(init, s1, s3, goal), engine.getPathToGoal(init));
+		assertEquals(3, engine.getCostToGoal(init), 0.0);
+
+		// growing distances recompute the paths
+		engine.setDistance(s1, s3, 10);
+		assertEquals(Arrays.asList(init, s2, s3, goal), engine.getPathToGoal(init));
+		assertEquals(Arrays.asList(goal), engine.getPathToGoal(goal));
+	}
+
+	@Test
+	public void testNotificationsShareEngine() {
+		final ShortestPathEngine engine = new ShortestPathEngine(taxonomy);
+
+		final Map<Service, Set<ServiceDistance>> first = new HashMap<Service, Set<ServiceDistance>>();
+		addDistance(first, init, s1, 1);
+		addDistance(first, s1, s3, 4);
+		addDistance(first, s3, goal, 9);
+		assertEquals(Arrays.asList(s3, s1, init), ShortestPathCalculator.findShortestPath(engine, first, new PeerID("3")));
+		assertEquals(5, engine.getCostFromInit(s3), 0.0);
+
+		// only the shorter distance is received, the rest of the composition
+		// is kept by the engine of the search
+		final Map<Service, Set<ServiceDistance>> second = new HashMap<Service, Set<ServiceDistance>>();
+		addDistance(second, s1, s3, 1);
+		assertEquals(Arrays.asList(s3, s1, init), ShortestPathCalculator.findShortestPath(engine, second, new PeerID("3")));
+		assertEquals(2, engine.getCostFromInit(s3), 0.0);
+		assertEquals(11, engine.getCostToGoal(init), 0.0);
+	}
+
+	private void addDistance(final Map<Service, Set<ServiceDistance>> distances, final Service from, final Service to, final int distance) {
+		if (!distances.containsKey(from))
+			distances.put(from, new HashSet<ServiceDistance>());
+		distances.get(from).add(new ServiceDistance(to, Integer.valueOf(distance)));
+	}
+
+	@Test
+	public void testUnreachable() {
+		final ShortestPathEngine engine = new ShortestPathEngine(taxonomy);
+		engine.addService(s1);
+		engine.addService(s3);
+
+		assertEquals(Double.POSITIVE_INFINITY, engine.getCostFromInit(s3), 0.0);
+		assertTrue(engine.getPathFromInit(s3).isEmpty());
+		assertTrue(engine.getPathToGoal(s1).isEmpty());
+		assertTrue(engine.getPathToGoal(goal).isEmpty());
+	}
+}
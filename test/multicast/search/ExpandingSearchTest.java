@@ -0,0 +1,148 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package multicast.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import multicast.SearchCost;
+import multicast.search.message.SearchMessage.SearchType;
+
+import org.junit.Test;
+
+import peer.message.MessageID;
+import peer.message.MessageIDGenerator;
+import peer.peerid.PeerID;
+import taxonomy.BasicTaxonomy;
+import taxonomy.parameter.InvalidParameterIDException;
+import taxonomy.parameter.Parameter;
+import taxonomy.parameter.ParameterFactory;
+
+public class ExpandingSearchTest {
+	
+	private final PeerID source = new PeerID("0");
+	
+	private ExpandingSearch createSearch(final int requiredProviders) throws InvalidParameterIDException {
+		final Parameter p = ParameterFactory.createParameter("I-1", new BasicTaxonomy());
+		return new ExpandingSearch(Collections.singleton(p), null, SearchType.Exact, requiredProviders, 1, 5, 0);
+	}
+	
+	private MessageID newRouteID() {
+		return new MessageID(source, MessageIDGenerator.getNewID());
+	}
+
+	@Test
+	public void testExpansion() throws InvalidParameterIDException {
+		final ExpandingSearch search = createSearch(2);
+		final MessageID firstRing = newRouteID();
+		search.ringSent(firstRing, 0);
+		
+		assertEquals(firstRing, search.getSearchID());
+		assertEquals(1, search.getTTL());
+		assertFalse(search.hasExpired(100, 500));
+		assertTrue(search.hasExpired(500, 500));
+		
+		assertTrue(search.expand(500));
+		assertEquals(2, search.getTTL());
+		final MessageID secondRing = newRouteID();
+		search.ringSent(secondRing, 500);
+		assertEquals(firstRing, search.getSearchID());
+		assertEquals(secondRing, search.getCurrentRouteID());
+		
+		assertTrue(search.expand(1000));
+		assertEquals(4, search.getTTL());
+		assertTrue(search.expand(1500));
+		assertEquals(5, search.getTTL());
+		
+		// maximum TTL reached
+		assertFalse(search.expand(2000));
+		assertTrue(search.isFinished());
+		assertFalse(search.isSatisfied());
+		assertFalse(search.hasExpired(5000, 500));
+	}
+	
+	@Test
+	public void testSatisfied() throws InvalidParameterIDException {
+		final ExpandingSearch search = createSearch(2);
+		search.ringSent(newRouteID(), 0);
+		
+		assertFalse(search.responseReceived(new PeerID("1"), 100));
+		// repeated providers are counted once
+		assertFalse(search.responseReceived(new PeerID("1"), 150));
+		assertTrue(search.responseReceived(new PeerID("2"), 200));
+		assertFalse(search.responseReceived(new PeerID("3"), 300));
+		
+		assertTrue(search.isSatisfied());
+		assertFalse(search.hasExpired(5000, 500));
+		
+		final SearchCost cost = search.getCost(1000);
+		assertEquals(1, cost.getRings());
+		assertEquals(1, cost.getTTL());
+		assertEquals(4, cost.getResponses());
+		assertEquals(3, cost.getProviders());
+		assertEquals(200, cost.getElapsedTime());
+		assertTrue(cost.isSatisfied());
+	}
+	
+	@Test
+	public void testCancelParameters() throws InvalidParameterIDException {
+		final Parameter p1 = ParameterFactory.createParameter("I-1", new BasicTaxonomy());
+		final Parameter p2 = ParameterFactory.createParameter("I-2", new BasicTaxonomy());
+		final ExpandingSearch search = new ExpandingSearch(new HashSet<Parameter>(Arrays.asList(p1, p2)), null, SearchType.Exact, 1, 1, 5, 0);
+		search.ringSent(newRouteID(), 0);
+		
+		// the following rings only search for the remaining parameter
+		assertFalse(search.cancelParameters(Collections.singleton(p1), 100));
+		assertEquals(Collections.singleton(p2), search.getParameters());
+		assertFalse(search.isFinished());
+		
+		// a search without parameters is finished and never expanded
+		assertTrue(search.cancelParameters(Collections.singleton(p2), 200));
+		assertTrue(search.isFinished());
+		assertFalse(search.isSatisfied());
+		assertFalse(search.hasExpired(5000, 500));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidInitialTTL() throws InvalidParameterIDException {
+		final Parameter p = ParameterFactory.createParameter("I-1", new BasicTaxonomy());
+		new ExpandingSearch(Collections.singleton(p), null, SearchType.Exact, 1, 0, 5, 0);
+	}
+	
+	@Test
+	public void testRingTimeout() {
+		final RingTimeout ringTimeout = new RingTimeout(200, 500);
+		// 200 + 4 * 100 per hop
+		assertEquals(600, ringTimeout.getTimeout(1));
+		assertEquals(1200, ringTimeout.getTimeout(2));
+		
+		for (int i = 0; i < 100; i++)
+			ringTimeout.addSample(40, 4);
+		
+		// converges to the observed per hop time
+		assertEquals(500, ringTimeout.getTimeout(1));
+		assertEquals(1000, ringTimeout.getTimeout(100), 10);
+	}
+}
@@ -0,0 +1,156 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+
+package multicast.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import multicast.search.message.RemoteMulticastMessage;
+
+import org.junit.Test;
+
+import peer.message.MessageStringPayload;
+import peer.peerid.PeerID;
+
+public class MulticastBranchesTest {
+
+	private static class TestRoute implements Route {
+
+		private final PeerID dest;
+		private final PeerID through;
+		private final int distance;
+
+		public TestRoute(final PeerID dest, final PeerID through, final int distance) {
+			this.dest = dest;
+			this.through = through;
+			this.distance = distance;
+		}
+
+		@Override
+		public PeerID getDest() {
+			return dest;
+		}
+
+		@Override
+		public int getDistance() {
+			return distance;
+		}
+
+		@Override
+		public PeerID getThrough() {
+			return through;
+		}
+
+		@Override
+		public long getTimestamp() {
+			return 0;
+		}
+	}
+
+	private final PeerID source = new PeerID("10");
+	private final PeerID neighborA = new PeerID("1");
+	private final PeerID neighborB = new PeerID("2");
+	private final PeerID neighborC = new PeerID("7");
+
+	private final PeerID dest3 = new PeerID("3");
+	private final PeerID dest4 = new PeerID("4");
+	private final PeerID dest5 = new PeerID("5");
+	private final PeerID dest6 = new PeerID("6");
+
+	// the branches computed by the source for destinations 3, 4, 5 and 6
+	private Map<PeerID, Set<PeerID>> getSourceBranches() {
+		final MulticastBranches branches = new MulticastBranches(new HashSet<PeerID>(Arrays.asList(neighborA, neighborB)), null);
+		addDestination(branches, new TestRoute(dest3, neighborB, 2), new TestRoute(dest3, neighborA, 2));
+		addDestination(branches, new TestRoute(dest4, neighborA, 2));
+		addDestination(branches, new TestRoute(dest5, neighborB, 2));
+		addDestination(branches, new TestRoute(dest6, neighborA, 2), new TestRoute(dest6, neighborB, 3));
+		return branches.getBranches();
+	}
+
+	private void addDestination(final MulticastBranches branches, final Route route, final Route... alternatives) {
+		final Set<Route> routes = new HashSet<Route>(Arrays.asList(alternatives));
+		routes.add(route);
+		branches.addDestination(route, routes);
+	}
+
+	@Test
+	public void testSharedNeighborPreferred() {
+		final Map<PeerID, Set<PeerID>> expected = new HashMap<PeerID, Set<PeerID>>();
+		// 3 is reachable through both neighbors but A is shared with more
+		// destinations. The longer route of 6 through B is not used
+		expected.put(neighborA, new HashSet<PeerID>(Arrays.asList(dest3, dest4, dest6)));
+		expected.put(neighborB, Collections.singleton(dest5));
+		assertEquals(expected, getSourceBranches());
+	}
+
+	@Test
+	public void testTieBrokenByIdentifier() {
+		final MulticastBranches branches = new MulticastBranches(new HashSet<PeerID>(Arrays.asList(neighborA, neighborB)), null);
+		addDestination(branches, new TestRoute(dest3, neighborB, 2), new TestRoute(dest3, neighborA, 2));
+		assertEquals(Collections.singletonMap(neighborA, Collections.singleton(dest3)), branches.getBranches());
+	}
+
+	@Test
+	public void testInvalidAlternatives() {
+		// alternatives through the sender or through nodes which are not
+		// neighbors are not used
+		final MulticastBranches branches = new MulticastBranches(new HashSet<PeerID>(Arrays.asList(source, neighborA, neighborC)), source);
+		addDestination(branches, new TestRoute(dest4, neighborC, 2), new TestRoute(dest4, source, 2), new TestRoute(dest4, neighborB, 2));
+		assertEquals(Collections.singletonMap(neighborC, Collections.singleton(dest4)), branches.getBranches());
+
+		// destinations only reachable through the sender are discarded
+		final MulticastBranches senderBranches = new MulticastBranches(new HashSet<PeerID>(Arrays.asList(source, neighborA)), source);
+		addDestination(senderBranches, new TestRoute(dest5, source, 2));
+		assertTrue(senderBranches.getBranches().isEmpty());
+	}
+
+	@Test
+	public void testForwardAlongBranches() {
+		final RemoteMulticastMessage message = new RemoteMulticastMessage(source, new HashSet<PeerID>(Arrays.asList(dest3, dest4, dest5, dest6)), new MessageStringPayload(source, "payload"), false);
+		final RemoteMulticastMessage sourceMessage = new RemoteMulticastMessage(message, source, getSourceBranches(), 1);
+		assertEquals(new HashSet<PeerID>(Arrays.asList(neighborA, neighborB)), sourceMessage.getThroughPeers());
+
+		// A only forwards the destinations of its branch and never sends the
+		// message back to the source
+		final Set<PeerID> destinationsA = sourceMessage.getRemoteDestinations(neighborA);
+		assertEquals(new HashSet<PeerID>(Arrays.asList(dest3, dest4, dest6)), destinationsA);
+		final MulticastBranches branchesA = new MulticastBranches(new HashSet<PeerID>(Arrays.asList(source, dest3, neighborC)), source);
+		addDestination(branchesA, new TestRoute(dest3, dest3, 1));
+		addDestination(branchesA, new TestRoute(dest4, neighborC, 2), new TestRoute(dest4, source, 2));
+		addDestination(branchesA, new TestRoute(dest6, source, 2), new TestRoute(dest6, neighborC, 2));
+
+		final RemoteMulticastMessage messageA = new RemoteMulticastMessage(sourceMessage, neighborA, branchesA.getBranches(), 2);
+		assertEquals(destinationsA, messageA.getRemoteDestinations());
+		assertEquals(new HashSet<PeerID>(Arrays.asList(dest3, neighborC)), messageA.getThroughPeers());
+		assertEquals(Collections.singleton(dest3), messageA.getRemoteDestinations(dest3));
+		assertEquals(new HashSet<PeerID>(Arrays.asList(dest4, dest6)), messageA.getRemoteDestinations(neighborC));
+
+		// B only receives the destination of its branch
+		assertEquals(Collections.singleton(dest5), sourceMessage.getRemoteDestinations(neighborB));
+	}
+}
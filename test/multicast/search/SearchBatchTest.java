@@ -0,0 +1,91 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package multicast.search;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import multicast.SearchRequest;
+import multicast.SearchedParameter;
+import multicast.search.message.SearchMessage.SearchType;
+
+import org.junit.Test;
+
+import peer.message.MessageStringPayload;
+import peer.peerid.PeerID;
+import taxonomy.BasicTaxonomy;
+import taxonomy.Taxonomy;
+import taxonomy.parameter.InvalidParameterIDException;
+import taxonomy.parameter.Parameter;
+import taxonomy.parameter.ParameterFactory;
+
+public class SearchBatchTest {
+	
+	private final Taxonomy emptyTaxonomy = new BasicTaxonomy();
+	
+	private SearchRequest createRequest(final Parameter p, final int ttl, final SearchType searchType, final MessageStringPayload payload) {
+		return new SearchRequest(Collections.singleton(new SearchedParameter(p, ttl)), payload, searchType);
+	}
+
+	@Test
+	public void testPacking() throws InvalidParameterIDException {
+		final Parameter i1 = ParameterFactory.createParameter("I-1", emptyTaxonomy);
+		final Parameter i2 = ParameterFactory.createParameter("I-2", emptyTaxonomy);
+		final Parameter o1 = ParameterFactory.createParameter("O-1", emptyTaxonomy);
+		
+		final MessageStringPayload payload = new MessageStringPayload(new PeerID("0"), "Hola, mundo");
+		
+		final List<SearchRequest> requests = new ArrayList<SearchRequest>();
+		requests.add(createRequest(i1, 2, SearchType.Generic, null));
+		requests.add(createRequest(i2, 3, SearchType.Generic, null));
+		requests.add(createRequest(i1, 4, SearchType.Generic, null));
+		requests.add(createRequest(o1, 2, SearchType.Exact, null));
+		requests.add(createRequest(o1, 2, SearchType.Generic, payload));
+		requests.add(createRequest(i2, 2, SearchType.Generic, payload));
+		
+		final SearchBatch searchBatch = new SearchBatch(requests);
+		assertEquals(3, searchBatch.getGroups().size());
+		
+		assertEquals(0, searchBatch.getGroup(0));
+		assertEquals(0, searchBatch.getGroup(1));
+		assertEquals(0, searchBatch.getGroup(2));
+		assertEquals(1, searchBatch.getGroup(3));
+		assertEquals(2, searchBatch.getGroup(4));
+		assertEquals(2, searchBatch.getGroup(5));
+		
+		final SearchBatch.Group group = searchBatch.getGroups().get(0);
+		assertEquals(SearchType.Generic, group.getSearchType());
+		final Set<Parameter> parameters = new HashSet<Parameter>();
+		for (final SearchedParameter searchedParameter : group.getSearchedParameters()) {
+			parameters.add(searchedParameter.getParameter());
+			// greatest TTL is used for repeated parameters
+			if (searchedParameter.getParameter().equals(i1))
+				assertEquals(4, searchedParameter.getMaxTTL());
+		}
+		assertEquals(2, parameters.size());
+		
+		assertEquals(payload, searchBatch.getGroups().get(2).getPayload());
+	}
+}
@@ -27,7 +27,10 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.junit.Test;
@@ -76,4 +79,77 @@ public class RemoteMulticastMessageTest {
 		assertTrue(message.getThroughPeers().containsAll(result.getThroughPeers()));
 		assertTrue(result.getThroughPeers().containsAll(message.getThroughPeers()));
 	}
+	
+	@Test
+	public void testBranchedSerialization() throws IOException {
+		final Set<PeerID> remoteDestinations = new HashSet<PeerID>();
+		remoteDestinations.add(new PeerID("0"));
+		remoteDestinations.add(new PeerID("1"));
+		remoteDestinations.add(new PeerID("2"));
+		final DummyMessage message = new DummyMessage(new PeerID("3"), new MessageStringPayload(new PeerID("3"), "Hola, mundo!"), remoteDestinations);
+		
+		final Map<PeerID, Set<PeerID>> branches = new HashMap<PeerID, Set<PeerID>>();
+		branches.put(new PeerID("4"), new HashSet<PeerID>());
+		branches.get(new PeerID("4")).add(new PeerID("0"));
+		branches.get(new PeerID("4")).add(new PeerID("1"));
+		branches.put(new PeerID("5"), new HashSet<PeerID>());
+		branches.get(new PeerID("5")).add(new PeerID("2"));
+		
+		final RemoteMulticastMessage branchedMessage = new RemoteMulticastMessage(message, new PeerID("3"), branches, 1);
+		assertEquals(remoteDestinations, branchedMessage.getRemoteDestinations());
+		assertEquals(branches.keySet(), branchedMessage.getThroughPeers());
+		assertEquals(branches.get(new PeerID("4")), branchedMessage.getRemoteDestinations(new PeerID("4")));
+		assertTrue(branchedMessage.getRemoteDestinations(new PeerID("6")).isEmpty());
+		
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		final ObjectOutputStream out = new ObjectOutputStream(bos);
+		branchedMessage.write(out);
+		out.close();
+		
+		final ByteArrayInputStream bis = new ByteArrayInputStream(bos.toByteArray());
+		final ObjectInputStream in = new ObjectInputStream(bis);
+		final RemoteMulticastMessage result = new DummyMessage();
+		in.readByte(); //read mType byte
+		result.read(in);
+		in.close();
+		
+		assertEquals(branchedMessage, result);
+		assertTrue(result.isDirectBroadcast());
+		assertEquals(remoteDestinations, result.getRemoteDestinations());
+		assertEquals(branches.keySet(), result.getThroughPeers());
+		assertEquals(branches.get(new PeerID("4")), result.getRemoteDestinations(new PeerID("4")));
+		assertEquals(branches.get(new PeerID("5")), result.getRemoteDestinations(new PeerID("5")));
+	}
+	
+	@Test
+	public void testDestinationWithoutBranch() throws IOException {
+		final Set<PeerID> remoteDestinations = new HashSet<PeerID>();
+		remoteDestinations.add(new PeerID("0"));
+		remoteDestinations.add(new PeerID("2"));
+		final DummyMessage message = new DummyMessage(new PeerID("3"), new MessageStringPayload(new PeerID("3"), "Hola, mundo!"), remoteDestinations);
+		
+		final Map<PeerID, Set<PeerID>> branches = new HashMap<PeerID, Set<PeerID>>();
+		branches.put(new PeerID("4"), Collections.singleton(new PeerID("0")));
+		branches.put(new PeerID("5"), Collections.singleton(new PeerID("2")));
+		final RemoteMulticastMessage branchedMessage = new RemoteMulticastMessage(message, new PeerID("3"), branches, 1);
+		
+		// the destination of the removed through node is not in any branch
+		branchedMessage.getThroughPeers().remove(new PeerID("5"));
+		
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		final ObjectOutputStream out = new ObjectOutputStream(bos);
+		branchedMessage.write(out);
+		out.close();
+		
+		final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+		final RemoteMulticastMessage result = new DummyMessage();
+		in.readByte(); //read mType byte
+		result.read(in);
+		in.close();
+		
+		assertEquals(remoteDestinations, result.getRemoteDestinations());
+		assertEquals(Collections.singleton(new PeerID("4")), result.getThroughPeers());
+		assertEquals(Collections.singleton(new PeerID("0")), result.getRemoteDestinations(new PeerID("4")));
+		assertTrue(result.getRemoteDestinations(new PeerID("5")).isEmpty());
+	}
 }
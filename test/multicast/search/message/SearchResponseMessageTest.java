@@ -20,6 +20,7 @@
 package multicast.search.message;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
@@ -27,6 +28,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -62,7 +64,7 @@ public class SearchResponseMessageTest {
 		searchResponseMessage.write(out);
 		out.close();
 		
-		assertEquals(65, bos.toByteArray().length);
+		assertEquals(66, bos.toByteArray().length);
 		
 		final ByteArrayInputStream bis = new ByteArrayInputStream(bos.toByteArray());
 		final ObjectInputStream in = new ObjectInputStream(bis);
@@ -74,4 +76,94 @@ public class SearchResponseMessageTest {
 		assertTrue(searchResponseMessage.getParameters().containsAll(result.getParameters()));
 		assertTrue(result.getParameters().containsAll(searchResponseMessage.getParameters()));
 	}
+	
+	@Test
+	public void testAggregate() throws InvalidParameterIDException {
+		final Parameter i1 = ParameterFactory.createParameter("I-1", emptyTaxonomy);
+		final Parameter i2 = ParameterFactory.createParameter("I-2", emptyTaxonomy);
+		final MessageID routeID = new MessageID(new PeerID("3"), MessageIDGenerator.getNewID());
+		
+		final SearchResponseMessage first = new SearchResponseMessage(new SearchResponseMessage(new PeerID("0"), new PeerID("3"), 
+						Collections.singleton(i1), new MessageStringPayload(new PeerID("0"), "Hola, mundo"), routeID), new PeerID("1"), new PeerID("2"), 4);
+		final SearchResponseMessage second = new SearchResponseMessage(new SearchResponseMessage(new PeerID("0"), new PeerID("3"), 
+						Collections.singleton(i2), null, routeID), new PeerID("1"), new PeerID("2"), 4);
+		
+		assertTrue(first.canAggregate(second));
+		assertTrue(second.canAggregate(first));
+		
+		// a later response of the same source without payload is combined
+		first.aggregate(second);
+		assertEquals(2, first.getParameters().size());
+		assertTrue(first.getParameters().contains(i2));
+		assertTrue(first.getAggregatedResponses().isEmpty());
+		
+		final SearchResponseMessage otherNeighbor = new SearchResponseMessage(new SearchResponseMessage(new PeerID("0"), new PeerID("3"), 
+						Collections.singleton(i2), null, routeID), new PeerID("1"), new PeerID("5"), 4);
+		assertFalse(first.canAggregate(otherNeighbor));
+		
+		final SearchResponseMessage otherDestination = new SearchResponseMessage(new SearchResponseMessage(new PeerID("0"), new PeerID("7"), 
+						Collections.singleton(i2), null, routeID), new PeerID("1"), new PeerID("2"), 4);
+		assertFalse(first.canAggregate(otherDestination));
+		
+		// responses to another search route are kept separately
+		final SearchResponseMessage otherRoute = new SearchResponseMessage(new SearchResponseMessage(new PeerID("0"), new PeerID("3"), 
+						Collections.singleton(i2), null, new MessageID(new PeerID("3"), MessageIDGenerator.getNewID())), new PeerID("1"), new PeerID("2"), 4);
+		assertTrue(first.canAggregate(otherRoute));
+		first.aggregate(otherRoute);
+		assertEquals(1, first.getAggregatedResponses().size());
+		assertEquals(otherRoute.getRespondedRouteID(), first.getAggregatedResponses().get(0).getRespondedRouteID());
+	}
+	
+	@Test
+	public void testAggregateSeveralResponders() throws InvalidParameterIDException, IOException, UnsupportedTypeException {
+		final Parameter i1 = ParameterFactory.createParameter("I-1", emptyTaxonomy);
+		final Parameter i2 = ParameterFactory.createParameter("I-2", emptyTaxonomy);
+		final MessageID routeID = new MessageID(new PeerID("3"), MessageIDGenerator.getNewID());
+		
+		// responses of three providers to the same search forwarded through
+		// the same neighbor
+		final SearchResponseMessage responseA = new SearchResponseMessage(new SearchResponseMessage(new PeerID("0"), new PeerID("3"), 
+						Collections.singleton(i1), null, routeID), new PeerID("1"), new PeerID("2"), 4);
+		final SearchResponseMessage responseB = new SearchResponseMessage(new SearchResponseMessage(new PeerID("4"), new PeerID("3"), 
+						Collections.singleton(i1), new MessageStringPayload(new PeerID("4"), "Hola, mundo"), routeID), new PeerID("1"), new PeerID("2"), 4);
+		final SearchResponseMessage responseC = new SearchResponseMessage(new SearchResponseMessage(new PeerID("6"), new PeerID("3"), 
+						Collections.singleton(i2), null, routeID), new PeerID("1"), new PeerID("2"), 2);
+		final SearchResponseMessage laterResponseC = new SearchResponseMessage(new SearchResponseMessage(new PeerID("6"), new PeerID("3"), 
+						Collections.singleton(i1), null, routeID), new PeerID("1"), new PeerID("2"), 2);
+		
+		// an aggregate of two responders is aggregated into another response
+		assertTrue(responseC.canAggregate(responseB));
+		responseC.aggregate(responseB);
+		assertTrue(responseA.canAggregate(responseC));
+		responseA.aggregate(responseC);
+		assertTrue(responseA.canAggregate(laterResponseC));
+		responseA.aggregate(laterResponseC);
+		
+		// a single message carries one response per responder
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		final ObjectOutputStream out = new ObjectOutputStream(bos);
+		responseA.write(out);
+		out.close();
+		
+		final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+		final SearchResponseMessage result = (SearchResponseMessage) MessageTypes.readBroadcastMessage(in);
+		in.close();
+		
+		assertEquals(new PeerID("0"), result.getSource());
+		assertEquals(Collections.singleton(i1), result.getParameters());
+		assertEquals(2, result.getAggregatedResponses().size());
+		
+		final SearchResponseMessage resultC = result.getAggregatedResponses().get(0);
+		assertEquals(new PeerID("6"), resultC.getSource());
+		assertEquals(2, resultC.getDistance());
+		assertEquals(2, resultC.getParameters().size());
+		assertTrue(resultC.getAggregatedResponses().isEmpty());
+		
+		final SearchResponseMessage resultB = result.getAggregatedResponses().get(1);
+		assertEquals(new PeerID("4"), resultB.getSource());
+		assertEquals(responseB.getRemoteMessageID(), resultB.getRemoteMessageID());
+		assertTrue(resultB.hasPayload());
+		assertEquals(new PeerID("1"), resultB.getSender());
+		assertEquals(Collections.singleton(new PeerID("3")), resultB.getRemoteDestinations());
+	}
 }
@@ -0,0 +1,143 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package multicast.search.unicastTable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import multicast.search.Route;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import peer.message.MessageID;
+import peer.message.MessageIDGenerator;
+import peer.peerid.PeerID;
+
+public class RouteCacheTest {
+	
+	private static final long EXPIRATION = 1000;
+	
+	private final PeerID dest = new PeerID("5");
+	private final PeerID neighborA = new PeerID("1");
+	private final PeerID neighborB = new PeerID("2");
+	
+	private final Set<PeerID> neighbors = new HashSet<PeerID>();
+	
+	private RouteCache routeCache;
+	
+	@Before
+	public void setUp() {
+		routeCache = new RouteCache(EXPIRATION);
+		neighbors.add(neighborA);
+		neighbors.add(neighborB);
+	}
+	
+	private MessageID newRouteID() {
+		return new MessageID(dest, MessageIDGenerator.getNewID());
+	}
+
+	@Test
+	public void testResolvedRoute() {
+		assertNull(routeCache.getResolvedRoute(dest, neighbors, 0));
+		
+		final Route route = new BroadcastRoute(dest, neighborA, newRouteID(), 3);
+		routeCache.putResolvedRoute(route, 0);
+		
+		assertEquals(route, routeCache.getResolvedRoute(dest, neighbors, 10));
+		assertEquals(route, routeCache.getResolvedRoute(dest, neighbors, 20));
+		
+		// expired routes are not returned
+		assertNull(routeCache.getResolvedRoute(dest, neighbors, EXPIRATION));
+	}
+	
+	@Test
+	public void testResolvedRouteLostNeighbor() {
+		routeCache.putResolvedRoute(new BroadcastRoute(dest, neighborA, newRouteID(), 3), 0);
+		
+		neighbors.remove(neighborA);
+		assertNull(routeCache.getResolvedRoute(dest, neighbors, 10));
+	}
+	
+	@Test
+	public void testInvalidate() {
+		routeCache.learnRoute(dest, neighborA, newRouteID(), 3, 0);
+		routeCache.learnRoute(dest, neighborB, newRouteID(), 4, 0);
+		routeCache.putResolvedRoute(routeCache.getLearnedRoute(dest, neighbors, null, 0), 0);
+		
+		// neighbor A lost its route to the destination
+		routeCache.invalidate(dest, neighborA);
+		assertNull(routeCache.getResolvedRoute(dest, neighbors, 10));
+		assertEquals(neighborB, routeCache.getLearnedRoute(dest, neighbors, null, 10).getThrough());
+		
+		routeCache.invalidate(dest, neighborB);
+		assertNull(routeCache.getLearnedRoute(dest, neighbors, null, 10));
+	}
+
+	@Test
+	public void testLearnedRoute() {
+		assertNull(routeCache.getLearnedRoute(dest, neighbors, null, 0));
+		
+		routeCache.learnRoute(dest, neighborA, newRouteID(), 4, 0);
+		routeCache.learnRoute(dest, neighborB, newRouteID(), 2, 0);
+		
+		// shortest learned route is used
+		assertEquals(neighborB, routeCache.getLearnedRoute(dest, neighbors, null, 10).getThrough());
+		
+		routeCache.removeNeighbor(neighborB);
+		assertEquals(neighborA, routeCache.getLearnedRoute(dest, neighbors, null, 10).getThrough());
+		assertEquals(4, routeCache.getLearnedRoute(dest, neighbors, null, 10).getDistance());
+		
+		assertNull(routeCache.getLearnedRoute(dest, neighbors, null, EXPIRATION));
+	}
+	
+	@Test
+	public void testLearnedRouteExcludedNeighbor() {
+		routeCache.learnRoute(dest, neighborA, newRouteID(), 2, 0);
+		routeCache.learnRoute(dest, neighborB, newRouteID(), 4, 0);
+		
+		// the message is not sent back to the neighbor it came from
+		assertEquals(neighborB, routeCache.getLearnedRoute(dest, neighbors, neighborA, 10).getThrough());
+		
+		routeCache.removeNeighbor(neighborB);
+		assertNull(routeCache.getLearnedRoute(dest, neighbors, neighborA, 10));
+	}
+	
+	@Test
+	public void testRemoveResolvedRoute() {
+		routeCache.putResolvedRoute(new BroadcastRoute(dest, neighborA, newRouteID(), 3), 0);
+		
+		routeCache.removeResolvedRoute(dest);
+		assertNull(routeCache.getResolvedRoute(dest, neighbors, 10));
+	}
+	
+	@Test
+	public void testLearnShorterRoute() {
+		routeCache.learnRoute(dest, neighborA, newRouteID(), 4, 0);
+		routeCache.learnRoute(dest, neighborA, newRouteID(), 5, 10);
+		assertEquals(4, routeCache.getLearnedRoute(dest, neighbors, null, 20).getDistance());
+		
+		routeCache.learnRoute(dest, neighborA, newRouteID(), 3, 30);
+		assertEquals(3, routeCache.getLearnedRoute(dest, neighbors, null, 40).getDistance());
+	}
+}
@@ -277,6 +277,20 @@ public class UnicastTableTest {
 		assertTrue(table1.getSearches(ParameterFactory.createParameter("I-6", taxonomy)).isEmpty());
 	}
 
+	@Test
+	public void testGetSubsumingSearches() throws InvalidParameterIDException {
+		final Set<SearchMessage> searches = table1.getSearches(ParameterFactory.createParameter("I-E", taxonomy));
+		assertEquals(3, searches.size());
+		assertTrue(searches.contains(searchMessage1));
+		assertTrue(searches.contains(searchMessage2));
+		
+		assertTrue(table1.getSearches(ParameterFactory.createParameter("I-Z", taxonomy)).isEmpty());
+		
+		table1.removeParameters(Collections.singleton(ParameterFactory.createParameter("I-1", taxonomy)), searchMessage3.getRemoteMessageID());
+		assertTrue(table1.getSearches(ParameterFactory.createParameter("I-1", taxonomy)).isEmpty());
+		assertTrue(table1.getSearches(ParameterFactory.createParameter("I-2", taxonomy)).contains(searchMessage3));
+	}
+
 	@Test
 	public void testGetNeighbor() {
 		assertEquals(new PeerID("2"), table1.getRoute(new PeerID("1")).getThrough());
@@ -321,6 +335,38 @@ public class UnicastTableTest {
 		assertFalse(table1.knowsRouteTo(new PeerID("3")));
 	}
 
+	@Test
+	public void testGetShortestRoute() throws InvalidParameterIDException {
+		final UnicastTable table = new UnicastTable(PeerID.VOID_PEERID, nDetector, taxonomy);
+		final Set<Parameter> parameters = Collections.singleton(ParameterFactory.createParameter("I-C", taxonomy));
+		final PeerID dest = new PeerID("20");
+		
+		final SearchResponseMessage longResponse = new SearchResponseMessage(new SearchResponseMessage(dest, PeerID.VOID_PEERID, parameters, null, searchMessage4.getRemoteMessageID()), new PeerID("21"), PeerID.VOID_PEERID, 3);
+		final SearchResponseMessage shortResponse = new SearchResponseMessage(new SearchResponseMessage(dest, PeerID.VOID_PEERID, parameters, null, searchMessage4.getRemoteMessageID()), new PeerID("22"), PeerID.VOID_PEERID, 1);
+		final SearchResponseMessage otherShortResponse = new SearchResponseMessage(new SearchResponseMessage(dest, PeerID.VOID_PEERID, parameters, null, searchMessage4.getRemoteMessageID()), new PeerID("23"), PeerID.VOID_PEERID, 1);
+		
+		table.updateUnicastTable(longResponse);
+		table.updateUnicastTable(shortResponse);
+		table.updateUnicastTable(otherShortResponse);
+		
+		assertEquals(3, table.getRoutes(dest).size());
+		assertEquals(new PeerID("22"), table.getRoute(dest).getThrough());
+		assertEquals(Collections.singleton(shortResponse.getRemoteMessageID()), table.getRoutesThrough(new PeerID("22")));
+		
+		// routes are only removed through their neighbor
+		assertEquals(PeerID.VOID_PEERID, table.removeRoute(shortResponse.getRemoteMessageID(), new PeerID("21")));
+		assertEquals(dest, table.removeRoute(shortResponse.getRemoteMessageID(), new PeerID("22")));
+		assertTrue(table.getRoutesThrough(new PeerID("22")).isEmpty());
+		assertEquals(new PeerID("23"), table.getRoute(dest).getThrough());
+		
+		table.removeRoute(otherShortResponse.getRemoteMessageID(), new PeerID("23"));
+		assertEquals(new PeerID("21"), table.getRoute(dest).getThrough());
+		
+		table.removeRoute(longResponse.getRemoteMessageID(), new PeerID("21"));
+		assertFalse(table.knowsRouteTo(dest));
+		assertNull(table.getRoute(dest));
+	}
+
 	@Test
 	public void testRemoveSearchRouteResponseNoteRemoved() {
 		table1.removeRoute(searchMessage4.getRemoteMessageID(), new PeerID("4"));
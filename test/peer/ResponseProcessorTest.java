@@ -0,0 +1,127 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package peer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import peer.message.BroadcastMessage;
+import peer.message.BundleMessage;
+import peer.message.MessageStringPayload;
+import peer.messagecounter.MessageCounter;
+import peer.peerid.PeerID;
+
+public class ResponseProcessorTest {
+
+	// receives its own messages in the order they are delivered
+	private static class OrderedLayer implements ScheduledLayer {
+
+		private final SendPriority priority;
+
+		private final List<BroadcastMessage> sent = new ArrayList<BroadcastMessage>();
+		private final List<BroadcastMessage> received = new ArrayList<BroadcastMessage>();
+
+		public OrderedLayer(final SendPriority priority) {
+			this.priority = priority;
+		}
+
+		public BroadcastMessage createMessage(final String content) {
+			final BroadcastMessage message = new MessageStringPayload(new PeerID("0"), content);
+			sent.add(message);
+			return message;
+		}
+
+		@Override
+		public void messageReceived(BroadcastMessage message, long receptionTime) {
+			received.add(message);
+		}
+
+		@Override
+		public void init() {}
+
+		@Override
+		public void stop() {}
+
+		@Override
+		public boolean merge(List<BroadcastMessage> waitingMessages, BroadcastMessage sendingMessage) {
+			return false;
+		}
+
+		@Override
+		public SendPriority getSendPriority(BroadcastMessage message) {
+			return priority;
+		}
+
+		@Override
+		public Object getMergeKey(BroadcastMessage message) {
+			return null;
+		}
+
+		@Override
+		public boolean merge(BroadcastMessage waitingMessage, BroadcastMessage sendingMessage) {
+			return false;
+		}
+
+		@Override
+		public void queueCongested(SendPriority priority, boolean congested) {}
+	}
+
+	@Test
+	public void testLayersOrder() {
+		final ResponseProcessor processor = new ResponseProcessor(new ReliableBroadcastPeer(null), new MessageCounter());
+
+		final OrderedLayer tableLayer = new OrderedLayer(SendPriority.HIGH);
+		final OrderedLayer searchLayer = new OrderedLayer(SendPriority.LOW);
+
+		// messages of both layers are enqueued alternately
+		final List<BroadcastMessage> enqueued = new ArrayList<BroadcastMessage>();
+		for (int i = 0; i < 3; i++) {
+			final BroadcastMessage search = searchLayer.createMessage("search" + i);
+			processor.addResponse(search, searchLayer);
+			enqueued.add(search);
+
+			final BroadcastMessage table = tableLayer.createMessage("table" + i);
+			processor.addResponse(table, tableLayer);
+			enqueued.add(table);
+		}
+
+		final BundleMessage bundle = processor.processResponses();
+		assertEquals(enqueued.size(), bundle.getPayloadMessages().size());
+
+		// the bundle does not keep the order among layers
+		assertFalse(enqueued.equals(bundle.getPayloadMessages()));
+
+		// each received message is delivered to the layer handling it, which
+		// receives its messages in the order they were enqueued
+		for (final BroadcastMessage message : bundle.getPayloadMessages())
+			if (tableLayer.sent.contains(message))
+				tableLayer.messageReceived(message, 0);
+			else
+				searchLayer.messageReceived(message, 0);
+
+		assertEquals(tableLayer.sent, tableLayer.received);
+		assertEquals(searchLayer.sent, searchLayer.received);
+	}
+}
@@ -0,0 +1,199 @@
+/*
+*   Copyright (c) 2012 Unai Aguilera
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*
+*  
+*   Author: Unai Aguilera <unai.aguilera@deusto.es>
+*/
+
+package peer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import peer.message.BroadcastMessage;
+import peer.message.MessageStringPayload;
+import peer.peerid.PeerID;
+import taxonomy.BasicTaxonomy;
+import taxonomy.Taxonomy;
+import taxonomy.parameter.InvalidParameterIDException;
+import taxonomy.parameter.Parameter;
+import taxonomy.parameter.ParameterFactory;
+import dissemination.newProtocol.ParameterTableUpdater;
+import dissemination.newProtocol.message.TableMessage;
+import dissemination.newProtocol.ptable.ParameterTable;
+import dissemination.newProtocol.ptable.UpdateTable;
+
+public class SendQueueTest {
+	
+	// merges messages with the same key
+	private static class DummyLayer implements ScheduledLayer {
+		
+		private final List<BroadcastMessage> merged = new ArrayList<BroadcastMessage>();
+		
+		private final Map<BroadcastMessage, String> keys = new IdentityHashMap<BroadcastMessage, String>();
+		
+		public BroadcastMessage createMessage(final String key) {
+			final BroadcastMessage message = new MessageStringPayload(new PeerID("0"), key);
+			keys.put(message, key);
+			return message;
+		}
+
+		@Override
+		public void messageReceived(BroadcastMessage message, long receptionTime) {}
+
+		@Override
+		public void init() {}
+
+		@Override
+		public void stop() {}
+
+		@Override
+		public boolean merge(List<BroadcastMessage> waitingMessages, BroadcastMessage sendingMessage) {
+			return false;
+		}
+
+		@Override
+		public SendPriority getSendPriority(BroadcastMessage message) {
+			return SendPriority.LOW;
+		}
+
+		@Override
+		public Object getMergeKey(BroadcastMessage message) {
+			return keys.get(message);
+		}
+
+		@Override
+		public boolean merge(BroadcastMessage waitingMessage, BroadcastMessage sendingMessage) {
+			merged.add(sendingMessage);
+			return true;
+		}
+
+		@Override
+		public void queueCongested(SendPriority priority, boolean congested) {}
+	}
+	
+	private final PeerID peerID = new PeerID("0");
+
+	@Test
+	public void testMergeNewest() {
+		final DummyLayer layer = new DummyLayer();
+		final SendQueue queue = new SendQueue(layer, SendPriority.LOW);
+		
+		final BroadcastMessage a = layer.createMessage("a");
+		final BroadcastMessage a2 = layer.createMessage("a");
+		final BroadcastMessage b = layer.createMessage("b");
+		final BroadcastMessage a3 = layer.createMessage("a");
+		
+		assertTrue(queue.add(a));
+		assertFalse(queue.add(a2));
+		assertEquals(1, layer.merged.size());
+		
+		// a message queued in between prevents the merge
+		assertTrue(queue.add(b));
+		assertTrue(queue.add(a3));
+		assertEquals(1, layer.merged.size());
+		assertEquals(3, queue.size());
+		
+		assertSame(a, queue.poll());
+		assertSame(b, queue.poll());
+		
+		// once sent, messages cannot be merged anymore
+		assertSame(a3, queue.poll());
+		final BroadcastMessage a4 = layer.createMessage("a");
+		assertTrue(queue.add(a4));
+		assertEquals(1, layer.merged.size());
+		
+		assertSame(a4, queue.poll());
+		assertNull(queue.poll());
+	}
+	
+	@Test
+	public void testTableMessagesOrder() throws InvalidParameterIDException {
+		final ParameterTableUpdater updater = new ParameterTableUpdater(new ReliableBroadcastPeer(null), null);
+		final SendQueue queue = new SendQueue(updater, SendPriority.HIGH);
+		
+		final Taxonomy taxonomy = new BasicTaxonomy();
+		final Parameter p = ParameterFactory.createParameter("I-1", taxonomy);
+		final Set<PeerID> bothNeighbors = new HashSet<PeerID>(Arrays.asList(new PeerID("1"), new PeerID("2")));
+		
+		// A adds the parameter, B removes it only for neighbor 1 and C adds
+		// it again to both neighbors
+		final UpdateTable additionA = new UpdateTable();
+		additionA.setAddition(p, 3, peerID);
+		final TableMessage a = new TableMessage(peerID, bothNeighbors, additionA, null);
+		
+		final UpdateTable removalB = new UpdateTable();
+		removalB.setDelete(p, peerID);
+		final TableMessage b = new TableMessage(peerID, Collections.singleton(new PeerID("1")), removalB, null);
+		
+		final UpdateTable additionC = new UpdateTable();
+		additionC.setAddition(p, 4, peerID);
+		final TableMessage c = new TableMessage(peerID, bothNeighbors, additionC, null);
+		
+		assertTrue(queue.add(a));
+		assertTrue(queue.add(b));
+		assertTrue(queue.add(c));
+		assertEquals(3, queue.size());
+		
+		// neighbor 1 applies the updates in the order they were queued
+		final ParameterTable neighborTable = new ParameterTable(updater, new PeerID("1"), taxonomy);
+		final List<BroadcastMessage> applied = new ArrayList<BroadcastMessage>();
+		BroadcastMessage message;
+		while ((message = queue.poll()) != null) {
+			applied.add(message);
+			neighborTable.updateTable(((TableMessage) message).getUpdateTable(), peerID);
+		}
+		
+		assertEquals(Arrays.<BroadcastMessage> asList(a, b, c), applied);
+		assertEquals(3, neighborTable.getEstimatedDistance(p));
+	}
+	
+	@Test
+	public void testCongestion() {
+		final SendQueue queue = new SendQueue(null, SendPriority.LOW);
+		final int budget = SendPriority.LOW.getBudget();
+		
+		for (int i = 0; i < budget; i++)
+			queue.add(new MessageStringPayload(peerID, "m" + i));
+		assertFalse(queue.updateCongestion());
+		
+		queue.add(new MessageStringPayload(peerID, "m"));
+		assertTrue(queue.updateCongestion());
+		assertTrue(queue.isCongested());
+		
+		// congestion is kept until the queue drains to half of its budget
+		while (queue.size() > budget / 2 + 1)
+			queue.poll();
+		assertFalse(queue.updateCongestion());
+		
+		queue.poll();
+		assertTrue(queue.updateCongestion());
+		assertFalse(queue.isCongested());
+	}
+}